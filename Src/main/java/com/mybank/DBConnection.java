@@ -1,13 +1,23 @@
 package com.mybank;
 
+import com.mybank.cache.DataCaches;
+import com.mybank.db.ConnectionPool;
+import com.mybank.db.PoolConfig;
+import com.mybank.db.PoolStats;
+import com.mybank.db.ReplicaRouter;
+import com.mybank.metrics.Metrics;
+import com.mybank.shard.ShardMap;
+
+import javax.sql.DataSource;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
+/**
+ * Entry point to the shared connection pool. Settings come from {@code mybank.db.*}
+ * (see {@link com.mybank.config.AppConfig}); the defaults match a local MySQL with user root
+ * and an empty password.
+ */
 public class DBConnection {
-    private static final String URL = "jdbc:mysql://localhost:3306/mybank_system?useSSL=false&serverTimezone=UTC";
-    private static final String USER = "root";
-    private static final String PASSWORD = ""; // ✅ empty string since no password
 
     static {
         try {
@@ -17,19 +27,57 @@ public class DBConnection {
         }
     }
 
+    // created on first use so a missing database does not break class loading
+    private static class Holder {
+        static final ConnectionPool POOL = new ConnectionPool(PoolConfig.fromAppConfig());
+        static final ReplicaRouter ROUTER = ReplicaRouter.fromAppConfig(POOL, POOL.getConfig());
+        static final ShardMap SHARDS = ShardMap.fromAppConfig(POOL, POOL.getConfig());
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                SHARDS.close();
+                ROUTER.close();
+                POOL.close();
+            }, "mybank-pool-shutdown"));
+        }
+    }
+
+    public static DataSource getDataSource() {
+        return Holder.POOL;
+    }
+
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        return Holder.POOL.getConnection();
+    }
+
+    public static PoolStats getPoolStats() {
+        return Holder.POOL.stats();
+    }
+
+    /** Where read-only history queries go; see {@code mybank.db.replicas}. */
+    public static ReplicaRouter getRouter() {
+        return Holder.ROUTER;
+    }
+
+    /** Every database holding user data, shard 0 being the pool above; see {@code mybank.shards.urls}. */
+    public static ShardMap getShards() {
+        return Holder.SHARDS;
     }
 
     // ✅ Optional: quick test
     public static void main(String[] args) {
         try (Connection conn = getConnection()) {
             if (conn != null) {
-                System.out.println("✅ Connected successfully to MySQL database: mybank_system");
+                System.out.println("✅ Connected successfully to MySQL database: " + conn.getCatalog());
             }
         } catch (SQLException e) {
             System.err.println("❌ Database connection failed:");
             e.printStackTrace();
         }
+        System.out.println("Pool: " + getPoolStats());
+        if (getRouter().hasReplicas()) System.out.println("Replicas: " + getRouter());
+        if (getShards().isSharded()) System.out.println("Shards: " + getShards());
+        System.out.println(DataCaches.of(getDataSource()));
+        Metrics.snapshot().forEach(System.out::println);
     }
 }
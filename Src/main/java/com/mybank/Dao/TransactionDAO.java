@@ -1,24 +1,91 @@
 package com.mybank.dao;
 
 import com.mybank.DBConnection;
+import com.mybank.archive.TransactionArchive;
+import com.mybank.cache.DataCaches;
+import com.mybank.config.AppConfig;
+import com.mybank.db.ReplicaRouter;
+import com.mybank.event.BalanceChanged;
+import com.mybank.event.EventBus;
+import com.mybank.event.TransactionPosted;
+import com.mybank.metrics.Metrics;
+import com.mybank.metrics.Operation;
+import com.mybank.model.Money;
 import com.mybank.model.Transaction;
+import com.mybank.shard.ShardMap;
 
+import javax.sql.DataSource;
+import java.io.UncheckedIOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.math.BigDecimal;
+import java.util.Map;
 
+/**
+ * Transactions of the hot table plus, for the history reads, the months moved to the
+ * {@link TransactionArchive}. Reads merge the two tiers by {@code (created_at, transaction_id)},
+ * so callers see one history; with nothing archived they are plain queries.
+ *
+ * Rows are read and written on the user's shard ({@link ShardMap}). The history reads go
+ * through the shard's {@link ReplicaRouter}, so with replicas configured they run there, except
+ * right after the same user's own writes. Calls are timed under {@code TransactionDAO.*} in
+ * {@link Metrics}.
+ */
 public class TransactionDAO {
+    private static final Operation CREATE = Metrics.op("TransactionDAO.create");
+    private static final Operation BATCH = Metrics.op("TransactionDAO.batchWrite");
+    private static final Operation RECENT = Metrics.op("TransactionDAO.findRecentByUser");
+    private static final Operation COUNT = Metrics.op("TransactionDAO.countForUser");
+    private static final Operation PAGE = Metrics.op("TransactionDAO.page");
+    private static final Operation CURSOR_AT = Metrics.op("TransactionDAO.cursorAt");
+    private static final Operation STREAM = Metrics.op("TransactionDAO.streamForUser");
+    private static final Operation STREAM_PERIOD = Metrics.op("TransactionDAO.streamForPeriod");
+
+    private static final Comparator<Transaction> ASCENDING =
+            Comparator.comparing(Transaction::getCreatedAt).thenComparingInt(Transaction::getTransactionId);
+    private static final Comparator<Transaction> DESCENDING = ASCENDING.reversed();
+
+    private final DataSource ds;
+    private final TransactionArchive archive;
+    private final ReplicaRouter router;
+    private final ShardMap shards;
+
+    public TransactionDAO() {
+        this(DBConnection.getDataSource());
+    }
+
+    public TransactionDAO(DataSource ds) {
+        this(ds, TransactionArchive.getDefault());
+    }
+
+    public TransactionDAO(DataSource ds, TransactionArchive archive) {
+        this.ds = ds;
+        this.archive = archive;
+        this.router = ReplicaRouter.of(ds);
+        this.shards = ShardMap.of(ds);
+    }
 
     // Create a new transaction record (uses its own connection)
     public boolean create(Transaction t) {
         String sql = "INSERT INTO transactions (user_id, type, amount, description) VALUES (?,?,?,?)";
-        try (Connection c = DBConnection.getConnection();
+        long start = CREATE.start();
+        DataSource shard;
+        try {
+            shard = shards.forWrite(t.getUserId());
+        } catch (SQLException e) {
+            CREATE.failed(start, e);
+            e.printStackTrace();
+            return false;
+        }
+        try (Connection c = shard.getConnection();
              PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             ps.setInt(1, t.getUserId());
             ps.setString(2, t.getType());
-            ps.setBigDecimal(3, t.getAmount());
+            ps.setBigDecimal(3, t.getAmount().toBigDecimal());
             ps.setString(4, t.getDescription());
 
             int ok = ps.executeUpdate();
@@ -26,19 +93,156 @@ public class TransactionDAO {
                 try (ResultSet rs = ps.getGeneratedKeys()) {
                     if (rs.next()) t.setTransactionId(rs.getInt(1));
                 }
+                routerFor(shard).wrote(t.getUserId());
+                Transaction posted = new Transaction(t);
+                // the column default is "now"; close enough for ordering on screen until the next reload
+                if (posted.getCreatedAt() == null) posted.setCreatedAt(new Timestamp(System.currentTimeMillis()));
+                EventBus.getDefault().publish(new TransactionPosted(posted));
+                CREATE.done(start, 1);
                 return true;
             }
+            CREATE.done(start, 0);
         } catch (SQLException e) {
+            CREATE.failed(start, e);
             e.printStackTrace();
         }
         return false;
     }
 
+    /**
+     * Posts many transactions with JDBC batching, one database transaction per chunk of
+     * {@code mybank.batch.chunkSize} rows, and applies each row's amount to {@code users.balance}.
+     * Returns the number of rows written.
+     */
+    public long createAll(Iterable<Transaction> txs) throws SQLException {
+        try (BatchWriter w = batchWriter(AppConfig.getInt("mybank.batch.chunkSize", 1000))) {
+            for (Transaction t : txs) w.add(t);
+            w.flush();
+            return w.getRowsWritten();
+        }
+    }
+
+    public BatchWriter batchWriter(int chunkSize) {
+        return new BatchWriter(chunkSize);
+    }
+
+    /**
+     * Streaming bulk writer: buffers at most {@code chunkSize} transactions and commits them
+     * together with the per-user sum of their amounts (amounts are signed balance deltas, as for
+     * the two sides of a transfer). A failed chunk is rolled back and the exception is rethrown;
+     * earlier chunks stay committed, see {@link #getRowsWritten()}. With several shards a chunk is
+     * committed shard by shard, and a failure only rolls back that shard's part.
+     */
+    public class BatchWriter implements AutoCloseable {
+        private final int chunkSize;
+        private final List<Transaction> buffer;
+        private final long startNanos = System.nanoTime();
+        private long rowsWritten;
+        private long chunksWritten;
+
+        private BatchWriter(int chunkSize) {
+            this.chunkSize = Math.max(1, chunkSize);
+            this.buffer = new ArrayList<>(this.chunkSize);
+        }
+
+        public void add(Transaction t) throws SQLException {
+            buffer.add(t);
+            if (buffer.size() >= chunkSize) flush();
+        }
+
+        public void flush() throws SQLException {
+            if (buffer.isEmpty()) return;
+            Map<DataSource, List<Transaction>> byShard = new LinkedHashMap<>();
+            for (Transaction t : buffer) {
+                byShard.computeIfAbsent(shards.forWrite(t.getUserId()), k -> new ArrayList<>()).add(t);
+            }
+            // one database transaction per shard; if one fails, the shards not written stay buffered
+            List<DataSource> targets = new ArrayList<>(byShard.keySet());
+            List<List<Transaction>> parts = new ArrayList<>(byShard.values());
+            for (int i = 0; i < parts.size(); i++) {
+                try {
+                    write(targets.get(i), parts.get(i));
+                } catch (SQLException e) {
+                    buffer.clear();
+                    for (List<Transaction> rest : parts.subList(i, parts.size())) buffer.addAll(rest);
+                    throw e;
+                }
+                rowsWritten += parts.get(i).size();
+            }
+            chunksWritten++;
+            buffer.clear();
+        }
+
+        private void write(DataSource shard, List<Transaction> rows) throws SQLException {
+            EventBus events = EventBus.getDefault();
+            long seq;
+            Map<Integer, Money> deltas = new HashMap<>();
+            for (Transaction t : rows) deltas.merge(t.getUserId(), t.getAmount(), Money::plus);
+            long start = BATCH.start();
+            try (Connection c = shard.getConnection()) {
+                c.setAutoCommit(false);
+                try {
+                    try (PreparedStatement ps = c.prepareStatement("INSERT INTO transactions (user_id, type, amount, description) VALUES (?,?,?,?)")) {
+                        for (Transaction t : rows) {
+                            ps.setInt(1, t.getUserId());
+                            ps.setString(2, t.getType());
+                            ps.setBigDecimal(3, t.getAmount().toBigDecimal());
+                            ps.setString(4, t.getDescription());
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                    try (PreparedStatement ps = c.prepareStatement("UPDATE users SET balance = balance + ?, version = version + 1 WHERE user_id = ?")) {
+                        for (Map.Entry<Integer, Money> d : deltas.entrySet()) {
+                            if (d.getValue().isZero()) continue;
+                            ps.setBigDecimal(1, d.getValue().toBigDecimal());
+                            ps.setInt(2, d.getKey());
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                    seq = events.nextSequence();
+                    c.commit();
+                } catch (SQLException e) {
+                    c.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                BATCH.failed(start, e);
+                throw e;
+            }
+            BATCH.done(start, rows.size());
+            DataCaches caches = DataCaches.of(ds);
+            ReplicaRouter r = routerFor(shard);
+            for (Integer userId : deltas.keySet()) {
+                caches.userChanged(userId);
+                r.wrote(userId);
+            }
+            // too many rows to announce one by one; subscribers re-read what they show
+            for (Integer userId : deltas.keySet()) events.publish(new BalanceChanged(userId, null, seq));
+        }
+
+        public long getRowsWritten() { return rowsWritten; }
+        public long getChunksWritten() { return chunksWritten; }
+
+        public double getRowsPerSecond() {
+            double secs = (System.nanoTime() - startNanos) / 1e9;
+            return secs <= 0 ? 0 : rowsWritten / secs;
+        }
+
+        /** Discards anything not yet flushed; call {@link #flush()} first to keep it. */
+        @Override
+        public void close() {
+            buffer.clear();
+        }
+    }
+
     // Return most recent N transactions for a user
     public List<Transaction> findRecentByUser(int userId) {
         List<Transaction> out = new ArrayList<>();
-        String sql = "SELECT * FROM transactions WHERE user_id = ? ORDER BY created_at DESC LIMIT 5";
-        try (Connection c = DBConnection.getConnection();
+        String sql = "SELECT * FROM transactions WHERE user_id = ?" + NEWEST_FIRST + " LIMIT 5";
+        long start = RECENT.start();
+        try (Connection c = readConnection(userId);
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setInt(1, userId);
             try (ResultSet rs = ps.executeQuery()) {
@@ -47,37 +251,331 @@ public class TransactionDAO {
                     out.add(t);
                 }
             }
+            List<Transaction> merged = withArchived(userId, null, out, 5);
+            RECENT.done(start, merged.size());
+            return merged;
         } catch (SQLException e) {
+            RECENT.failed(start, e);
             e.printStackTrace();
         }
         return out;
     }
 
-    // Full history for user (used by statements screen)
-    public List<Transaction> forAccount(int userId) {
-        List<Transaction> out = new ArrayList<>();
-        String sql = "SELECT * FROM transactions WHERE user_id = ? ORDER BY created_at DESC";
-        try (Connection c = DBConnection.getConnection();
+    /**
+     * Position in a user's history, newest first: the {@code (created_at, transaction_id)} key of
+     * the last row already seen.
+     */
+    public static final class Cursor {
+        private final Timestamp createdAt;
+        private final int transactionId;
+
+        public Cursor(Timestamp createdAt, int transactionId) {
+            this.createdAt = createdAt;
+            this.transactionId = transactionId;
+        }
+
+        public static Cursor after(Transaction t) {
+            return new Cursor(t.getCreatedAt(), t.getTransactionId());
+        }
+
+        public Timestamp getCreatedAt() { return createdAt; }
+        public int getTransactionId() { return transactionId; }
+    }
+
+    private static final String SEEK =
+            " AND (created_at < ? OR (created_at = ? AND transaction_id < ?))";
+    private static final String NEWEST_FIRST = " ORDER BY created_at DESC, transaction_id DESC";
+
+    public int countForUser(int userId) {
+        String sql = "SELECT COUNT(*) FROM transactions WHERE user_id = ?";
+        long start = COUNT.start();
+        try (Connection c = readConnection(userId);
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setInt(1, userId);
+            int hot;
             try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    Transaction t = mapRow(rs);
-                    out.add(t);
-                }
+                hot = rs.next() ? rs.getInt(1) : 0;
             }
+            // a month being archived is counted twice until its hot rows are deleted
+            int n = hot + archive.count(userId);
+            COUNT.done(start, 1);
+            return n;
+        } catch (UncheckedIOException e) {
+            COUNT.failed(start, e);
+            e.printStackTrace();
         } catch (SQLException e) {
+            COUNT.failed(start, e);
             e.printStackTrace();
         }
+        return 0;
+    }
+
+    /**
+     * Keyset page of a user's history, newest first, starting after {@code after}
+     * ({@code null} for the first page). Cost does not grow with the page number.
+     */
+    public List<Transaction> page(int userId, Cursor after, int limit) throws SQLException {
+        List<Transaction> out = new ArrayList<>(limit);
+        String sql = "SELECT * FROM transactions WHERE user_id = ?" + (after == null ? "" : SEEK) + NEWEST_FIRST + " LIMIT ?";
+        long start = PAGE.start();
+        try {
+            try (Connection c = readConnection(userId);
+                 PreparedStatement ps = c.prepareStatement(sql)) {
+                int i = bindSeek(ps, userId, after);
+                ps.setInt(i, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) out.add(mapRow(rs));
+                }
+            }
+            List<Transaction> merged = withArchived(userId, after, out, limit);
+            PAGE.done(start, merged.size());
+            return merged;
+        } catch (SQLException | RuntimeException e) {
+            PAGE.failed(start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Key of the {@code skip}-th row (1-based) after {@code from}, or null if the history is
+     * shorter. Only touches the index, so it is a cheap way to jump far ahead.
+     */
+    public Cursor cursorAt(int userId, Cursor from, int skip) throws SQLException {
+        long start = CURSOR_AT.start();
+        try {
+            Cursor c = seek(userId, from, skip);
+            CURSOR_AT.done(start, c == null ? 0 : 1);
+            return c;
+        } catch (SQLException | RuntimeException e) {
+            CURSOR_AT.failed(start, e);
+            throw e;
+        }
+    }
+
+    private Cursor seek(int userId, Cursor from, int skip) throws SQLException {
+        // with archived months the keys up to the target may come from either tier, so read
+        // all of them from the hot table and merge
+        boolean merge = !archive.isEmpty();
+        String sql = "SELECT created_at, transaction_id FROM transactions WHERE user_id = ?"
+                + (from == null ? "" : SEEK) + NEWEST_FIRST + (merge ? " LIMIT ?" : " LIMIT 1 OFFSET ?");
+        List<Transaction> keys = new ArrayList<>();
+        try (Connection c = readConnection(userId);
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            int i = bindSeek(ps, userId, from);
+            ps.setInt(i, merge ? skip : skip - 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!merge) return rs.next() ? new Cursor(rs.getTimestamp(1), rs.getInt(2)) : null;
+                while (rs.next()) {
+                    Transaction k = new Transaction();
+                    k.setCreatedAt(rs.getTimestamp(1));
+                    k.setTransactionId(rs.getInt(2));
+                    keys.add(k);
+                }
+            }
+        }
+        List<Transaction> merged = withArchived(userId, from, keys, skip);
+        return merged.size() < skip ? null : Cursor.after(merged.get(skip - 1));
+    }
+
+    /**
+     * Streams a user's whole history, newest first, to {@code sink} without holding it in
+     * memory (MySQL streams row by row; other drivers fetch {@code mybank.db.fetchSize} at a time).
+     */
+    public long streamForUser(int userId, java.util.function.Consumer<Transaction> sink) throws SQLException {
+        long start = STREAM.start();
+        try {
+            long n = streamAll(userId, sink);
+            STREAM.done(start, n);
+            return n;
+        } catch (SQLException | RuntimeException e) {
+            STREAM.failed(start, e);
+            throw e;
+        }
+    }
+
+    private long streamAll(int userId, java.util.function.Consumer<Transaction> sink) throws SQLException {
+        String sql = "SELECT * FROM transactions WHERE user_id = ?" + NEWEST_FIRST;
+        long n = 0;
+        try (Connection c = readConnection(userId);
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setFetchSize(streamingFetchSize(c));
+            ps.setInt(1, userId);
+            Merge m = archive.isEmpty() ? null
+                    : new Merge(archive.newestFirst(userId, null, 0), DESCENDING, Long.MAX_VALUE, sink);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (m != null) {
+                        m.offer(mapRow(rs));
+                        continue;
+                    }
+                    sink.accept(mapRow(rs));
+                    n++;
+                }
+            }
+            if (m != null) n = m.drain();
+        } catch (UncheckedIOException e) {
+            throw archiveError(e);
+        }
+        return n;
+    }
+
+    /**
+     * Streams a user's transactions with {@code from <= created_at < to}, oldest first, the way
+     * a statement lists them. Either bound may be null for "open". Memory use does not depend on
+     * the number of rows, as for {@link #streamForUser(int, java.util.function.Consumer)}.
+     */
+    public long streamForPeriod(int userId, Timestamp from, Timestamp to,
+                                java.util.function.Consumer<Transaction> sink) throws SQLException {
+        long start = STREAM_PERIOD.start();
+        try {
+            long n = streamPeriod(userId, from, to, sink);
+            STREAM_PERIOD.done(start, n);
+            return n;
+        } catch (SQLException | RuntimeException e) {
+            STREAM_PERIOD.failed(start, e);
+            throw e;
+        }
+    }
+
+    private long streamPeriod(int userId, Timestamp from, Timestamp to,
+                              java.util.function.Consumer<Transaction> sink) throws SQLException {
+        String sql = "SELECT * FROM transactions WHERE user_id = ?"
+                + (from == null ? "" : " AND created_at >= ?")
+                + (to == null ? "" : " AND created_at < ?")
+                + " ORDER BY created_at, transaction_id";
+        long n = 0;
+        try (Connection c = readConnection(userId);
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setFetchSize(streamingFetchSize(c));
+            int i = 1;
+            ps.setInt(i++, userId);
+            if (from != null) ps.setTimestamp(i++, from);
+            if (to != null) ps.setTimestamp(i, to);
+            // statements for archived months read mostly from the archive; skip it when the
+            // period starts after the newest archived month
+            Timestamp end = archive.end();
+            Merge m = end == null || (from != null && !from.before(end)) ? null
+                    : new Merge(archive.oldestFirst(userId, from, to), ASCENDING, Long.MAX_VALUE, sink);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (m != null) {
+                        m.offer(mapRow(rs));
+                        continue;
+                    }
+                    sink.accept(mapRow(rs));
+                    n++;
+                }
+            }
+            if (m != null) n = m.drain();
+        } catch (UncheckedIOException e) {
+            throw archiveError(e);
+        }
+        return n;
+    }
+
+    /**
+     * Merges the rows of a newest-first query on the hot table with the user's archived rows
+     * after the same cursor, keeping at most {@code limit}. The archive is not opened when the
+     * hot rows fill the limit and are all newer than anything archived.
+     */
+    private List<Transaction> withArchived(int userId, Cursor after, List<Transaction> hot, int limit) throws SQLException {
+        Timestamp end = archive.end();
+        if (end == null) return hot;
+        if (hot.size() >= limit && !hot.get(hot.size() - 1).getCreatedAt().before(end)) return hot;
+        List<Transaction> out = new ArrayList<>(Math.min(limit, hot.size() + 64));
+        try {
+            Merge m = new Merge(after == null ? archive.newestFirst(userId, null, 0)
+                    : archive.newestFirst(userId, after.getCreatedAt(), after.getTransactionId()),
+                    DESCENDING, limit, out::add);
+            for (Transaction t : hot) {
+                if (!m.offer(t)) break;
+            }
+            m.drain();
+        } catch (UncheckedIOException e) {
+            throw archiveError(e);
+        }
         return out;
     }
 
+    private Connection readConnection(int userId) throws SQLException {
+        return routerFor(shards.forUser(userId)).readConnection(userId);
+    }
+
+    private ReplicaRouter routerFor(DataSource shard) {
+        return shard == ds ? router : ReplicaRouter.of(shard);
+    }
+
+    private static SQLException archiveError(UncheckedIOException e) {
+        return new SQLException("Reading the transaction archive failed: " + e.getCause().getMessage(), e.getCause());
+    }
+
+    /**
+     * Interleaves archived rows with hot rows fed in the same order, up to a limit. A row that
+     * is in both tiers (between a month being archived and its hot rows being deleted) is
+     * passed on once.
+     */
+    private static final class Merge {
+        private final TransactionArchive.Rows cold;
+        private final Comparator<Transaction> order;
+        private final long limit;
+        private final java.util.function.Consumer<Transaction> sink;
+        private long emitted;
+
+        Merge(TransactionArchive.Rows cold, Comparator<Transaction> order, long limit,
+              java.util.function.Consumer<Transaction> sink) {
+            this.cold = cold;
+            this.order = order;
+            this.limit = limit;
+            this.sink = sink;
+        }
+
+        /** Passes on the archived rows that come before {@code hot}, then {@code hot}; false once the limit is reached. */
+        boolean offer(Transaction hot) {
+            Transaction c;
+            while (emitted < limit && (c = cold.peek()) != null) {
+                int cmp = order.compare(c, hot);
+                if (cmp > 0) break;
+                cold.next();
+                if (cmp == 0) break;
+                sink.accept(c);
+                emitted++;
+            }
+            if (emitted >= limit) return false;
+            sink.accept(hot);
+            return ++emitted < limit;
+        }
+
+        /** Passes on the rest of the archive, up to the limit; returns the number of rows passed on. */
+        long drain() {
+            while (emitted < limit && cold.hasNext()) {
+                sink.accept(cold.next());
+                emitted++;
+            }
+            return emitted;
+        }
+    }
+
+    private static int bindSeek(PreparedStatement ps, int userId, Cursor after) throws SQLException {
+        ps.setInt(1, userId);
+        if (after == null) return 2;
+        ps.setTimestamp(2, after.getCreatedAt());
+        ps.setTimestamp(3, after.getCreatedAt());
+        ps.setInt(4, after.getTransactionId());
+        return 5;
+    }
+
+    private static int streamingFetchSize(Connection c) throws SQLException {
+        // Connector/J only streams a result set when the fetch size is Integer.MIN_VALUE
+        if (c.getMetaData().getURL().startsWith("jdbc:mysql:")) return Integer.MIN_VALUE;
+        return AppConfig.getInt("mybank.db.fetchSize", 500);
+    }
+
     private Transaction mapRow(ResultSet rs) throws SQLException {
         Transaction t = new Transaction();
         t.setTransactionId(rs.getInt("transaction_id"));
         t.setUserId(rs.getInt("user_id"));
         t.setType(rs.getString("type"));
-        t.setAmount(rs.getBigDecimal("amount"));
+        t.setAmount(Money.parse(rs.getString("amount")));
         t.setDescription(rs.getString("description"));
         t.setCreatedAt(rs.getTimestamp("created_at"));
         return t;
@@ -1,54 +1,156 @@
 package com.mybank.dao;
 
 import com.mybank.DBConnection;
+import com.mybank.cache.DataCaches;
+import com.mybank.config.AppConfig;
+import com.mybank.metrics.Metrics;
+import com.mybank.metrics.Operation;
+import com.mybank.model.Money;
 import com.mybank.model.User;
+import com.mybank.shard.ShardMap;
 import org.mindrot.jbcrypt.BCrypt;
 
+import javax.sql.DataSource;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
+/**
+ * Users, on whichever shard of {@link ShardMap} holds them. Calls are timed under
+ * {@code UserDAO.*} in {@link Metrics}.
+ */
 public class UserDAO {
+    private static final Operation GET_BY_USERNAME = Metrics.op("UserDAO.getByUsername");
+    private static final Operation LOAD_BY_USERNAME = Metrics.op("UserDAO.loadByUsername");
+    private static final Operation FIND_ALL = Metrics.op("UserDAO.findAll");
+    private static final Operation CREATE = Metrics.op("UserDAO.create");
+    private static final Operation UPDATE_PASSWORD = Metrics.op("UserDAO.updatePasswordHash");
+
+    private final DataCaches caches;
+    private final ShardMap shards;
+
+    public UserDAO() {
+        this(DBConnection.getDataSource());
+    }
+
+    public UserDAO(DataSource ds) {
+        this.caches = DataCaches.of(ds);
+        this.shards = ShardMap.of(ds);
+    }
 
     /**
-     * Find a user by username
+     * Find a user by username. Served from the shared lookup cache, which writers invalidate
+     * after every committed change, so the balance is never older than the last local write.
      */
     public User findByUsername(String username) {
-        String sql = "SELECT * FROM users WHERE username = ?";
-        try (Connection c = DBConnection.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, username);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    User u = new User();
-                    u.setUserId(rs.getInt("user_id"));
-                    u.setUsername(rs.getString("username"));
-                    u.setPassword(rs.getString("password")); // hashed password
-                    u.setFullName(rs.getString("full_name"));
-                    u.setEmail(rs.getString("email"));
-                    u.setPhone(rs.getString("phone"));
-                    u.setAddress(rs.getString("address"));
-                    u.setPhoto(rs.getString("photo"));
-                    u.setRole(rs.getString("role"));
-                    // balance column may exist or not
-                    try {
-                        u.setBalance(rs.getDouble("balance"));
-                    } catch (SQLException ignore) {
-                        u.setBalance(0.0);
+        try {
+            return getByUsername(username);
+        } catch (SQLException e) {
+            System.err.println("❌ Error fetching user: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Like {@link #findByUsername}, but a database error is thrown rather than read as "no such user". */
+    public User getByUsername(String username) throws SQLException {
+        if (username == null) return null;
+        long start = GET_BY_USERNAME.start();
+        try {
+            User u = caches.users().get(username, this::loadByUsername);
+            GET_BY_USERNAME.done(start, u == null ? 0 : 1);
+            return u;
+        } catch (SQLException | RuntimeException e) {
+            GET_BY_USERNAME.failed(start, e);
+            throw e;
+        }
+    }
+
+    // cache misses only
+    private User loadByUsername(String username) throws SQLException {
+        long start = LOAD_BY_USERNAME.start();
+        try {
+            User u = null;
+            int shard = shards.shardOfUsername(username);
+            if (shard >= 0) {
+                String sql = "SELECT * FROM users WHERE username = ?";
+                try (Connection c = shards.shard(shard).getConnection();
+                     PreparedStatement ps = c.prepareStatement(sql)) {
+                    ps.setString(1, username);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) u = mapRow(rs);
                     }
-                    return u;
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("❌ Error fetching user: " + e.getMessage());
+            LOAD_BY_USERNAME.done(start, u == null ? 0 : 1);
+            return u;
+        } catch (SQLException | RuntimeException e) {
+            LOAD_BY_USERNAME.failed(start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * All users in id order, for batch jobs (e.g. month-end statements) and admin screens,
+     * gathered from every shard at once. Bypasses the lookup cache.
+     */
+    public List<User> findAll() throws SQLException {
+        long start = FIND_ALL.start();
+        try {
+            List<User> out = shards.scatter((shard, i) -> {
+                List<User> part = new ArrayList<>();
+                try (Connection c = shard.getConnection();
+                     PreparedStatement ps = c.prepareStatement("SELECT * FROM users ORDER BY user_id");
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) part.add(mapRow(rs));
+                }
+                return part;
+            });
+            if (shards.isSharded()) out.sort(Comparator.comparingInt(User::getUserId));
+            FIND_ALL.done(start, out.size());
+            return out;
+        } catch (SQLException | RuntimeException e) {
+            FIND_ALL.failed(start, e);
+            throw e;
         }
-        return null;
+    }
+
+    private static User mapRow(ResultSet rs) throws SQLException {
+        User u = new User();
+        u.setUserId(rs.getInt("user_id"));
+        u.setUsername(rs.getString("username"));
+        u.setPassword(rs.getString("password")); // hashed password
+        u.setFullName(rs.getString("full_name"));
+        u.setEmail(rs.getString("email"));
+        u.setPhone(rs.getString("phone"));
+        u.setAddress(rs.getString("address"));
+        u.setPhoto(rs.getString("photo"));
+        u.setRole(rs.getString("role"));
+        // balance column may exist or not
+        try {
+            String balance = rs.getString("balance");
+            u.setBalance(balance == null ? Money.ZERO : Money.parse(balance));
+        } catch (SQLException ignore) {
+            u.setBalance(Money.ZERO);
+        }
+        return u;
     }
 
     /**
-     * Create a new user record
+     * Create a new user record, hashing the plain password in {@code u} on the calling thread.
+     * Interactive code should hash through {@link com.mybank.service.AuthService} and call
+     * {@link #createHashed} instead.
      */
     public boolean create(User u) {
-        String sql = "INSERT INTO users (username, password, full_name, email, phone, address, photo, role, balance) VALUES (?,?,?,?,?,?,?,?,?)";
-        String hashed = BCrypt.hashpw(u.getPassword(), BCrypt.gensalt(12));
+        return createHashed(u, BCrypt.hashpw(u.getPassword(), BCrypt.gensalt(AppConfig.getInt("mybank.auth.bcryptCost", 12))));
+    }
+
+    /**
+     * Create a new user record with an already computed bcrypt hash. With several shards the
+     * username is first claimed in the directory, which also hands out the user id.
+     */
+    public boolean createHashed(User u, String hashed) {
+        String columns = "username, password, full_name, email, phone, address, photo, role, balance";
 
         // Normalize role for MySQL ENUM('user','admin')
         String safeRole = (u.getRole() == null ||
@@ -56,35 +158,94 @@ public class UserDAO {
                 ? "user"
                 : u.getRole().toLowerCase();
 
-        try (Connection c = DBConnection.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-
-            ps.setString(1, u.getUsername());
-            ps.setString(2, hashed);
-            ps.setString(3, u.getFullName());
-            ps.setString(4, u.getEmail());
-            ps.setString(5, u.getPhone());
-            ps.setString(6, u.getAddress());
-            ps.setString(7, u.getPhoto());
-            ps.setString(8, safeRole);
-            ps.setDouble(9, u.getBalance());
-
-            int affected = ps.executeUpdate();
-            if (affected == 1) {
-                try (ResultSet rs = ps.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        u.setUserId(rs.getInt(1));
+        long start = CREATE.start();
+        int shard = 0;
+        int claimed = -1;
+        try {
+            if (shards.isSharded()) {
+                shard = shards.newUserShard(u.getUsername());
+                claimed = shards.claim(u.getUsername(), shard);
+                if (claimed < 0) {
+                    CREATE.done(start, 0);
+                    System.err.println("❌ Error creating user: " + u.getUsername() + " is taken");
+                    return false;
+                }
+            }
+            String sql = claimed < 0
+                    ? "INSERT INTO users (" + columns + ") VALUES (?,?,?,?,?,?,?,?,?)"
+                    : "INSERT INTO users (" + columns + ", user_id) VALUES (?,?,?,?,?,?,?,?,?,?)";
+            try (Connection c = shards.shard(shard).getConnection();
+                 PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+                ps.setString(1, u.getUsername());
+                ps.setString(2, hashed);
+                ps.setString(3, u.getFullName());
+                ps.setString(4, u.getEmail());
+                ps.setString(5, u.getPhone());
+                ps.setString(6, u.getAddress());
+                ps.setString(7, u.getPhoto());
+                ps.setString(8, safeRole);
+                ps.setBigDecimal(9, u.getBalance().toBigDecimal());
+                if (claimed >= 0) ps.setInt(10, claimed);
+
+                int affected = ps.executeUpdate();
+                if (affected == 1) {
+                    if (claimed >= 0) {
+                        u.setUserId(claimed);
+                        claimed = -1;
+                    } else {
+                        try (ResultSet rs = ps.getGeneratedKeys()) {
+                            if (rs.next()) {
+                                u.setUserId(rs.getInt(1));
+                            }
+                        }
                     }
+                    caches.users().invalidate(u.getUsername()); // drop any cached "not found"
+                    CREATE.done(start, 1);
+                    System.out.println("✅ User created successfully: " + u.getUsername());
+                    return true;
                 }
-                System.out.println("✅ User created successfully: " + u.getUsername());
-                return true;
             }
         } catch (SQLException e) {
+            CREATE.failed(start, e);
             System.err.println("❌ Error creating user: " + e.getMessage());
+        } finally {
+            if (claimed >= 0) releaseClaim(claimed);
         }
         return false;
     }
 
+    private void releaseClaim(int userId) {
+        try {
+            shards.release(userId);
+        } catch (SQLException e) {
+            System.err.println("❌ Could not release the directory entry of user " + userId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replaces the password hash if it is still {@code oldHash} (another login may have rehashed
+     * it first). Returns true if the row was updated.
+     */
+    public boolean updatePasswordHash(int userId, String oldHash, String newHash) throws SQLException {
+        String sql = "UPDATE users SET password = ? WHERE user_id = ? AND password = ?";
+        long start = UPDATE_PASSWORD.start();
+        int n;
+        try (Connection c = shards.forWrite(userId).getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, newHash);
+            ps.setInt(2, userId);
+            ps.setString(3, oldHash);
+            n = ps.executeUpdate();
+        } catch (SQLException e) {
+            UPDATE_PASSWORD.failed(start, e);
+            throw e;
+        }
+        UPDATE_PASSWORD.done(start, n);
+        if (n > 0) caches.userChanged(userId);
+        return n > 0;
+    }
+
     /**
      * Verify a user's password (using bcrypt)
      */
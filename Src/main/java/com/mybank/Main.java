@@ -1,10 +1,60 @@
 package com.mybank;
 
 import javax.swing.SwingUtilities;
+import com.mybank.api.BankApi;
+import com.mybank.api.BankServer;
+import com.mybank.api.LocalBankApi;
+import com.mybank.config.AppConfig;
+import com.mybank.db.SchemaMigrator;
+import com.mybank.metrics.Metrics;
+import com.mybank.shard.ShardMap;
+import com.mybank.shard.TransferSaga;
 import com.mybank.view.LoginFrame;
 
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Arrays;
+
 public class Main {
     public static void main(String[] args) {
+        boolean server = Arrays.asList(args).contains("--server");
+        // a client of a bank server has no database of its own
+        if (server || !BankApi.isRemote()) prepareDatabase();
+        Metrics.startFromAppConfig();
+        if (server) {
+            serve();
+            return;
+        }
         SwingUtilities.invokeLater(() -> new LoginFrame().setVisible(true));
     }
+
+    private static void prepareDatabase() {
+        ShardMap shards = DBConnection.getShards();
+        // bring the schema up to date before any screen touches it
+        if (AppConfig.getBoolean("mybank.db.migrate", true)) {
+            for (int i = 0; i < shards.size(); i++) {
+                try {
+                    new SchemaMigrator(shards.shard(i)).migrate();
+                } catch (SQLException e) {
+                    System.err.println("❌ Database migration failed" + (shards.isSharded() ? " on shard " + i : "") + ": " + e.getMessage());
+                    System.exit(1);
+                }
+            }
+        }
+        // finish cross-shard transfers cut short by a crash, here or in another instance
+        if (shards.isSharded()) {
+            new TransferSaga(shards).startRecovery(AppConfig.getLong("mybank.saga.recoverEveryMs", 60_000));
+        }
+    }
+
+    private static void serve() {
+        try {
+            BankServer http = BankServer.fromAppConfig(new LocalBankApi());
+            http.start();
+            System.out.println("✅ MyBank server listening on port " + http.getPort());
+        } catch (IOException e) {
+            System.err.println("❌ Could not start the server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
 }
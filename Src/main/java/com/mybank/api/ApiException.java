@@ -0,0 +1,15 @@
+package com.mybank.api;
+
+/**
+ * A {@link BankApi} call could not be completed: the database failed, or in client mode the
+ * server could not be reached or the session expired.
+ */
+public class ApiException extends Exception {
+    public ApiException(String message) {
+        super(message);
+    }
+
+    public ApiException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,64 @@
+package com.mybank.api;
+
+import com.mybank.dao.TransactionDAO;
+import com.mybank.model.Money;
+import com.mybank.model.Transaction;
+import com.mybank.model.User;
+import com.mybank.service.AuthException;
+import com.mybank.service.IdempotencyStore;
+import com.mybank.service.TransferException;
+import com.mybank.service.TransferResult;
+
+import java.util.List;
+
+/**
+ * Everything the Swing client does with the bank. {@link LocalBankApi} goes straight to the
+ * database; {@link RemoteBankApi} calls a {@link BankServer} over HTTP, so many clients can
+ * share one server's pool and cache instead of each opening its own connections.
+ *
+ * Calls taking a {@link User} act on that user; remotely it is always the logged-in one.
+ *
+ * Deposits, withdrawals and transfers take an idempotency key ({@code null} for none, else at
+ * most {@link IdempotencyStore#MAX_KEY_LENGTH} printable characters, e.g. a UUID). Sending the
+ * same request again with the same key, say after a timeout, does it at most once and returns the
+ * first result; a key is the user's own and good for one request only.
+ */
+public interface BankApi {
+
+    /** The client's API: remote when {@code mybank.client.server} is set, local otherwise. */
+    static BankApi getDefault() {
+        return DefaultApi.INSTANCE;
+    }
+
+    /** Whether {@link #getDefault()} talks to a server rather than the database. */
+    static boolean isRemote() {
+        return getDefault() instanceof RemoteBankApi;
+    }
+
+    User login(String username, String password) throws AuthException, ApiException;
+
+    void logout(User user);
+
+    /** The user as stored now (balance included), or {@code null} if they no longer exist. */
+    User refresh(User user) throws ApiException;
+
+    /** The newest few transactions, newest first. */
+    List<Transaction> recent(User user) throws ApiException;
+
+    int countHistory(User user) throws ApiException;
+
+    /** A page of history after {@code after} ({@code null} for the first), newest first. */
+    List<Transaction> historyPage(User user, TransactionDAO.Cursor after, int limit) throws ApiException;
+
+    /** The cursor {@code skip} rows past {@code from}, or {@code null} past the end. */
+    TransactionDAO.Cursor historyCursor(User user, TransactionDAO.Cursor from, int skip) throws ApiException;
+
+    /** Returns the balance after the deposit. */
+    Money deposit(User user, Money amount, String note, String idempotencyKey) throws TransferException, ApiException;
+
+    /** Returns the balance after the withdrawal. */
+    Money withdraw(User user, Money amount, String note, String idempotencyKey) throws TransferException, ApiException;
+
+    TransferResult transfer(User from, String toUsername, Money amount, String note, String idempotencyKey)
+            throws TransferException, ApiException;
+}
@@ -0,0 +1,343 @@
+package com.mybank.api;
+
+import com.mybank.config.AppConfig;
+import com.mybank.dao.TransactionDAO;
+import com.mybank.model.Money;
+import com.mybank.model.Transaction;
+import com.mybank.model.User;
+import com.mybank.service.AuthException;
+import com.mybank.service.TransferException;
+import com.mybank.service.TransferResult;
+import com.mybank.trace.Trace;
+import com.mybank.util.Json;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless JSON-over-HTTP front for a {@link BankApi} (normally a {@link LocalBankApi}), so that
+ * Swing clients in {@link RemoteBankApi} mode share this process's connection pool and caches.
+ * Built on the JDK's {@code com.sun.net.httpserver}; requests run on virtual threads on JDK 21+,
+ * else on {@code mybank.server.threads} platform threads.
+ *
+ * <pre>
+ * POST /api/login          {"username", "password"} -> {"token", "user"}
+ * POST /api/logout
+ * GET  /api/me                                      -> user
+ * GET  /api/recent                                  -> {"transactions"}
+ * GET  /api/history/count                           -> {"count"}
+ * GET  /api/history?after=&amp;limit=                   -> {"transactions", "next"}
+ * GET  /api/history/cursor?from=&amp;skip=              -> {"cursor"}
+ * POST /api/deposit        {"amount", "note"}       -> {"balance"}
+ * POST /api/withdraw       {"amount", "note"}       -> {"balance"}
+ * POST /api/transfer       {"to", "amount", "note"} -> {"retries", "elapsedMicros", "replayed"}
+ * </pre>
+ *
+ * The three writes take an optional {@code Idempotency-Key} header; see {@link BankApi}.
+ *
+ * Everything but login needs {@code Authorization: Bearer <token>} and acts on that session's
+ * user. Failures are {@code {"error", "reason"}} with the reason of the {@link AuthException} or
+ * {@link TransferException} behind them; a write turned away as {@code BUSY} is a 503 with
+ * {@code Retry-After} and {@code "retryAfterMs"}. Each request runs under a {@link Trace} named after
+ * its route.
+ */
+public final class BankServer implements AutoCloseable {
+    private static final int MAX_BODY = 64 * 1024;
+    private static final int MAX_PAGE = 500;
+    private static final Set<String> PATHS = new HashSet<>(Arrays.asList("/api/login", "/api/logout", "/api/me",
+            "/api/recent", "/api/history/count", "/api/history", "/api/history/cursor", "/api/deposit",
+            "/api/withdraw", "/api/transfer"));
+
+    static {
+        // the JDK server silently closes keep-alive connections beyond 200 idle ones, which with
+        // many clients turns into failed requests on their pooled connections; read once, on first use
+        if (System.getProperty("sun.net.httpserver.maxIdleConnections") == null) {
+            System.setProperty("sun.net.httpserver.maxIdleConnections",
+                    String.valueOf(AppConfig.getInt("mybank.server.maxIdleConnections", 10_000)));
+        }
+    }
+
+    private final BankApi bank;
+    private final Sessions sessions;
+    private final HttpServer http;
+    private final ExecutorService executor;
+
+    public BankServer(BankApi bank, InetSocketAddress address, int backlog, int threads, long sessionIdleMs) throws IOException {
+        this.bank = bank;
+        this.sessions = new Sessions(sessionIdleMs);
+        this.executor = newExecutor(threads);
+        this.http = HttpServer.create(address, backlog);
+        http.createContext("/api/", this::handle);
+        http.setExecutor(executor);
+    }
+
+    /** A server for {@code bank} configured by {@code mybank.server.*}; call {@link #start()}. */
+    public static BankServer fromAppConfig(BankApi bank) throws IOException {
+        String host = AppConfig.get("mybank.server.host", "0.0.0.0");
+        int port = AppConfig.getInt("mybank.server.port", 8080);
+        return new BankServer(bank, new InetSocketAddress(host, port),
+                AppConfig.getInt("mybank.server.backlog", 1024),
+                AppConfig.getInt("mybank.server.threads", 200),
+                AppConfig.getLong("mybank.server.sessionIdleMs", 30 * 60_000));
+    }
+
+    public void start() {
+        http.start();
+    }
+
+    public int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    @Override
+    public void close() {
+        http.stop(1);
+        executor.shutdownNow();
+    }
+
+    private static ExecutorService newExecutor(int threads) {
+        if (AppConfig.getBoolean("mybank.server.virtualThreads", true)) {
+            try {
+                // looked up reflectively so the code still builds and runs on JDK 17
+                Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) m.invoke(null);
+            } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+                // pre-21 runtime; fall through to the platform pool
+            }
+        }
+        AtomicInteger seq = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "mybank-http-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private void handle(HttpExchange ex) {
+        String path = ex.getRequestURI().getPath();
+        String route = ex.getRequestMethod() + " " + path;
+        // unknown paths share one name, so they cannot flood the metrics with new operations
+        Trace trace = Trace.begin(PATHS.contains(path) ? "api" + path.substring(4).replace('/', '.') : "api.unknown");
+        try {
+            Map<String, Object> body = dispatch(ex, route);
+            if (body == null) send(ex, 404, error("No such endpoint: " + route, "NOT_FOUND"));
+            else send(ex, 200, body);
+        } catch (AuthException e) {
+            send(ex, status(e.getReason()), error(e.getMessage(), e.getReason().name()));
+        } catch (TransferException e) {
+            Map<String, Object> body = error(e.getMessage(), e.getReason().name());
+            if (e.getRetryAfterMs() > 0) {
+                body.put("retryAfterMs", e.getRetryAfterMs());
+                ex.getResponseHeaders().set("Retry-After", String.valueOf((e.getRetryAfterMs() + 999) / 1000));
+            }
+            send(ex, status(e.getReason()), body);
+        } catch (Unauthenticated e) {
+            send(ex, 401, error("Log in first.", "UNAUTHENTICATED"));
+        } catch (IllegalArgumentException e) {
+            send(ex, 400, error(e.getMessage(), "BAD_REQUEST"));
+        } catch (ApiException | IOException | RuntimeException e) {
+            send(ex, 500, error(e.getMessage(), "UNAVAILABLE"));
+        } finally {
+            trace.close();
+            ex.close();
+        }
+    }
+
+    /** The response body, or {@code null} for an unknown route. */
+    private Map<String, Object> dispatch(HttpExchange ex, String route)
+            throws IOException, AuthException, TransferException, ApiException, Unauthenticated {
+        switch (route) {
+            case "POST /api/login": {
+                Map<String, Object> in = body(ex);
+                User user = bank.login(required(in, "username"), required(in, "password"));
+                Map<String, Object> out = new LinkedHashMap<>();
+                out.put("token", sessions.open(user));
+                out.put("user", Wire.user(user));
+                return out;
+            }
+            case "POST /api/logout":
+                sessions.close(token(ex));
+                return Collections.emptyMap();
+            case "GET /api/me": {
+                User user = bank.refresh(session(ex));
+                if (user == null) throw new Unauthenticated();
+                return Wire.user(user);
+            }
+            case "GET /api/recent":
+                return Collections.singletonMap("transactions", transactions(bank.recent(session(ex))));
+            case "GET /api/history/count":
+                return Collections.singletonMap("count", bank.countHistory(session(ex)));
+            case "GET /api/history": {
+                User user = session(ex);
+                Map<String, String> q = query(ex);
+                int limit = Math.max(1, Math.min(MAX_PAGE, parseInt(q.getOrDefault("limit", "100"))));
+                List<Transaction> rows = bank.historyPage(user, Wire.cursor(q.get("after")), limit);
+                Map<String, Object> out = new LinkedHashMap<>();
+                out.put("transactions", transactions(rows));
+                out.put("next", rows.size() < limit ? null : Wire.cursor(TransactionDAO.Cursor.after(rows.get(rows.size() - 1))));
+                return out;
+            }
+            case "GET /api/history/cursor": {
+                User user = session(ex);
+                Map<String, String> q = query(ex);
+                TransactionDAO.Cursor c = bank.historyCursor(user, Wire.cursor(q.get("from")), Math.max(0, parseInt(q.getOrDefault("skip", "0"))));
+                return Collections.singletonMap("cursor", Wire.cursor(c));
+            }
+            case "POST /api/deposit": {
+                User user = session(ex);
+                Map<String, Object> in = body(ex);
+                return Collections.singletonMap("balance", Wire.money(bank.deposit(user, amount(in), Wire.text(in, "note"), idempotencyKey(ex))));
+            }
+            case "POST /api/withdraw": {
+                User user = session(ex);
+                Map<String, Object> in = body(ex);
+                return Collections.singletonMap("balance", Wire.money(bank.withdraw(user, amount(in), Wire.text(in, "note"), idempotencyKey(ex))));
+            }
+            case "POST /api/transfer": {
+                User user = session(ex);
+                Map<String, Object> in = body(ex);
+                TransferResult r = bank.transfer(user, required(in, "to"), amount(in), Wire.text(in, "note"), idempotencyKey(ex));
+                Map<String, Object> out = new LinkedHashMap<>();
+                out.put("retries", r.getRetries());
+                out.put("elapsedMicros", r.getElapsedMicros());
+                out.put("replayed", r.isReplayed());
+                return out;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private User session(HttpExchange ex) throws Unauthenticated {
+        User user = sessions.get(token(ex));
+        if (user == null) throw new Unauthenticated();
+        return user;
+    }
+
+    private static String token(HttpExchange ex) {
+        String auth = ex.getRequestHeaders().getFirst("Authorization");
+        return auth != null && auth.startsWith("Bearer ") ? auth.substring(7).trim() : null;
+    }
+
+    private static String idempotencyKey(HttpExchange ex) {
+        return ex.getRequestHeaders().getFirst("Idempotency-Key");
+    }
+
+    private static Map<String, Object> body(HttpExchange ex) throws IOException {
+        byte[] bytes;
+        try (InputStream in = ex.getRequestBody()) {
+            bytes = in.readNBytes(MAX_BODY + 1);
+        }
+        if (bytes.length > MAX_BODY) throw new IllegalArgumentException("Request body too large");
+        return bytes.length == 0 ? Collections.emptyMap() : Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String> query(HttpExchange ex) {
+        Map<String, String> out = new HashMap<>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) return out;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            out.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    private static String required(Map<String, Object> in, String key) {
+        String v = Wire.text(in, key);
+        if (v == null || v.isEmpty()) throw new IllegalArgumentException("Missing " + key);
+        return v;
+    }
+
+    private static Money amount(Map<String, Object> in) {
+        return Money.parse(required(in, "amount"));
+    }
+
+    private static int parseInt(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + s);
+        }
+    }
+
+    private static List<Object> transactions(List<Transaction> rows) {
+        List<Object> out = new ArrayList<>(rows.size());
+        for (Transaction t : rows) out.add(Wire.transaction(t));
+        return out;
+    }
+
+    private static Map<String, Object> error(String message, String reason) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("error", message);
+        m.put("reason", reason);
+        return m;
+    }
+
+    private static int status(AuthException.Reason reason) {
+        switch (reason) {
+            case INVALID_CREDENTIALS: return 401;
+            case THROTTLED: return 429;
+            case BUSY:
+            case TIMEOUT: return 503;
+            default: return 500;
+        }
+    }
+
+    private static int status(TransferException.Reason reason) {
+        switch (reason) {
+            case DATABASE_ERROR: return 500;
+            case CONFLICT: return 409;
+            case BUSY: return 503;
+            default: return 422;
+        }
+    }
+
+    private static void send(HttpExchange ex, int status, Map<String, Object> body) {
+        byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+        try {
+            ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            ex.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            // the client went away; nothing to tell it
+        }
+    }
+
+    /** No session, or it expired. */
+    private static final class Unauthenticated extends Exception {
+        Unauthenticated() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.mybank.api;
+
+import com.mybank.config.AppConfig;
+
+// created on first use, so a client never touches the database settings
+final class DefaultApi {
+    static final BankApi INSTANCE = create();
+
+    private DefaultApi() {
+    }
+
+    private static BankApi create() {
+        String server = AppConfig.get("mybank.client.server", "");
+        return server.isEmpty() ? new LocalBankApi() : new RemoteBankApi(server);
+    }
+}
@@ -0,0 +1,111 @@
+package com.mybank.api;
+
+import com.mybank.DBConnection;
+import com.mybank.dao.TransactionDAO;
+import com.mybank.dao.UserDAO;
+import com.mybank.model.Money;
+import com.mybank.model.Transaction;
+import com.mybank.model.User;
+import com.mybank.service.AuthException;
+import com.mybank.service.AuthService;
+import com.mybank.service.TransferException;
+import com.mybank.service.TransferResult;
+import com.mybank.service.TransferService;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * {@link BankApi} on the DAOs and services. Used by the client when it has its own database
+ * connection, and by {@link BankServer} for everyone else.
+ */
+public class LocalBankApi implements BankApi {
+    private final UserDAO users;
+    private final TransactionDAO transactions;
+    private final TransferService transfers;
+    private final AuthService auth;
+
+    public LocalBankApi() {
+        this(DBConnection.getDataSource(), AuthService.getDefault());
+    }
+
+    public LocalBankApi(DataSource ds, AuthService auth) {
+        this.users = new UserDAO(ds);
+        this.transactions = new TransactionDAO(ds);
+        this.transfers = new TransferService(ds);
+        this.auth = auth;
+    }
+
+    @Override
+    public User login(String username, String password) throws AuthException {
+        return auth.authenticate(username, password);
+    }
+
+    @Override
+    public void logout(User user) {
+        // nothing is held per user
+    }
+
+    @Override
+    public User refresh(User user) throws ApiException {
+        try {
+            return users.getByUsername(user.getUsername());
+        } catch (SQLException e) {
+            throw new ApiException("Could not load " + user.getUsername() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<Transaction> recent(User user) {
+        return transactions.findRecentByUser(user.getUserId());
+    }
+
+    @Override
+    public int countHistory(User user) {
+        return transactions.countForUser(user.getUserId());
+    }
+
+    @Override
+    public List<Transaction> historyPage(User user, TransactionDAO.Cursor after, int limit) throws ApiException {
+        try {
+            return transactions.page(user.getUserId(), after, limit);
+        } catch (SQLException e) {
+            throw new ApiException("Could not load history: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public TransactionDAO.Cursor historyCursor(User user, TransactionDAO.Cursor from, int skip) throws ApiException {
+        try {
+            return transactions.cursorAt(user.getUserId(), from, skip);
+        } catch (SQLException e) {
+            throw new ApiException("Could not load history: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Money deposit(User user, Money amount, String note, String idempotencyKey) throws TransferException {
+        return transfers.deposit(user, amount, note, idempotencyKey);
+    }
+
+    @Override
+    public Money withdraw(User user, Money amount, String note, String idempotencyKey) throws TransferException {
+        return transfers.withdraw(user, amount, note, idempotencyKey);
+    }
+
+    @Override
+    public TransferResult transfer(User from, String toUsername, Money amount, String note, String idempotencyKey)
+            throws TransferException {
+        User recipient;
+        try {
+            recipient = users.getByUsername(toUsername);
+        } catch (SQLException e) {
+            throw new TransferException(TransferException.Reason.DATABASE_ERROR, "Transfer failed: " + e.getMessage(), e);
+        }
+        if (recipient == null) {
+            throw new TransferException(TransferException.Reason.RECIPIENT_NOT_FOUND, "Recipient not found.");
+        }
+        return transfers.transfer(from, recipient, amount, note, idempotencyKey);
+    }
+}
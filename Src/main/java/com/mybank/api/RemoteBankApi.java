@@ -0,0 +1,247 @@
+package com.mybank.api;
+
+import com.mybank.config.AppConfig;
+import com.mybank.dao.TransactionDAO;
+import com.mybank.event.BalanceChanged;
+import com.mybank.event.EventBus;
+import com.mybank.model.Money;
+import com.mybank.model.Transaction;
+import com.mybank.model.User;
+import com.mybank.service.AuthException;
+import com.mybank.service.TransferException;
+import com.mybank.service.TransferResult;
+import com.mybank.util.Json;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link BankApi} over HTTP to a {@link BankServer} ({@code mybank.client.server}, e.g.
+ * {@code http://bank-server:8080}). The client needs no database settings at all.
+ *
+ * One login at a time: the token from the last {@link #login} is sent with every call. After a
+ * deposit, withdrawal or transfer a {@link BalanceChanged} without a balance is published
+ * locally, so open dashboards reload as they do after a local write.
+ *
+ * Idempotency keys go in the {@code Idempotency-Key} header. A write with one is sent a second
+ * time if the first attempt fails on a pooled connection, as reads are; without one it is not,
+ * since the server may have done it.
+ */
+public class RemoteBankApi implements BankApi {
+    static {
+        // the server drops keep-alive connections idle for 30 s; stop reusing them before that
+        // rather than finding out on the next click (read once, when the first client is built)
+        if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+            System.setProperty("jdk.httpclient.keepalive.timeout", "20");
+        }
+    }
+
+    private final URI base;
+    private final HttpClient http;
+    private final Duration timeout;
+    private final EventBus events = EventBus.getDefault();
+    private volatile String token;
+
+    public RemoteBankApi(String baseUrl) {
+        this(baseUrl, HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(AppConfig.getLong("mybank.client.connectTimeoutMs", 5_000)))
+                .build(), Duration.ofMillis(AppConfig.getLong("mybank.client.timeoutMs", 15_000)));
+    }
+
+    public RemoteBankApi(String baseUrl, HttpClient http, Duration timeout) {
+        this.base = URI.create(baseUrl.endsWith("/") ? baseUrl : baseUrl + "/");
+        this.http = http;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public User login(String username, String password) throws AuthException, ApiException {
+        Map<String, Object> in = new LinkedHashMap<>();
+        in.put("username", username);
+        in.put("password", password);
+        Response r = call("POST", "api/login", in, null);
+        if (!r.ok()) {
+            AuthException.Reason reason = r.reason(AuthException.Reason.class);
+            if (reason == null) throw r.failure();
+            throw new AuthException(reason, r.message());
+        }
+        token = Wire.text(r.body, "token");
+        return Wire.user(object(r.body.get("user")));
+    }
+
+    @Override
+    public void logout(User user) {
+        try {
+            call("POST", "api/logout", null, null);
+        } catch (ApiException e) {
+            // the session expires on the server anyway
+        }
+        token = null;
+    }
+
+    @Override
+    public User refresh(User user) throws ApiException {
+        return Wire.user(get("api/me"));
+    }
+
+    @Override
+    public List<Transaction> recent(User user) throws ApiException {
+        return transactions(get("api/recent").get("transactions"));
+    }
+
+    @Override
+    public int countHistory(User user) throws ApiException {
+        return (int) Wire.number(get("api/history/count"), "count");
+    }
+
+    @Override
+    public List<Transaction> historyPage(User user, TransactionDAO.Cursor after, int limit) throws ApiException {
+        String c = Wire.cursor(after);
+        return transactions(get("api/history?limit=" + limit + (c == null ? "" : "&after=" + encode(c))).get("transactions"));
+    }
+
+    @Override
+    public TransactionDAO.Cursor historyCursor(User user, TransactionDAO.Cursor from, int skip) throws ApiException {
+        String c = Wire.cursor(from);
+        Map<String, Object> out = get("api/history/cursor?skip=" + skip + (c == null ? "" : "&from=" + encode(c)));
+        return Wire.cursor(Wire.text(out, "cursor"));
+    }
+
+    @Override
+    public Money deposit(User user, Money amount, String note, String idempotencyKey) throws TransferException, ApiException {
+        return Wire.money(write(user, "api/deposit", amount, note, null, idempotencyKey), "balance");
+    }
+
+    @Override
+    public Money withdraw(User user, Money amount, String note, String idempotencyKey) throws TransferException, ApiException {
+        return Wire.money(write(user, "api/withdraw", amount, note, null, idempotencyKey), "balance");
+    }
+
+    @Override
+    public TransferResult transfer(User from, String toUsername, Money amount, String note, String idempotencyKey)
+            throws TransferException, ApiException {
+        Map<String, Object> out = write(from, "api/transfer", amount, note, toUsername, idempotencyKey);
+        return new TransferResult((int) Wire.number(out, "retries"), Wire.number(out, "elapsedMicros"),
+                Boolean.TRUE.equals(out.get("replayed")));
+    }
+
+    private Map<String, Object> write(User user, String path, Money amount, String note, String to, String idempotencyKey)
+            throws TransferException, ApiException {
+        Map<String, Object> in = new LinkedHashMap<>();
+        if (to != null) in.put("to", to);
+        in.put("amount", Wire.money(amount));
+        in.put("note", note);
+        Response r = call("POST", path, in, idempotencyKey);
+        if (!r.ok()) {
+            TransferException.Reason reason = r.reason(TransferException.Reason.class);
+            if (reason == null) throw r.failure();
+            Object retryAfter = r.body.get("retryAfterMs");
+            throw new TransferException(reason, r.message(), retryAfter instanceof Number ? ((Number) retryAfter).longValue() : 0);
+        }
+        events.publish(new BalanceChanged(user.getUserId(), null, events.nextSequence()));
+        return r.body;
+    }
+
+    private Map<String, Object> get(String path) throws ApiException {
+        Response r = call("GET", path, null, null);
+        if (!r.ok()) throw r.failure();
+        return r.body;
+    }
+
+    private Response call(String method, String path, Map<String, Object> body, String idempotencyKey) throws ApiException {
+        HttpRequest.Builder req = HttpRequest.newBuilder(base.resolve(path)).timeout(timeout)
+                .header("Accept", "application/json");
+        String t = token;
+        if (t != null) req.header("Authorization", "Bearer " + t);
+        if (idempotencyKey != null) req.header("Idempotency-Key", idempotencyKey);
+        if (body != null) {
+            req.header("Content-Type", "application/json");
+            req.method(method, HttpRequest.BodyPublishers.ofString(Json.write(body), StandardCharsets.UTF_8));
+        } else {
+            req.method(method, HttpRequest.BodyPublishers.noBody());
+        }
+        try {
+            HttpResponse<String> resp;
+            try {
+                resp = http.send(req.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                // a pooled connection the server had just closed; reads and keyed writes are safe to send again
+                if (!"GET".equals(method) && idempotencyKey == null) throw e;
+                resp = http.send(req.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            }
+            String text = resp.body();
+            Map<String, Object> parsed = text == null || text.isEmpty() ? Collections.emptyMap() : Json.parseObject(text);
+            return new Response(resp.statusCode(), parsed);
+        } catch (IOException e) {
+            throw new ApiException("Cannot reach the bank server at " + base + ": " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException("Interrupted while calling the bank server", e);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException("Unexpected reply from the bank server: " + e.getMessage(), e);
+        }
+    }
+
+    private static String encode(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> object(Object o) throws ApiException {
+        if (!(o instanceof Map)) throw new ApiException("Unexpected reply from the bank server");
+        return (Map<String, Object>) o;
+    }
+
+    private static List<Transaction> transactions(Object rows) throws ApiException {
+        if (!(rows instanceof List)) throw new ApiException("Unexpected reply from the bank server");
+        List<Transaction> out = new ArrayList<>();
+        for (Object o : (List<?>) rows) out.add(Wire.transaction(object(o)));
+        return out;
+    }
+
+    private static final class Response {
+        final int status;
+        final Map<String, Object> body;
+
+        Response(int status, Map<String, Object> body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        boolean ok() {
+            return status / 100 == 2;
+        }
+
+        String message() {
+            String m = Wire.text(body, "error");
+            return m != null ? m : "HTTP " + status;
+        }
+
+        /** The reason of a refusal, if it is one of {@code type}'s. */
+        <E extends Enum<E>> E reason(Class<E> type) {
+            String r = Wire.text(body, "reason");
+            if (r == null) return null;
+            try {
+                return Enum.valueOf(type, r);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        ApiException failure() {
+            if (status == 401) return new ApiException("Your session has ended; please log in again.");
+            return new ApiException(message());
+        }
+    }
+}
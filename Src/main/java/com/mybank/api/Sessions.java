@@ -0,0 +1,76 @@
+package com.mybank.api;
+
+import com.mybank.model.User;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Logged-in users of a {@link BankServer}, by bearer token. A session ends on logout or after
+ * {@code idleMs} without a request; expired ones are dropped when next seen and swept every few
+ * hundred logins.
+ */
+final class Sessions {
+    private final Map<String, Session> byToken = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicInteger opened = new AtomicInteger();
+    private final long idleMs;
+
+    Sessions(long idleMs) {
+        this.idleMs = idleMs;
+    }
+
+    /** Starts a session for {@code user} and returns its token. */
+    String open(User user) {
+        if ((opened.incrementAndGet() & 255) == 0) sweep();
+        User copy = new User(user);
+        copy.setPassword(null);
+        byte[] bytes = new byte[24];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        byToken.put(token, new Session(copy));
+        return token;
+    }
+
+    /** The user of {@code token}, or {@code null} if there is no such live session. */
+    User get(String token) {
+        if (token == null) return null;
+        Session s = byToken.get(token);
+        if (s == null) return null;
+        long now = System.currentTimeMillis();
+        if (now - s.lastUsed > idleMs) {
+            byToken.remove(token, s);
+            return null;
+        }
+        s.lastUsed = now;
+        return s.user;
+    }
+
+    void close(String token) {
+        if (token != null) byToken.remove(token);
+    }
+
+    int size() {
+        return byToken.size();
+    }
+
+    private void sweep() {
+        long cutoff = System.currentTimeMillis() - idleMs;
+        for (Iterator<Session> it = byToken.values().iterator(); it.hasNext(); ) {
+            if (it.next().lastUsed < cutoff) it.remove();
+        }
+    }
+
+    private static final class Session {
+        final User user;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        Session(User user) {
+            this.user = user;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.mybank.api;
+
+import com.mybank.dao.TransactionDAO;
+import com.mybank.model.Money;
+import com.mybank.model.Transaction;
+import com.mybank.model.User;
+
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JSON shapes shared by {@link BankServer} and {@link RemoteBankApi}. Amounts are decimal strings;
+ * timestamps are epoch milliseconds plus the nanosecond part, so a history cursor made on the
+ * client seeks to exactly the row it was made from.
+ */
+final class Wire {
+    private Wire() {
+    }
+
+    static Map<String, Object> user(User u) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("userId", u.getUserId());
+        m.put("username", u.getUsername());
+        m.put("fullName", u.getFullName());
+        m.put("email", u.getEmail());
+        m.put("phone", u.getPhone());
+        m.put("address", u.getAddress());
+        m.put("role", u.getRole());
+        m.put("balance", money(u.getBalance()));
+        return m;
+    }
+
+    static User user(Map<String, Object> m) {
+        User u = new User();
+        u.setUserId((int) number(m, "userId"));
+        u.setUsername(text(m, "username"));
+        u.setFullName(text(m, "fullName"));
+        u.setEmail(text(m, "email"));
+        u.setPhone(text(m, "phone"));
+        u.setAddress(text(m, "address"));
+        u.setRole(text(m, "role"));
+        u.setBalance(money(m, "balance"));
+        return u;
+    }
+
+    static Map<String, Object> transaction(Transaction t) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("transactionId", t.getTransactionId());
+        m.put("userId", t.getUserId());
+        m.put("type", t.getType());
+        m.put("amount", money(t.getAmount()));
+        m.put("description", t.getDescription());
+        if (t.getCreatedAt() != null) {
+            m.put("createdAt", t.getCreatedAt().getTime());
+            m.put("createdAtNanos", t.getCreatedAt().getNanos());
+        }
+        return m;
+    }
+
+    static Transaction transaction(Map<String, Object> m) {
+        Transaction t = new Transaction();
+        t.setTransactionId((int) number(m, "transactionId"));
+        t.setUserId((int) number(m, "userId"));
+        t.setType(text(m, "type"));
+        t.setAmount(money(m, "amount"));
+        t.setDescription(text(m, "description"));
+        if (m.get("createdAt") != null) t.setCreatedAt(timestamp(number(m, "createdAt"), (int) number(m, "createdAtNanos")));
+        return t;
+    }
+
+    /** {@code millis:nanos:transactionId}, or {@code null}. */
+    static String cursor(TransactionDAO.Cursor c) {
+        if (c == null) return null;
+        Timestamp at = c.getCreatedAt();
+        return at.getTime() + ":" + at.getNanos() + ":" + c.getTransactionId();
+    }
+
+    static TransactionDAO.Cursor cursor(String s) {
+        if (s == null || s.isEmpty()) return null;
+        String[] parts = s.split(":");
+        if (parts.length != 3) throw new IllegalArgumentException("Bad cursor: " + s);
+        try {
+            return new TransactionDAO.Cursor(timestamp(Long.parseLong(parts[0]), Integer.parseInt(parts[1])),
+                    Integer.parseInt(parts[2]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad cursor: " + s);
+        }
+    }
+
+    static String money(Money m) {
+        return m == null ? null : m.toBigDecimal().toPlainString();
+    }
+
+    static Money money(Map<String, Object> m, String key) {
+        String s = text(m, key);
+        return s == null ? null : Money.parse(s);
+    }
+
+    static String text(Map<String, Object> m, String key) {
+        Object v = m.get(key);
+        return v == null ? null : v.toString();
+    }
+
+    static long number(Map<String, Object> m, String key) {
+        Object v = m.get(key);
+        if (v instanceof Number) return ((Number) v).longValue();
+        if (v instanceof String) {
+            try {
+                return Long.parseLong((String) v);
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+        }
+        throw new IllegalArgumentException("Expected a number for " + key);
+    }
+
+    private static Timestamp timestamp(long millis, int nanos) {
+        Timestamp t = new Timestamp(millis);
+        t.setNanos(nanos);
+        return t;
+    }
+}
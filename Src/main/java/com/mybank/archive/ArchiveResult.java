@@ -0,0 +1,40 @@
+package com.mybank.archive;
+
+import java.time.YearMonth;
+
+/**
+ * Outcome of archiving one month.
+ */
+public class ArchiveResult {
+    private final YearMonth month;
+    private final long rows;
+    private final long deleted;
+    private final long bytes;
+    private final boolean resumed;
+    private final long elapsedNanos;
+
+    public ArchiveResult(YearMonth month, long rows, long deleted, long bytes, boolean resumed, long elapsedNanos) {
+        this.month = month;
+        this.rows = rows;
+        this.deleted = deleted;
+        this.bytes = bytes;
+        this.resumed = resumed;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public YearMonth getMonth() { return month; }
+    /** Rows in the month's segment. */
+    public long getRows() { return rows; }
+    /** Rows removed from the hot table by this run. */
+    public long getDeleted() { return deleted; }
+    public long getBytes() { return bytes; }
+    /** True if the segment already existed and this run only finished removing its rows. */
+    public boolean isResumed() { return resumed; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %,d rows in %,d KB%s, %,d removed from the hot table in %.1f s",
+                month, rows, bytes / 1024, resumed ? " (existing segment)" : "", deleted, elapsedNanos / 1e9);
+    }
+}
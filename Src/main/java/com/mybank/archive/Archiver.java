@@ -0,0 +1,149 @@
+package com.mybank.archive;
+
+import com.mybank.config.AppConfig;
+import com.mybank.model.Money;
+import com.mybank.model.Transaction;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.YearMonth;
+
+/**
+ * Moves closed months of the transactions table into the {@link TransactionArchive}.
+ *
+ * For one month: the rows are streamed out in segment order into {@code <segment>.part}. The
+ * file is read back and verified, made read-only and renamed into place. After waiting for
+ * the other instances to see it, the archiver deletes exactly the rows the segment holds, by
+ * primary key, {@code mybank.archive.deleteBatch} rows per commit. A run that dies after the
+ * rename resumes at the delete step, and rows that arrive for the month later stay in the hot
+ * table, where the history queries still find them. Rows without a {@code user_id} are not
+ * archived.
+ */
+public class Archiver {
+    private static final String EXPORT_SQL = "SELECT * FROM transactions WHERE created_at >= ? AND created_at < ?"
+            + " AND user_id IS NOT NULL ORDER BY user_id, created_at, transaction_id";
+    private static final String DELETE_SQL = "DELETE FROM transactions WHERE transaction_id = ? AND user_id = ?";
+
+    private final DataSource ds;
+    private final TransactionArchive archive;
+    private final long settleMs;
+    private final int deleteBatch;
+
+    public Archiver(DataSource ds, TransactionArchive archive) {
+        // one rescan interval plus a margin, so no instance reads neither copy
+        this(ds, archive, archive.getRefreshMs() + 1000, AppConfig.getInt("mybank.archive.deleteBatch", 1000));
+    }
+
+    public Archiver(DataSource ds, TransactionArchive archive, long settleMs, int deleteBatch) {
+        this.ds = ds;
+        this.archive = archive;
+        this.settleMs = Math.max(0, settleMs);
+        this.deleteBatch = Math.max(1, deleteBatch);
+    }
+
+    /** Archives one month; only months before the current one are closed. */
+    public ArchiveResult archive(YearMonth month) throws SQLException, IOException {
+        if (!month.isBefore(YearMonth.now())) {
+            throw new IllegalArgumentException(month + " is not closed yet; only months before " + YearMonth.now() + " can be archived");
+        }
+        long start = System.nanoTime();
+        Files.createDirectories(archive.getDir());
+        Path target = archive.getDir().resolve(TransactionArchive.fileName(month));
+        boolean resumed = Files.exists(target);
+        if (!resumed) {
+            Path part = target.resolveSibling(target.getFileName() + ".part");
+            Files.deleteIfExists(part); // left behind by a run that died while exporting
+            try (SegmentWriter w = new SegmentWriter(part, month)) {
+                export(month, w);
+                if (w.getRows() == 0) return new ArchiveResult(month, 0, 0, 0, false, System.nanoTime() - start);
+                w.finish();
+            }
+            try (Segment check = Segment.open(part)) {
+                check.verify();
+            }
+            part.toFile().setReadOnly();
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+            try {
+                Thread.sleep(settleMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(month + " is archived but its rows are still in the hot table; run again to remove them");
+            }
+        }
+        archive.refresh();
+        Segment seg = archive.segments().get(month);
+        if (seg == null) throw new IOException(target + " could not be opened");
+        if (resumed) seg.verify();
+        long deleted = deleteArchived(seg);
+        return new ArchiveResult(month, seg.getRows(), deleted, seg.getBytes(), resumed, System.nanoTime() - start);
+    }
+
+    private void export(YearMonth month, SegmentWriter w) throws SQLException, IOException {
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement(EXPORT_SQL)) {
+            // Connector/J only streams a result set when the fetch size is Integer.MIN_VALUE
+            ps.setFetchSize(c.getMetaData().getURL().startsWith("jdbc:mysql:")
+                    ? Integer.MIN_VALUE : AppConfig.getInt("mybank.db.fetchSize", 500));
+            ps.setTimestamp(1, TransactionArchive.start(month));
+            ps.setTimestamp(2, TransactionArchive.start(month.plusMonths(1)));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Transaction t = new Transaction();
+                    t.setTransactionId(rs.getInt("transaction_id"));
+                    t.setUserId(rs.getInt("user_id"));
+                    t.setType(rs.getString("type"));
+                    t.setAmount(Money.parse(rs.getString("amount")));
+                    t.setDescription(rs.getString("description"));
+                    t.setCreatedAt(rs.getTimestamp("created_at"));
+                    w.add(t);
+                }
+            }
+        }
+    }
+
+    private long deleteArchived(Segment seg) throws SQLException, IOException {
+        long deleted = 0;
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement(DELETE_SQL)) {
+            c.setAutoCommit(false);
+            try {
+                int pending = 0;
+                for (int i = 0; i < seg.entryCount(); i++) {
+                    for (Transaction t : seg.readBlock(seg.entry(i))) {
+                        ps.setInt(1, t.getTransactionId());
+                        ps.setInt(2, t.getUserId());
+                        ps.addBatch();
+                        if (++pending == deleteBatch) {
+                            deleted += executeAndCommit(c, ps);
+                            pending = 0;
+                        }
+                    }
+                }
+                if (pending > 0) deleted += executeAndCommit(c, ps);
+            } catch (SQLException | IOException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        }
+        return deleted;
+    }
+
+    private static long executeAndCommit(Connection c, PreparedStatement ps) throws SQLException {
+        long n = 0;
+        for (int count : ps.executeBatch()) {
+            if (count > 0) n += count;
+        }
+        c.commit();
+        return n;
+    }
+}
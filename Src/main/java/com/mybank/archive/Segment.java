@@ -0,0 +1,218 @@
+package com.mybank.archive;
+
+import com.mybank.model.Money;
+import com.mybank.model.Transaction;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * One archived month of transactions: an immutable, compressed file written by
+ * {@link SegmentWriter}.
+ *
+ * Layout: an 8-byte magic; blocks of up to {@link #BLOCK_ROWS} rows of a single user, oldest
+ * first, each deflate-compressed on its own; the block index, one fixed-size entry per block
+ * sorted by user (user id, rows, offset, length, CRC-32 of the compressed bytes); and a
+ * fixed-size trailer with the month, totals and the index checksum. The index is memory-mapped
+ * and a user's blocks are found by binary search over it, so the heap cost of an open segment
+ * does not depend on its size, and reads may run from many threads at once.
+ */
+public final class Segment implements Closeable {
+    static final byte[] MAGIC = "MBSEG01\n".getBytes(StandardCharsets.US_ASCII);
+    static final int TRAILER_MAGIC = 0x4D425331; // "MBS1"
+    static final int BLOCK_ROWS = 1024;
+    static final int ENTRY_BYTES = 24;
+    static final int TRAILER_BYTES = 40;
+
+    private final Path path;
+    private final FileChannel ch;
+    private final ByteBuffer index; // read with absolute gets only, so it can be shared
+    private final YearMonth month;
+    private final int entries;
+    private final long rows;
+    private final long amountSum;
+    private final int indexCrc;
+
+    private Segment(Path path, FileChannel ch, YearMonth month, long indexOffset, int entries,
+                    long rows, long amountSum, int indexCrc) throws IOException {
+        this.path = path;
+        this.ch = ch;
+        this.index = ch.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) entries * ENTRY_BYTES);
+        this.month = month;
+        this.entries = entries;
+        this.rows = rows;
+        this.amountSum = amountSum;
+        this.indexCrc = indexCrc;
+    }
+
+    static Segment open(Path path) throws IOException {
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = ch.size();
+            if (size < MAGIC.length + TRAILER_BYTES) throw new IOException(path + " is not an archive segment (too short)");
+            ByteBuffer head = read(ch, 0, MAGIC.length);
+            if (!Arrays.equals(head.array(), MAGIC)) throw new IOException(path + " is not an archive segment");
+            ByteBuffer t = read(ch, size - TRAILER_BYTES, TRAILER_BYTES);
+            long indexOffset = t.getLong();
+            int entries = t.getInt();
+            long rows = t.getLong();
+            long amountSum = t.getLong();
+            int ym = t.getInt();
+            int indexCrc = t.getInt();
+            if (t.getInt() != TRAILER_MAGIC || indexOffset + (long) entries * ENTRY_BYTES != size - TRAILER_BYTES) {
+                throw new IOException(path + " is truncated or damaged");
+            }
+            return new Segment(path, ch, YearMonth.of(ym / 100, ym % 100), indexOffset, entries, rows, amountSum, indexCrc);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    public Path getPath() { return path; }
+    public YearMonth getMonth() { return month; }
+    public long getRows() { return rows; }
+    /** Sum of all amounts in minor units, to reconcile against the rows it replaced. */
+    public long getAmountSum() { return amountSum; }
+
+    public long getBytes() throws IOException {
+        return ch.size();
+    }
+
+    /** Number of rows archived for the user this month. */
+    public int count(int userId) {
+        int n = 0;
+        for (int i = firstEntry(userId); i < entries; i++) {
+            Entry e = entry(i);
+            if (e.userId != userId) break;
+            n += e.rows;
+        }
+        return n;
+    }
+
+    int entryCount() { return entries; }
+
+    /** Index of the user's first block, or of the first block of a later user if there is none. */
+    int firstEntry(int userId) {
+        int lo = 0;
+        int hi = entries;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (index.getInt(mid * ENTRY_BYTES) < userId) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    Entry entry(int i) {
+        int at = i * ENTRY_BYTES;
+        return new Entry(index.getInt(at), index.getInt(at + 4), index.getLong(at + 8), index.getInt(at + 16), index.getInt(at + 20));
+    }
+
+    /** The block's rows, oldest first. */
+    List<Transaction> readBlock(Entry e) throws IOException {
+        byte[] z = read(ch, e.offset, e.length).array();
+        CRC32 crc = new CRC32();
+        crc.update(z);
+        if ((int) crc.getValue() != e.crc) throw new IOException(path + ": block at " + e.offset + " fails its checksum");
+        List<Transaction> out = new ArrayList<>(e.rows);
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(z), inflater))) {
+            for (int i = 0; i < e.rows; i++) {
+                Transaction t = new Transaction();
+                t.setUserId(e.userId);
+                t.setTransactionId(in.readInt());
+                long millis = in.readLong();
+                Timestamp at = new Timestamp(millis);
+                at.setNanos((int) Math.floorMod(millis, 1000L) * 1_000_000 + in.readInt());
+                t.setCreatedAt(at);
+                t.setType(in.readUTF());
+                t.setAmount(Money.ofMinor(in.readLong()));
+                t.setDescription(in.readBoolean() ? in.readUTF() : null);
+                out.add(t);
+            }
+        } catch (EOFException ex) {
+            throw new IOException(path + ": block at " + e.offset + " holds fewer rows than its index entry", ex);
+        } finally {
+            inflater.end();
+        }
+        return out;
+    }
+
+    /**
+     * Reads the whole file and checks the index checksum, every block checksum, the row order
+     * and the totals in the trailer.
+     */
+    void verify() throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(index.duplicate());
+        if ((int) crc.getValue() != indexCrc) throw new IOException(path + ": index fails its checksum");
+        long n = 0;
+        long sum = 0;
+        Transaction prev = null;
+        for (int i = 0; i < entries; i++) {
+            for (Transaction t : readBlock(entry(i))) {
+                if (prev != null && SegmentWriter.compare(prev, t) >= 0) throw new IOException(path + ": rows out of order at " + t.getTransactionId());
+                if (!YearMonth.from(t.getCreatedAt().toLocalDateTime()).equals(month)) {
+                    throw new IOException(path + ": transaction " + t.getTransactionId() + " is not from " + month);
+                }
+                n++;
+                sum += t.getAmount().getMinorUnits();
+                prev = t;
+            }
+        }
+        if (n != rows || sum != amountSum) {
+            throw new IOException(path + ": holds " + n + " rows summing to " + sum + ", trailer says " + rows + " / " + amountSum);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        ch.close();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %,d rows in %,d blocks (%s)", month, rows, entries, path.getFileName());
+    }
+
+    private static ByteBuffer read(FileChannel ch, long pos, int len) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(len);
+        while (b.hasRemaining()) {
+            if (ch.read(b, pos + b.position()) < 0) throw new EOFException("unexpected end of segment at " + (pos + b.position()));
+        }
+        return b.flip();
+    }
+
+    static final class Entry {
+        final int userId;
+        final int rows;
+        final long offset;
+        final int length;
+        final int crc;
+
+        Entry(int userId, int rows, long offset, int length, int crc) {
+            this.userId = userId;
+            this.rows = rows;
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+        }
+    }
+}
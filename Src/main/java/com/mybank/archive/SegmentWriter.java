@@ -0,0 +1,129 @@
+package com.mybank.archive;
+
+import com.mybank.model.Transaction;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a {@link Segment}. Rows must arrive ordered by user, then {@code created_at}, then id,
+ * which is how {@link Archiver} selects them; memory use is one block plus the index.
+ */
+final class SegmentWriter implements Closeable {
+    private final Path path;
+    private final YearMonth month;
+    private final FileChannel ch;
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    private final ByteArrayOutputStream blockBytes = new ByteArrayOutputStream(64 * 1024);
+    private final DataOutputStream block = new DataOutputStream(blockBytes);
+    private final ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+    private final DataOutputStream index = new DataOutputStream(indexBytes);
+
+    private long pos;
+    private int blockUser;
+    private int blockRows;
+    private int entries;
+    private long rows;
+    private long amountSum;
+    private Transaction last;
+    private boolean finished;
+
+    SegmentWriter(Path path, YearMonth month) throws IOException {
+        this.path = path;
+        this.month = month;
+        this.ch = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        write(ByteBuffer.wrap(Segment.MAGIC));
+    }
+
+    void add(Transaction t) throws IOException {
+        if (last != null && compare(last, t) >= 0) {
+            throw new IllegalStateException("rows must be ordered by user, created_at, id: " + t.getTransactionId()
+                    + " after " + last.getTransactionId());
+        }
+        if (blockRows > 0 && (t.getUserId() != blockUser || blockRows == Segment.BLOCK_ROWS)) flushBlock();
+        blockUser = t.getUserId();
+        Timestamp at = t.getCreatedAt();
+        block.writeInt(t.getTransactionId());
+        block.writeLong(at.getTime());
+        block.writeInt(at.getNanos() % 1_000_000);
+        block.writeUTF(t.getType());
+        block.writeLong(t.getAmount().getMinorUnits());
+        block.writeBoolean(t.getDescription() != null);
+        if (t.getDescription() != null) block.writeUTF(t.getDescription());
+        blockRows++;
+        rows++;
+        amountSum += t.getAmount().getMinorUnits();
+        last = t;
+    }
+
+    long getRows() { return rows; }
+    long getAmountSum() { return amountSum; }
+
+    /** Writes the index and trailer and forces the file to disk. */
+    void finish() throws IOException {
+        flushBlock();
+        byte[] idx = indexBytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(idx);
+        long indexOffset = pos;
+        write(ByteBuffer.wrap(idx));
+        ByteBuffer t = ByteBuffer.allocate(Segment.TRAILER_BYTES);
+        t.putLong(indexOffset).putInt(entries).putLong(rows).putLong(amountSum)
+                .putInt(month.getYear() * 100 + month.getMonthValue()).putInt((int) crc.getValue()).putInt(Segment.TRAILER_MAGIC);
+        write(t.flip());
+        ch.force(true);
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        ch.close();
+        if (!finished) Files.deleteIfExists(path);
+    }
+
+    // (user, created_at, id) order, the order of rows in a segment
+    static int compare(Transaction a, Transaction b) {
+        int c = Integer.compare(a.getUserId(), b.getUserId());
+        if (c == 0) c = a.getCreatedAt().compareTo(b.getCreatedAt());
+        if (c == 0) c = Integer.compare(a.getTransactionId(), b.getTransactionId());
+        return c;
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockRows == 0) return;
+        ByteArrayOutputStream z = new ByteArrayOutputStream(blockBytes.size() / 3 + 64);
+        deflater.reset();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(z, deflater)) {
+            blockBytes.writeTo(out);
+        }
+        byte[] bytes = z.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        index.writeInt(blockUser);
+        index.writeInt(blockRows);
+        index.writeLong(pos);
+        index.writeInt(bytes.length);
+        index.writeInt((int) crc.getValue());
+        entries++;
+        write(ByteBuffer.wrap(bytes));
+        blockBytes.reset();
+        blockRows = 0;
+    }
+
+    private void write(ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) pos += ch.write(b, pos);
+    }
+}
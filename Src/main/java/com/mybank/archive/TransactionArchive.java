@@ -0,0 +1,254 @@
+package com.mybank.archive;
+
+import com.mybank.config.AppConfig;
+import com.mybank.model.Transaction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The cold tier of the transactions table: one {@link Segment} file per archived month in
+ * {@code mybank.archive.dir} (default {@code archive}), which all app instances must share.
+ *
+ * The directory is the catalogue. {@link Archiver} moves a finished segment into place
+ * atomically, and readers pick it up on their next rescan, at most {@code mybank.archive.refreshMs}
+ * (default 10 s) later. Until then they still find the month's rows in the hot table, because
+ * the archiver waits that long before deleting them. A row can be in both places for a while;
+ * readers merge the two by {@code (created_at, transaction_id)}, which drops such duplicates.
+ */
+public final class TransactionArchive implements Closeable {
+    private static final Pattern FILE = Pattern.compile("transactions-(\\d{4}-\\d{2})\\.seg");
+
+    private final Path dir;
+    private final long refreshMs;
+    private volatile NavigableMap<YearMonth, Segment> segments = Collections.emptyNavigableMap();
+    private volatile long nextScanNanos;
+
+    private static class Holder {
+        static final TransactionArchive DEFAULT = new TransactionArchive(
+                Paths.get(AppConfig.get("mybank.archive.dir", "archive")),
+                AppConfig.getLong("mybank.archive.refreshMs", 10_000));
+    }
+
+    public static TransactionArchive getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    public TransactionArchive(Path dir, long refreshMs) {
+        this.dir = dir;
+        this.refreshMs = Math.max(0, refreshMs);
+        this.nextScanNanos = System.nanoTime(); // scan on first use
+    }
+
+    public Path getDir() { return dir; }
+    public long getRefreshMs() { return refreshMs; }
+
+    public static String fileName(YearMonth month) {
+        return "transactions-" + month + ".seg";
+    }
+
+    /** First instant of the month, as the history queries compare {@code created_at}. */
+    public static Timestamp start(YearMonth month) {
+        return Timestamp.valueOf(month.atDay(1).atStartOfDay());
+    }
+
+    /** Archived months, oldest first. */
+    public NavigableMap<YearMonth, Segment> segments() {
+        if (System.nanoTime() - nextScanNanos >= 0) refresh();
+        return segments;
+    }
+
+    public boolean isEmpty() {
+        return segments().isEmpty();
+    }
+
+    /** End (exclusive) of the newest archived month, or null if nothing is archived. */
+    public Timestamp end() {
+        NavigableMap<YearMonth, Segment> s = segments();
+        return s.isEmpty() ? null : start(s.lastKey().plusMonths(1));
+    }
+
+    public int count(int userId) {
+        int n = 0;
+        for (Segment s : segments().values()) n += s.count(userId);
+        return n;
+    }
+
+    /**
+     * A user's archived rows, newest first, starting below {@code (beforeAt, beforeId)}
+     * ({@code beforeAt} null: from the newest). Blocks are read as the iterator reaches them.
+     */
+    public Rows newestFirst(int userId, Timestamp beforeAt, int beforeId) {
+        NavigableMap<YearMonth, Segment> s = segments();
+        if (beforeAt != null) s = s.headMap(YearMonth.from(beforeAt.toLocalDateTime()), true);
+        Iterator<Segment> months = s.descendingMap().values().iterator();
+        return new Rows() {
+            private Segment seg;
+            private int firstEntry;
+            private int entry = -1;
+            private List<Transaction> block = Collections.emptyList();
+            private int row;
+
+            @Override
+            protected Transaction fetch() throws IOException {
+                while (true) {
+                    while (row > 0) {
+                        Transaction t = block.get(--row);
+                        if (beforeAt == null || before(t, beforeAt, beforeId)) return t;
+                    }
+                    if (entry > firstEntry) {
+                        block = seg.readBlock(seg.entry(--entry));
+                        row = block.size();
+                        continue;
+                    }
+                    if (!months.hasNext()) return null;
+                    seg = months.next();
+                    firstEntry = seg.firstEntry(userId);
+                    entry = firstEntry;
+                    while (entry < seg.entryCount() && seg.entry(entry).userId == userId) entry++;
+                }
+            }
+        };
+    }
+
+    /** A user's archived rows with {@code from <= created_at < to}, oldest first; either bound may be null. */
+    public Rows oldestFirst(int userId, Timestamp from, Timestamp to) {
+        NavigableMap<YearMonth, Segment> s = segments();
+        if (from != null) s = s.tailMap(YearMonth.from(from.toLocalDateTime()), true);
+        if (to != null) s = s.headMap(YearMonth.from(to.toLocalDateTime()), true);
+        Iterator<Segment> months = s.values().iterator();
+        return new Rows() {
+            private Segment seg;
+            private int entry;
+            private List<Transaction> block = Collections.emptyList();
+            private int row;
+
+            @Override
+            protected Transaction fetch() throws IOException {
+                while (true) {
+                    while (row < block.size()) {
+                        Transaction t = block.get(row++);
+                        if (to != null && !t.getCreatedAt().before(to)) return null;
+                        if (from == null || !t.getCreatedAt().before(from)) return t;
+                    }
+                    if (seg != null && entry < seg.entryCount()) {
+                        Segment.Entry e = seg.entry(entry++);
+                        if (e.userId == userId) {
+                            block = seg.readBlock(e);
+                            row = 0;
+                            continue;
+                        }
+                    }
+                    if (!months.hasNext()) return null;
+                    seg = months.next();
+                    entry = seg.firstEntry(userId);
+                    block = Collections.emptyList();
+                }
+            }
+        };
+    }
+
+    /** Rescans the directory now; segments already open stay open. */
+    public synchronized void refresh() {
+        NavigableMap<YearMonth, Segment> next = new TreeMap<>();
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "transactions-*.seg")) {
+                for (Path p : files) {
+                    Matcher m = FILE.matcher(p.getFileName().toString());
+                    if (!m.matches()) continue;
+                    YearMonth month = YearMonth.parse(m.group(1));
+                    Segment open = segments.get(month);
+                    try {
+                        next.put(month, open != null ? open : Segment.open(p));
+                    } catch (IOException e) {
+                        System.err.println("⚠️ Skipping archive segment " + p + ": " + e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("⚠️ Could not read archive directory " + dir + ": " + e.getMessage());
+                next = new TreeMap<>(segments);
+            }
+        }
+        NavigableMap<YearMonth, Segment> old = segments;
+        segments = Collections.unmodifiableNavigableMap(next);
+        nextScanNanos = System.nanoTime() + refreshMs * 1_000_000;
+        // a segment whose file went away (restored to the hot table by hand); readers still
+        // inside it get an error, which is better than a leaked file handle
+        for (Map.Entry<YearMonth, Segment> e : old.entrySet()) {
+            if (next.get(e.getKey()) != e.getValue()) closeQuietly(e.getValue());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment s : segments.values()) closeQuietly(s);
+        segments = Collections.emptyNavigableMap();
+    }
+
+    static boolean before(Transaction t, Timestamp at, int id) {
+        int c = t.getCreatedAt().compareTo(at);
+        return c < 0 || (c == 0 && t.getTransactionId() < id);
+    }
+
+    private static void closeQuietly(Segment s) {
+        try {
+            s.close();
+        } catch (IOException ignore) {
+            // read-only file
+        }
+    }
+
+    /**
+     * Iterator that can also show the next row without taking it, for merging with the hot
+     * table. Read errors surface as {@link UncheckedIOException}.
+     */
+    public abstract static class Rows implements Iterator<Transaction> {
+        private Transaction next;
+        private boolean done;
+
+        /** Next row, or null at the end. */
+        protected abstract Transaction fetch() throws IOException;
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                try {
+                    next = fetch();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                done = next == null;
+            }
+            return next != null;
+        }
+
+        /** The row {@link #next()} would return, or null at the end. */
+        public Transaction peek() {
+            return hasNext() ? next : null;
+        }
+
+        @Override
+        public Transaction next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Transaction t = next;
+            next = null;
+            return t;
+        }
+    }
+}
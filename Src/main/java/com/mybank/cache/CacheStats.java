@@ -0,0 +1,56 @@
+package com.mybank.cache;
+
+/**
+ * Point-in-time counters of a {@link LookupCache}.
+ */
+public class CacheStats {
+    private final String name;
+    private final int size;
+    private final long hits;
+    private final long negativeHits;
+    private final long misses;
+    private final long loadFailures;
+    private final long evictions;
+    private final long expirations;
+    private final long invalidations;
+    private final long droppedFills;
+
+    CacheStats(String name, int size, long hits, long negativeHits, long misses, long loadFailures,
+               long evictions, long expirations, long invalidations, long droppedFills) {
+        this.name = name;
+        this.size = size;
+        this.hits = hits;
+        this.negativeHits = negativeHits;
+        this.misses = misses;
+        this.loadFailures = loadFailures;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.invalidations = invalidations;
+        this.droppedFills = droppedFills;
+    }
+
+    public String getName() { return name; }
+    public int getSize() { return size; }
+    public long getHits() { return hits; }
+    public long getNegativeHits() { return negativeHits; }
+    public long getMisses() { return misses; }
+    public long getLoadFailures() { return loadFailures; }
+    public long getEvictions() { return evictions; }
+    public long getExpirations() { return expirations; }
+    public long getInvalidations() { return invalidations; }
+    /** Loads not stored because a write invalidated the cache while they were reading. */
+    public long getDroppedFills() { return droppedFills; }
+
+    public double getHitRatio() {
+        long lookups = hits + negativeHits + misses;
+        return lookups == 0 ? 0.0 : (double) (hits + negativeHits) / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: size=%d hits=%d negativeHits=%d misses=%d hitRatio=%.1f%% loadFailures=%d "
+                        + "evictions=%d expirations=%d invalidations=%d droppedFills=%d",
+                name, size, hits, negativeHits, misses, getHitRatio() * 100, loadFailures,
+                evictions, expirations, invalidations, droppedFills);
+    }
+}
@@ -0,0 +1,62 @@
+package com.mybank.cache;
+
+import com.mybank.config.AppConfig;
+import com.mybank.model.Account;
+import com.mybank.model.User;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The lookup caches that belong to one database. DAOs and services built on the same
+ * {@link DataSource} share them, so a write through any of them invalidates what the others read.
+ *
+ * Sizes and TTLs come from {@code mybank.cache.users.*} and {@code mybank.cache.accounts.*}
+ * ({@code maxSize}, {@code ttlMs}, {@code negativeTtlMs}); {@code maxSize=0} turns a cache off.
+ */
+public final class DataCaches {
+    private static final Map<DataSource, DataCaches> BY_SOURCE = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final LookupCache<String, User> users;
+    private final LookupCache<String, Account> accounts;
+
+    private DataCaches() {
+        users = new LookupCache<>("users",
+                AppConfig.getInt("mybank.cache.users.maxSize", 10_000),
+                AppConfig.getLong("mybank.cache.users.ttlMs", 30_000),
+                AppConfig.getLong("mybank.cache.users.negativeTtlMs", 2_000),
+                User::new, User::getUserId);
+        accounts = new LookupCache<>("accounts",
+                AppConfig.getInt("mybank.cache.accounts.maxSize", 10_000),
+                AppConfig.getLong("mybank.cache.accounts.ttlMs", 30_000),
+                AppConfig.getLong("mybank.cache.accounts.negativeTtlMs", 2_000),
+                Account::new, Account::getAccountId);
+    }
+
+    public static DataCaches of(DataSource ds) {
+        return BY_SOURCE.computeIfAbsent(ds, k -> new DataCaches());
+    }
+
+    /** Users by username. */
+    public LookupCache<String, User> users() { return users; }
+
+    /** Accounts by account number. */
+    public LookupCache<String, Account> accounts() { return accounts; }
+
+    /** Call after committing any change to the user's row (balance, profile, password). */
+    public void userChanged(int userId) {
+        users.invalidateId(userId);
+    }
+
+    /** Call after committing any change to the account's row. */
+    public void accountChanged(int accountId) {
+        accounts.invalidateId(accountId);
+    }
+
+    @Override
+    public String toString() {
+        return users.stats() + System.lineSeparator() + accounts.stats();
+    }
+}
@@ -0,0 +1,237 @@
+package com.mybank.cache;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bounded, concurrent read-through cache for single-row lookups (user by username, account by
+ * number).
+ *
+ * Entries live in lock-striped LRU segments and expire after a TTL; "not found" is cached too,
+ * with its own shorter TTL. Values are copied on the way in and out, so callers can mutate what
+ * they get back without touching the cached row.
+ *
+ * Writers call {@link #invalidate} or {@link #invalidateId} after they commit. Every invalidation
+ * also bumps a generation counter, and a load only fills the cache if no invalidation happened
+ * while it was reading, so a reader that saw the row before a write can never put the old value
+ * back after the writer has cleared it. The counters are per segment (for keys) and per stripe of
+ * ids, so a write only drops the loads that could have read its row, give or take the 1 in
+ * {@value #SEGMENTS} that share its segment or stripe.
+ */
+public class LookupCache<K, V> {
+
+    /** Reads one row; returns null if there is none. Errors are not cached. */
+    public interface Loader<K, V> {
+        V load(K key) throws SQLException;
+    }
+
+    private static final int SEGMENTS = 16;
+
+    private final String name;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final UnaryOperator<V> copier;
+    private final Function<? super V, ?> idOf;
+    private final Segment<K, V>[] segments;
+    private final Map<Object, K> keysById = new ConcurrentHashMap<>();
+    // bumped by invalidateId() before it looks the key up, per stripe of ids (see idStripe())
+    private final AtomicLongArray idGenerations = new AtomicLongArray(SEGMENTS);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder droppedFills = new LongAdder();
+
+    /**
+     * @param copier defensive copy applied to values stored and returned
+     * @param idOf   secondary id (e.g. user_id) writers can invalidate by, or null for none
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public LookupCache(String name, int maxSize, long ttlMs, long negativeTtlMs,
+                       UnaryOperator<V> copier, Function<? super V, ?> idOf) {
+        this.name = name;
+        this.ttlNanos = ttlMs * 1_000_000L;
+        this.negativeTtlNanos = negativeTtlMs * 1_000_000L;
+        this.copier = copier;
+        this.idOf = idOf;
+        int perSegment = Math.max(0, (maxSize + SEGMENTS - 1) / SEGMENTS);
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment<>(perSegment);
+    }
+
+    /** Returns the cached value for {@code key}, loading it on a miss. Null means "no such row". */
+    public V get(K key, Loader<K, V> loader) throws SQLException {
+        Segment<K, V> seg = segmentFor(key);
+        long now = System.nanoTime();
+        long gen;
+        synchronized (seg) {
+            Entry<V> e = seg.map.get(key);
+            if (e != null) {
+                if (now - e.expiresAt < 0) {
+                    if (e.value == null) {
+                        negativeHits.increment();
+                        return null;
+                    }
+                    hits.increment();
+                    return copier.apply(e.value);
+                }
+                seg.map.remove(key);
+                unindex(key, e.value);
+                expirations.increment();
+            }
+            gen = seg.generation;
+        }
+        misses.increment();
+        long[] idGens = idOf == null ? null : idGenerations();
+        V value;
+        try {
+            value = loader.load(key);
+        } catch (SQLException | RuntimeException ex) {
+            loadFailures.increment();
+            throw ex;
+        }
+        fill(seg, key, value == null ? null : copier.apply(value), gen, idGens);
+        return value;
+    }
+
+    /** Drops {@code key}; call after committing a change to its row. */
+    public void invalidate(K key) {
+        invalidations.increment();
+        Segment<K, V> seg = segmentFor(key);
+        synchronized (seg) {
+            seg.generation++;
+            Entry<V> e = seg.map.remove(key);
+            if (e != null) unindex(key, e.value);
+        }
+    }
+
+    /** Drops the entry whose value has the given secondary id, if it is cached. */
+    public void invalidateId(Object id) {
+        idGenerations.incrementAndGet(idStripe(id));
+        invalidations.increment();
+        K key = keysById.get(id);
+        if (key == null) return;
+        Segment<K, V> seg = segmentFor(key);
+        synchronized (seg) {
+            Entry<V> e = seg.map.get(key);
+            if (e != null && e.value != null && id.equals(idOf.apply(e.value))) {
+                seg.map.remove(key);
+                unindex(key, e.value);
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        invalidations.increment();
+        for (Segment<K, V> seg : segments) {
+            synchronized (seg) {
+                seg.generation++;
+                seg.map.clear();
+            }
+        }
+        keysById.clear();
+    }
+
+    public int size() {
+        int n = 0;
+        for (Segment<K, V> seg : segments) {
+            synchronized (seg) {
+                n += seg.map.size();
+            }
+        }
+        return n;
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(name, size(), hits.sum(), negativeHits.sum(), misses.sum(), loadFailures.sum(),
+                evictions.sum(), expirations.sum(), invalidations.sum(), droppedFills.sum());
+    }
+
+    private void fill(Segment<K, V> seg, K key, V value, long gen, long[] idGens) {
+        if (seg.capacity == 0) return;
+        long expiresAt = System.nanoTime() + (value == null ? negativeTtlNanos : ttlNanos);
+        Object id = value != null && idOf != null ? idOf.apply(value) : null;
+        int stripe = id == null ? -1 : idStripe(id);
+        synchronized (seg) {
+            // invalidate() bumps the segment's generation under this lock
+            if (seg.generation != gen || (id != null && idGenerations.get(stripe) != idGens[stripe])) {
+                droppedFills.increment();
+                return;
+            }
+            Entry<V> old = seg.map.put(key, new Entry<>(value, expiresAt));
+            if (old != null) unindex(key, old.value);
+            if (id != null) {
+                keysById.put(id, key);
+                // invalidateId() looks the key up without the segment lock; if it ran since the
+                // check above it may have missed the index entry, so back out
+                if (idGenerations.get(stripe) != idGens[stripe]) {
+                    seg.map.remove(key);
+                    unindex(key, value);
+                    droppedFills.increment();
+                    return;
+                }
+            }
+            Iterator<Map.Entry<K, Entry<V>>> it = seg.map.entrySet().iterator();
+            while (seg.map.size() > seg.capacity && it.hasNext()) {
+                Map.Entry<K, Entry<V>> eldest = it.next();
+                it.remove();
+                unindex(eldest.getKey(), eldest.getValue().value);
+                evictions.increment();
+            }
+        }
+    }
+
+    private long[] idGenerations() {
+        long[] gens = new long[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) gens[i] = idGenerations.get(i);
+        return gens;
+    }
+
+    private static int idStripe(Object id) {
+        int h = id.hashCode();
+        h ^= h >>> 16;
+        return h & (SEGMENTS - 1);
+    }
+
+    private void unindex(K key, V value) {
+        if (value != null && idOf != null) keysById.remove(idOf.apply(value), key);
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    private static final class Segment<K, V> {
+        final int capacity;
+        long generation; // guarded by the segment lock
+        // access order, so iteration starts at the least recently used entry
+        final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+    }
+
+    private static final class Entry<V> {
+        final V value; // null = cached "not found"
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
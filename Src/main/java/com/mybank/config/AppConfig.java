@@ -0,0 +1,75 @@
+package com.mybank.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Application settings.
+ *
+ * A key such as {@code mybank.db.url} is resolved from, in order: the JVM system property,
+ * the environment variable {@code MYBANK_DB_URL}, {@code mybank.properties} in the working
+ * directory (or on the classpath), and finally the caller's default.
+ */
+public final class AppConfig {
+    public static final String FILE_NAME = "mybank.properties";
+
+    private static final Properties FILE = load();
+
+    private AppConfig() {}
+
+    private static Properties load() {
+        Properties p = new Properties();
+        Path local = Paths.get(FILE_NAME);
+        try {
+            if (Files.isRegularFile(local)) {
+                try (InputStream in = Files.newInputStream(local)) { p.load(in); }
+            } else {
+                try (InputStream in = AppConfig.class.getClassLoader().getResourceAsStream(FILE_NAME)) {
+                    if (in != null) p.load(in);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("❌ Could not read " + FILE_NAME + ": " + e.getMessage());
+        }
+        return p;
+    }
+
+    public static String get(String key, String def) {
+        String v = System.getProperty(key);
+        if (v == null) v = System.getenv(key.toUpperCase(Locale.ROOT).replace('.', '_'));
+        if (v == null) v = FILE.getProperty(key);
+        return v == null ? def : v.trim();
+    }
+
+    public static int getInt(String key, int def) {
+        String v = get(key, null);
+        if (v == null || v.isEmpty()) return def;
+        try {
+            return Integer.parseInt(v);
+        } catch (NumberFormatException e) {
+            System.err.println("❌ Invalid integer for " + key + ": " + v);
+            return def;
+        }
+    }
+
+    public static long getLong(String key, long def) {
+        String v = get(key, null);
+        if (v == null || v.isEmpty()) return def;
+        try {
+            return Long.parseLong(v);
+        } catch (NumberFormatException e) {
+            System.err.println("❌ Invalid number for " + key + ": " + v);
+            return def;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean def) {
+        String v = get(key, null);
+        return v == null || v.isEmpty() ? def : Boolean.parseBoolean(v);
+    }
+}
@@ -0,0 +1,522 @@
+package com.mybank.db;
+
+import com.mybank.metrics.LatencyHistogram;
+import com.mybank.metrics.Metrics;
+import com.mybank.metrics.Operation;
+import com.mybank.trace.SlowQueryLog;
+import com.mybank.trace.Trace;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Small bounded JDBC connection pool.
+ *
+ * Borrowers wait up to {@code borrowTimeoutMs} for a free slot. Idle connections are reused
+ * most-recently-used first, validated on borrow once they have been idle for a while, and
+ * closed by a background evictor after {@code idleTimeoutMs} (keeping {@code minIdle} warm).
+ * Each physical connection keeps an LRU cache of prepared statements, so the usual
+ * {@code try (PreparedStatement ps = c.prepareStatement(sql))} pattern in the DAOs does not
+ * re-prepare on every call. Closing one clears its parameters and puts back any fetch size, max
+ * rows, query timeout or fetch direction the borrower set. Closing the connection closes any
+ * statement the borrower left open; its handle then fails like any closed statement, even once
+ * the same cached statement is leased again.
+ *
+ * Borrow waits and prepared statement executions are reported to the thread's {@link Trace},
+ * and executions slower than the threshold to the {@link SlowQueryLog}.
+ */
+public class ConnectionPool implements DataSource, AutoCloseable {
+    private static final Operation ACQUIRE = Metrics.op("db.getConnection");
+
+    private final PoolConfig config;
+    private final Properties connectionProps = new Properties();
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final LatencyHistogram waits = new LatencyHistogram();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+    private PrintWriter logWriter;
+    private int loginTimeout;
+
+    public ConnectionPool(PoolConfig config) {
+        this.config = config;
+        connectionProps.setProperty("user", config.getUser());
+        connectionProps.setProperty("password", config.getPassword());
+        if (config.getUrl().startsWith("jdbc:mysql:") && !config.getUrl().contains("rewriteBatchedStatements")) {
+            // lets executeBatch() send multi-row INSERTs instead of one statement per row
+            connectionProps.setProperty("rewriteBatchedStatements", String.valueOf(config.isRewriteBatchedStatements()));
+        }
+        permits = new Semaphore(config.getMaxSize(), true);
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mybank-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000, Math.min(config.getIdleTimeoutMs() / 2, 30_000));
+        evictor.scheduleWithFixedDelay(this::maintain, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public PoolConfig getConfig() { return config; }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        long start = System.nanoTime();
+        boolean acquired;
+        waiting.incrementAndGet();
+        try {
+            acquired = permits.tryAcquire(config.getBorrowTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        if (!acquired) {
+            timeouts.increment();
+            SQLException e = new SQLTransientConnectionException("Timed out after " + config.getBorrowTimeoutMs()
+                    + " ms waiting for a database connection (" + stats() + ")");
+            ACQUIRE.failed(start, e);
+            throw e;
+        }
+        try {
+            PooledConnection pc = takeIdle();
+            if (pc == null) pc = open();
+            recordWait(System.nanoTime() - start);
+            active.incrementAndGet();
+            borrows.increment();
+            return pc.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            ACQUIRE.failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pooled connections use the configured credentials");
+    }
+
+    public PoolStats stats() {
+        return new PoolStats(active.get(), idle.size(), config.getMaxSize(), waiting.get(),
+                borrows.sum(), timeouts.sum(), created.sum(), destroyed.sum(),
+                totalWaitNanos.sum() / 1_000, waits.snapshot().percentile(0.99) / 1_000,
+                statementHits.sum(), statementMisses.sum());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) destroy(pc);
+    }
+
+    private PooledConnection takeIdle() {
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - pc.lastUsed < config.getValidateAfterIdleMs() || isValid(pc)) return pc;
+            destroy(pc);
+        }
+        return null;
+    }
+
+    private boolean isValid(PooledConnection pc) {
+        try {
+            return pc.physical.isValid(config.getValidationTimeoutSec());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(config.getUrl(), connectionProps);
+        created.increment();
+        return new PooledConnection(physical);
+    }
+
+    private void release(PooledConnection pc, boolean broken) {
+        active.decrementAndGet();
+        try {
+            if (!broken && !closed && reset(pc)) {
+                pc.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(pc);
+            } else {
+                destroy(pc);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean reset(PooledConnection pc) {
+        try {
+            if (!pc.physical.getAutoCommit()) {
+                pc.physical.rollback();
+                pc.physical.setAutoCommit(true);
+            }
+            pc.physical.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void destroy(PooledConnection pc) {
+        pc.statements.closeAll();
+        try {
+            pc.physical.close();
+        } catch (SQLException ignore) {
+            // already unusable
+        }
+        destroyed.increment();
+    }
+
+    /** Evicts connections idle past the timeout and tops the pool back up to {@code minIdle}. */
+    private void maintain() {
+        try {
+            long cutoff = System.currentTimeMillis() - config.getIdleTimeoutMs();
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && idle.size() > config.getMinIdle()) {
+                PooledConnection pc = it.next();
+                if (pc.lastUsed < cutoff && idle.remove(pc)) destroy(pc);
+            }
+            while (!closed && idle.size() + active.get() < config.getMinIdle() && permits.tryAcquire()) {
+                try {
+                    PooledConnection pc = open();
+                    pc.lastUsed = System.currentTimeMillis();
+                    idle.offerLast(pc);
+                } finally {
+                    permits.release();
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("❌ Connection pool maintenance failed: " + e.getMessage());
+        }
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.add(nanos);
+        waits.record(nanos);
+        ACQUIRE.record(nanos);
+        Trace.poolWait(nanos);
+    }
+
+    private static boolean isConnectionError(Throwable t) {
+        return t instanceof SQLException && ((SQLException) t).getSQLState() != null
+                && ((SQLException) t).getSQLState().startsWith("08");
+    }
+
+    // ======= DataSource boilerplate =======
+
+    @Override public PrintWriter getLogWriter() { return logWriter; }
+    @Override public void setLogWriter(PrintWriter out) { this.logWriter = out; }
+    @Override public void setLoginTimeout(int seconds) { this.loginTimeout = seconds; }
+    @Override public int getLoginTimeout() { return loginTimeout; }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) return iface.cast(this);
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    // ======= Pooled connection and its statement cache =======
+
+    private final class PooledConnection {
+        final Connection physical;
+        final StatementCache statements = new StatementCache(config.getStatementCacheSize());
+        volatile long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Lease(this));
+        }
+    }
+
+    /** Handle given to a borrower; {@code close()} returns the physical connection to the pool. */
+    private final class Lease implements InvocationHandler {
+        private final PooledConnection pc;
+        // statements leased through this handle and not closed yet
+        private final Set<CachedStatement> open = new HashSet<>();
+        private boolean closed;
+        private boolean broken;
+
+        Lease(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        // before the next borrower can get them, so a leaked handle cannot run in their transaction
+                        for (CachedStatement cs : new ArrayList<>(open)) cs.closeQuietlyFor(this);
+                        open.clear();
+                        release(pc, broken);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pc.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pc.physical + "]";
+                default:
+                    break;
+            }
+            if (closed) throw new SQLException("Connection is closed");
+            try {
+                if ("prepareStatement".equals(method.getName())) {
+                    Class<?>[] types = method.getParameterTypes();
+                    if (types.length == 1) return prepare((Connection) proxy, (String) args[0], null);
+                    if (types.length == 2 && types[1] == int.class) {
+                        return prepare((Connection) proxy, (String) args[0], (Integer) args[1]);
+                    }
+                }
+                return method.invoke(pc.physical, args);
+            } catch (InvocationTargetException e) {
+                if (isConnectionError(e.getCause())) broken = true;
+                throw e.getCause();
+            } catch (SQLException e) {
+                if (isConnectionError(e)) broken = true;
+                throw e;
+            }
+        }
+
+        private PreparedStatement prepare(Connection owner, String sql, Integer keys) throws SQLException {
+            String key = (keys == null ? "-|" : keys + "|") + sql;
+            CachedStatement cs = pc.statements.get(key);
+            if (cs != null && !cs.inUse && !cs.stale) {
+                statementHits.increment();
+                return cs.lease(this, owner);
+            }
+            statementMisses.increment();
+            PreparedStatement ps = keys == null ? pc.physical.prepareStatement(sql) : pc.physical.prepareStatement(sql, keys);
+            CachedStatement fresh = new CachedStatement(ps, sql, ConnectionPool.this);
+            // a second concurrent use of the same SQL on this connection is simply not cached
+            if ((cs == null || cs.stale) && pc.statements.capacity > 0) {
+                fresh.cached = true;
+                pc.statements.put(key, fresh);
+            }
+            return fresh.lease(this, owner);
+        }
+    }
+
+    private static final class StatementCache extends LinkedHashMap<String, CachedStatement> {
+        final int capacity;
+
+        StatementCache(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+            if (size() <= capacity) return false;
+            CachedStatement cs = eldest.getValue();
+            cs.cached = false;
+            if (!cs.inUse) cs.closeQuietly();
+            return true;
+        }
+
+        void closeAll() {
+            for (CachedStatement cs : values()) cs.closeQuietly();
+            clear();
+        }
+    }
+
+    private static final class CachedStatement implements InvocationHandler {
+        private static final Set<String> TUNING = new HashSet<>(Arrays.asList(
+                "setFetchSize", "setMaxRows", "setLargeMaxRows", "setQueryTimeout", "setFetchDirection"));
+
+        final PreparedStatement physical;
+        final String sql;
+        final DataSource pool;
+        // values bound so far, for EXPLAIN if the statement turns out slow
+        final List<Object> params = SlowQueryLog.isEnabled() ? new ArrayList<>() : null;
+        boolean cached;
+        boolean inUse;
+        // while in use: the handle given out (a new one per lease), the connection it came from
+        // and that connection's lease, which closes it if the borrower does not
+        PreparedStatement proxy;
+        Connection owner;
+        Lease lease;
+        // closed because its settings could not be put back; replaced on the next prepare
+        boolean stale;
+        // what the statement had before a borrower changed fetch size, max rows, timeout or
+        // direction; put back on close so the next borrower of the same SQL does not inherit them
+        int[] defaults;
+
+        CachedStatement(PreparedStatement physical, String sql, DataSource pool) {
+            this.physical = physical;
+            this.sql = sql;
+            this.pool = pool;
+        }
+
+        PreparedStatement lease(Lease by, Connection owner) {
+            inUse = true;
+            this.owner = owner;
+            this.lease = by;
+            by.open.add(this);
+            proxy = (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, this);
+            return proxy;
+        }
+
+        /** Closes the statement on behalf of {@code by}'s connection if the borrower left it open. */
+        void closeQuietlyFor(Lease by) {
+            if (!inUse || lease != by) return;
+            try {
+                giveBack();
+            } catch (SQLException ignore) {
+                // only reached for an uncached statement, which is gone either way
+            }
+        }
+
+        private void giveBack() throws SQLException {
+            inUse = false;
+            proxy = null;
+            owner = null;
+            lease.open.remove(this);
+            lease = null;
+            if (params != null) params.clear();
+            if (cached) {
+                try {
+                    physical.clearParameters();
+                    physical.clearBatch();
+                    if (defaults != null) {
+                        // max rows first: some drivers refuse a fetch size above it
+                        physical.setMaxRows(defaults[1]);
+                        physical.setQueryTimeout(defaults[2]);
+                        physical.setFetchDirection(defaults[3]);
+                        physical.setFetchSize(defaults[0]);
+                        defaults = null;
+                    }
+                } catch (SQLException e) {
+                    stale = true;
+                    closeQuietly();
+                }
+            } else {
+                physical.close();
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                physical.close();
+            } catch (SQLException ignore) {
+                // connection is going away anyway
+            }
+        }
+
+        @Override
+        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+            // handles of earlier leases (closed, or left open and closed with their connection) stay closed
+            boolean current = p == proxy;
+            switch (method.getName()) {
+                case "close":
+                    if (current) giveBack();
+                    return null;
+                case "isClosed":
+                    return !current || physical.isClosed();
+                case "getConnection":
+                    if (current) return owner;
+                    break;
+                case "equals":
+                    return p == args[0];
+                case "hashCode":
+                    return System.identityHashCode(p);
+                default:
+                    break;
+            }
+            if (!current) throw new SQLException("Statement is closed");
+            String name = method.getName();
+            if (params != null && args != null && args.length >= 2 && args[0] instanceof Integer && name.startsWith("set")) {
+                bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+            } else if (params != null && name.equals("clearParameters")) {
+                params.clear();
+            }
+            if (defaults == null && cached && TUNING.contains(name)) {
+                defaults = new int[] {physical.getFetchSize(), physical.getMaxRows(),
+                        physical.getQueryTimeout(), physical.getFetchDirection()};
+            }
+            if (!name.startsWith("execute")) {
+                try {
+                    return method.invoke(physical, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+            long start = System.nanoTime();
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                long nanos = System.nanoTime() - start;
+                Trace.statement(sql, nanos);
+                if (SlowQueryLog.isSlow(nanos)) SlowQueryLog.statement(pool, sql, params, nanos);
+            }
+        }
+
+        private void bind(int index, Object value) {
+            while (params.size() < index) params.add(null);
+            params.set(index - 1, value);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.mybank.db;
+
+import com.mybank.config.AppConfig;
+
+/**
+ * Connection settings and sizing for a {@link ConnectionPool}.
+ */
+public class PoolConfig {
+    private String url = "jdbc:mysql://localhost:3306/mybank_system?useSSL=false&serverTimezone=UTC";
+    private String user = "root";
+    private String password = "";
+    private int maxSize = 10;
+    private int minIdle = 2;
+    private long idleTimeoutMs = 300_000;
+    private long borrowTimeoutMs = 5_000;
+    private long validateAfterIdleMs = 1_000;
+    private int validationTimeoutSec = 2;
+    private int statementCacheSize = 64;
+    private boolean rewriteBatchedStatements = true;
+
+    public PoolConfig() {}
+
+    /**
+     * Reads {@code mybank.db.*} settings, falling back to the local defaults above.
+     */
+    public static PoolConfig fromAppConfig() {
+        return fromAppConfig("mybank.db");
+    }
+
+    public static PoolConfig fromAppConfig(String prefix) {
+        PoolConfig d = new PoolConfig();
+        PoolConfig c = new PoolConfig();
+        c.setUrl(AppConfig.get(prefix + ".url", d.url));
+        c.setUser(AppConfig.get(prefix + ".user", d.user));
+        c.setPassword(AppConfig.get(prefix + ".password", d.password));
+        c.setMaxSize(AppConfig.getInt(prefix + ".pool.maxSize", d.maxSize));
+        c.setMinIdle(AppConfig.getInt(prefix + ".pool.minIdle", d.minIdle));
+        c.setIdleTimeoutMs(AppConfig.getLong(prefix + ".pool.idleTimeoutMs", d.idleTimeoutMs));
+        c.setBorrowTimeoutMs(AppConfig.getLong(prefix + ".pool.borrowTimeoutMs", d.borrowTimeoutMs));
+        c.setValidateAfterIdleMs(AppConfig.getLong(prefix + ".pool.validateAfterIdleMs", d.validateAfterIdleMs));
+        c.setValidationTimeoutSec(AppConfig.getInt(prefix + ".pool.validationTimeoutSec", d.validationTimeoutSec));
+        c.setStatementCacheSize(AppConfig.getInt(prefix + ".pool.statementCacheSize", d.statementCacheSize));
+        c.setRewriteBatchedStatements(AppConfig.getBoolean(prefix + ".rewriteBatchedStatements", d.rewriteBatchedStatements));
+        return c;
+    }
+
+    public String getUrl() { return url; }
+    public void setUrl(String url) { this.url = url; }
+    public String getUser() { return user; }
+    public void setUser(String user) { this.user = user; }
+    public String getPassword() { return password; }
+    public void setPassword(String password) { this.password = password; }
+    public int getMaxSize() { return maxSize; }
+    public void setMaxSize(int maxSize) { this.maxSize = Math.max(1, maxSize); }
+    public int getMinIdle() { return minIdle; }
+    public void setMinIdle(int minIdle) { this.minIdle = Math.max(0, minIdle); }
+    public long getIdleTimeoutMs() { return idleTimeoutMs; }
+    public void setIdleTimeoutMs(long idleTimeoutMs) { this.idleTimeoutMs = idleTimeoutMs; }
+    public long getBorrowTimeoutMs() { return borrowTimeoutMs; }
+    public void setBorrowTimeoutMs(long borrowTimeoutMs) { this.borrowTimeoutMs = borrowTimeoutMs; }
+    public long getValidateAfterIdleMs() { return validateAfterIdleMs; }
+    public void setValidateAfterIdleMs(long validateAfterIdleMs) { this.validateAfterIdleMs = validateAfterIdleMs; }
+    public int getValidationTimeoutSec() { return validationTimeoutSec; }
+    public void setValidationTimeoutSec(int validationTimeoutSec) { this.validationTimeoutSec = validationTimeoutSec; }
+    public int getStatementCacheSize() { return statementCacheSize; }
+    public void setStatementCacheSize(int statementCacheSize) { this.statementCacheSize = Math.max(0, statementCacheSize); }
+    public boolean isRewriteBatchedStatements() { return rewriteBatchedStatements; }
+    public void setRewriteBatchedStatements(boolean rewriteBatchedStatements) { this.rewriteBatchedStatements = rewriteBatchedStatements; }
+}
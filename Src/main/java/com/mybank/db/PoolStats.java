@@ -0,0 +1,61 @@
+package com.mybank.db;
+
+/**
+ * Point-in-time snapshot of a {@link ConnectionPool}. Wait times are in microseconds.
+ */
+public class PoolStats {
+    private final int active;
+    private final int idle;
+    private final int maxSize;
+    private final int waiting;
+    private final long borrows;
+    private final long timeouts;
+    private final long created;
+    private final long destroyed;
+    private final long totalWaitMicros;
+    private final long borrowP99Micros;
+    private final long statementCacheHits;
+    private final long statementCacheMisses;
+
+    PoolStats(int active, int idle, int maxSize, int waiting, long borrows, long timeouts,
+              long created, long destroyed, long totalWaitMicros, long borrowP99Micros,
+              long statementCacheHits, long statementCacheMisses) {
+        this.active = active;
+        this.idle = idle;
+        this.maxSize = maxSize;
+        this.waiting = waiting;
+        this.borrows = borrows;
+        this.timeouts = timeouts;
+        this.created = created;
+        this.destroyed = destroyed;
+        this.totalWaitMicros = totalWaitMicros;
+        this.borrowP99Micros = borrowP99Micros;
+        this.statementCacheHits = statementCacheHits;
+        this.statementCacheMisses = statementCacheMisses;
+    }
+
+    public int getActive() { return active; }
+    public int getIdle() { return idle; }
+    public int getMaxSize() { return maxSize; }
+    public int getWaiting() { return waiting; }
+    public long getBorrows() { return borrows; }
+    public long getTimeouts() { return timeouts; }
+    public long getCreated() { return created; }
+    public long getDestroyed() { return destroyed; }
+    public long getTotalWaitMicros() { return totalWaitMicros; }
+    public long getBorrowP99Micros() { return borrowP99Micros; }
+    public long getStatementCacheHits() { return statementCacheHits; }
+    public long getStatementCacheMisses() { return statementCacheMisses; }
+
+    public double getAverageWaitMicros() {
+        return borrows == 0 ? 0.0 : (double) totalWaitMicros / borrows;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("active=%d idle=%d max=%d waiting=%d borrows=%d timeouts=%d created=%d destroyed=%d "
+                        + "waitAvg=%.1fus waitP99=%dus stmtCache=%d/%d",
+                active, idle, maxSize, waiting, borrows, timeouts, created, destroyed,
+                getAverageWaitMicros(), borrowP99Micros, statementCacheHits, statementCacheHits + statementCacheMisses);
+    }
+}
@@ -0,0 +1,258 @@
+package com.mybank.db;
+
+import com.mybank.config.AppConfig;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends read-only queries to replicas of a primary database, round-robin.
+ *
+ * A background check measures each replica's replication lag every {@code checkMs}; replicas
+ * that cannot be reached, have stopped replicating or lag more than {@code maxLagMs} get no
+ * reads until a later check passes. With no usable replica, reads go to the primary.
+ *
+ * Read-your-own-writes: writers call {@link #wrote(int)} after committing, and that user's reads
+ * stay on the primary for {@code readYourWritesMs}, long enough for a healthy replica to catch up.
+ *
+ * Routers are looked up by primary with {@link #of(DataSource)}, like the lookup caches, so
+ * everything built on one pool shares them. A primary without a registered router reads from
+ * itself.
+ */
+public final class ReplicaRouter implements AutoCloseable {
+    private static final Map<DataSource, ReplicaRouter> BY_PRIMARY = new ConcurrentHashMap<>();
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagMs;
+    private final long readYourWritesNanos;
+    private final LagProbe probe;
+    private final Map<Integer, Long> lastWrite = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder stickyReads = new LongAdder();
+    private final LongAdder fallbackReads = new LongAdder();
+    private ScheduledExecutorService checker;
+
+    public ReplicaRouter(DataSource primary, List<? extends DataSource> replicas, long maxLagMs,
+                         long readYourWritesMs, LagProbe probe) {
+        this.primary = primary;
+        List<Replica> list = new ArrayList<>();
+        for (int i = 0; i < replicas.size(); i++) list.add(new Replica(i, replicas.get(i)));
+        this.replicas = Collections.unmodifiableList(list);
+        this.maxLagMs = maxLagMs;
+        this.readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(readYourWritesMs);
+        this.probe = probe;
+    }
+
+    /**
+     * Builds the router for {@code primary} from {@code mybank.db.replicas} (comma-separated JDBC
+     * URLs; empty for none) and the {@code mybank.db.replica.*} settings, registers it and starts
+     * its health check. Replicas log in with the primary's credentials unless
+     * {@code mybank.db.replica.user}/{@code password} are set.
+     */
+    public static ReplicaRouter fromAppConfig(DataSource primary, PoolConfig primaryConfig) {
+        List<ConnectionPool> pools = new ArrayList<>();
+        for (String url : AppConfig.get("mybank.db.replicas", "").split(",")) {
+            if (url.trim().isEmpty()) continue;
+            PoolConfig c = PoolConfig.fromAppConfig("mybank.db.replica");
+            c.setUrl(url.trim());
+            c.setUser(AppConfig.get("mybank.db.replica.user", primaryConfig.getUser()));
+            c.setPassword(AppConfig.get("mybank.db.replica.password", primaryConfig.getPassword()));
+            pools.add(new ConnectionPool(c));
+        }
+        ReplicaRouter r = new ReplicaRouter(primary, pools,
+                AppConfig.getLong("mybank.db.replica.maxLagMs", 5_000),
+                AppConfig.getLong("mybank.db.replica.readYourWritesMs", 10_000),
+                LagProbe.REPLICATION_STATUS);
+        register(r);
+        if (!pools.isEmpty()) r.start(AppConfig.getLong("mybank.db.replica.checkMs", 2_000));
+        return r;
+    }
+
+    public static void register(ReplicaRouter router) {
+        BY_PRIMARY.put(router.primary, router);
+    }
+
+    /** The router registered for {@code primary}, or one that sends everything to it. */
+    public static ReplicaRouter of(DataSource primary) {
+        ReplicaRouter r = BY_PRIMARY.get(primary);
+        return r != null ? r : new ReplicaRouter(primary, Collections.<DataSource>emptyList(), 0, 0, LagProbe.REPLICATION_STATUS);
+    }
+
+    public DataSource primary() { return primary; }
+
+    public boolean hasReplicas() { return !replicas.isEmpty(); }
+
+    /** Runs the health check now and then every {@code checkMs} on a daemon thread. */
+    public synchronized void start(long checkMs) {
+        if (checker != null) return;
+        check();
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mybank-replica-check");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(100, checkMs);
+        checker.scheduleWithFixedDelay(this::check, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Connection for a read-only query about {@code userId}'s data. Close it as usual. Reads
+     * that must see every committed write (before a write, or for money checks) should use the
+     * primary instead.
+     */
+    public Connection readConnection(int userId) throws SQLException {
+        if (replicas.isEmpty()) return primary.getConnection();
+        Long wrote = lastWrite.get(userId);
+        if (wrote != null) {
+            if (System.nanoTime() - wrote < readYourWritesNanos) {
+                stickyReads.increment();
+                return primary.getConnection();
+            }
+            lastWrite.remove(userId, wrote);
+        }
+        int n = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), n);
+        for (int i = 0; i < n; i++) {
+            Replica r = replicas.get((start + i) % n);
+            if (!r.usable(maxLagMs)) continue;
+            try {
+                Connection c = r.ds.getConnection();
+                replicaReads.increment();
+                return c;
+            } catch (SQLException e) {
+                r.markDown(e);
+            }
+        }
+        fallbackReads.increment();
+        return primary.getConnection();
+    }
+
+    /** Call after committing a write that changes what {@code userId} reads back. */
+    public void wrote(int userId) {
+        if (!replicas.isEmpty()) lastWrite.put(userId, System.nanoTime());
+    }
+
+    /** Measures every replica once. */
+    public void check() {
+        for (Replica r : replicas) {
+            try (Connection c = r.ds.getConnection()) {
+                r.lagMs = probe.lagMs(c);
+                if (r.lagMs < 0 && r.error == null) System.err.println("⚠️ Replica " + r.index + " is not replicating");
+                r.error = r.lagMs < 0 ? "not replicating" : null;
+            } catch (SQLException | RuntimeException e) {
+                r.markDown(e);
+            }
+        }
+        // forget writers whose window has passed, so the map only holds recent ones
+        long now = System.nanoTime();
+        lastWrite.values().removeIf(t -> now - t >= readYourWritesNanos);
+    }
+
+    public List<ReplicaStatus> status() {
+        List<ReplicaStatus> out = new ArrayList<>(replicas.size());
+        for (Replica r : replicas) out.add(new ReplicaStatus(r.index, r.usable(maxLagMs), r.lagMs, r.error));
+        return out;
+    }
+
+    public long getReplicaReads() { return replicaReads.sum(); }
+    public long getStickyReads() { return stickyReads.sum(); }
+    public long getFallbackReads() { return fallbackReads.sum(); }
+
+    @Override
+    public void close() {
+        BY_PRIMARY.remove(primary, this);
+        synchronized (this) {
+            if (checker != null) checker.shutdownNow();
+        }
+        for (Replica r : replicas) {
+            if (r.ds instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) r.ds).close();
+                } catch (Exception e) {
+                    System.err.println("❌ Could not close replica " + r.index + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("replicas=%s reads: replica=%d sticky=%d fallback=%d",
+                status(), replicaReads.sum(), stickyReads.sum(), fallbackReads.sum());
+    }
+
+    /** Replication lag of the server behind a connection, in ms, or -1 if it has stopped replicating. */
+    public interface LagProbe {
+        long lagMs(Connection c) throws SQLException;
+
+        /**
+         * MySQL's {@code SHOW REPLICA STATUS} (8.0.22+, else {@code SHOW SLAVE STATUS}); a server
+         * that is not a replica at all, or not MySQL, counts as current.
+         */
+        LagProbe REPLICATION_STATUS = c -> {
+            String product = c.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT);
+            if (!product.contains("mysql") && !product.contains("mariadb")) {
+                try (Statement st = c.createStatement()) {
+                    st.execute("SELECT 1");
+                }
+                return 0;
+            }
+            try (Statement st = c.createStatement()) {
+                ResultSet rs;
+                String column;
+                try {
+                    rs = st.executeQuery("SHOW REPLICA STATUS");
+                    column = "Seconds_Behind_Source";
+                } catch (SQLException e) {
+                    rs = st.executeQuery("SHOW SLAVE STATUS");
+                    column = "Seconds_Behind_Master";
+                }
+                try {
+                    if (!rs.next()) return 0;
+                    long secs = rs.getLong(column);
+                    return rs.wasNull() ? -1 : secs * 1000;
+                } finally {
+                    rs.close();
+                }
+            }
+        };
+    }
+
+    private static final class Replica {
+        final int index;
+        final DataSource ds;
+        volatile long lagMs = -1; // no reads before the first check
+        volatile String error = "not checked yet";
+
+        Replica(int index, DataSource ds) {
+            this.index = index;
+            this.ds = ds;
+        }
+
+        boolean usable(long maxLagMs) {
+            return error == null && lagMs >= 0 && lagMs <= maxLagMs;
+        }
+
+        void markDown(Exception e) {
+            if (error == null) System.err.println("⚠️ Replica " + index + " is down: " + e.getMessage());
+            lagMs = -1;
+            error = String.valueOf(e.getMessage());
+        }
+    }
+}
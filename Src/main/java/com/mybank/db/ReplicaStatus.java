@@ -0,0 +1,32 @@
+package com.mybank.db;
+
+/**
+ * One replica as of the last {@link ReplicaRouter} health check.
+ */
+public class ReplicaStatus {
+    private final int index;
+    private final boolean usable;
+    private final long lagMs;
+    private final String error;
+
+    ReplicaStatus(int index, boolean usable, long lagMs, String error) {
+        this.index = index;
+        this.usable = usable;
+        this.lagMs = lagMs;
+        this.error = error;
+    }
+
+    /** Position in {@code mybank.db.replicas}, from 0. */
+    public int getIndex() { return index; }
+    /** Whether it currently gets reads. */
+    public boolean isUsable() { return usable; }
+    /** Replication lag, or -1 if unknown (down or not replicating). */
+    public long getLagMs() { return lagMs; }
+    public String getError() { return error; }
+
+    @Override
+    public String toString() {
+        if (error != null) return "#" + index + " down (" + error + ")";
+        return "#" + index + (usable ? " ok" : " lagging") + " lag=" + lagMs + "ms";
+    }
+}
@@ -0,0 +1,278 @@
+package com.mybank.db;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Brings the database schema up to date with numbered migrations, applied in order and
+ * recorded in {@code schema_version}.
+ *
+ * Migrations are SQL scripts on the classpath under {@code db/migration}, named
+ * {@code V<n>__<description>.sql} and listed in {@link #MIGRATIONS}. Statements end with
+ * {@code ;} at the end of a line; {@code --} comments are ignored (neither may appear inside a
+ * string literal). Once applied, a script must not change: its checksum is stored, and a
+ * changed script stops the run. Add a new migration instead.
+ *
+ * MySQL commits every DDL statement on its own, so a migration that fails half way cannot be
+ * rolled back. It is simply not recorded, and the next run starts it again from the top, which
+ * is why statements must be safe to repeat: creating a table, column, index or key that
+ * already exists is skipped with a warning rather than treated as an error. Concurrent
+ * instances are serialised with {@code GET_LOCK} on MySQL.
+ */
+public final class SchemaMigrator {
+    public static final String TABLE = "schema_version";
+
+    /** In order; append new scripts here. */
+    static final String[] MIGRATIONS = {
+            "V1__baseline.sql",
+            "V2__reconcile_dao_columns.sql",
+            "V3__performance_indexes.sql",
+            "V4__archive_export_index.sql",
+            "V5__sharding.sql",
+            "V6__idempotency_keys.sql",
+            "V7__users_version.sql",
+    };
+
+    private static final String LOCATION = "/db/migration/";
+    private static final String LOCK_NAME = "mybank_schema_migration";
+    private static final int LOCK_TIMEOUT_SEC = 60;
+    private static final Pattern NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+    private final DataSource ds;
+    private final List<Migration> migrations;
+
+    public SchemaMigrator(DataSource ds) {
+        this(ds, load());
+    }
+
+    SchemaMigrator(DataSource ds, List<Migration> migrations) {
+        this.ds = ds;
+        this.migrations = migrations;
+    }
+
+    /**
+     * Applies every pending migration and returns how many were applied (0 if the schema was
+     * already current).
+     */
+    public int migrate() throws SQLException {
+        try (Connection c = ds.getConnection()) {
+            c.setAutoCommit(true);
+            boolean mysql = isMySql(c);
+            if (mysql) lock(c);
+            try {
+                createVersionTable(c);
+                Map<Integer, Long> applied = applied(c);
+                verify(applied);
+                int n = 0;
+                for (Migration m : migrations) {
+                    if (applied.containsKey(m.version)) continue;
+                    apply(c, m);
+                    n++;
+                }
+                return n;
+            } finally {
+                if (mysql) unlock(c);
+            }
+        }
+    }
+
+    /** Highest version recorded in {@code schema_version}, or 0 for a database never migrated. */
+    public int currentVersion() throws SQLException {
+        try (Connection c = ds.getConnection()) {
+            createVersionTable(c);
+            try (Statement st = c.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT MAX(version) FROM " + TABLE)) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    public int latestVersion() {
+        return migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version;
+    }
+
+    private void verify(Map<Integer, Long> applied) throws SQLException {
+        for (Migration m : migrations) {
+            Long sum = applied.get(m.version);
+            if (sum != null && sum != m.checksum) {
+                throw new SQLException("Migration " + m.name + " was changed after it was applied to this database; "
+                        + "restore it and add a new migration instead");
+            }
+        }
+        int newest = applied.keySet().stream().max(Integer::compare).orElse(0);
+        if (newest > latestVersion()) {
+            System.err.println("⚠️ Database schema is at version " + newest + ", newer than this build knows ("
+                    + latestVersion() + "); running anyway");
+        }
+    }
+
+    private void apply(Connection c, Migration m) throws SQLException {
+        long start = System.nanoTime();
+        try (Statement st = c.createStatement()) {
+            for (int i = 0; i < m.statements.size(); i++) {
+                try {
+                    st.execute(m.statements.get(i));
+                } catch (SQLException e) {
+                    if (!alreadyDone(e)) {
+                        throw new SQLException("Migration " + m.name + ", statement " + (i + 1) + " failed: " + e.getMessage(),
+                                e.getSQLState(), e.getErrorCode(), e);
+                    }
+                    System.err.println("⚠️ " + m.name + ", statement " + (i + 1) + " skipped: " + e.getMessage());
+                }
+            }
+        }
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO " + TABLE + " (version, description, checksum, execution_ms) VALUES (?,?,?,?)")) {
+            ps.setInt(1, m.version);
+            ps.setString(2, m.description);
+            ps.setLong(3, m.checksum);
+            ps.setLong(4, ms);
+            ps.executeUpdate();
+        }
+        System.out.println("✅ Applied migration " + m.name + " in " + ms + " ms");
+    }
+
+    // the object a statement creates is already there: a database patched by hand, or a
+    // migration that failed part way on a database without transactional DDL
+    private static boolean alreadyDone(SQLException e) {
+        switch (e.getErrorCode()) {
+            case 1050: // MySQL: table exists
+            case 1060: // MySQL: duplicate column name
+            case 1061: // MySQL: duplicate key name
+            case 1826: // MySQL: duplicate foreign key constraint name
+            case 42101: // H2: table or view exists
+            case 42111: // H2: index exists
+            case 42121: // H2: duplicate column name
+            case 90045: // H2: constraint exists
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void createVersionTable(Connection c) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                    + "version INT PRIMARY KEY, "
+                    + "description VARCHAR(100) NOT NULL, "
+                    + "checksum BIGINT NOT NULL, "
+                    + "execution_ms BIGINT NOT NULL, "
+                    + "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        }
+    }
+
+    private static Map<Integer, Long> applied(Connection c) throws SQLException {
+        Map<Integer, Long> out = new HashMap<>();
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT version, checksum FROM " + TABLE)) {
+            while (rs.next()) out.put(rs.getInt(1), rs.getLong(2));
+        }
+        return out;
+    }
+
+    private static boolean isMySql(Connection c) throws SQLException {
+        String product = c.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT);
+        return product.contains("mysql") || product.contains("mariadb");
+    }
+
+    private static void lock(Connection c) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.setInt(2, LOCK_TIMEOUT_SEC);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new SQLException("Another instance has been migrating the schema for over " + LOCK_TIMEOUT_SEC + " s");
+                }
+            }
+        }
+    }
+
+    private static void unlock(Connection c) {
+        try (PreparedStatement ps = c.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.executeQuery().close();
+        } catch (SQLException e) {
+            // released anyway when the session ends
+            System.err.println("⚠️ Could not release the migration lock: " + e.getMessage());
+        }
+    }
+
+    static List<Migration> load() {
+        List<Migration> out = new ArrayList<>();
+        for (String name : MIGRATIONS) {
+            try (InputStream in = SchemaMigrator.class.getResourceAsStream(LOCATION + name)) {
+                if (in == null) throw new IllegalStateException("Migration " + name + " missing from the classpath");
+                out.add(Migration.parse(name, new String(in.readAllBytes(), StandardCharsets.UTF_8)));
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot read migration " + name, e);
+            }
+        }
+        for (int i = 1; i < out.size(); i++) {
+            if (out.get(i).version <= out.get(i - 1).version) {
+                throw new IllegalStateException("Migrations out of order: " + out.get(i - 1).name + ", " + out.get(i).name);
+            }
+        }
+        return Collections.unmodifiableList(out);
+    }
+
+    static final class Migration {
+        final String name;
+        final int version;
+        final String description;
+        final List<String> statements;
+        final long checksum;
+
+        private Migration(String name, int version, String description, List<String> statements, long checksum) {
+            this.name = name;
+            this.version = version;
+            this.description = description;
+            this.statements = statements;
+            this.checksum = checksum;
+        }
+
+        static Migration parse(String name, String script) {
+            Matcher m = NAME.matcher(name);
+            if (!m.matches()) throw new IllegalStateException("Migration name must look like V1__what_it_does.sql: " + name);
+            List<String> statements = new ArrayList<>();
+            StringBuilder current = new StringBuilder();
+            for (String line : script.split("\\R")) {
+                int comment = line.indexOf("--");
+                String code = (comment < 0 ? line : line.substring(0, comment)).trim();
+                if (code.isEmpty()) continue;
+                if (current.length() > 0) current.append(' ');
+                current.append(code);
+                if (code.endsWith(";")) {
+                    current.setLength(current.length() - 1);
+                    statements.add(current.toString().trim());
+                    current.setLength(0);
+                }
+            }
+            if (current.length() > 0) statements.add(current.toString());
+            // checksum over the statements only, so comments and layout may still be edited
+            CRC32 crc = new CRC32();
+            for (String s : statements) {
+                crc.update(s.getBytes(StandardCharsets.UTF_8));
+                crc.update('\n');
+            }
+            return new Migration(name, Integer.parseInt(m.group(1)), m.group(2).replace('_', ' '),
+                    Collections.unmodifiableList(statements), crc.getValue());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.mybank.event;
+
+import com.mybank.model.Money;
+
+/**
+ * A user's {@code users.balance} changed in a committed transaction.
+ */
+public final class BalanceChanged {
+    private final int userId;
+    private final Money balance;
+    private final long sequence;
+
+    /**
+     * @param balance  the balance right after the change, or null if the writer does not know it
+     *                 (bulk posting) and subscribers should re-read
+     * @param sequence from {@link EventBus#nextSequence()}, taken before the commit
+     */
+    public BalanceChanged(int userId, Money balance, long sequence) {
+        this.userId = userId;
+        this.balance = balance;
+        this.sequence = sequence;
+    }
+
+    public int getUserId() { return userId; }
+    public Money getBalance() { return balance; }
+    public long getSequence() { return sequence; }
+
+    @Override
+    public String toString() {
+        return "BalanceChanged{user=" + userId + ", balance=" + balance + ", seq=" + sequence + "}";
+    }
+}
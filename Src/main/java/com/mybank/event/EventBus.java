@@ -0,0 +1,80 @@
+package com.mybank.event;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * In-process publish/subscribe for domain events ({@link BalanceChanged}, {@link TransactionPosted}).
+ *
+ * Handlers run synchronously on the publishing thread, which is usually a worker that has just
+ * committed; UI subscribers hop to the EDT themselves. A failing handler is logged and does not
+ * stop delivery to the others. Events are best-effort: subscribers that need to be exact should
+ * also reconcile against the database now and then.
+ */
+public final class EventBus {
+    private static final EventBus DEFAULT = new EventBus();
+
+    private final Map<Class<?>, List<Handler<?>>> handlers = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public static EventBus getDefault() {
+        return DEFAULT;
+    }
+
+    /** Subscribes to events of exactly {@code type}. Close the returned subscription to stop. */
+    public <E> Subscription subscribe(Class<E> type, Consumer<? super E> handler) {
+        Handler<E> h = new Handler<>(type, handler);
+        List<Handler<?>> list = handlers.computeIfAbsent(type, k -> new CopyOnWriteArrayList<>());
+        list.add(h);
+        return () -> list.remove(h);
+    }
+
+    /** Lets writers skip work (e.g. reading back balances) that only subscribers need. */
+    public boolean hasSubscribers(Class<?> type) {
+        List<Handler<?>> list = handlers.get(type);
+        return list != null && !list.isEmpty();
+    }
+
+    public void publish(Object event) {
+        List<Handler<?>> list = handlers.get(event.getClass());
+        if (list == null) return;
+        for (Handler<?> h : list) {
+            try {
+                h.deliver(event);
+            } catch (RuntimeException e) {
+                System.err.println("❌ Event handler failed for " + event + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Next value of a process-wide counter. Writers take it while they still hold the row locks,
+     * so for any one row a later commit always carries a higher number.
+     */
+    public long nextSequence() {
+        return sequence.incrementAndGet();
+    }
+
+    public interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final class Handler<E> {
+        final Class<E> type;
+        final Consumer<? super E> consumer;
+
+        Handler(Class<E> type, Consumer<? super E> consumer) {
+            this.type = type;
+            this.consumer = consumer;
+        }
+
+        void deliver(Object event) {
+            consumer.accept(type.cast(event));
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.mybank.event;
+
+import com.mybank.model.Transaction;
+
+/**
+ * A row was committed to {@code transactions}. The payload is shared by all subscribers, so
+ * treat it as read-only.
+ */
+public final class TransactionPosted {
+    private final Transaction transaction;
+
+    public TransactionPosted(Transaction transaction) {
+        this.transaction = transaction;
+    }
+
+    public Transaction getTransaction() { return transaction; }
+
+    public int getUserId() { return transaction.getUserId(); }
+
+    @Override
+    public String toString() {
+        return "TransactionPosted{user=" + transaction.getUserId() + ", id=" + transaction.getTransactionId() + "}";
+    }
+}
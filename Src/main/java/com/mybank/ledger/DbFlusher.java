@@ -0,0 +1,200 @@
+package com.mybank.ledger;
+
+import com.mybank.cache.DataCaches;
+import com.mybank.db.ReplicaRouter;
+import com.mybank.event.EventBus;
+import com.mybank.event.TransactionPosted;
+import com.mybank.model.Money;
+import com.mybank.model.Transaction;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Copies durable journal records into {@code users.balance} and the {@code transactions} table.
+ *
+ * Records are applied in journal order, in batches, each batch in one database transaction
+ * together with {@code ledger_checkpoint.last_seq}. After a restart everything past the
+ * checkpoint is applied again, so the tables converge on the journal exactly once. Journal
+ * segments wholly at or below the checkpoint are then deleted.
+ *
+ * Each record posts the rows {@code TransferService} would have (one per side of a transfer,
+ * with the journal time as {@code created_at}), and a {@link TransactionPosted} for each once
+ * committed.
+ */
+final class DbFlusher implements AutoCloseable {
+    private static final int BATCH = 500;
+
+    private final DataSource ds;
+    private final DataCaches caches;
+    private final EventBus events = EventBus.getDefault();
+    private final Journal journal;
+    private final ConcurrentLinkedQueue<Journal.Record> queue = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+    private volatile long flushedSeq;
+
+    DbFlusher(DataSource ds, Journal journal, long checkpoint) {
+        this.ds = ds;
+        this.caches = DataCaches.of(ds);
+        this.journal = journal;
+        this.flushedSeq = checkpoint;
+        worker = new Thread(this::loop, "mybank-ledger-flush");
+        worker.setDaemon(true);
+    }
+
+    static long readCheckpoint(DataSource ds) throws SQLException {
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            st.executeUpdate("INSERT IGNORE INTO ledger_checkpoint (id, last_seq) VALUES (1, 0)");
+            try (ResultSet rs = st.executeQuery("SELECT last_seq FROM ledger_checkpoint WHERE id = 1")) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+        }
+    }
+
+    void start() {
+        worker.start();
+    }
+
+    /** Queues a record; records must arrive in sequence order. */
+    void enqueue(Journal.Record r) {
+        if (r.seq > flushedSeq) queue.add(r);
+    }
+
+    long flushedSeq() {
+        return flushedSeq;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void loop() {
+        long backoffMs = 50;
+        List<Journal.Record> batch = new ArrayList<>(BATCH);
+        while (running || !queue.isEmpty()) {
+            long durable = journal.durableSeq();
+            Journal.Record head;
+            while (batch.size() < BATCH && (head = queue.peek()) != null && head.seq <= durable) {
+                batch.add(queue.poll());
+            }
+            if (batch.isEmpty()) {
+                if (!running) break;
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(5));
+                continue;
+            }
+            try {
+                apply(batch);
+                flushedSeq = batch.get(batch.size() - 1).seq;
+                batch.clear();
+                journal.release(flushedSeq);
+                backoffMs = 50;
+            } catch (SQLException e) {
+                System.err.println("❌ Ledger flush failed, retrying in " + backoffMs + " ms: " + e.getMessage());
+                if (!running) break;
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(backoffMs));
+                backoffMs = Math.min(backoffMs * 2, 5_000);
+            }
+        }
+    }
+
+    private void apply(List<Journal.Record> batch) throws SQLException {
+        Map<Integer, Long> deltas = new HashMap<>();
+        List<Transaction> rows = new ArrayList<>();
+        for (Journal.Record r : batch) {
+            Timestamp ts = new Timestamp(r.timestamp);
+            switch (r.type) {
+                case Journal.TRANSFER:
+                    rows.add(row(r.a, "transfer", -r.amount, r.noteA, ts));
+                    rows.add(row(r.b, "transfer", r.amount, r.noteB, ts));
+                    break;
+                case Journal.DEPOSIT:
+                    rows.add(row(r.a, "deposit", r.amount, r.noteA, ts));
+                    break;
+                case Journal.WITHDRAW:
+                    rows.add(row(r.a, "withdraw", -r.amount, r.noteA, ts));
+                    break;
+                default:
+                    // OPEN only registers a balance the table already has
+            }
+        }
+        for (Transaction t : rows) deltas.merge(t.getUserId(), t.getAmount().getMinorUnits(), Long::sum);
+        try (Connection c = ds.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = c.prepareStatement("UPDATE users SET balance = balance + ?, version = version + 1 WHERE user_id = ?")) {
+                    for (Map.Entry<Integer, Long> d : deltas.entrySet()) {
+                        if (d.getValue() == 0) continue;
+                        ps.setBigDecimal(1, BigDecimal.valueOf(d.getValue(), 2));
+                        ps.setInt(2, d.getKey());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                if (!rows.isEmpty()) {
+                    try (PreparedStatement ps = c.prepareStatement(
+                            "INSERT INTO transactions (user_id, type, amount, description, created_at) VALUES (?,?,?,?,?)",
+                            Statement.RETURN_GENERATED_KEYS)) {
+                        for (Transaction t : rows) {
+                            ps.setInt(1, t.getUserId());
+                            ps.setString(2, t.getType());
+                            ps.setBigDecimal(3, t.getAmount().toBigDecimal());
+                            ps.setString(4, t.getDescription());
+                            ps.setTimestamp(5, t.getCreatedAt());
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                        try (ResultSet rs = ps.getGeneratedKeys()) {
+                            for (int i = 0; i < rows.size() && rs.next(); i++) rows.get(i).setTransactionId(rs.getInt(1));
+                        }
+                    }
+                }
+                try (PreparedStatement ps = c.prepareStatement("UPDATE ledger_checkpoint SET last_seq = ? WHERE id = 1")) {
+                    ps.setLong(1, batch.get(batch.size() - 1).seq);
+                    ps.executeUpdate();
+                }
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+        ReplicaRouter router = ReplicaRouter.of(ds);
+        for (Integer userId : deltas.keySet()) {
+            caches.userChanged(userId);
+            router.wrote(userId);
+        }
+        // the balances went out with the writes; only the history rows are new here
+        for (Transaction t : rows) events.publish(new TransactionPosted(t));
+    }
+
+    private static Transaction row(int userId, String type, long amountMinor, String description, Timestamp at) {
+        Transaction t = new Transaction();
+        t.setUserId(userId);
+        t.setType(type);
+        t.setAmount(Money.ofMinor(amountMinor));
+        t.setDescription(description);
+        t.setCreatedAt(at);
+        return t;
+    }
+}
@@ -0,0 +1,12 @@
+package com.mybank.ledger;
+
+public class InsufficientFundsException extends Exception {
+    private final int userId;
+
+    public InsufficientFundsException(int userId) {
+        super("Insufficient funds for user " + userId + ".");
+        this.userId = userId;
+    }
+
+    public int getUserId() { return userId; }
+}
@@ -0,0 +1,370 @@
+package com.mybank.ledger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped journal of ledger records.
+ *
+ * The journal is a sequence of fixed-size segment files ({@code journal-000001.log}, ...) holding
+ * records of a 40-byte header ({@code crc, type, noteBytes, seq, a, b, amount, timestamp}) and the
+ * two notes, if any, padded to 8 bytes; the crc covers both. Appends are serialized and
+ * only copy bytes into the mapping; a background syncer forces the mapping to disk and wakes any
+ * thread waiting in {@link #awaitDurable(long)}, so concurrent committers share one fsync.
+ *
+ * Once the records of a full segment are kept elsewhere (the ledger's tables), {@link #release}
+ * deletes it, oldest first, so the journal may start at any sequence number.
+ */
+final class Journal implements AutoCloseable {
+    static final int HEADER_SIZE = 40;
+    /** Longest note kept, in chars; longer ones are cut (transaction descriptions hold 255). */
+    static final int MAX_NOTE = 255;
+    static final byte OPEN = 1;
+    static final byte TRANSFER = 2;
+    static final byte DEPOSIT = 3;
+    static final byte WITHDRAW = 4;
+
+    // two length-prefixed notes of at most MAX_NOTE chars, 3 UTF-8 bytes each
+    private static final int MAX_RECORD_SIZE = HEADER_SIZE + padded(2 * (2 + 3 * MAX_NOTE));
+
+    private final Path dir;
+    private final int segmentSize;
+    private final long syncIntervalNanos;
+    private int damagedAt = -1; // where the last replaySegment stopped at a damaged record, or -1
+    private final ByteBuffer scratch = ByteBuffer.allocate(MAX_RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+    private final Object durableLock = new Object();
+    private final Thread syncer;
+    private Consumer<Record> sink = r -> { };
+
+    // guarded by this
+    private final ArrayDeque<long[]> closed = new ArrayDeque<>(); // {index, last seq} of each segment before the current
+    private FileChannel channel;
+    private MappedByteBuffer buf;
+    private int segment;
+    private long lastSeq;
+
+    private volatile long durableSeq;
+    private volatile boolean running = true;
+    private volatile IOException syncFailure;
+
+    /**
+     * One decoded journal record. {@code a} is the user (the sender of a transfer, {@code b} its
+     * recipient); {@code amount} is the opening balance of an OPEN record, else what moved.
+     * {@code noteA} and {@code noteB} describe the posting of {@code a} and {@code b}, or are null.
+     */
+    static final class Record {
+        final byte type;
+        final long seq;
+        final int a;
+        final int b;
+        final long amount;
+        final long timestamp;
+        final String noteA;
+        final String noteB;
+
+        Record(byte type, long seq, int a, int b, long amount, long timestamp, String noteA, String noteB) {
+            this.type = type;
+            this.seq = seq;
+            this.a = a;
+            this.b = b;
+            this.amount = amount;
+            this.timestamp = timestamp;
+            this.noteA = noteA;
+            this.noteB = noteB;
+        }
+    }
+
+    /**
+     * Opens the journal in {@code dir}, feeding every intact record to {@code replay} in order
+     * before new appends are accepted. A damaged record at the end of the last segment is a write
+     * torn by a crash, never acknowledged: it and anything after it are discarded. Anywhere else
+     * it would mean losing records that were, so opening fails instead. New records are numbered
+     * after the last one replayed, or after {@code floor} if that is higher (all released).
+     */
+    Journal(Path dir, int segmentSize, long syncIntervalMicros, long floor, Consumer<Record> replay) throws IOException {
+        this.dir = dir;
+        if (segmentSize < MAX_RECORD_SIZE) throw new IllegalArgumentException("Segments must hold at least " + MAX_RECORD_SIZE + " bytes");
+        this.segmentSize = segmentSize - segmentSize % 8;
+        this.syncIntervalNanos = TimeUnit.MICROSECONDS.toNanos(syncIntervalMicros);
+        Files.createDirectories(dir);
+
+        List<Path> segments = segments(dir);
+        int position = 0;
+        boolean torn = false;
+        for (int i = 0; i < segments.size(); i++) {
+            Path p = segments.get(i);
+            segment = segmentIndex(p);
+            position = replaySegment(p, replay);
+            torn = damagedAt >= 0;
+            if (torn && i < segments.size() - 1) {
+                throw new IOException("Journal segment " + p.getFileName() + " is damaged at byte " + damagedAt
+                        + " (after record #" + lastSeq + ") and later segments follow; restore it before starting the ledger");
+            }
+            if (i < segments.size() - 1) closed.add(new long[]{segment, lastSeq});
+        }
+        if (segments.isEmpty()) segment = 1;
+        map(segment, position);
+        if (torn) {
+            System.err.println("⚠️ Journal segment " + segmentName(segment) + " ends in a torn write at byte " + position
+                    + "; discarding it and the rest of the segment after record #" + lastSeq);
+            // zeroed, so nothing left over can line up behind the records appended from here
+            for (int i = position; i < segmentSize; i++) buf.put(i, (byte) 0);
+            buf.force();
+        }
+        lastSeq = Math.max(lastSeq, floor);
+        durableSeq = lastSeq;
+
+        syncer = new Thread(this::syncLoop, "mybank-ledger-sync");
+        syncer.setDaemon(true);
+        syncer.start();
+    }
+
+    /** Receives each record, in sequence order, right after it is appended. */
+    void setSink(Consumer<Record> sink) {
+        this.sink = sink;
+    }
+
+    synchronized long append(byte type, int a, int b, long amount, long timestamp, String noteA, String noteB) {
+        if (!running) throw new IllegalStateException("Journal is closed");
+        noteA = cut(noteA);
+        noteB = cut(noteB);
+        scratch.clear();
+        scratch.position(HEADER_SIZE);
+        putNote(noteA);
+        putNote(noteB);
+        int noteBytes = noteA == null && noteB == null ? 0 : scratch.position() - HEADER_SIZE;
+        int size = HEADER_SIZE + padded(noteBytes);
+        if (buf.remaining() < size) roll();
+        long seq = lastSeq + 1;
+        scratch.position(0);
+        scratch.putInt(0).put(type).put((byte) 0).putShort((short) noteBytes)
+                .putLong(seq).putInt(a).putInt(b).putLong(amount).putLong(timestamp);
+        crc.reset();
+        crc.update(scratch.array(), 4, HEADER_SIZE - 4 + noteBytes);
+        scratch.putInt(0, (int) crc.getValue());
+        for (int i = HEADER_SIZE + noteBytes; i < size; i++) scratch.put(i, (byte) 0);
+        scratch.position(0).limit(size);
+        buf.put(scratch);
+        lastSeq = seq;
+        sink.accept(new Record(type, seq, a, b, amount, timestamp, noteA, noteB));
+        return seq;
+    }
+
+    private void putNote(String note) {
+        byte[] b = note == null ? new byte[0] : note.getBytes(StandardCharsets.UTF_8);
+        scratch.putShort((short) b.length).put(b);
+    }
+
+    private static String cut(String note) {
+        return note == null || note.length() <= MAX_NOTE ? note : note.substring(0, MAX_NOTE);
+    }
+
+    private static int padded(int bytes) {
+        return (bytes + 7) & ~7;
+    }
+
+    /** Blocks until {@code seq} has been forced to disk. */
+    void awaitDurable(long seq) {
+        if (durableSeq >= seq) return;
+        LockSupport.unpark(syncer);
+        boolean interrupted = false;
+        synchronized (durableLock) {
+            while (durableSeq < seq) {
+                if (syncFailure != null) throw new UncheckedIOException("Journal sync failed", syncFailure);
+                if (!running) throw new IllegalStateException("Journal closed before record " + seq + " was synced");
+                try {
+                    durableLock.wait(10);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    long lastSeq() {
+        synchronized (this) {
+            return lastSeq;
+        }
+    }
+
+    long durableSeq() {
+        return durableSeq;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(syncer);
+        try {
+            syncer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            buf.force();
+            channel.close();
+            publishDurable(lastSeq);
+        }
+    }
+
+    private void syncLoop() {
+        while (running) {
+            long target;
+            MappedByteBuffer b;
+            synchronized (this) {
+                target = lastSeq;
+                b = buf;
+            }
+            if (target > durableSeq) {
+                b.force();
+                publishDurable(target);
+            } else {
+                LockSupport.parkNanos(this, syncIntervalNanos);
+            }
+        }
+    }
+
+    private void publishDurable(long seq) {
+        synchronized (durableLock) {
+            if (seq > durableSeq) durableSeq = seq;
+            durableLock.notifyAll();
+        }
+    }
+
+    /**
+     * Deletes the full segments whose records all have sequence numbers up to {@code seq}; the
+     * current one is kept. A segment that cannot be deleted stops the rest, so no gap is left.
+     */
+    void release(long seq) {
+        List<long[]> gone = new ArrayList<>();
+        synchronized (this) {
+            while (!closed.isEmpty() && closed.peekFirst()[1] <= seq) gone.add(closed.pollFirst());
+        }
+        for (int i = 0; i < gone.size(); i++) {
+            String name = segmentName((int) gone.get(i)[0]);
+            try {
+                Files.deleteIfExists(dir.resolve(name));
+            } catch (IOException e) {
+                System.err.println("⚠️ Could not delete journal segment " + name + ", keeping it and later ones: " + e.getMessage());
+                synchronized (this) {
+                    for (int j = gone.size() - 1; j >= i; j--) closed.addFirst(gone.get(j));
+                }
+                return;
+            }
+        }
+    }
+
+    // called with the monitor held
+    private void roll() {
+        try {
+            buf.force();
+            channel.close();
+            closed.add(new long[]{segment, lastSeq});
+            publishDurable(lastSeq);
+            map(segment + 1, 0);
+        } catch (IOException e) {
+            syncFailure = e;
+            throw new UncheckedIOException("Could not start journal segment " + (segment + 1), e);
+        }
+    }
+
+    private void map(int index, int position) throws IOException {
+        segment = index;
+        channel = FileChannel.open(dir.resolve(segmentName(index)),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        buf.position(position);
+    }
+
+    /**
+     * Returns the byte offset just past the last intact record of the segment, and sets
+     * {@link #damagedAt} to it if replay stopped at a damaged record rather than at the end.
+     */
+    private int replaySegment(Path p, Consumer<Record> replay) throws IOException {
+        damagedAt = -1;
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            MappedByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            in.order(ByteOrder.LITTLE_ENDIAN);
+            byte[] raw = new byte[MAX_RECORD_SIZE];
+            int pos = 0;
+            while (pos + HEADER_SIZE <= in.limit()) {
+                in.position(pos);
+                in.get(raw, 0, HEADER_SIZE);
+                ByteBuffer r = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+                byte type = r.get(4);
+                int noteBytes = r.getShort(6) & 0xFFFF;
+                long seq = r.getLong(8);
+                int size = HEADER_SIZE + padded(noteBytes);
+                if (type == 0) break; // never written: the end of the records
+                // the first record may be anything after older segments were released
+                if (seq <= 0 || (lastSeq > 0 && seq != lastSeq + 1) || size > MAX_RECORD_SIZE || pos + size > in.limit()) {
+                    damagedAt = pos;
+                    break;
+                }
+                in.get(raw, HEADER_SIZE, size - HEADER_SIZE);
+                crc.reset();
+                crc.update(raw, 4, HEADER_SIZE - 4 + noteBytes);
+                if (r.getInt(0) != (int) crc.getValue()) {
+                    damagedAt = pos;
+                    break;
+                }
+                String noteA = null;
+                String noteB = null;
+                if (noteBytes > 0) {
+                    r.position(HEADER_SIZE);
+                    noteA = getNote(r);
+                    noteB = getNote(r);
+                }
+                replay.accept(new Record(type, seq, r.getInt(16), r.getInt(20), r.getLong(24), r.getLong(32), noteA, noteB));
+                lastSeq = seq;
+                pos += size;
+            }
+            return pos;
+        }
+    }
+
+    private static String getNote(ByteBuffer r) {
+        int len = r.getShort() & 0xFFFF;
+        if (len == 0) return null;
+        String note = new String(r.array(), r.position(), len, StandardCharsets.UTF_8);
+        r.position(r.position() + len);
+        return note;
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        List<Path> out = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "journal-*.log")) {
+            for (Path p : ds) out.add(p);
+        }
+        Collections.sort(out);
+        return out;
+    }
+
+    private static int segmentIndex(Path p) {
+        String name = p.getFileName().toString();
+        return Integer.parseInt(name.substring("journal-".length(), name.length() - ".log".length()));
+    }
+
+    private static String segmentName(int index) {
+        return String.format("journal-%06d.log", index);
+    }
+}
@@ -0,0 +1,377 @@
+package com.mybank.ledger;
+
+import com.mybank.config.AppConfig;
+import com.mybank.event.EventBus;
+import com.mybank.model.Money;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory ledger of user balances with a write-ahead journal; {@code TransferService} runs
+ * deposits, withdrawals and transfers on it when {@code mybank.ledger.enabled} is set.
+ *
+ * Balances are kept as {@code long} minor units (cents). A write locks the users' lock stripes
+ * in index order, checks funds, appends one journal record and updates the balances; it returns
+ * once the record is on disk (group fsync). Committed records are copied to
+ * {@code users.balance} and {@code transactions} in the background, so the tables trail the
+ * ledger by the flush delay, and journal segments are deleted once they are all copied. On
+ * start-up the balances are loaded from the {@code users} table, which holds every record up to
+ * {@code ledger_checkpoint}, and only the journal past it is replayed; users registered since
+ * are loaded on first use. Without a database the journal is kept whole and replayed from the start.
+ *
+ * While the engine is running it owns {@code users.balance}: nothing else may write it, so run
+ * one instance per database, unsharded, and no {@code TransactionImport} alongside it.
+ */
+public class LedgerEngine implements AutoCloseable {
+    private static final int STRIPES = 1024;
+    private static final Map<DataSource, LedgerEngine> BY_SOURCE = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final ConcurrentHashMap<Integer, Cell> users = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    private final DataSource ds;
+    private final Journal journal;
+    private final DbFlusher flusher;
+    private final EventBus events = EventBus.getDefault();
+
+    private static final class Cell {
+        long balance; // guarded by the user's stripe lock
+    }
+
+    /** A write as the ledger made it; balances are in minor units, as left by the write. */
+    public static final class Posting {
+        private final long journalSeq;
+        private final long eventSequence;
+        private final long timestamp;
+        private final long balance;
+        private final long otherBalance;
+
+        Posting(long journalSeq, long eventSequence, long timestamp, long balance, long otherBalance) {
+            this.journalSeq = journalSeq;
+            this.eventSequence = eventSequence;
+            this.timestamp = timestamp;
+            this.balance = balance;
+            this.otherBalance = otherBalance;
+        }
+
+        public long getJournalSeq() { return journalSeq; }
+        /** {@link EventBus#nextSequence()} as taken under the users' locks, for {@code BalanceChanged}. */
+        public long getEventSequence() { return eventSequence; }
+        public long getTimestamp() { return timestamp; }
+        /** The balance of the user written (the sender of a transfer). */
+        public long getBalance() { return balance; }
+        /** The recipient's balance after a transfer; 0 otherwise. */
+        public long getOtherBalance() { return otherBalance; }
+    }
+
+    private LedgerEngine(Path dir, DataSource ds, int segmentSize, long syncIntervalMicros) throws IOException, SQLException {
+        for (int i = 0; i < STRIPES; i++) locks[i] = new ReentrantLock();
+        this.ds = ds;
+        long checkpoint = 0;
+        if (ds != null) {
+            // nothing writes the tables while the engine is down, so the two reads agree
+            checkpoint = DbFlusher.readCheckpoint(ds);
+            loadUsers(ds);
+        }
+        long from = checkpoint + 1;
+        List<Journal.Record> unflushed = new ArrayList<>();
+        long[] first = {0};
+        journal = new Journal(dir, segmentSize, syncIntervalMicros, checkpoint, r -> {
+            if (first[0] == 0) first[0] = r.seq;
+            if (r.seq < from) return;
+            replay(r);
+            unflushed.add(r);
+        });
+        if (first[0] > from) {
+            journal.close();
+            throw new IOException("The ledger journal in " + dir + " starts at record #" + first[0]
+                    + " but the database has only up to #" + checkpoint + "; records in between are missing");
+        }
+        if (ds == null) {
+            flusher = null;
+        } else {
+            flusher = new DbFlusher(ds, journal, checkpoint);
+            for (Journal.Record r : unflushed) flusher.enqueue(r);
+            journal.setSink(flusher::enqueue);
+            flusher.start();
+        }
+    }
+
+    /**
+     * The ledger of {@code ds}, opened from {@code mybank.ledger.*} on first use and shared by
+     * every {@code TransferService} on it.
+     */
+    public static LedgerEngine of(DataSource ds) {
+        return BY_SOURCE.computeIfAbsent(ds, k -> {
+            try {
+                return open(k);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open the ledger journal", e);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Cannot load the ledger's balances: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Opens the ledger configured by {@code mybank.ledger.*} and backs it with {@code ds}.
+     */
+    public static LedgerEngine open(DataSource ds) throws IOException, SQLException {
+        return open(Paths.get(AppConfig.get("mybank.ledger.dir", "data/ledger")), ds);
+    }
+
+    /**
+     * Opens (or recovers) the ledger journal in {@code dir}. With a {@code null} data source the
+     * engine runs purely on the journal and never touches the database.
+     */
+    public static LedgerEngine open(Path dir, DataSource ds) throws IOException, SQLException {
+        return open(dir, ds,
+                AppConfig.getInt("mybank.ledger.segmentBytes", 64 << 20),
+                AppConfig.getLong("mybank.ledger.syncIntervalMicros", 1_000));
+    }
+
+    /** As {@link #open(Path, DataSource)}, with the journal's segment size and fsync interval given. */
+    public static LedgerEngine open(Path dir, DataSource ds, int segmentBytes, long syncIntervalMicros)
+            throws IOException, SQLException {
+        return new LedgerEngine(dir, ds, segmentBytes, syncIntervalMicros);
+    }
+
+    /**
+     * Registers a user with their opening balance. Has no effect if the user is already known.
+     */
+    public void addUser(int userId, long balanceMinor) {
+        addUsers(Collections.singletonMap(userId, balanceMinor));
+    }
+
+    /**
+     * Registers every user of {@code opening} (id to opening balance) that is not known yet and
+     * waits once, for the last of their records, rather than once per user. Backed by a database,
+     * which already holds the opening balances, nothing is journaled.
+     */
+    public void addUsers(Map<Integer, Long> opening) {
+        long seq = 0;
+        for (Map.Entry<Integer, Long> e : opening.entrySet()) {
+            ReentrantLock lock = lockFor(e.getKey());
+            lock.lock();
+            try {
+                if (users.containsKey(e.getKey())) continue;
+                if (ds == null) seq = journal.append(Journal.OPEN, e.getKey(), 0, e.getValue(), System.currentTimeMillis(), null, null);
+                Cell cell = new Cell();
+                cell.balance = e.getValue();
+                users.put(e.getKey(), cell);
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (seq > 0) journal.awaitDurable(seq);
+    }
+
+    /**
+     * Makes sure {@code userId} is known, loading their balance from the {@code users} table if it
+     * is not yet; {@code false} if there is no such user.
+     */
+    public boolean load(int userId) throws SQLException {
+        if (users.containsKey(userId)) return true;
+        if (ds == null) return false;
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT balance FROM users WHERE user_id = ?")) {
+            ps.setInt(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return false;
+                String bal = rs.getString(1);
+                addUser(userId, bal == null ? 0 : Money.parse(bal).getMinorUnits());
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Moves {@code amountMinor} from one user to another once it is durable. {@code fromNote} and
+     * {@code toNote} describe the two postings.
+     */
+    public Posting transfer(int fromUserId, int toUserId, long amountMinor, String fromNote, String toNote)
+            throws InsufficientFundsException {
+        if (amountMinor <= 0) throw new IllegalArgumentException("Amount must be positive.");
+        if (fromUserId == toUserId) throw new IllegalArgumentException("Cannot transfer to yourself.");
+        Cell from = cell(fromUserId);
+        Cell to = cell(toUserId);
+
+        int a = stripe(fromUserId);
+        int b = stripe(toUserId);
+        ReentrantLock first = locks[Math.min(a, b)];
+        ReentrantLock second = locks[Math.max(a, b)];
+        Posting posting;
+        first.lock();
+        try {
+            if (a != b) second.lock();
+            try {
+                if (from.balance < amountMinor) throw new InsufficientFundsException(fromUserId);
+                long now = System.currentTimeMillis();
+                long seq = journal.append(Journal.TRANSFER, fromUserId, toUserId, amountMinor, now, fromNote, toNote);
+                from.balance -= amountMinor;
+                to.balance += amountMinor;
+                posting = new Posting(seq, events.nextSequence(), now, from.balance, to.balance);
+            } finally {
+                if (a != b) second.unlock();
+            }
+        } finally {
+            first.unlock();
+        }
+        journal.awaitDurable(posting.journalSeq);
+        return posting;
+    }
+
+    /** Adds {@code amountMinor} to {@code userId}'s balance once it is durable. */
+    public Posting deposit(int userId, long amountMinor, String note) {
+        if (amountMinor <= 0) throw new IllegalArgumentException("Amount must be positive.");
+        try {
+            return adjust(Journal.DEPOSIT, userId, amountMinor, note);
+        } catch (InsufficientFundsException e) {
+            throw new AssertionError(e); // a deposit never lowers the balance
+        }
+    }
+
+    /** Takes {@code amountMinor} from {@code userId}'s balance, if it is there, once it is durable. */
+    public Posting withdraw(int userId, long amountMinor, String note) throws InsufficientFundsException {
+        if (amountMinor <= 0) throw new IllegalArgumentException("Amount must be positive.");
+        return adjust(Journal.WITHDRAW, userId, amountMinor, note);
+    }
+
+    private Posting adjust(byte type, int userId, long amountMinor, String note) throws InsufficientFundsException {
+        Cell cell = cell(userId);
+        ReentrantLock lock = lockFor(userId);
+        Posting posting;
+        lock.lock();
+        try {
+            if (type == Journal.WITHDRAW && cell.balance < amountMinor) throw new InsufficientFundsException(userId);
+            long now = System.currentTimeMillis();
+            long seq = journal.append(type, userId, 0, amountMinor, now, note, null);
+            cell.balance += type == Journal.WITHDRAW ? -amountMinor : amountMinor;
+            posting = new Posting(seq, events.nextSequence(), now, cell.balance, 0);
+        } finally {
+            lock.unlock();
+        }
+        journal.awaitDurable(posting.journalSeq);
+        return posting;
+    }
+
+    public long balance(int userId) {
+        Cell c = cell(userId);
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            return c.balance;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean hasUser(int userId) {
+        return users.containsKey(userId);
+    }
+
+    /**
+     * Sum of all balances, read under every stripe lock so no transfer is half-applied.
+     */
+    public long totalBalance() {
+        for (ReentrantLock l : locks) l.lock();
+        try {
+            long sum = 0;
+            for (Cell c : users.values()) sum += c.balance;
+            return sum;
+        } finally {
+            for (int i = STRIPES - 1; i >= 0; i--) locks[i].unlock();
+        }
+    }
+
+    public int userCount() {
+        return users.size();
+    }
+
+    /** Sequence number of the last journal record, durable or not. */
+    public long journalSeq() {
+        return journal.lastSeq();
+    }
+
+    /** Sequence number of the last record copied to the database (0 without a database). */
+    public long flushedSeq() {
+        return flusher == null ? 0 : flusher.flushedSeq();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ds != null) BY_SOURCE.remove(ds, this);
+        journal.close();
+        if (flusher != null) flusher.close();
+    }
+
+    private void replay(Journal.Record r) {
+        switch (r.type) {
+            case Journal.OPEN:
+                Cell c = new Cell();
+                c.balance = r.amount;
+                users.putIfAbsent(r.a, c);
+                break;
+            case Journal.TRANSFER:
+                replayed(r, r.a).balance -= r.amount;
+                replayed(r, r.b).balance += r.amount;
+                break;
+            case Journal.DEPOSIT:
+                replayed(r, r.a).balance += r.amount;
+                break;
+            case Journal.WITHDRAW:
+                replayed(r, r.a).balance -= r.amount;
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type " + r.type + " at #" + r.seq);
+        }
+    }
+
+    private Cell replayed(Journal.Record r, int userId) {
+        Cell c = users.get(userId);
+        if (c == null) throw new IllegalStateException("Journal record #" + r.seq + " is for user " + userId + ", who does not exist");
+        return c;
+    }
+
+    private void loadUsers(DataSource ds) throws SQLException {
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT user_id, balance FROM users");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                String bal = rs.getString("balance");
+                Cell cell = new Cell();
+                cell.balance = bal == null ? 0 : Money.parse(bal).getMinorUnits();
+                users.put(rs.getInt("user_id"), cell);
+            }
+        }
+    }
+
+    private Cell cell(int userId) {
+        Cell c = users.get(userId);
+        if (c == null) throw new IllegalArgumentException("Unknown user " + userId + ".");
+        return c;
+    }
+
+    private ReentrantLock lockFor(int userId) {
+        return locks[stripe(userId)];
+    }
+
+    private static int stripe(int userId) {
+        int h = userId * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+}
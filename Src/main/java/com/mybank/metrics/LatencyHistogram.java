@@ -0,0 +1,98 @@
+package com.mybank.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds, in the style of HdrHistogram: buckets are
+ * exact below 64 ns and then 32 per power of two, so any recorded value is reported within about
+ * 3% of itself. Values above {@link #MAX_TRACKED} (about 18 minutes) count as that.
+ *
+ * Recording is a bucket computation and a few atomic adds, with no allocation and no locks, so
+ * it is cheap enough for every DAO call. Reading takes a {@link Snapshot}; counts added while it
+ * is taken may be partly in it.
+ */
+public final class LatencyHistogram {
+    static final int SUB_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    public static final long MAX_TRACKED = (1L << 40) - 1;
+    private static final int BUCKETS = index(MAX_TRACKED) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long v = nanos < 0 ? 0 : Math.min(nanos, MAX_TRACKED);
+        counts.incrementAndGet(index(v));
+        count.increment();
+        sum.add(v);
+        long m = max.get();
+        while (v > m && !max.compareAndSet(m, v)) m = max.get();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            n += copy[i];
+        }
+        return new Snapshot(copy, n, sum.sum(), max.get());
+    }
+
+    static int index(long v) {
+        if (v < 2 * SUB_BUCKETS) return (int) v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return shift * SUB_BUCKETS + (int) (v >>> shift);
+    }
+
+    /** Largest value that falls into bucket {@code i}. */
+    static long highestIn(int i) {
+        if (i < 2 * SUB_BUCKETS) return i;
+        int shift = i / SUB_BUCKETS - 1;
+        long sub = i % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /** Counts of one moment, in nanoseconds. */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() { return count; }
+        public long getSum() { return sum; }
+        public long getMax() { return max; }
+
+        public double getMean() {
+            return count == 0 ? 0.0 : (double) sum / count;
+        }
+
+        /** Value at or below which {@code q} (0..1) of the recorded values fall. */
+        public long percentile(double q) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(highestIn(i), max);
+            }
+            return max;
+        }
+    }
+}
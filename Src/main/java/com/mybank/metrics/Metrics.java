@@ -0,0 +1,168 @@
+package com.mybank.metrics;
+
+import com.mybank.config.AppConfig;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The process-wide set of {@link Operation}s. Each one is also a JMX MBean
+ * ({@code com.mybank:type=Operation,name=<operation>}), and {@code com.mybank:type=Metrics} has
+ * everything as text.
+ *
+ * The text is the Prometheus exposition format, so it can be scraped as it is. With
+ * {@code mybank.metrics.file} set, it is written to that file every
+ * {@code mybank.metrics.dumpMs} (for node_exporter's textfile collector or a plain
+ * {@code cat}).
+ */
+public final class Metrics {
+    private static final Map<String, Operation> OPS = new ConcurrentHashMap<>();
+    private static final List<Supplier<String>> SECTIONS = new CopyOnWriteArrayList<>();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static ScheduledExecutorService dumper;
+
+    static {
+        register("com.mybank:type=Metrics", new Text());
+    }
+
+    private Metrics() {
+    }
+
+    /** The operation called {@code name}, created on first use. */
+    public static Operation op(String name) {
+        Operation op = OPS.get(name);
+        if (op != null) return op;
+        return OPS.computeIfAbsent(name, n -> {
+            Operation created = new Operation(n);
+            register("com.mybank:type=Operation,name=" + ObjectName.quote(n), created);
+            return created;
+        });
+    }
+
+    /** Every operation, by name. */
+    public static List<OperationStats> snapshot() {
+        List<OperationStats> out = new ArrayList<>(OPS.size());
+        for (Operation op : OPS.values()) out.add(op.stats());
+        out.sort(Comparator.comparing(OperationStats::getName));
+        return out;
+    }
+
+    /** Everything in the Prometheus text format; latencies in seconds. */
+    public static String text() {
+        List<OperationStats> all = snapshot();
+        StringBuilder sb = new StringBuilder(256 + all.size() * 512);
+        sb.append("# HELP mybank_op_latency_seconds Latency of DAO and service calls.\n");
+        sb.append("# TYPE mybank_op_latency_seconds summary\n");
+        for (OperationStats s : all) {
+            for (double q : QUANTILES) {
+                sample(sb, "mybank_op_latency_seconds", s.getName(), "quantile", trim(q), s.percentileNanos(q) / 1e9);
+            }
+            sample(sb, "mybank_op_latency_seconds_sum", s.getName(), null, null, s.getTotalNanos() / 1e9);
+            sample(sb, "mybank_op_latency_seconds_count", s.getName(), null, null, s.getCount());
+        }
+        sb.append("# HELP mybank_op_latency_max_seconds Slowest call since start.\n");
+        sb.append("# TYPE mybank_op_latency_max_seconds gauge\n");
+        for (OperationStats s : all) sample(sb, "mybank_op_latency_max_seconds", s.getName(), null, null, s.getMaxNanos() / 1e9);
+        sb.append("# HELP mybank_op_rows_total Rows returned or written.\n");
+        sb.append("# TYPE mybank_op_rows_total counter\n");
+        for (OperationStats s : all) sample(sb, "mybank_op_rows_total", s.getName(), null, null, s.getRows());
+        sb.append("# HELP mybank_op_errors_total Failed calls by SQL state (or exception class).\n");
+        sb.append("# TYPE mybank_op_errors_total counter\n");
+        for (OperationStats s : all) {
+            for (Map.Entry<String, Long> e : s.getErrorsBySqlState().entrySet()) {
+                sample(sb, "mybank_op_errors_total", s.getName(), "sqlstate", e.getKey(), e.getValue());
+            }
+        }
+        for (Supplier<String> section : SECTIONS) sb.append(section.get());
+        return sb.toString();
+    }
+
+    /** Adds lines, already in the text format, to every {@link #text()}; for gauges and counters that are not operations. */
+    public static void addSection(Supplier<String> section) {
+        SECTIONS.add(section);
+    }
+
+    /** Writes {@link #text()} to {@code file}, replacing it in one step so readers never see half a file. */
+    public static void writeTo(Path file) throws IOException {
+        Path abs = file.toAbsolutePath();
+        Path tmp = abs.resolveSibling(abs.getFileName() + ".tmp");
+        Files.write(tmp, text().getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, abs, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Starts writing {@code mybank.metrics.file} every {@code mybank.metrics.dumpMs}, if a file is set. */
+    public static synchronized void startFromAppConfig() {
+        String file = AppConfig.get("mybank.metrics.file", "");
+        if (file.isEmpty() || dumper != null) return;
+        Path path = Paths.get(file);
+        long period = Math.max(1_000, AppConfig.getLong("mybank.metrics.dumpMs", 15_000));
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mybank-metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleWithFixedDelay(() -> {
+            try {
+                writeTo(path);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("❌ Could not write metrics to " + path + ": " + e.getMessage());
+            }
+        }, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    private static void sample(StringBuilder sb, String metric, String op, String label, String value, double v) {
+        sb.append(metric).append("{op=\"").append(op).append('"');
+        if (label != null) sb.append(',').append(label).append("=\"").append(value).append('"');
+        sb.append("} ");
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) sb.append((long) v);
+        else sb.append(String.format(Locale.ROOT, "%.9f", v));
+        sb.append('\n');
+    }
+
+    private static String trim(double q) {
+        String s = String.format(Locale.ROOT, "%.3f", q);
+        return s.replaceAll("0+$", "");
+    }
+
+    /** Registers {@code bean} with the platform MBean server under {@code name}, unless taken; failures are only logged. */
+    public static void register(String name, Object bean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName(name);
+            if (!server.isRegistered(on)) server.registerMBean(bean, on);
+        } catch (JMException | RuntimeException e) {
+            System.err.println("⚠️ Could not register " + name + " with JMX: " + e.getMessage());
+        }
+    }
+
+    /** JMX view of all metrics at once. */
+    public interface MetricsMXBean {
+        String getText();
+    }
+
+    private static final class Text implements MetricsMXBean {
+        @Override
+        public String getText() {
+            return text();
+        }
+    }
+}
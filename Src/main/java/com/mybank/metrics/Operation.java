@@ -0,0 +1,99 @@
+package com.mybank.metrics;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, rows and errors of one kind of call, e.g. {@code UserDAO.findByUsername}. Get one
+ * with {@link Metrics#op(String)} and keep it in a static field; then per call:
+ *
+ * <pre>
+ * long start = OP.start();
+ * try {
+ *     ...
+ *     OP.done(start, rows);
+ * } catch (SQLException e) {
+ *     OP.failed(start, e);
+ *     ...
+ * }
+ * </pre>
+ *
+ * Failed calls count towards the latency too, and their errors are counted by SQL state.
+ */
+public final class Operation implements OperationMXBean {
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final Map<String, LongAdder> errorsByState = new ConcurrentHashMap<>();
+
+    Operation(String name) {
+        this.name = name;
+    }
+
+    public String getName() { return name; }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void done(long start, long rowCount) {
+        latency.record(System.nanoTime() - start);
+        if (rowCount > 0) rows.add(rowCount);
+    }
+
+    /** Records a duration measured elsewhere. */
+    public void record(long nanos) {
+        latency.record(nanos);
+    }
+
+    public void failed(long start, Exception e) {
+        latency.record(System.nanoTime() - start);
+        error(e);
+    }
+
+    /** Counts an error without a duration. */
+    public void error(Exception e) {
+        errors.increment();
+        errorsByState.computeIfAbsent(stateOf(e), k -> new LongAdder()).increment();
+    }
+
+    public OperationStats stats() {
+        return new OperationStats(name, latency.snapshot(), rows.sum(), errors.sum(), getErrorsBySqlState());
+    }
+
+    @Override public long getCount() { return latency.getCount(); }
+    @Override public long getErrors() { return errors.sum(); }
+    @Override public long getRows() { return rows.sum(); }
+    @Override public double getMeanMicros() { return latency.snapshot().getMean() / 1_000; }
+    @Override public long getP50Micros() { return latency.snapshot().percentile(0.50) / 1_000; }
+    @Override public long getP99Micros() { return latency.snapshot().percentile(0.99) / 1_000; }
+    @Override public long getP999Micros() { return latency.snapshot().percentile(0.999) / 1_000; }
+    @Override public long getMaxMicros() { return latency.snapshot().getMax() / 1_000; }
+
+    @Override
+    public Map<String, Long> getErrorsBySqlState() {
+        Map<String, Long> out = new TreeMap<>();
+        errorsByState.forEach((k, v) -> out.put(k, v.sum()));
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return stats().toString();
+    }
+
+    // SQL state of the first SQLException in the chain; other failures by class
+    private static String stateOf(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException) {
+                String state = ((SQLException) t).getSQLState();
+                return state != null ? state : "unknown";
+            }
+        }
+        return e.getClass().getSimpleName();
+    }
+}
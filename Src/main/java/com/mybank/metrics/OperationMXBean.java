@@ -0,0 +1,19 @@
+package com.mybank.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of an {@link Operation}, registered as {@code com.mybank:type=Operation,name=...}.
+ * Counters are totals since start; latencies are over the same period.
+ */
+public interface OperationMXBean {
+    long getCount();
+    long getErrors();
+    long getRows();
+    double getMeanMicros();
+    long getP50Micros();
+    long getP99Micros();
+    long getP999Micros();
+    long getMaxMicros();
+    Map<String, Long> getErrorsBySqlState();
+}
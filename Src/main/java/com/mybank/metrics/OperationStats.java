@@ -0,0 +1,44 @@
+package com.mybank.metrics;
+
+import java.util.Map;
+
+/**
+ * Point-in-time numbers of an {@link Operation}. Latencies are in nanoseconds.
+ */
+public class OperationStats {
+    private final String name;
+    private final LatencyHistogram.Snapshot latency;
+    private final long rows;
+    private final long errors;
+    private final Map<String, Long> errorsBySqlState;
+
+    OperationStats(String name, LatencyHistogram.Snapshot latency, long rows, long errors, Map<String, Long> errorsBySqlState) {
+        this.name = name;
+        this.latency = latency;
+        this.rows = rows;
+        this.errors = errors;
+        this.errorsBySqlState = errorsBySqlState;
+    }
+
+    public String getName() { return name; }
+    public long getCount() { return latency.getCount(); }
+    public long getRows() { return rows; }
+    public long getErrors() { return errors; }
+    public Map<String, Long> getErrorsBySqlState() { return errorsBySqlState; }
+    public long getTotalNanos() { return latency.getSum(); }
+    public double getMeanNanos() { return latency.getMean(); }
+    public long getMaxNanos() { return latency.getMax(); }
+
+    /** Latency at or below which {@code q} (0..1) of the calls finished. */
+    public long percentileNanos(double q) {
+        return latency.percentile(q);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: calls=%d avg=%.1fus p50=%dus p99=%dus p99.9=%dus max=%dus rows=%d errors=%d%s",
+                name, getCount(), getMeanNanos() / 1_000, percentileNanos(0.50) / 1_000, percentileNanos(0.99) / 1_000,
+                percentileNanos(0.999) / 1_000, getMaxNanos() / 1_000, rows, errors,
+                errorsBySqlState.isEmpty() ? "" : " " + errorsBySqlState);
+    }
+}
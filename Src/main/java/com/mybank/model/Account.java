@@ -1,16 +1,22 @@
 package com.mybank.model;
 
-import java.math.BigDecimal;
-
 public class Account {
     private int accountId;
     private int userId;
     private String accountNumber;
     private String accountType;
-    private BigDecimal balance;
+    private Money balance = Money.ZERO;
 
     public Account() {}
 
+    public Account(Account other) {
+        this.accountId = other.accountId;
+        this.userId = other.userId;
+        this.accountNumber = other.accountNumber;
+        this.accountType = other.accountType;
+        this.balance = other.balance;
+    }
+
     // getters/setters
     public int getAccountId() { return accountId; }
     public void setAccountId(int accountId) { this.accountId = accountId; }
@@ -20,6 +26,6 @@ public class Account {
     public void setAccountNumber(String accountNumber) { this.accountNumber = accountNumber; }
     public String getAccountType() { return accountType; }
     public void setAccountType(String accountType) { this.accountType = accountType; }
-    public BigDecimal getBalance() { return balance; }
-    public void setBalance(BigDecimal balance) { this.balance = balance; }
+    public Money getBalance() { return balance; }
+    public void setBalance(Money balance) { this.balance = balance; }
 }
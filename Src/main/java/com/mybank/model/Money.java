@@ -0,0 +1,173 @@
+package com.mybank.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Immutable amount of money in the bank's currency, held as a {@code long} count of minor
+ * units (cents; the currency scale is {@link #SCALE} decimal places).
+ *
+ * Arithmetic is exact and fails on overflow instead of rounding. Parsing and formatting work
+ * directly on characters, so the hot paths (reading balances from result sets, refreshing
+ * labels) do not go through {@link BigDecimal}; {@link #toBigDecimal()} is only for JDBC binds.
+ */
+public final class Money implements Comparable<Money> {
+    public static final int SCALE = 2;
+    private static final long FACTOR = 100;
+
+    public static final Money ZERO = new Money(0);
+
+    private final long minor;
+
+    private Money(long minor) {
+        this.minor = minor;
+    }
+
+    public static Money ofMinor(long minor) {
+        return minor == 0 ? ZERO : new Money(minor);
+    }
+
+    public static Money ofMajor(long major) {
+        return ofMinor(Math.multiplyExact(major, FACTOR));
+    }
+
+    /** Exact conversion; fails if {@code value} has more than {@link #SCALE} decimal places. */
+    public static Money of(BigDecimal value) {
+        return ofMinor(value.movePointRight(SCALE).longValueExact());
+    }
+
+    /**
+     * Parses {@code [+-]digits[.digits]}, e.g. {@code "1250"}, {@code "-3.5"}, {@code "0.07"}.
+     * Surrounding whitespace is ignored; more than {@link #SCALE} significant decimals is an error.
+     *
+     * @throws NumberFormatException if the text is not a valid amount
+     */
+    public static Money parse(CharSequence text) {
+        if (text == null) throw new NumberFormatException("null amount");
+        int i = 0;
+        int end = text.length();
+        while (i < end && Character.isWhitespace(text.charAt(i))) i++;
+        while (end > i && Character.isWhitespace(text.charAt(end - 1))) end--;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long major = 0;
+        int intDigits = 0;
+        for (; i < end; i++, intDigits++) {
+            int d = text.charAt(i) - '0';
+            if (d < 0 || d > 9) break;
+            if (major > (Long.MAX_VALUE - d) / 10) throw new NumberFormatException("Amount too large: " + text);
+            major = major * 10 + d;
+        }
+        long fraction = 0;
+        int fracDigits = 0;
+        if (i < end && text.charAt(i) == '.') {
+            for (i++; i < end; i++) {
+                int d = text.charAt(i) - '0';
+                if (d < 0 || d > 9) break;
+                if (fracDigits < SCALE) {
+                    fraction = fraction * 10 + d;
+                    fracDigits++;
+                } else if (d != 0) {
+                    throw new NumberFormatException("At most " + SCALE + " decimal places: " + text);
+                }
+            }
+            if (fracDigits == 0 && intDigits == 0) throw new NumberFormatException("Not an amount: " + text);
+        }
+        if (i != end || intDigits + fracDigits == 0) throw new NumberFormatException("Not an amount: " + text);
+        for (; fracDigits < SCALE; fracDigits++) fraction *= 10;
+        long value;
+        try {
+            value = Math.addExact(Math.multiplyExact(major, FACTOR), fraction);
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount too large: " + text);
+        }
+        return ofMinor(negative ? -value : value);
+    }
+
+    public long getMinorUnits() { return minor; }
+
+    public Money plus(Money other) {
+        return ofMinor(Math.addExact(minor, other.minor));
+    }
+
+    public Money minus(Money other) {
+        return ofMinor(Math.subtractExact(minor, other.minor));
+    }
+
+    public Money negate() {
+        return ofMinor(Math.negateExact(minor));
+    }
+
+    public Money times(long factor) {
+        return ofMinor(Math.multiplyExact(minor, factor));
+    }
+
+    public int signum() {
+        return Long.signum(minor);
+    }
+
+    public boolean isZero() {
+        return minor == 0;
+    }
+
+    public boolean isNegative() {
+        return minor < 0;
+    }
+
+    public boolean isLessThan(Money other) {
+        return minor < other.minor;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money o) {
+        return Long.compare(minor, o.minor);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).minor == minor;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minor);
+    }
+
+    /** Plain form, e.g. {@code -1234.50}; {@link #parse} reads it back. */
+    @Override
+    public String toString() {
+        return render(false);
+    }
+
+    /** Display form with thousands separators, e.g. {@code -1,234.50}. */
+    public String format() {
+        return render(true);
+    }
+
+    private String render(boolean grouping) {
+        char[] buf = new char[28];
+        int pos = buf.length;
+        // work on the non-positive value so Long.MIN_VALUE needs no special case
+        long n = minor < 0 ? minor : -minor;
+        for (int k = 0; k < SCALE; k++) {
+            buf[--pos] = (char) ('0' - n % 10);
+            n /= 10;
+        }
+        buf[--pos] = '.';
+        int digits = 0;
+        do {
+            if (grouping && digits > 0 && digits % 3 == 0) buf[--pos] = ',';
+            buf[--pos] = (char) ('0' - n % 10);
+            n /= 10;
+            digits++;
+        } while (n != 0);
+        if (minor < 0) buf[--pos] = '-';
+        return new String(buf, pos, buf.length - pos);
+    }
+}
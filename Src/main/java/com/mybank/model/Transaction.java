@@ -1,18 +1,26 @@
 package com.mybank.model;
 
-import java.math.BigDecimal;
 import java.sql.Timestamp;
 
 public class Transaction {
     private int transactionId;
     private int userId;
     private String type;
-    private BigDecimal amount;
+    private Money amount;
     private String description;
     private Timestamp createdAt;
 
     public Transaction() {}
 
+    public Transaction(Transaction other) {
+        this.transactionId = other.transactionId;
+        this.userId = other.userId;
+        this.type = other.type;
+        this.amount = other.amount;
+        this.description = other.description;
+        this.createdAt = other.createdAt == null ? null : new Timestamp(other.createdAt.getTime());
+    }
+
     public int getTransactionId() {
         return transactionId;
     }
@@ -34,10 +42,10 @@ public class Transaction {
         this.type = type;
     }
 
-    public BigDecimal getAmount() {
+    public Money getAmount() {
         return amount;
     }
-    public void setAmount(BigDecimal amount) {
+    public void setAmount(Money amount) {
         this.amount = amount;
     }
 
@@ -10,14 +10,19 @@ public class User {
     private String address;
     private String photo;
     private String role;      // e.g., "customer", "admin"
-    private double balance;
+    private Money balance = Money.ZERO;
     private String PhotoPath;
 
     public User() {}
 
+    public User(User other) {
+        this(other.userId, other.username, other.password, other.fullName, other.email, other.phone,
+                other.address, other.photo, other.role, other.balance);
+    }
+
     public User(int userId, String username, String password, String fullName,
                 String email, String phone, String address, String photo,
-                String role, double balance) {
+                String role, Money balance) {
         this.userId = userId;
         this.username = username;
         this.password = password;
@@ -59,8 +64,8 @@ public class User {
     public String getRole() { return role; }
     public void setRole(String role) { this.role = role; }
 
-    public double getBalance() { return balance; }
-    public void setBalance(double balance) { this.balance = balance; }
+    public Money getBalance() { return balance; }
+    public void setBalance(Money balance) { this.balance = balance; }
 
     // Optional: helper for displaying profile photo in Dashboard
     public String getPhotoPath() {
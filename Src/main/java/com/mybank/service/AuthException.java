@@ -0,0 +1,24 @@
+package com.mybank.service;
+
+/**
+ * A login or password hash was refused or could not be completed.
+ */
+public class AuthException extends Exception {
+    public enum Reason {
+        INVALID_CREDENTIALS, THROTTLED, BUSY, TIMEOUT, DATABASE_ERROR
+    }
+
+    private final Reason reason;
+
+    public AuthException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public AuthException(Reason reason, String message, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+    }
+
+    public Reason getReason() { return reason; }
+}
@@ -0,0 +1,255 @@
+package com.mybank.service;
+
+import com.mybank.DBConnection;
+import com.mybank.config.AppConfig;
+import com.mybank.dao.UserDAO;
+import com.mybank.model.User;
+import org.mindrot.jbcrypt.BCrypt;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Logins and password hashing, with all bcrypt work on a dedicated pool.
+ *
+ * The pool has {@code mybank.auth.workers} threads (default: one per CPU) and a queue of
+ * {@code mybank.auth.queueSize}. When the queue is full a request fails straight away with
+ * {@code BUSY} instead of piling up, and a request still unanswered after
+ * {@code mybank.auth.timeoutMs} fails with {@code TIMEOUT}; if it had not started yet it is
+ * dropped without hashing. {@link LoginThrottle} limits attempts per username before anything
+ * is queued.
+ *
+ * Hashes are made with cost {@code mybank.auth.bcryptCost}. When a user logs in with a hash of
+ * any other cost, the password is rehashed at the configured cost in the background, so raising
+ * (or lowering) the cost takes effect as users come back. {@code tools.BcryptCalibrate} suggests
+ * a cost for this machine.
+ */
+public class AuthService implements AutoCloseable {
+    private static final String INVALID = "Invalid username or password.";
+
+    private final UserDAO users;
+    private final LoginThrottle throttle;
+    private final int cost;
+    private final long timeoutMs;
+    private final ThreadPoolExecutor pool;
+    private volatile String dummyHash;
+
+    private final LongAdder logins = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder busy = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rehashed = new LongAdder();
+
+    // created on first use, like the connection pool it depends on
+    private static class Holder {
+        static final AuthService DEFAULT = new AuthService(DBConnection.getDataSource());
+    }
+
+    public static AuthService getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    public AuthService(DataSource ds) {
+        this(new UserDAO(ds), new LoginThrottle(),
+                AppConfig.getInt("mybank.auth.bcryptCost", 12),
+                AppConfig.getInt("mybank.auth.workers", Runtime.getRuntime().availableProcessors()),
+                AppConfig.getInt("mybank.auth.queueSize", 64),
+                AppConfig.getLong("mybank.auth.timeoutMs", 5000));
+    }
+
+    public AuthService(UserDAO users, LoginThrottle throttle, int cost, int workers, int queueSize, long timeoutMs) {
+        if (cost < 4 || cost > 31) throw new IllegalArgumentException("bcrypt cost must be 4..31: " + cost);
+        this.users = users;
+        this.throttle = throttle;
+        this.cost = cost;
+        this.timeoutMs = timeoutMs;
+        int n = Math.max(1, workers);
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(n, n, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), r -> {
+                    Thread t = new Thread(r, "mybank-auth-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * Checks {@code password} for {@code username}. The future completes (on a pool thread) with
+     * the user, or fails with an {@link AuthException}. Unknown users take as long as wrong
+     * passwords, so response time does not reveal which names exist.
+     */
+    public CompletableFuture<User> login(String username, String password) {
+        CompletableFuture<User> out = new CompletableFuture<>();
+        try {
+            throttle.begin(username);
+        } catch (AuthException e) {
+            throttled.increment();
+            out.completeExceptionally(e);
+            return out;
+        }
+        submit(() -> verify(username, password)).whenComplete((user, e) -> {
+            Throwable cause = unwrap(e);
+            Boolean success = null;
+            if (cause == null) {
+                success = Boolean.TRUE;
+                logins.increment();
+            } else if (cause instanceof AuthException
+                    && ((AuthException) cause).getReason() == AuthException.Reason.INVALID_CREDENTIALS) {
+                success = Boolean.FALSE;
+                failures.increment();
+            }
+            throttle.finish(username, success);
+            if (cause == null) out.complete(user);
+            else out.completeExceptionally(cause);
+        });
+        return out;
+    }
+
+    /** Blocking form of {@link #login}, for callers already off the UI thread. */
+    public User authenticate(String username, String password) throws AuthException {
+        return await(login(username, password));
+    }
+
+    /** Hashes a new password at the configured cost on the auth pool. */
+    public CompletableFuture<String> hashAsync(String password) {
+        return submit(() -> BCrypt.hashpw(password, BCrypt.gensalt(cost)));
+    }
+
+    public String hash(String password) throws AuthException {
+        return await(hashAsync(password));
+    }
+
+    public int getCost() { return cost; }
+
+    /** The cost a bcrypt hash was made with, or -1 if it is not a bcrypt hash. */
+    public static int costOf(String hash) {
+        if (hash == null || hash.length() < 7 || !hash.startsWith("$2") || hash.charAt(3) != '$') return -1;
+        try {
+            return Integer.parseInt(hash.substring(4, 6));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public long getLogins() { return logins.sum(); }
+    public long getFailures() { return failures.sum(); }
+    public long getThrottled() { return throttled.sum(); }
+    public long getBusy() { return busy.sum(); }
+    public long getTimeouts() { return timeouts.sum(); }
+    public long getRehashed() { return rehashed.sum(); }
+    public int getQueued() { return pool.getQueue().size(); }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("cost=%d logins=%d failures=%d throttled=%d busy=%d timeouts=%d rehashed=%d queued=%d",
+                cost, getLogins(), getFailures(), getThrottled(), getBusy(), getTimeouts(), getRehashed(), getQueued());
+    }
+
+    private User verify(String username, String password) throws AuthException {
+        User user;
+        try {
+            user = users.getByUsername(username);
+        } catch (SQLException e) {
+            throw new AuthException(AuthException.Reason.DATABASE_ERROR, "Could not reach the database: " + e.getMessage(), e);
+        }
+        String hash = user == null ? dummyHash() : user.getPassword();
+        boolean ok;
+        try {
+            ok = hash != null && BCrypt.checkpw(password, hash);
+        } catch (IllegalArgumentException e) {
+            ok = false; // not a bcrypt hash
+        }
+        if (user == null || !ok) throw new AuthException(AuthException.Reason.INVALID_CREDENTIALS, INVALID);
+        if (costOf(hash) != cost) scheduleRehash(user.getUserId(), hash, password);
+        return user;
+    }
+
+    private void scheduleRehash(int userId, String oldHash, String password) {
+        try {
+            pool.execute(() -> {
+                try {
+                    if (users.updatePasswordHash(userId, oldHash, BCrypt.hashpw(password, BCrypt.gensalt(cost)))) {
+                        rehashed.increment();
+                    }
+                } catch (SQLException e) {
+                    System.err.println("❌ Password rehash failed for user " + userId + ": " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // busy; the next login will try again
+        }
+    }
+
+    private String dummyHash() {
+        String h = dummyHash;
+        if (h == null) dummyHash = h = BCrypt.hashpw("not-a-password", BCrypt.gensalt(cost));
+        return h;
+    }
+
+    private <T> CompletableFuture<T> submit(Callable<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            pool.execute(() -> {
+                if (result.isDone()) return; // timed out while queued: skip the hashing altogether
+                try {
+                    result.complete(work.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            busy.increment();
+            result.completeExceptionally(new AuthException(AuthException.Reason.BUSY,
+                    "Too many logins right now, please try again in a moment."));
+            return result;
+        }
+        CompletableFuture<T> out = new CompletableFuture<>();
+        result.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((v, e) -> {
+            Throwable cause = unwrap(e);
+            if (cause instanceof TimeoutException) {
+                timeouts.increment();
+                cause = new AuthException(AuthException.Reason.TIMEOUT, "The server is busy, please try again.");
+            }
+            if (cause == null) out.complete(v);
+            else out.completeExceptionally(cause);
+        });
+        return out;
+    }
+
+    private static <T> T await(CompletableFuture<T> f) throws AuthException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuthException(AuthException.Reason.TIMEOUT, "Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e.getCause());
+            if (cause instanceof AuthException) throw (AuthException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        while (e instanceof CompletionException && e.getCause() != null) e = e.getCause();
+        return e;
+    }
+}
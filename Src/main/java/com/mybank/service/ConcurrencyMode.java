@@ -0,0 +1,23 @@
+package com.mybank.service;
+
+/**
+ * How {@link TransferService} changes {@code users.balance} (set by {@code mybank.transfer.concurrency}).
+ */
+public enum ConcurrencyMode {
+    /** One conditional {@code UPDATE} that checks the funds and writes in the same statement. No read, no retry loop of its own. */
+    CONDITIONAL,
+    /** Read without locks, write with a version compare-and-set, retry on conflict. Cheap when writers rarely collide. */
+    OPTIMISTIC,
+    /** {@code SELECT ... FOR UPDATE} in user id order before writing. Predictable under heavy contention on the same rows. */
+    PESSIMISTIC;
+
+    public static ConcurrencyMode parse(String s, ConcurrencyMode def) {
+        if (s == null || s.isEmpty()) return def;
+        try {
+            return valueOf(s.trim().toUpperCase(java.util.Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("❌ Unknown concurrency mode: " + s);
+            return def;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.mybank.service;
+
+import com.mybank.cache.DataCaches;
+import com.mybank.model.Money;
+import com.mybank.model.User;
+import com.mybank.shard.ShardMap;
+import com.mybank.util.AccountNumberGenerator;
+import org.mindrot.jbcrypt.BCrypt;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Bulk onboarding: creates users together with their default account, many at a time.
+ *
+ * Passwords are hashed on a pool of {@code hashThreads} threads as rows are added, while the
+ * previous chunk is being written, so the CPU-bound hashing and the database inserts overlap.
+ * Each chunk is one transaction: a batched insert into {@code users}, whose generated keys feed a
+ * batched insert into {@code accounts}. If a chunk fails as a whole (say a username taken since
+ * it was checked) it is retried row by row, so one bad row only rejects itself.
+ *
+ * Rows that cannot be imported are reported to the {@link Listener} and the run carries on.
+ * Usernames are remembered for the whole run to catch duplicates within the file.
+ *
+ * With several shards each username is first claimed in the shard directory, which also hands
+ * out the user id, and the chunk is written as one transaction per shard.
+ */
+public class CustomerImporter implements AutoCloseable {
+
+    public interface Listener {
+        void rejected(long line, String username, String reason);
+    }
+
+    private static final Pattern USERNAME = Pattern.compile("[A-Za-z0-9._-]{3,50}");
+    private static final String USER_SQL =
+            "INSERT INTO users (username, password, full_name, email, phone, address, photo, role, balance) VALUES (?,?,?,?,?,?,?,?,?)";
+    private static final String USER_WITH_ID_SQL =
+            "INSERT INTO users (username, password, full_name, email, phone, address, photo, role, balance, user_id) VALUES (?,?,?,?,?,?,?,?,?,?)";
+    private static final String ACCOUNT_SQL =
+            "INSERT INTO accounts (user_id, account_number, account_type, balance) VALUES (?,?,?,?)";
+
+    private final DataSource ds;
+    private final ShardMap shards;
+    private final int chunkSize;
+    private final int cost;
+    private final Listener listener;
+    private final ExecutorService hashPool;
+    private final Set<String> seen = new HashSet<>();
+    private final long startNanos = System.nanoTime();
+
+    private List<Row> filling = new ArrayList<>();
+    private List<Row> hashing; // full chunk whose passwords are still being hashed
+    private long imported;
+    private long rejected;
+    private long chunks;
+
+    public CustomerImporter(DataSource ds, int chunkSize, int hashThreads, int cost, Listener listener) {
+        if (cost < 4 || cost > 31) throw new IllegalArgumentException("bcrypt cost must be 4..31: " + cost);
+        this.ds = ds;
+        this.shards = ShardMap.of(ds);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.cost = cost;
+        this.listener = listener;
+        AtomicInteger seq = new AtomicInteger();
+        this.hashPool = Executors.newFixedThreadPool(Math.max(1, hashThreads), r -> {
+            Thread t = new Thread(r, "mybank-import-hash-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Queues one customer. {@code u} carries the plain password; {@code line} is only used in
+     * reports. May write the previous chunk, so database errors that stop the whole run (as
+     * opposed to a bad row) are thrown from here.
+     */
+    public void add(long line, User u, String accountType, Money openingBalance) throws SQLException {
+        String problem = validate(u, accountType, openingBalance);
+        if (problem == null && !seen.add(u.getUsername().toLowerCase(Locale.ROOT))) problem = "duplicate username in file";
+        if (problem != null) {
+            reject(line, u.getUsername(), problem);
+            return;
+        }
+        Row row = new Row(line, u, accountType == null || accountType.isEmpty() ? "Savings" : accountType,
+                openingBalance == null ? Money.ZERO : openingBalance);
+        String password = u.getPassword();
+        row.hash = CompletableFuture.supplyAsync(() -> BCrypt.hashpw(password, BCrypt.gensalt(cost)), hashPool);
+        filling.add(row);
+        if (filling.size() >= chunkSize) {
+            writeHashing();
+            hashing = filling;
+            filling = new ArrayList<>(chunkSize);
+        }
+    }
+
+    /** Writes everything still queued. */
+    public void finish() throws SQLException {
+        writeHashing();
+        hashing = filling;
+        filling = new ArrayList<>();
+        writeHashing();
+    }
+
+    public long getImported() { return imported; }
+    public long getRejected() { return rejected; }
+    public long getChunks() { return chunks; }
+
+    public double getRowsPerSecond() {
+        long nanos = System.nanoTime() - startNanos;
+        return nanos == 0 ? 0.0 : imported * 1e9 / nanos;
+    }
+
+    /** Stops the hashing threads; rows not yet written by {@link #finish()} are dropped. */
+    @Override
+    public void close() {
+        hashPool.shutdownNow();
+    }
+
+    private void writeHashing() throws SQLException {
+        if (hashing == null || hashing.isEmpty()) return;
+        List<Row> chunk = new ArrayList<>(hashing.size());
+        for (Row r : hashing) {
+            try {
+                r.passwordHash = r.hash.join();
+                chunk.add(r);
+            } catch (CompletionException e) {
+                reject(r.line, r.user.getUsername(), "password hashing failed: " + e.getCause());
+            }
+        }
+        hashing = null;
+        if (shards.isSharded()) {
+            Map<Integer, List<Row>> byShard = claim(chunk);
+            List<List<Row>> pending = new ArrayList<>(byShard.values());
+            for (Map.Entry<Integer, List<Row>> e : byShard.entrySet()) {
+                try {
+                    write(shards.shard(e.getKey()), e.getValue(), true);
+                    pending.remove(e.getValue());
+                } catch (SQLException ex) {
+                    for (List<Row> rows : pending) {
+                        for (Row r : rows) release(r);
+                    }
+                    throw ex;
+                }
+            }
+        } else {
+            write(ds, chunk, false);
+        }
+        chunks++;
+        DataCaches caches = DataCaches.of(ds);
+        for (Row r : chunk) caches.users().invalidate(r.user.getUsername()); // drop cached "not found"
+    }
+
+    // rows already claimed in the directory carry their user id; the others get one from the insert
+    private void write(DataSource db, List<Row> chunk, boolean claimed) throws SQLException {
+        try (Connection c = db.getConnection()) {
+            if (!claimed) dropExisting(c, chunk);
+            if (chunk.isEmpty()) return;
+            c.setAutoCommit(false);
+            try {
+                insertChunk(c, chunk, claimed);
+                c.commit();
+                imported += chunk.size();
+            } catch (SQLException e) {
+                c.rollback();
+                for (Row r : chunk) insertOne(c, r, claimed);
+            } finally {
+                c.setAutoCommit(true);
+            }
+        }
+    }
+
+    /** Claims every username in the directory, dropping taken ones, and groups the rows by shard. */
+    private Map<Integer, List<Row>> claim(List<Row> chunk) throws SQLException {
+        Map<Integer, List<Row>> byShard = new LinkedHashMap<>();
+        for (Row r : chunk) {
+            int shard = shards.newUserShard(r.user.getUsername());
+            r.userId = shards.claim(r.user.getUsername(), shard);
+            if (r.userId < 0) {
+                r.userId = 0;
+                reject(r.line, r.user.getUsername(), "username already exists");
+                continue;
+            }
+            byShard.computeIfAbsent(shard, k -> new ArrayList<>()).add(r);
+        }
+        return byShard;
+    }
+
+    private void release(Row r) {
+        try {
+            shards.release(r.userId);
+        } catch (SQLException e) {
+            System.err.println("❌ Could not release the directory entry of " + r.user.getUsername() + ": " + e.getMessage());
+        }
+    }
+
+    private void dropExisting(Connection c, List<Row> chunk) throws SQLException {
+        if (chunk.isEmpty()) return;
+        StringBuilder sql = new StringBuilder("SELECT username FROM users WHERE username IN (");
+        for (int i = 0; i < chunk.size(); i++) sql.append(i == 0 ? "?" : ",?");
+        sql.append(')');
+        Set<String> existing = new HashSet<>();
+        try (PreparedStatement ps = c.prepareStatement(sql.toString())) {
+            for (int i = 0; i < chunk.size(); i++) ps.setString(i + 1, chunk.get(i).user.getUsername());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) existing.add(rs.getString(1).toLowerCase(Locale.ROOT));
+            }
+        }
+        if (existing.isEmpty()) return;
+        chunk.removeIf(r -> {
+            if (!existing.contains(r.user.getUsername().toLowerCase(Locale.ROOT))) return false;
+            reject(r.line, r.user.getUsername(), "username already exists");
+            return true;
+        });
+    }
+
+    private void insertChunk(Connection c, List<Row> chunk, boolean claimed) throws SQLException {
+        if (claimed) {
+            insertClaimedUsers(c, chunk);
+        } else {
+            try (PreparedStatement ps = c.prepareStatement(USER_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (Row r : chunk) {
+                    bindUser(ps, r);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                int i = 0;
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    while (rs.next() && i < chunk.size()) chunk.get(i++).userId = rs.getInt(1);
+                }
+                if (i != chunk.size()) throw new SQLException("driver returned " + i + " keys for " + chunk.size() + " users");
+            }
+        }
+        try (PreparedStatement ps = c.prepareStatement(ACCOUNT_SQL)) {
+            for (Row r : chunk) {
+                bindAccount(ps, r);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static void insertClaimedUsers(Connection c, List<Row> rows) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(USER_WITH_ID_SQL)) {
+            for (Row r : rows) {
+                bindUser(ps, r);
+                ps.setInt(10, r.userId);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void insertOne(Connection c, Row r, boolean claimed) throws SQLException {
+        try {
+            if (claimed) {
+                insertClaimedUsers(c, Collections.singletonList(r));
+            } else {
+                try (PreparedStatement ps = c.prepareStatement(USER_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                    bindUser(ps, r);
+                    ps.executeUpdate();
+                    try (ResultSet rs = ps.getGeneratedKeys()) {
+                        if (!rs.next()) throw new SQLException("no generated key for user");
+                        r.userId = rs.getInt(1);
+                    }
+                }
+            }
+            try (PreparedStatement ps = c.prepareStatement(ACCOUNT_SQL)) {
+                bindAccount(ps, r);
+                ps.executeUpdate();
+            }
+            c.commit();
+            imported++;
+        } catch (SQLException e) {
+            c.rollback();
+            if (claimed) release(r);
+            reject(r.line, r.user.getUsername(), e.getMessage());
+        }
+    }
+
+    private static void bindUser(PreparedStatement ps, Row r) throws SQLException {
+        User u = r.user;
+        ps.setString(1, u.getUsername());
+        ps.setString(2, r.passwordHash);
+        ps.setString(3, u.getFullName());
+        ps.setString(4, u.getEmail());
+        ps.setString(5, u.getPhone());
+        ps.setString(6, u.getAddress());
+        ps.setString(7, null);
+        ps.setString(8, "user");
+        ps.setBigDecimal(9, r.openingBalance.toBigDecimal());
+    }
+
+    private static void bindAccount(PreparedStatement ps, Row r) throws SQLException {
+        ps.setInt(1, r.userId);
+        ps.setString(2, AccountNumberGenerator.getDefault().next());
+        ps.setString(3, r.accountType);
+        ps.setBigDecimal(4, r.openingBalance.toBigDecimal());
+    }
+
+    private static String validate(User u, String accountType, Money openingBalance) {
+        String name = u.getUsername();
+        if (name == null || !USERNAME.matcher(name).matches()) return "username must be 3-50 letters, digits, '.', '_' or '-'";
+        if (u.getPassword() == null || u.getPassword().isEmpty()) return "missing password";
+        if (u.getEmail() != null && !u.getEmail().isEmpty() && (u.getEmail().indexOf('@') < 1 || u.getEmail().length() > 100)) {
+            return "invalid email";
+        }
+        if (u.getFullName() != null && u.getFullName().length() > 100) return "full name longer than 100 characters";
+        if (u.getPhone() != null && u.getPhone().length() > 20) return "phone longer than 20 characters";
+        if (u.getAddress() != null && u.getAddress().length() > 255) return "address longer than 255 characters";
+        if (accountType != null && accountType.length() > 20) return "account type longer than 20 characters";
+        if (openingBalance != null && openingBalance.isNegative()) return "negative opening balance";
+        return null;
+    }
+
+    private void reject(long line, String username, String reason) {
+        rejected++;
+        if (listener != null) listener.rejected(line, username, reason);
+    }
+
+    private static final class Row {
+        final long line;
+        final User user;
+        final String accountType;
+        final Money openingBalance;
+        CompletableFuture<String> hash;
+        String passwordHash;
+        int userId;
+
+        Row(long line, User user, String accountType, Money openingBalance) {
+            this.line = line;
+            this.user = user;
+            this.accountType = accountType;
+            this.openingBalance = openingBalance;
+        }
+    }
+}
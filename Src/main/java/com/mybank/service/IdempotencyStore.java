@@ -0,0 +1,358 @@
+package com.mybank.service;
+
+import com.mybank.config.AppConfig;
+import com.mybank.shard.ShardMap;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Idempotency keys of deposits, withdrawals and transfers, so that a request sent again (a double
+ * click, a retry after a timeout) is done once and then answered with the first result.
+ *
+ * A key belongs to the user making the request and to one request: using it again for a different
+ * amount, recipient or kind of write fails with {@code KEY_REUSED}. It is claimed by inserting its
+ * {@code idempotency_keys} row on that user's shard as the first statement of the write's own
+ * transaction, before any balance is touched, and the result is stored in the same transaction. A
+ * refused write rolls the claim back with everything else, so the key can be tried again; a replay
+ * finds the row and returns its result without taking any row lock but the key's.
+ *
+ * Completed keys are also kept in memory, at most {@code mybank.idempotency.cacheSize} of them
+ * (oldest dropped first), and a replay found there returns without going near the database. That
+ * lookup is a single {@link ConcurrentHashMap#get}, which takes no lock. Rows are kept for
+ * {@code mybank.idempotency.ttlMs} and purged every {@code cleanupEveryMs} in batches of
+ * {@code cleanupBatch}. A key past its expiry counts as gone even before it is purged: it
+ * replays nothing, and claiming it again replaces its row.
+ */
+public final class IdempotencyStore {
+    /** Longest key accepted; e.g. a UUID is 36. */
+    public static final int MAX_KEY_LENGTH = 64;
+
+    private static final Map<DataSource, IdempotencyStore> BY_SOURCE = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final String CLAIM_SQL = "INSERT INTO idempotency_keys (user_id, idem_key, request, expires_at) VALUES (?,?,?,?)";
+    private static final String COMPLETE_SQL = "UPDATE idempotency_keys SET result = ? WHERE user_id = ? AND idem_key = ?";
+    private static final String RELEASE_SQL = "DELETE FROM idempotency_keys WHERE user_id = ? AND idem_key = ? AND result IS NULL";
+    private static final String FIND_SQL = "SELECT request, result, expires_at FROM idempotency_keys WHERE user_id = ? AND idem_key = ? AND expires_at >= ?";
+    private static final String EXPIRED_SQL = "SELECT user_id, idem_key FROM idempotency_keys WHERE expires_at < ? LIMIT ?";
+    private static final String PURGE_SQL = "DELETE FROM idempotency_keys WHERE user_id = ? AND idem_key = ? AND expires_at < ?";
+
+    /** One keyed request, as made by {@link #request}. */
+    public static final class Claim {
+        private final Key key;
+        private final String request;
+
+        private Claim(Key key, String request) {
+            this.key = key;
+            this.request = request;
+        }
+
+        public int getUserId() { return key.userId; }
+        public String getKey() { return key.key; }
+    }
+
+    private static final class Key {
+        final int userId;
+        final String key;
+
+        Key(int userId, String key) {
+            this.userId = userId;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return userId == k.userId && key.equals(k.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * userId + key.hashCode();
+        }
+    }
+
+    private static final class Done {
+        final String request;
+        final String result;
+        final long expiresAt;
+
+        Done(String request, String result, long expiresAt) {
+            this.request = request;
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final ShardMap shards;
+    private final int cacheSize;
+    private final long ttlMs;
+    private final int cleanupBatch;
+    private final ConcurrentHashMap<Key, Done> done = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Key> order = new ConcurrentLinkedQueue<>();
+    private ScheduledExecutorService cleanup;
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder storedHits = new LongAdder();
+    private final LongAdder claims = new LongAdder();
+    private final LongAdder purged = new LongAdder();
+
+    public IdempotencyStore(ShardMap shards, int cacheSize, long ttlMs, int cleanupBatch) {
+        this.shards = shards;
+        this.cacheSize = Math.max(0, cacheSize);
+        this.ttlMs = Math.max(1_000, ttlMs);
+        this.cleanupBatch = Math.max(1, cleanupBatch);
+    }
+
+    /** The store for writes to {@code ds}, shared by every {@link TransferService} on it; purges expired keys. */
+    public static IdempotencyStore of(DataSource ds) {
+        return BY_SOURCE.computeIfAbsent(ds, k -> {
+            IdempotencyStore store = new IdempotencyStore(ShardMap.of(ds),
+                    AppConfig.getInt("mybank.idempotency.cacheSize", 100_000),
+                    AppConfig.getLong("mybank.idempotency.ttlMs", 24 * 60 * 60_000L),
+                    AppConfig.getInt("mybank.idempotency.cleanupBatch", 1_000));
+            store.startCleanup(AppConfig.getLong("mybank.idempotency.cleanupEveryMs", 10 * 60_000));
+            return store;
+        });
+    }
+
+    /**
+     * {@code request} (what is being asked, e.g. {@code transfer:42:1500}) made by {@code userId}
+     * under {@code key}, or {@code null} when there is no key.
+     */
+    public Claim request(int userId, String key, String request) {
+        if (key == null) return null;
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("An idempotency key must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char ch = key.charAt(i);
+            if (ch < 0x21 || ch > 0x7e) throw new IllegalArgumentException("An idempotency key must be printable ASCII");
+        }
+        return new Claim(new Key(userId, key), request);
+    }
+
+    /** The result stored for {@code claim} if it is in memory, else {@code null}. Takes no lock. */
+    public String cached(Claim claim) throws TransferException {
+        if (claim == null) return null;
+        Done d = done.get(claim.key);
+        if (d == null || d.expiresAt < System.currentTimeMillis()) return null;
+        cacheHits.increment();
+        return replay(claim, d.request, d.result);
+    }
+
+    /**
+     * Claims {@code claim}'s key as part of the transaction on {@code c}. Returns {@code null} if
+     * it is now this transaction's, or the stored result if the request was done before, in which
+     * case the caller rolls back and returns that instead.
+     */
+    public String claim(Connection c, Claim claim) throws SQLException, TransferException {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        // a second try only after deleting an expired row that held the key
+        for (int attempt = 0; ; attempt++) {
+            try (PreparedStatement ps = c.prepareStatement(CLAIM_SQL)) {
+                ps.setInt(1, claim.key.userId);
+                ps.setString(2, claim.key.key);
+                ps.setString(3, claim.request);
+                ps.setTimestamp(4, new Timestamp(now.getTime() + ttlMs));
+                ps.executeUpdate();
+                claims.increment();
+                return null;
+            } catch (SQLException e) {
+                if (!isDuplicate(e)) throw e;
+            }
+            try (PreparedStatement ps = c.prepareStatement(FIND_SQL)) {
+                ps.setInt(1, claim.key.userId);
+                ps.setString(2, claim.key.key);
+                ps.setTimestamp(3, now);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        storedHits.increment();
+                        String result = replay(claim, rs.getString(1), rs.getString(2));
+                        remember(claim, result, rs.getTimestamp(3).getTime());
+                        return result;
+                    }
+                }
+            }
+            if (attempt == 0 && deleteExpired(c, claim.key, now)) continue;
+            // gone again means it was purged or released in between; let the caller try again
+            throw new TransferException(TransferException.Reason.BUSY,
+                    "This request is still being processed; please try again.", 1_000);
+        }
+    }
+
+    private static boolean deleteExpired(Connection c, Key key, Timestamp now) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(PURGE_SQL)) {
+            ps.setInt(1, key.userId);
+            ps.setString(2, key.key);
+            ps.setTimestamp(3, now);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    /** Stores {@code result} for the key claimed on {@code c}; the caller commits. */
+    public void complete(Connection c, Claim claim, String result) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(COMPLETE_SQL)) {
+            ps.setString(1, result);
+            ps.setInt(2, claim.key.userId);
+            ps.setString(3, claim.key.key);
+            ps.executeUpdate();
+        }
+    }
+
+    /** Gives up a claim committed on its own whose write did not happen, so the key can be used again. */
+    public void release(Connection c, Claim claim) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(RELEASE_SQL)) {
+            ps.setInt(1, claim.key.userId);
+            ps.setString(2, claim.key.key);
+            ps.executeUpdate();
+        }
+    }
+
+    /** Keeps {@code result} in memory; call once the transaction that completed the claim has committed. */
+    public void remember(Claim claim, String result) {
+        remember(claim, result, System.currentTimeMillis() + ttlMs);
+    }
+
+    // no longer than its row, which a replay from the table may find well into its ttl
+    private void remember(Claim claim, String result, long expiresAt) {
+        if (cacheSize == 0) return;
+        if (done.put(claim.key, new Done(claim.request, result, expiresAt)) == null) {
+            order.offer(claim.key);
+            while (done.size() > cacheSize) {
+                Key oldest = order.poll();
+                if (oldest == null) break;
+                done.remove(oldest);
+            }
+        }
+    }
+
+    /** Drops {@code userId}'s keys from memory, e.g. once their rows (and key rows) moved to another shard. */
+    public void forget(int userId) {
+        if (done.keySet().removeIf(k -> k.userId == userId)) order.removeIf(k -> !done.containsKey(k));
+    }
+
+    /** {@link #forget} on every store in this process that writes through {@code shards}. */
+    public static void forgetUser(ShardMap shards, int userId) {
+        synchronized (BY_SOURCE) {
+            for (IdempotencyStore store : BY_SOURCE.values()) {
+                if (store.shards.catalog() == shards.catalog()) store.forget(userId);
+            }
+        }
+    }
+
+    private static String replay(Claim claim, String request, String result) throws TransferException {
+        if (!claim.request.equals(request)) {
+            throw new TransferException(TransferException.Reason.KEY_REUSED,
+                    "This request key was already used for a different request.");
+        }
+        if (result == null) {
+            // claimed by a write that has not committed yet, or by a cross-shard transfer cut short
+            throw new TransferException(TransferException.Reason.BUSY,
+                    "This request is still being processed; please try again.", 1_000);
+        }
+        return result;
+    }
+
+    private static boolean isDuplicate(SQLException e) {
+        // 23xxx: integrity constraint violation, here the primary key
+        return e.getSQLState() != null && e.getSQLState().startsWith("23");
+    }
+
+    /** Deletes keys past their expiry on every shard and returns how many. */
+    public int purgeExpired() throws SQLException {
+        int total = 0;
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (DataSource db : shards.all()) {
+            int n;
+            do {
+                n = purgeBatch(db, now);
+                total += n;
+            } while (n == cleanupBatch);
+        }
+        purged.add(total);
+        long millis = now.getTime();
+        if (done.values().removeIf(d -> d.expiresAt < millis)) order.removeIf(k -> !done.containsKey(k));
+        return total;
+    }
+
+    // looked up first and deleted by key, so no statement holds locks on more than a batch
+    private int purgeBatch(DataSource db, Timestamp now) throws SQLException {
+        try (Connection c = db.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                int n = 0;
+                try (PreparedStatement find = c.prepareStatement(EXPIRED_SQL);
+                     PreparedStatement delete = c.prepareStatement(PURGE_SQL)) {
+                    find.setTimestamp(1, now);
+                    find.setInt(2, cleanupBatch);
+                    try (ResultSet rs = find.executeQuery()) {
+                        while (rs.next()) {
+                            delete.setInt(1, rs.getInt(1));
+                            delete.setString(2, rs.getString(2));
+                            delete.setTimestamp(3, now);
+                            delete.addBatch();
+                            n++;
+                        }
+                    }
+                    if (n > 0) delete.executeBatch();
+                }
+                c.commit();
+                return n;
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+    }
+
+    public synchronized void startCleanup(long everyMs) {
+        if (cleanup != null) return;
+        cleanup = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mybank-idempotency-cleanup");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000, everyMs);
+        cleanup.scheduleWithFixedDelay(() -> {
+            try {
+                purgeExpired();
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("❌ Purging expired idempotency keys failed: " + e.getMessage());
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopCleanup() {
+        if (cleanup != null) cleanup.shutdownNow();
+        cleanup = null;
+    }
+
+    public int getCachedKeys() { return done.size(); }
+    /** Replays answered from memory. */
+    public long getCacheHits() { return cacheHits.sum(); }
+    /** Replays answered from the table. */
+    public long getStoredHits() { return storedHits.sum(); }
+    public long getClaims() { return claims.sum(); }
+    public long getPurged() { return purged.sum(); }
+
+    @Override
+    public String toString() {
+        return String.format("claims=%d cacheHits=%d storedHits=%d cached=%d purged=%d",
+                getClaims(), getCacheHits(), getStoredHits(), getCachedKeys(), getPurged());
+    }
+}
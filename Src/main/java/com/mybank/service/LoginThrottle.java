@@ -0,0 +1,120 @@
+package com.mybank.service;
+
+import com.mybank.config.AppConfig;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-username limits on login attempts, checked before any bcrypt work is queued.
+ *
+ * Only one attempt per username runs at a time. After {@code mybank.auth.maxFailures} failures
+ * within {@code mybank.auth.failureWindowMs} the name is locked for {@code mybank.auth.lockoutMs},
+ * doubling with every further failure up to {@code mybank.auth.maxLockoutMs}. A successful login
+ * clears the record.
+ */
+public class LoginThrottle {
+    private static final int SWEEP_THRESHOLD = 10_000;
+
+    private final int maxFailures;
+    private final long windowNanos;
+    private final long lockoutNanos;
+    private final long maxLockoutNanos;
+    private final Map<String, Attempts> attempts = new ConcurrentHashMap<>();
+
+    public LoginThrottle() {
+        this(AppConfig.getInt("mybank.auth.maxFailures", 5),
+                AppConfig.getLong("mybank.auth.failureWindowMs", 15 * 60_000L),
+                AppConfig.getLong("mybank.auth.lockoutMs", 30_000L),
+                AppConfig.getLong("mybank.auth.maxLockoutMs", 15 * 60_000L));
+    }
+
+    public LoginThrottle(int maxFailures, long windowMs, long lockoutMs, long maxLockoutMs) {
+        this.maxFailures = Math.max(1, maxFailures);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.lockoutNanos = TimeUnit.MILLISECONDS.toNanos(lockoutMs);
+        this.maxLockoutNanos = TimeUnit.MILLISECONDS.toNanos(maxLockoutMs);
+    }
+
+    /**
+     * Starts an attempt for {@code username}; every call that returns must be followed by one
+     * {@link #finish}. Throws {@code THROTTLED} if the name is locked or already being checked.
+     */
+    public void begin(String username) throws AuthException {
+        String key = key(username);
+        long now = System.nanoTime();
+        while (true) {
+            Attempts a = attempts.computeIfAbsent(key, k -> new Attempts());
+            synchronized (a) {
+                if (attempts.get(key) != a) continue; // dropped by finish() or a sweep meanwhile
+                if (a.lockedUntil != 0 && now - a.lockedUntil < 0) {
+                    long secs = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(a.lockedUntil - now + 999_999_999L));
+                    throw new AuthException(AuthException.Reason.THROTTLED,
+                            "Too many failed attempts. Try again in " + secs + " s.");
+                }
+                if (a.inFlight) {
+                    throw new AuthException(AuthException.Reason.THROTTLED, "A login for this user is already in progress.");
+                }
+                a.inFlight = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Ends an attempt. {@code success} is TRUE for a good password, FALSE for a bad one and null
+     * when the password was never checked (busy, timed out, database down).
+     */
+    public void finish(String username, Boolean success) {
+        String key = key(username);
+        Attempts a = attempts.get(key);
+        if (a == null) return;
+        long now = System.nanoTime();
+        synchronized (a) {
+            a.inFlight = false;
+            if (Boolean.TRUE.equals(success)) {
+                a.failures = 0;
+                a.lockedUntil = 0;
+            } else if (Boolean.FALSE.equals(success)) {
+                if (a.failures == 0 || now - a.firstFailure > windowNanos) {
+                    a.failures = 0;
+                    a.firstFailure = now;
+                }
+                a.failures++;
+                if (a.failures >= maxFailures) {
+                    int doublings = Math.min(a.failures - maxFailures, Long.numberOfLeadingZeros(lockoutNanos) - 1);
+                    a.lockedUntil = now + Math.min(maxLockoutNanos, lockoutNanos << doublings);
+                }
+            }
+            if (a.failures == 0) attempts.remove(key, a);
+        }
+        if (attempts.size() > SWEEP_THRESHOLD) sweep(now);
+    }
+
+    public int size() {
+        return attempts.size();
+    }
+
+    private void sweep(long now) {
+        attempts.forEach((key, a) -> {
+            synchronized (a) {
+                boolean locked = a.lockedUntil != 0 && now - a.lockedUntil < 0;
+                if (!a.inFlight && !locked && now - a.firstFailure > windowNanos) attempts.remove(key, a);
+            }
+        });
+    }
+
+    private static String key(String username) {
+        // MySQL compares usernames case-insensitively, so the throttle must too
+        return username == null ? "" : username.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Attempts {
+        int failures;
+        long firstFailure;
+        long lockedUntil; // 0 = not locked
+        boolean inFlight;
+    }
+}
@@ -0,0 +1,39 @@
+package com.mybank.service;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Classification of transient lock errors and jittered back-off between attempts.
+ */
+public final class SqlRetry {
+    public static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+    public static final int ER_LOCK_DEADLOCK = 1213;
+
+    private SqlRetry() {}
+
+    public static boolean isDeadlock(SQLException e) {
+        return e.getErrorCode() == ER_LOCK_DEADLOCK || "40001".equals(e.getSQLState());
+    }
+
+    public static boolean isLockWaitTimeout(SQLException e) {
+        return e.getErrorCode() == ER_LOCK_WAIT_TIMEOUT;
+    }
+
+    public static boolean isRetryable(SQLException e) {
+        return isDeadlock(e) || isLockWaitTimeout(e) || e instanceof SQLTransactionRollbackException;
+    }
+
+    /**
+     * Sleeps a random time in {@code [0, min(maxMs, baseMs * 2^attempt))} ("full jitter"), so
+     * transactions that collided once do not collide again in lock step.
+     */
+    public static void backoff(int attempt, long baseMs, long maxMs) {
+        long cap = Math.min(maxMs, baseMs << Math.min(attempt, 20));
+        long sleep = ThreadLocalRandom.current().nextLong(Math.max(1, cap) + 1);
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(sleep));
+    }
+}
@@ -0,0 +1,11 @@
+package com.mybank.service;
+
+/**
+ * An optimistic write lost its compare-and-set: the balance changed since it was read. The
+ * attempt is rolled back and run again, within the same retry budget as deadlocks.
+ */
+public class StaleVersionException extends Exception {
+    public StaleVersionException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,44 @@
+package com.mybank.service;
+
+/**
+ * Totals for one statement, or summed over a batch run.
+ */
+public class StatementResult {
+    private final int statements;
+    private final int failed;
+    private final long rows;
+    private final long pages;
+    private final long bytes;
+    private final long elapsedNanos;
+
+    public StatementResult(int statements, int failed, long rows, long pages, long bytes, long elapsedNanos) {
+        this.statements = statements;
+        this.failed = failed;
+        this.rows = rows;
+        this.pages = pages;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getStatements() { return statements; }
+    /** Statements that could not be written (batch runs only; the error is logged). */
+    public int getFailed() { return failed; }
+    public long getRows() { return rows; }
+    public long getPages() { return pages; }
+    public long getBytes() { return bytes; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    public double getPagesPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : pages * 1e9 / elapsedNanos;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : rows * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%,d statements (%d failed), %,d rows, %,d pages, %,d KB in %.1f s: %,.0f pages/s, %,.0f rows/s",
+                statements, failed, rows, pages, bytes / 1024, elapsedNanos / 1e9, getPagesPerSecond(), getRowsPerSecond());
+    }
+}
@@ -0,0 +1,239 @@
+package com.mybank.service;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.Element;
+import com.lowagie.text.Font;
+import com.lowagie.text.PageSize;
+import com.lowagie.text.Paragraph;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.pdf.PdfPCell;
+import com.lowagie.text.pdf.PdfPTable;
+import com.lowagie.text.pdf.PdfWriter;
+import com.mybank.DBConnection;
+import com.mybank.config.AppConfig;
+import com.mybank.dao.TransactionDAO;
+import com.mybank.dao.UserDAO;
+import com.mybank.model.Money;
+import com.mybank.model.Transaction;
+import com.mybank.model.User;
+import com.mybank.trace.Trace;
+
+import javax.sql.DataSource;
+import java.awt.Color;
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Renders account statements to PDF.
+ *
+ * Transactions are streamed from the database straight into the document: the table is added
+ * to the page every {@link #FLUSH_ROWS} rows and then emptied, and finished pages go to the
+ * output stream as they are laid out, so memory use stays flat however long the history is.
+ * {@link #writeAll} renders every user's statement in parallel on a fork-join pool.
+ */
+public class StatementService {
+    private static final int FLUSH_ROWS = 200;
+    private static final DateTimeFormatter WHEN = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final Color HEADER_BG = new Color(0xCA, 0xD2, 0xC5);
+
+    private final UserDAO users;
+    private final TransactionDAO transactions;
+
+    public StatementService() {
+        this(DBConnection.getDataSource());
+    }
+
+    public StatementService(DataSource ds) {
+        this.users = new UserDAO(ds);
+        this.transactions = new TransactionDAO(ds);
+    }
+
+    /**
+     * Writes {@code user}'s statement for {@code month} (null for the whole history) to
+     * {@code out}, which is left open. If this throws, what was written is not a usable PDF.
+     */
+    public StatementResult write(User user, YearMonth month, OutputStream out) throws SQLException {
+        long start = System.nanoTime();
+        CountingOutputStream counted = new CountingOutputStream(out);
+        Document doc = new Document(PageSize.A4, 36, 36, 36, 36);
+        PdfWriter writer = PdfWriter.getInstance(doc, counted);
+        writer.setCloseStream(false);
+        doc.open();
+
+        // fonts are per document: OpenPDF caches metrics on them lazily, so they are not shared across threads
+        Font titleFont = new Font(Font.HELVETICA, 16, Font.BOLD);
+        Font headFont = new Font(Font.HELVETICA, 9, Font.BOLD);
+        Font cellFont = new Font(Font.HELVETICA, 9);
+
+        String name = user.getFullName() == null ? user.getUsername() : user.getFullName();
+        doc.add(new Paragraph("MyBank Statement", titleFont));
+        doc.add(new Paragraph(name + " (" + user.getUsername() + ")", cellFont));
+        doc.add(new Paragraph("Period: " + (month == null ? "all transactions" : month.toString())
+                + "    Generated: " + LocalDateTime.now().format(WHEN), cellFont));
+        doc.add(new Paragraph(" "));
+
+        PdfPTable table = new PdfPTable(new float[]{3, 2, 6, 3});
+        table.setWidthPercentage(100);
+        table.setHeaderRows(1);
+        table.setComplete(false);
+        for (String h : new String[]{"Date", "Type", "Description", "Amount (USh)"}) {
+            PdfPCell cell = new PdfPCell(new Phrase(h, headFont));
+            cell.setBackgroundColor(HEADER_BG);
+            table.addCell(cell);
+        }
+
+        Totals totals = new Totals();
+        Timestamp from = month == null ? null : Timestamp.valueOf(month.atDay(1).atStartOfDay());
+        Timestamp to = month == null ? null : Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+        transactions.streamForPeriod(user.getUserId(), from, to, t -> {
+            Timestamp at = t.getCreatedAt();
+            table.addCell(new Phrase(at == null ? "" : at.toLocalDateTime().format(WHEN), cellFont));
+            table.addCell(new Phrase(t.getType(), cellFont));
+            table.addCell(new Phrase(t.getDescription() == null ? "" : t.getDescription(), cellFont));
+            PdfPCell amount = new PdfPCell(new Phrase(t.getAmount().format(), cellFont));
+            amount.setHorizontalAlignment(Element.ALIGN_RIGHT);
+            table.addCell(amount);
+            totals.add(t);
+            // lays out the rows so far and drops them from the table
+            if (totals.rows % FLUSH_ROWS == 0) doc.add(table);
+        });
+        table.setComplete(true);
+        doc.add(table);
+        if (totals.rows == 0) doc.add(new Paragraph("No transactions in this period.", cellFont));
+
+        doc.add(new Paragraph(" "));
+        PdfPTable summary = new PdfPTable(2);
+        summary.setWidthPercentage(50);
+        summary.setHorizontalAlignment(Element.ALIGN_LEFT);
+        summary.addCell(new Phrase("Transactions", headFont));
+        summary.addCell(new Phrase(String.format("%,d", totals.rows), cellFont));
+        summary.addCell(new Phrase("Credits", headFont));
+        summary.addCell(new Phrase(totals.credits.format(), cellFont));
+        summary.addCell(new Phrase("Debits", headFont));
+        summary.addCell(new Phrase(totals.debits.format(), cellFont));
+        summary.addCell(new Phrase("Current balance", headFont));
+        summary.addCell(new Phrase(user.getBalance() == null ? "" : user.getBalance().format(), cellFont));
+        doc.add(summary);
+
+        int pages = writer.getPageNumber();
+        doc.close();
+        return new StatementResult(1, 0, totals.rows, pages, counted.count, System.nanoTime() - start);
+    }
+
+    /** {@link #writeAll(YearMonth, Path, int)} with {@code mybank.statements.parallelism} workers. */
+    public StatementResult writeAll(YearMonth month, Path dir) throws SQLException, IOException {
+        int parallelism = AppConfig.getInt("mybank.statements.parallelism", Runtime.getRuntime().availableProcessors());
+        return writeAll(month, dir, parallelism);
+    }
+
+    /**
+     * Writes one statement per user into {@code dir} as {@code statement-<username>-<month>.pdf},
+     * {@code parallelism} at a time. Each worker holds a pooled connection while it renders, so
+     * going past {@code mybank.db.pool.maxSize} only adds waiting. A statement that fails is
+     * logged, counted in {@link StatementResult#getFailed()} and leaves no file behind.
+     */
+    public StatementResult writeAll(YearMonth month, Path dir, int parallelism) throws SQLException, IOException {
+        long start = System.nanoTime();
+        List<User> all = users.findAll();
+        Files.createDirectories(dir);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        int ok = 0;
+        int failed = 0;
+        long rows = 0;
+        long pages = 0;
+        long bytes = 0;
+        try {
+            List<ForkJoinTask<StatementResult>> tasks = new ArrayList<>(all.size());
+            for (User u : all) tasks.add(pool.submit(() -> writeFile(u, month, dir)));
+            for (ForkJoinTask<StatementResult> task : tasks) {
+                StatementResult r = task.join();
+                if (r == null) {
+                    failed++;
+                    continue;
+                }
+                ok++;
+                rows += r.getRows();
+                pages += r.getPages();
+                bytes += r.getBytes();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return new StatementResult(ok, failed, rows, pages, bytes, System.nanoTime() - start);
+    }
+
+    public static String fileName(User user, YearMonth month) {
+        String safe = user.getUsername() == null ? "user" + user.getUserId() : user.getUsername().replaceAll("[^A-Za-z0-9._-]", "_");
+        return "statement-" + safe + "-" + (month == null ? "all" : month.toString()) + ".pdf";
+    }
+
+    private StatementResult writeFile(User user, YearMonth month, Path dir) {
+        Path target = dir.resolve(fileName(user, month));
+        Path part = dir.resolve(target.getFileName() + ".part");
+        Trace trace = Trace.begin("statement");
+        try {
+            StatementResult r;
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(part), 1 << 16)) {
+                r = write(user, month, out);
+            }
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return r;
+        } catch (SQLException | IOException | RuntimeException e) {
+            System.err.println("❌ Statement for " + user.getUsername() + " failed: " + e.getMessage());
+            try {
+                Files.deleteIfExists(part);
+            } catch (IOException ignore) {
+                // best effort
+            }
+            return null;
+        } finally {
+            trace.close();
+        }
+    }
+
+    private static final class Totals {
+        long rows;
+        Money credits = Money.ZERO;
+        Money debits = Money.ZERO;
+
+        void add(Transaction t) {
+            rows++;
+            if (t.getAmount().isNegative()) debits = debits.plus(t.getAmount());
+            else credits = credits.plus(t.getAmount());
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
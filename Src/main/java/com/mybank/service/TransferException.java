@@ -0,0 +1,36 @@
+package com.mybank.service;
+
+/**
+ * A money movement (transfer, deposit or withdrawal) was refused or could not be completed.
+ */
+public class TransferException extends Exception {
+    public enum Reason {
+        INVALID_AMOUNT, SAME_ACCOUNT, SENDER_NOT_FOUND, RECIPIENT_NOT_FOUND, ACCOUNT_NOT_FOUND,
+        INSUFFICIENT_FUNDS, CONFLICT, DATABASE_ERROR, BUSY, KEY_REUSED
+    }
+
+    private final Reason reason;
+    private final long retryAfterMs;
+
+    public TransferException(Reason reason, String message) {
+        this(reason, message, 0);
+    }
+
+    /** A refusal the caller may try again after {@code retryAfterMs}, e.g. {@link Reason#BUSY}. */
+    public TransferException(Reason reason, String message, long retryAfterMs) {
+        super(message);
+        this.reason = reason;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public TransferException(Reason reason, String message, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+        this.retryAfterMs = 0;
+    }
+
+    public Reason getReason() { return reason; }
+
+    /** How long to wait before trying again, or 0 if there is no point. */
+    public long getRetryAfterMs() { return retryAfterMs; }
+}
@@ -0,0 +1,27 @@
+package com.mybank.service;
+
+/**
+ * Outcome of a committed transfer.
+ */
+public class TransferResult {
+    private final int retries;
+    private final long elapsedMicros;
+    private final boolean replayed;
+
+    public TransferResult(int retries, long elapsedMicros) {
+        this(retries, elapsedMicros, false);
+    }
+
+    public TransferResult(int retries, long elapsedMicros, boolean replayed) {
+        this.retries = retries;
+        this.elapsedMicros = elapsedMicros;
+        this.replayed = replayed;
+    }
+
+    /** Number of times the transaction was rolled back by a deadlock or lock wait timeout and re-run. */
+    public int getRetries() { return retries; }
+    public long getElapsedMicros() { return elapsedMicros; }
+
+    /** Whether this is the stored result of the same request done before, rather than a new transfer. */
+    public boolean isReplayed() { return replayed; }
+}
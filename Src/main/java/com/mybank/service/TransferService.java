@@ -0,0 +1,636 @@
+package com.mybank.service;
+
+import com.mybank.DBConnection;
+import com.mybank.cache.DataCaches;
+import com.mybank.config.AppConfig;
+import com.mybank.db.ReplicaRouter;
+import com.mybank.event.BalanceChanged;
+import com.mybank.event.EventBus;
+import com.mybank.event.TransactionPosted;
+import com.mybank.ledger.InsufficientFundsException;
+import com.mybank.ledger.LedgerEngine;
+import com.mybank.metrics.Metrics;
+import com.mybank.metrics.Operation;
+import com.mybank.model.Money;
+import com.mybank.model.Transaction;
+import com.mybank.model.User;
+import com.mybank.shard.ShardMap;
+import com.mybank.shard.TransferSaga;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * User-to-user transfers, deposits and withdrawals on {@code users.balance}.
+ *
+ * How a balance changes is the {@link ConcurrencyMode} ({@code mybank.transfer.concurrency}). In
+ * the default, {@code PESSIMISTIC}, the rows are read {@code FOR UPDATE} in user id order, checked,
+ * then written, so opposite transfers between the same pair queue up instead of deadlocking; it
+ * was ahead of the others at both low and high contention in {@code BalanceConcurrencyBenchmark}.
+ * {@code CONDITIONAL} changes both balances in a single conditional {@code UPDATE} (the debit only
+ * matches while the sender still has the funds); {@code OPTIMISTIC} reads without locks and writes
+ * each row with a compare-and-set on {@code users.version}, and gives up on hot accounts once the
+ * retries run out. Deadlocks, lock wait timeouts and lost compare-and-sets are retried with
+ * jittered back-off, all from the one budget of {@code mybank.transfer.maxRetries}.
+ *
+ * When the two users are on different shards the transfer runs as a {@link TransferSaga}
+ * instead: the sender is debited first and the recipient credited after, possibly by recovery.
+ *
+ * Deposits and withdrawals change the one balance the same way (a conditional withdrawal only
+ * matches while the funds are there) and post one transaction row.
+ *
+ * With {@code mybank.ledger.enabled} (unsharded databases only) all three run on the
+ * {@link LedgerEngine} instead, whatever the mode: it checks and moves the balances in memory,
+ * returns once its journal is on disk and writes {@code users.balance} and the transaction rows
+ * behind, so the tables trail the events by the flush delay. A key is then claimed in a
+ * transaction of its own before the write and completed after it, as for a cross-shard transfer.
+ *
+ * Every write first passes the database's {@link WriteAdmission}, which serializes writes per
+ * account, caps how many run at once and turns the rest away as {@code BUSY} when saturated.
+ * Deposits queue ahead of withdrawals and transfers, since they can only help later ones succeed.
+ *
+ * Each method has a form taking an idempotency key, with which a request sent again is not done
+ * again: the key is claimed in the write's own transaction and a repeat gets the first result back
+ * from the {@link IdempotencyStore}, from memory before admission or else from the table, without
+ * locking either balance.
+ *
+ * Each call is timed as {@code TransferService.transfer}, {@code .deposit} or {@code .withdraw}
+ * in {@link Metrics} once admitted; refusals (no funds, unknown user) count as calls, only
+ * database failures as errors.
+ */
+public class TransferService {
+    private static final Operation TRANSFER = Metrics.op("TransferService.transfer");
+    private static final Operation DEPOSIT = Metrics.op("TransferService.deposit");
+    private static final Operation WITHDRAW = Metrics.op("TransferService.withdraw");
+
+    private static final String MOVE_SQL =
+            "UPDATE users SET balance = CASE WHEN user_id = ? THEN balance - ? ELSE balance + ? END, version = version + 1 "
+                    + "WHERE user_id IN (?, ?) AND (user_id <> ? OR balance >= ?)";
+    private static final String POST_SQL =
+            "INSERT INTO transactions (user_id, type, amount, description) VALUES (?,?,?,?), (?,?,?,?)";
+    private static final String ADJUST_SQL = "UPDATE users SET balance = balance + ?, version = version + 1 WHERE user_id = ? AND balance + ? >= 0";
+    private static final String READ_SQL = "SELECT user_id, balance, version FROM users WHERE user_id IN (?, ?) ORDER BY user_id";
+    private static final String LOCK_SQL = READ_SQL + " FOR UPDATE";
+    private static final String SET_SQL = "UPDATE users SET balance = ?, version = version + 1 WHERE user_id = ?";
+    private static final String SET_IF_VERSION_SQL = SET_SQL + " AND version = ?";
+    private static final String POST_ONE_SQL = "INSERT INTO transactions (user_id, type, amount, description) VALUES (?,?,?,?)";
+
+    private final DataCaches caches;
+    private final ShardMap shards;
+    private final TransferSaga saga;
+    private final LedgerEngine ledger;
+    private final WriteAdmission admission;
+    private final IdempotencyStore idempotency;
+    private final ConcurrencyMode mode;
+    private final EventBus events = EventBus.getDefault();
+    private final int maxRetries;
+    private final long backoffBaseMs;
+    private final long backoffMaxMs;
+
+    private final LongAdder committed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder deadlocks = new LongAdder();
+    private final LongAdder lockWaitTimeouts = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder gaveUp = new LongAdder();
+
+    public TransferService() {
+        this(DBConnection.getDataSource());
+    }
+
+    public TransferService(DataSource ds) {
+        this(ds, ConcurrencyMode.parse(AppConfig.get("mybank.transfer.concurrency", null), ConcurrencyMode.PESSIMISTIC));
+    }
+
+    private static LedgerEngine ledgerFor(DataSource ds, ShardMap shards) {
+        if (!AppConfig.getBoolean("mybank.ledger.enabled", false)) return null;
+        if (shards.isSharded()) {
+            System.err.println("⚠️ mybank.ledger.enabled is ignored: the ledger engine does not run on sharded databases.");
+            return null;
+        }
+        return LedgerEngine.of(ds);
+    }
+
+    public TransferService(DataSource ds, ConcurrencyMode mode) {
+        this.mode = mode;
+        this.caches = DataCaches.of(ds);
+        this.shards = ShardMap.of(ds);
+        this.saga = shards.isSharded() ? new TransferSaga(shards) : null;
+        this.ledger = ledgerFor(ds, shards);
+        this.admission = WriteAdmission.of(ds);
+        this.idempotency = IdempotencyStore.of(ds);
+        this.maxRetries = AppConfig.getInt("mybank.transfer.maxRetries", 5);
+        this.backoffBaseMs = AppConfig.getLong("mybank.transfer.backoffBaseMs", 5);
+        this.backoffMaxMs = AppConfig.getLong("mybank.transfer.backoffMaxMs", 200);
+    }
+
+    /**
+     * Moves {@code amount} from {@code from} to {@code to} and records a transaction row for each side.
+     */
+    public TransferResult transfer(User from, User to, Money amount, String note) throws TransferException {
+        return transfer(from, to, amount, note, null);
+    }
+
+    /**
+     * As {@link #transfer(User, User, Money, String)}, done at most once per {@code idempotencyKey}
+     * ({@code null} for none): a repeat returns the first transfer's result, marked as replayed.
+     */
+    public TransferResult transfer(User from, User to, Money amount, String note, String idempotencyKey) throws TransferException {
+        if (amount == null || amount.signum() <= 0) {
+            throw new TransferException(TransferException.Reason.INVALID_AMOUNT, "Enter a valid amount.");
+        }
+        if (from.getUserId() == to.getUserId()) {
+            throw new TransferException(TransferException.Reason.SAME_ACCOUNT, "Cannot transfer to yourself.");
+        }
+        IdempotencyStore.Claim claim = idempotency.request(from.getUserId(), idempotencyKey,
+                "transfer:" + to.getUserId() + ":" + amount.getMinorUnits());
+        String cached = idempotency.cached(claim);
+        if (cached != null) return replayedTransfer(cached);
+        String suffix = note == null || note.isEmpty() ? "" : " - " + note;
+        long start = System.nanoTime();
+        return admission.call(WriteAdmission.Priority.NORMAL, from.getUserId(), to.getUserId(),
+                () -> withRetries(TRANSFER, 2, "Transfer", attempt -> {
+                    TransferResult[] made = new TransferResult[1];
+                    String stored = move(from.getUserId(), to.getUserId(), amount,
+                            "To: " + to.getUsername() + suffix, "From: " + from.getUsername() + suffix, claim, () -> {
+                                made[0] = new TransferResult(attempt, (System.nanoTime() - start) / 1_000);
+                                return made[0].getRetries() + ":" + made[0].getElapsedMicros();
+                            });
+                    if (stored != null) return replayedTransfer(stored);
+                    return made[0] != null ? made[0] : new TransferResult(attempt, (System.nanoTime() - start) / 1_000);
+                }));
+    }
+
+    private static TransferResult replayedTransfer(String stored) {
+        int colon = stored.indexOf(':');
+        return new TransferResult(Integer.parseInt(stored.substring(0, colon)), Long.parseLong(stored.substring(colon + 1)), true);
+    }
+
+    /** Adds {@code amount} to {@code user}'s balance and returns the new balance. */
+    public Money deposit(User user, Money amount, String note) throws TransferException {
+        return deposit(user, amount, note, null);
+    }
+
+    /** As {@link #deposit(User, Money, String)}; a repeat of {@code idempotencyKey} returns the first balance. */
+    public Money deposit(User user, Money amount, String note, String idempotencyKey) throws TransferException {
+        checkAmount(amount);
+        IdempotencyStore.Claim claim = idempotency.request(user.getUserId(), idempotencyKey, "deposit:" + amount.getMinorUnits());
+        String cached = idempotency.cached(claim);
+        if (cached != null) return Money.parse(cached);
+        String description = note == null || note.isEmpty() ? "Deposit" : note;
+        return admission.call(WriteAdmission.Priority.HIGH, user.getUserId(), -1,
+                () -> withRetries(DEPOSIT, 1, "Deposit", attempt -> adjust(user.getUserId(), amount, "deposit", description, claim)));
+    }
+
+    /** Takes {@code amount} from {@code user}'s balance if it is there and returns the new balance. */
+    public Money withdraw(User user, Money amount, String note) throws TransferException {
+        return withdraw(user, amount, note, null);
+    }
+
+    /** As {@link #withdraw(User, Money, String)}; a repeat of {@code idempotencyKey} returns the first balance. */
+    public Money withdraw(User user, Money amount, String note, String idempotencyKey) throws TransferException {
+        checkAmount(amount);
+        IdempotencyStore.Claim claim = idempotency.request(user.getUserId(), idempotencyKey, "withdraw:" + amount.getMinorUnits());
+        String cached = idempotency.cached(claim);
+        if (cached != null) return Money.parse(cached);
+        String description = note == null || note.isEmpty() ? "Withdrawal" : note;
+        return admission.call(WriteAdmission.Priority.NORMAL, user.getUserId(), -1,
+                () -> withRetries(WITHDRAW, 1, "Withdrawal", attempt -> adjust(user.getUserId(), amount.negate(), "withdraw", description, claim)));
+    }
+
+    private static void checkAmount(Money amount) throws TransferException {
+        if (amount == null || amount.signum() <= 0) {
+            throw new TransferException(TransferException.Reason.INVALID_AMOUNT, "Enter a valid amount.");
+        }
+    }
+
+    private interface Attempt<T> {
+        T run(int attempt) throws SQLException, TransferException, StaleVersionException;
+    }
+
+    /**
+     * Runs {@code work}, again after deadlocks, lock wait timeouts and lost compare-and-sets (at
+     * most {@code maxRetries} times in all), timing the whole as {@code op}.
+     */
+    private <T> T withRetries(Operation op, long rows, String what, Attempt<T> work) throws TransferException {
+        long start = op.start();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                T result = work.run(attempt);
+                committed.increment();
+                op.done(start, rows);
+                return result;
+            } catch (SQLException e) {
+                if (!SqlRetry.isRetryable(e)) {
+                    op.failed(start, e);
+                    throw new TransferException(TransferException.Reason.DATABASE_ERROR, what + " failed: " + e.getMessage(), e);
+                }
+                if (SqlRetry.isDeadlock(e)) deadlocks.increment(); else lockWaitTimeouts.increment();
+                if (attempt >= maxRetries) {
+                    gaveUp.increment();
+                    op.failed(start, e);
+                    throw new TransferException(TransferException.Reason.DATABASE_ERROR,
+                            what + " failed after " + (attempt + 1) + " attempts: " + e.getMessage(), e);
+                }
+                retries.increment();
+                SqlRetry.backoff(attempt, backoffBaseMs, backoffMaxMs);
+            } catch (StaleVersionException e) {
+                conflicts.increment();
+                if (attempt >= maxRetries) {
+                    gaveUp.increment();
+                    op.failed(start, e);
+                    throw new TransferException(TransferException.Reason.CONFLICT,
+                            what + " failed: the balance changed " + (attempt + 1) + " times while it ran; please try again.");
+                }
+                retries.increment();
+                SqlRetry.backoff(attempt, backoffBaseMs, backoffMaxMs);
+            } catch (TransferException e) {
+                rejected.increment();
+                op.done(start, 0);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Returns the result stored for {@code claim} if it was done before (and nothing is moved),
+     * else {@code null}; {@code result} is what to store when it is done now.
+     */
+    private String move(int fromId, int toId, Money money, String fromDesc, String toDesc,
+                        IdempotencyStore.Claim claim, Supplier<String> result)
+            throws SQLException, TransferException, StaleVersionException {
+        if (ledger != null) return moveInLedger(fromId, toId, money, fromDesc, toDesc, claim, result);
+        DataSource db = shards.forWrite(fromId);
+        if (saga != null && shards.forWrite(toId) != db) {
+            return moveAcrossShards(db, fromId, toId, money, fromDesc, toDesc, claim, result);
+        }
+        BigDecimal amount = money.toBigDecimal();
+        try (Connection c = db.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                if (claim != null) {
+                    String stored = idempotency.claim(c, claim);
+                    if (stored != null) {
+                        c.rollback();
+                        return stored;
+                    }
+                }
+                if (mode == ConcurrencyMode.CONDITIONAL) {
+                    int updated;
+                    try (PreparedStatement ps = c.prepareStatement(MOVE_SQL)) {
+                        ps.setInt(1, fromId);
+                        ps.setBigDecimal(2, amount);
+                        ps.setBigDecimal(3, amount);
+                        ps.setInt(4, fromId);
+                        ps.setInt(5, toId);
+                        ps.setInt(6, fromId);
+                        ps.setBigDecimal(7, amount);
+                        updated = ps.executeUpdate();
+                    }
+                    if (updated != 2) {
+                        c.rollback();
+                        throw explainFailure(c, fromId, toId);
+                    }
+                } else {
+                    Row[] rows = read(c, fromId, toId);
+                    if (rows[0] == null) throw new TransferException(TransferException.Reason.SENDER_NOT_FOUND, "Sender account not found.");
+                    if (rows[1] == null) throw new TransferException(TransferException.Reason.RECIPIENT_NOT_FOUND, "Recipient account not found.");
+                    if (rows[0].balance.compareTo(amount) < 0) {
+                        throw new TransferException(TransferException.Reason.INSUFFICIENT_FUNDS, "Insufficient funds.");
+                    }
+                    // in user id order, like the locks
+                    boolean senderFirst = fromId < toId;
+                    write(c, senderFirst ? rows[0] : rows[1], senderFirst ? amount.negate() : amount);
+                    write(c, senderFirst ? rows[1] : rows[0], senderFirst ? amount : amount.negate());
+                }
+                int[] txIds = new int[2];
+                try (PreparedStatement ps = c.prepareStatement(POST_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                    ps.setInt(1, fromId);
+                    ps.setString(2, "transfer");
+                    ps.setBigDecimal(3, amount.negate());
+                    ps.setString(4, fromDesc);
+                    ps.setInt(5, toId);
+                    ps.setString(6, "transfer");
+                    ps.setBigDecimal(7, amount);
+                    ps.setString(8, toDesc);
+                    ps.executeUpdate();
+                    try (ResultSet rs = ps.getGeneratedKeys()) {
+                        for (int i = 0; i < 2 && rs.next(); i++) txIds[i] = rs.getInt(1);
+                    }
+                }
+                // read back under our row locks, so the values are exactly what this commit leaves
+                Money[] after = events.hasSubscribers(BalanceChanged.class) ? readBalances(c, fromId, toId) : null;
+                String done = claim == null ? null : result.get();
+                if (claim != null) idempotency.complete(c, claim, done);
+                long seq = events.nextSequence();
+                c.commit();
+                if (claim != null) idempotency.remember(claim, done);
+                caches.userChanged(fromId);
+                caches.userChanged(toId);
+                ReplicaRouter router = ReplicaRouter.of(db);
+                router.wrote(fromId);
+                router.wrote(toId);
+                Timestamp now = new Timestamp(System.currentTimeMillis());
+                events.publish(new BalanceChanged(fromId, after == null ? null : after[0], seq));
+                events.publish(new BalanceChanged(toId, after == null ? null : after[1], seq));
+                events.publish(new TransactionPosted(posted(txIds[0], fromId, money.negate(), fromDesc, now)));
+                events.publish(new TransactionPosted(posted(txIds[1], toId, money, toDesc, now)));
+                return null;
+            } catch (SQLException | TransferException | StaleVersionException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private Money adjust(int userId, Money delta, String type, String description, IdempotencyStore.Claim claim)
+            throws SQLException, TransferException, StaleVersionException {
+        if (ledger != null) return adjustInLedger(userId, delta, description, claim);
+        DataSource db = shards.forWrite(userId);
+        BigDecimal amount = delta.toBigDecimal();
+        try (Connection c = db.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                if (claim != null) {
+                    String stored = idempotency.claim(c, claim);
+                    if (stored != null) {
+                        c.rollback();
+                        return Money.parse(stored);
+                    }
+                }
+                Money after = null;
+                if (mode == ConcurrencyMode.CONDITIONAL) {
+                    int updated;
+                    try (PreparedStatement ps = c.prepareStatement(ADJUST_SQL)) {
+                        ps.setBigDecimal(1, amount);
+                        ps.setInt(2, userId);
+                        ps.setBigDecimal(3, amount);
+                        updated = ps.executeUpdate();
+                    }
+                    if (updated != 1) {
+                        c.rollback();
+                        throw exists(c, userId)
+                                ? new TransferException(TransferException.Reason.INSUFFICIENT_FUNDS, "Insufficient funds.")
+                                : new TransferException(TransferException.Reason.ACCOUNT_NOT_FOUND, "Account not found.");
+                    }
+                } else {
+                    Row row = read(c, userId, userId)[0];
+                    if (row == null) throw new TransferException(TransferException.Reason.ACCOUNT_NOT_FOUND, "Account not found.");
+                    if (row.balance.add(amount).signum() < 0) {
+                        throw new TransferException(TransferException.Reason.INSUFFICIENT_FUNDS, "Insufficient funds.");
+                    }
+                    after = Money.of(write(c, row, amount));
+                }
+                int txId = 0;
+                try (PreparedStatement ps = c.prepareStatement(POST_ONE_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                    ps.setInt(1, userId);
+                    ps.setString(2, type);
+                    ps.setBigDecimal(3, amount);
+                    ps.setString(4, description);
+                    ps.executeUpdate();
+                    try (ResultSet rs = ps.getGeneratedKeys()) {
+                        if (rs.next()) txId = rs.getInt(1);
+                    }
+                }
+                if (after == null) {
+                    try (PreparedStatement ps = c.prepareStatement("SELECT balance FROM users WHERE user_id = ?")) {
+                        ps.setInt(1, userId);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            rs.next();
+                            after = Money.parse(rs.getString(1));
+                        }
+                    }
+                }
+                if (claim != null) idempotency.complete(c, claim, after.toString());
+                long seq = events.nextSequence();
+                c.commit();
+                if (claim != null) idempotency.remember(claim, after.toString());
+                caches.userChanged(userId);
+                ReplicaRouter.of(db).wrote(userId);
+                events.publish(new BalanceChanged(userId, after, seq));
+                Transaction t = posted(txId, userId, delta, description, new Timestamp(System.currentTimeMillis()));
+                t.setType(type);
+                events.publish(new TransactionPosted(t));
+                return after;
+            } catch (SQLException | TransferException | StaleVersionException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /** A balance as read by the optimistic and pessimistic modes. */
+    private static final class Row {
+        final int userId;
+        final BigDecimal balance;
+        final long version;
+
+        Row(int userId, BigDecimal balance, long version) {
+            this.userId = userId;
+            this.balance = balance;
+            this.version = version;
+        }
+    }
+
+    /** The rows of {@code firstId} and {@code secondId} in that order, {@code null} where missing; locked when pessimistic. */
+    private Row[] read(Connection c, int firstId, int secondId) throws SQLException {
+        Row[] out = new Row[2];
+        try (PreparedStatement ps = c.prepareStatement(mode == ConcurrencyMode.PESSIMISTIC ? LOCK_SQL : READ_SQL)) {
+            ps.setInt(1, firstId);
+            ps.setInt(2, secondId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Row r = new Row(rs.getInt(1), rs.getBigDecimal(2), rs.getLong(3));
+                    out[r.userId == firstId ? 0 : 1] = r;
+                }
+            }
+        }
+        return out;
+    }
+
+    /** Writes {@code row}'s balance plus {@code delta} and returns it; optimistic writes only land on the version read. */
+    private BigDecimal write(Connection c, Row row, BigDecimal delta) throws SQLException, StaleVersionException {
+        BigDecimal balance = row.balance.add(delta);
+        boolean optimistic = mode == ConcurrencyMode.OPTIMISTIC;
+        try (PreparedStatement ps = c.prepareStatement(optimistic ? SET_IF_VERSION_SQL : SET_SQL)) {
+            ps.setBigDecimal(1, balance);
+            ps.setInt(2, row.userId);
+            if (optimistic) ps.setLong(3, row.version);
+            if (ps.executeUpdate() != 1) throw new StaleVersionException("User " + row.userId + "'s balance changed");
+        }
+        return balance;
+    }
+
+    private static boolean exists(Connection c, int userId) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT 1 FROM users WHERE user_id = ?")) {
+            ps.setInt(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    // the saga commits step by step, so a key is claimed on the sender's shard in a transaction of
+    // its own first; if the saga fails in the database the claim stays open (BUSY on repeats) until
+    // it expires, since money may already have left the sender
+    private String moveAcrossShards(DataSource db, int fromId, int toId, Money money, String fromDesc, String toDesc,
+                                    IdempotencyStore.Claim claim, Supplier<String> result)
+            throws SQLException, TransferException {
+        String stored = claimApart(db, claim);
+        if (stored != null) return stored;
+        TransferException refused = null;
+        switch (saga.transfer(fromId, toId, money, fromDesc, toDesc)) {
+            case INSUFFICIENT_FUNDS:
+                refused = new TransferException(TransferException.Reason.INSUFFICIENT_FUNDS, "Insufficient funds.");
+                break;
+            case SENDER_NOT_FOUND:
+                refused = new TransferException(TransferException.Reason.SENDER_NOT_FOUND, "Sender account not found.");
+                break;
+            case RECIPIENT_NOT_FOUND:
+                refused = new TransferException(TransferException.Reason.RECIPIENT_NOT_FOUND, "Recipient account not found.");
+                break;
+            default:
+                // done, or the credit follows on recovery: either way the money has left the sender
+        }
+        finishApart(db, claim, refused == null && claim != null ? result.get() : null);
+        if (refused != null) throw refused;
+        return null;
+    }
+
+    private String moveInLedger(int fromId, int toId, Money money, String fromDesc, String toDesc,
+                                IdempotencyStore.Claim claim, Supplier<String> result)
+            throws SQLException, TransferException {
+        DataSource db = shards.forWrite(fromId);
+        String stored = claimApart(db, claim);
+        if (stored != null) return stored;
+        LedgerEngine.Posting p;
+        try {
+            if (!ledger.load(fromId)) throw new TransferException(TransferException.Reason.SENDER_NOT_FOUND, "Sender account not found.");
+            if (!ledger.load(toId)) throw new TransferException(TransferException.Reason.RECIPIENT_NOT_FOUND, "Recipient account not found.");
+            p = ledger.transfer(fromId, toId, money.getMinorUnits(), fromDesc, toDesc);
+        } catch (InsufficientFundsException e) {
+            finishApart(db, claim, null);
+            throw new TransferException(TransferException.Reason.INSUFFICIENT_FUNDS, "Insufficient funds.");
+        } catch (SQLException | TransferException | RuntimeException e) {
+            finishApart(db, claim, null);
+            throw e;
+        }
+        finishApart(db, claim, claim == null ? null : result.get());
+        // the flusher drops the cached rows and posts the transactions once they are in the tables
+        events.publish(new BalanceChanged(fromId, Money.ofMinor(p.getBalance()), p.getEventSequence()));
+        events.publish(new BalanceChanged(toId, Money.ofMinor(p.getOtherBalance()), p.getEventSequence()));
+        return null;
+    }
+
+    private Money adjustInLedger(int userId, Money delta, String description, IdempotencyStore.Claim claim)
+            throws SQLException, TransferException {
+        DataSource db = shards.forWrite(userId);
+        String stored = claimApart(db, claim);
+        if (stored != null) return Money.parse(stored);
+        LedgerEngine.Posting p;
+        try {
+            if (!ledger.load(userId)) throw new TransferException(TransferException.Reason.ACCOUNT_NOT_FOUND, "Account not found.");
+            p = delta.signum() > 0
+                    ? ledger.deposit(userId, delta.getMinorUnits(), description)
+                    : ledger.withdraw(userId, -delta.getMinorUnits(), description);
+        } catch (InsufficientFundsException e) {
+            finishApart(db, claim, null);
+            throw new TransferException(TransferException.Reason.INSUFFICIENT_FUNDS, "Insufficient funds.");
+        } catch (SQLException | TransferException | RuntimeException e) {
+            finishApart(db, claim, null);
+            throw e;
+        }
+        Money after = Money.ofMinor(p.getBalance());
+        finishApart(db, claim, after.toString());
+        events.publish(new BalanceChanged(userId, after, p.getEventSequence()));
+        return after;
+    }
+
+    /**
+     * Claims {@code claim} (if any) in a transaction of its own, for writes that do not run in one
+     * database transaction; returns the stored result if it was done before, else {@code null}.
+     */
+    private String claimApart(DataSource db, IdempotencyStore.Claim claim) throws SQLException, TransferException {
+        if (claim == null) return null;
+        try (Connection c = db.getConnection()) {
+            c.setAutoCommit(true);
+            return idempotency.claim(c, claim);
+        }
+    }
+
+    /** Completes a claim of {@link #claimApart} with {@code done}, or releases it when {@code done} is {@code null}. */
+    private void finishApart(DataSource db, IdempotencyStore.Claim claim, String done) throws SQLException {
+        if (claim == null) return;
+        try (Connection c = db.getConnection()) {
+            c.setAutoCommit(true);
+            if (done == null) idempotency.release(c, claim); else idempotency.complete(c, claim, done);
+        }
+        if (done != null) idempotency.remember(claim, done);
+    }
+
+    private static Money[] readBalances(Connection c, int fromId, int toId) throws SQLException {
+        Money[] out = new Money[2];
+        try (PreparedStatement ps = c.prepareStatement("SELECT user_id, balance FROM users WHERE user_id IN (?, ?)")) {
+            ps.setInt(1, fromId);
+            ps.setInt(2, toId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out[rs.getInt(1) == fromId ? 0 : 1] = Money.parse(rs.getString(2));
+            }
+        }
+        return out;
+    }
+
+    private static Transaction posted(int id, int userId, Money amount, String description, Timestamp at) {
+        Transaction t = new Transaction();
+        t.setTransactionId(id);
+        t.setUserId(userId);
+        t.setType("transfer");
+        t.setAmount(amount);
+        t.setDescription(description);
+        t.setCreatedAt(at);
+        return t;
+    }
+
+    // only reached on the failure path, after the rollback released the row locks
+    private TransferException explainFailure(Connection c, int fromId, int toId) throws SQLException {
+        boolean sender = false;
+        boolean recipient = false;
+        try (PreparedStatement ps = c.prepareStatement("SELECT user_id FROM users WHERE user_id IN (?, ?)")) {
+            ps.setInt(1, fromId);
+            ps.setInt(2, toId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (rs.getInt(1) == fromId) sender = true; else recipient = true;
+                }
+            }
+        }
+        if (!sender) return new TransferException(TransferException.Reason.SENDER_NOT_FOUND, "Sender account not found.");
+        if (!recipient) return new TransferException(TransferException.Reason.RECIPIENT_NOT_FOUND, "Recipient account not found.");
+        return new TransferException(TransferException.Reason.INSUFFICIENT_FUNDS, "Insufficient funds.");
+    }
+
+    public long getCommitted() { return committed.sum(); }
+    public long getRejected() { return rejected.sum(); }
+    public long getRetries() { return retries.sum(); }
+    public long getDeadlocks() { return deadlocks.sum(); }
+    public long getLockWaitTimeouts() { return lockWaitTimeouts.sum(); }
+    public long getGaveUp() { return gaveUp.sum(); }
+    /** Optimistic writes that lost their compare-and-set and were run again (or gave up). */
+    public long getConflicts() { return conflicts.sum(); }
+    public ConcurrencyMode getMode() { return mode; }
+
+    @Override
+    public String toString() {
+        return String.format("mode=%s committed=%d rejected=%d retries=%d deadlocks=%d lockWaitTimeouts=%d conflicts=%d gaveUp=%d",
+                mode, getCommitted(), getRejected(), getRetries(), getDeadlocks(), getLockWaitTimeouts(), getConflicts(), getGaveUp());
+    }
+}
@@ -0,0 +1,386 @@
+package com.mybank.service;
+
+import com.mybank.config.AppConfig;
+import com.mybank.metrics.Metrics;
+import com.mybank.metrics.Operation;
+
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * Admission control for deposits, withdrawals and transfers on one database, so that a spike
+ * waits briefly in memory or is turned away at once, instead of piling up as lock waits until
+ * everything times out. A write passes three gates:
+ *
+ * <ol>
+ * <li>Its accounts: one write per account at a time (accounts hash onto
+ *     {@code mybank.admission.stripes} lanes). Others for the same account wait in its lane, at
+ *     most {@code perAccountQueue} of them, holding nothing else, so a hot account cannot take
+ *     every slot.</li>
+ * <li>A limit on writes in flight that adapts to their latency (AIMD): it grows by one for every
+ *     limit's worth of writes that finish within {@code targetMs} while the limit was what held
+ *     others back, and shrinks by 10% (at most once per {@code targetMs}) when one takes longer or
+ *     fails in the database. It stays between {@code minLimit} and {@code maxLimit}.</li>
+ * <li>Over the limit, a bounded FIFO queue per {@link Priority} ({@code queue.high},
+ *     {@code queue.normal}); a free slot goes to the oldest write of the highest priority.</li>
+ * </ol>
+ *
+ * A full queue or lane, or a wait past {@code maxWaitMs}, fails with {@code BUSY} and a retry-after
+ * hint worked out from the queue and recent service times. Settings are {@code mybank.admission.*};
+ * {@code enabled=false} lets everything through. Queue depths and rejection counts are on JMX
+ * ({@code com.mybank:type=Admission}) and in {@link Metrics#text()}; the time spent waiting is the
+ * operation {@code WriteAdmission.wait}.
+ */
+public final class WriteAdmission implements WriteAdmissionMXBean {
+    public enum Priority { HIGH, NORMAL }
+
+    /** The write itself. */
+    public interface Work<T> {
+        T run() throws TransferException;
+    }
+
+    private static final Map<DataSource, WriteAdmission> BY_SOURCE = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+    private static final List<WriteAdmission> ALL = new CopyOnWriteArrayList<>();
+    private static final Operation WAIT = Metrics.op("WriteAdmission.wait");
+
+    static {
+        Metrics.addSection(WriteAdmission::text);
+    }
+
+    private final String name;
+    private final boolean enabled;
+    private final Semaphore[] lanes;
+    private final AtomicIntegerArray laneWaiting;
+    private final int perAccountQueue;
+    private final long maxWaitNanos;
+    private final long targetNanos;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int[] capacity = new int[Priority.values().length];
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<ArrayDeque<Waiter>> queues = new ArrayList<>();
+    private int inFlight;
+    private volatile double limit;
+    private volatile int queued;
+    private volatile double serviceNanos;
+    private long lastDecrease;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedQueueFull = new LongAdder();
+    private final LongAdder rejectedTimeout = new LongAdder();
+    private final LongAdder rejectedAccount = new LongAdder();
+    private final LongAdder decreases = new LongAdder();
+
+    public WriteAdmission(String name, boolean enabled, int stripes, int perAccountQueue, long maxWaitMs, long targetMs,
+                          int initialLimit, int minLimit, int maxLimit, int highQueue, int normalQueue) {
+        this.name = name;
+        this.enabled = enabled;
+        this.lanes = new Semaphore[Math.max(1, stripes)];
+        for (int i = 0; i < lanes.length; i++) lanes[i] = new Semaphore(1, true);
+        this.laneWaiting = new AtomicIntegerArray(lanes.length);
+        this.perAccountQueue = Math.max(0, perAccountQueue);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMs);
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+        this.capacity[Priority.HIGH.ordinal()] = Math.max(0, highQueue);
+        this.capacity[Priority.NORMAL.ordinal()] = Math.max(0, normalQueue);
+        for (int i = 0; i < Priority.values().length; i++) queues.add(new ArrayDeque<>());
+        this.lastDecrease = System.nanoTime() - targetNanos;
+        Metrics.register("com.mybank:type=Admission,name=" + ObjectName.quote(name), this);
+        ALL.add(this);
+    }
+
+    /** The admission for writes to {@code ds}, shared by every {@link TransferService} on it. */
+    public static WriteAdmission of(DataSource ds) {
+        return BY_SOURCE.computeIfAbsent(ds, k -> fromAppConfig());
+    }
+
+    private static WriteAdmission fromAppConfig() {
+        int n = INSTANCES.incrementAndGet();
+        return new WriteAdmission(n == 1 ? "writes" : "writes-" + n,
+                AppConfig.getBoolean("mybank.admission.enabled", true),
+                AppConfig.getInt("mybank.admission.stripes", 1024),
+                AppConfig.getInt("mybank.admission.perAccountQueue", 4),
+                AppConfig.getLong("mybank.admission.maxWaitMs", 2_000),
+                AppConfig.getLong("mybank.admission.targetMs", 250),
+                AppConfig.getInt("mybank.admission.initialLimit", 10),
+                AppConfig.getInt("mybank.admission.minLimit", 1),
+                AppConfig.getInt("mybank.admission.maxLimit", 64),
+                AppConfig.getInt("mybank.admission.queue.high", 500),
+                AppConfig.getInt("mybank.admission.queue.normal", 200));
+    }
+
+    /**
+     * Runs {@code work} once it is admitted for {@code account} and, if not negative,
+     * {@code otherAccount}. Fails with {@link TransferException.Reason#BUSY} without running it
+     * if it cannot be admitted in time.
+     */
+    public <T> T call(Priority priority, int account, int otherAccount, Work<T> work) throws TransferException {
+        if (!enabled) return work.run();
+        int a = stripe(account);
+        int b = otherAccount < 0 ? a : stripe(otherAccount);
+        // two lanes are always taken in index order, so opposite transfers cannot deadlock here
+        int first = Math.min(a, b);
+        int second = a == b ? -1 : Math.max(a, b);
+        long start = WAIT.start();
+        try {
+            admit(priority, first, second, start + maxWaitNanos);
+        } catch (TransferException e) {
+            WAIT.failed(start, e);
+            throw e;
+        }
+        WAIT.done(start, 0);
+        long began = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = work.run();
+            failed = false;
+            return result;
+        } catch (TransferException e) {
+            // a refusal is a normal answer; only database trouble says to back off
+            failed = e.getReason() == TransferException.Reason.DATABASE_ERROR;
+            throw e;
+        } finally {
+            release(System.nanoTime() - began, failed);
+            if (second >= 0) lanes[second].release();
+            lanes[first].release();
+        }
+    }
+
+    /** Takes the lanes and a slot, or, if it cannot, nothing. */
+    private void admit(Priority priority, int first, int second, long deadline) throws TransferException {
+        enterLane(first, deadline);
+        try {
+            if (second >= 0) enterLane(second, deadline);
+            try {
+                acquire(priority, deadline);
+            } catch (TransferException | RuntimeException e) {
+                if (second >= 0) lanes[second].release();
+                throw e;
+            }
+        } catch (TransferException | RuntimeException e) {
+            lanes[first].release();
+            throw e;
+        }
+    }
+
+    private int stripe(int account) {
+        int h = account * 0x9E3779B9;
+        return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    private void enterLane(int lane, long deadline) throws TransferException {
+        Semaphore s = lanes[lane];
+        try {
+            // a zero wait still queues fairly behind writes already waiting for the account
+            if (s.tryAcquire(0, TimeUnit.NANOSECONDS)) return;
+            if (laneWaiting.incrementAndGet(lane) > perAccountQueue) {
+                laneWaiting.decrementAndGet(lane);
+                rejectedAccount.increment();
+                throw busy("Too many requests for this account at once");
+            }
+            try {
+                if (!s.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    rejectedTimeout.increment();
+                    throw busy("The bank is busy");
+                }
+            } finally {
+                laneWaiting.decrementAndGet(lane);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejectedTimeout.increment();
+            throw busy("Interrupted while waiting");
+        }
+    }
+
+    private void acquire(Priority priority, long deadline) throws TransferException {
+        Waiter w;
+        lock.lock();
+        try {
+            if (queued == 0 && inFlight < (int) limit) {
+                inFlight++;
+                admitted.increment();
+                return;
+            }
+            ArrayDeque<Waiter> q = queues.get(priority.ordinal());
+            if (q.size() >= capacity[priority.ordinal()]) {
+                rejectedQueueFull.increment();
+                throw busy("The bank is busy");
+            }
+            w = new Waiter(Thread.currentThread());
+            q.addLast(w);
+            queued++;
+        } finally {
+            lock.unlock();
+        }
+        boolean interrupted = false;
+        while (!w.granted) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) break;
+            LockSupport.parkNanos(this, left);
+            if (Thread.interrupted()) {
+                interrupted = true;
+                break;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (w.granted) return;
+        lock.lock();
+        try {
+            // granted just as it gave up: take the slot rather than leak it
+            if (w.granted) return;
+            queues.get(priority.ordinal()).remove(w);
+            queued--;
+            rejectedTimeout.increment();
+        } finally {
+            lock.unlock();
+        }
+        throw busy("The bank is busy");
+    }
+
+    private void release(long nanos, boolean failed) {
+        lock.lock();
+        try {
+            boolean limited = inFlight >= (int) limit || queued > 0;
+            inFlight--;
+            serviceNanos = serviceNanos == 0 ? nanos : serviceNanos + (nanos - serviceNanos) * 0.05;
+            long now = System.nanoTime();
+            if (failed || nanos > targetNanos) {
+                if (now - lastDecrease >= targetNanos) {
+                    limit = Math.max(minLimit, limit * 0.9);
+                    lastDecrease = now;
+                    decreases.increment();
+                }
+            } else if (limited) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            while (inFlight < (int) limit) {
+                Waiter next = null;
+                for (ArrayDeque<Waiter> q : queues) {
+                    next = q.pollFirst();
+                    if (next != null) break;
+                }
+                if (next == null) break;
+                queued--;
+                inFlight++;
+                admitted.increment();
+                next.granted = true;
+                LockSupport.unpark(next.thread);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private TransferException busy(String why) {
+        long after = retryAfterMs();
+        return new TransferException(TransferException.Reason.BUSY,
+                why + "; please try again in " + (after + 999) / 1000 + " s.", after);
+    }
+
+    /** About how long the writes already waiting will take to drain, within 0.1 to 10 s. */
+    long retryAfterMs() {
+        double perWrite = serviceNanos == 0 ? targetNanos : serviceNanos;
+        double drainNanos = (queued + 1) * perWrite / Math.max(1, (int) limit);
+        return Math.max(100, Math.min(10_000, (long) Math.ceil(drainNanos / 1e6)));
+    }
+
+    @Override public int getLimit() { return (int) limit; }
+    @Override public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+    @Override public int getQueuedHigh() { return queueSize(Priority.HIGH); }
+    @Override public int getQueuedNormal() { return queueSize(Priority.NORMAL); }
+    @Override public int getWaitingForAccount() {
+        int n = 0;
+        for (int i = 0; i < lanes.length; i++) n += laneWaiting.get(i);
+        return n;
+    }
+    @Override public long getAdmitted() { return admitted.sum(); }
+    @Override public long getRejectedQueueFull() { return rejectedQueueFull.sum(); }
+    @Override public long getRejectedTimeout() { return rejectedTimeout.sum(); }
+    @Override public long getRejectedAccount() { return rejectedAccount.sum(); }
+    @Override public long getLimitDecreases() { return decreases.sum(); }
+
+    private int queueSize(Priority p) {
+        lock.lock();
+        try {
+            return queues.get(p.ordinal()).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Every gate's gauges and counters in the Prometheus text format. */
+    private static String text() {
+        if (ALL.isEmpty()) return "";
+        StringBuilder sb = new StringBuilder(1024);
+        series(sb, "mybank_admission_limit", "gauge", "Writes allowed in flight at once.", null, WriteAdmission::getLimit);
+        series(sb, "mybank_admission_in_flight", "gauge", "Writes running now.", null, WriteAdmission::getInFlight);
+        series(sb, "mybank_admission_queued", "gauge", "Writes waiting for a slot, by priority, or for their account.",
+                "queue=\"high\"", WriteAdmission::getQueuedHigh);
+        series(sb, "mybank_admission_queued", null, null, "queue=\"normal\"", WriteAdmission::getQueuedNormal);
+        series(sb, "mybank_admission_queued", null, null, "queue=\"account\"", WriteAdmission::getWaitingForAccount);
+        series(sb, "mybank_admission_admitted_total", "counter", "Writes let through.", null, WriteAdmission::getAdmitted);
+        series(sb, "mybank_admission_rejected_total", "counter", "Writes turned away as BUSY, by cause.",
+                "cause=\"queue_full\"", WriteAdmission::getRejectedQueueFull);
+        series(sb, "mybank_admission_rejected_total", null, null, "cause=\"timeout\"", WriteAdmission::getRejectedTimeout);
+        series(sb, "mybank_admission_rejected_total", null, null, "cause=\"account\"", WriteAdmission::getRejectedAccount);
+        return sb.toString();
+    }
+
+    /** One line per gate; {@code type} and {@code help} only on the first series of a metric. */
+    private static void series(StringBuilder sb, String metric, String type, String help, String label,
+                               ToLongFunction<WriteAdmission> value) {
+        if (type != null) {
+            sb.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+            sb.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+        }
+        for (WriteAdmission w : ALL) {
+            sb.append(metric).append("{gate=\"").append(w.name).append('"');
+            if (label != null) sb.append(',').append(label);
+            sb.append("} ").append(value.applyAsLong(w)).append('\n');
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("limit=%d inFlight=%d queued=%d/%d account=%d admitted=%d rejected=%d/%d/%d decreases=%d",
+                getLimit(), getInFlight(), getQueuedHigh(), getQueuedNormal(), getWaitingForAccount(), getAdmitted(),
+                getRejectedQueueFull(), getRejectedTimeout(), getRejectedAccount(), getLimitDecreases());
+    }
+
+    private static final class Waiter {
+        final Thread thread;
+        volatile boolean granted;
+
+        Waiter(Thread thread) {
+            this.thread = thread;
+        }
+    }
+}
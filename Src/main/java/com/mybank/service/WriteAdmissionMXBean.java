@@ -0,0 +1,18 @@
+package com.mybank.service;
+
+/**
+ * JMX view of a {@link WriteAdmission}, registered as {@code com.mybank:type=Admission,name=...}.
+ * Counters are totals since start.
+ */
+public interface WriteAdmissionMXBean {
+    int getLimit();
+    int getInFlight();
+    int getQueuedHigh();
+    int getQueuedNormal();
+    int getWaitingForAccount();
+    long getAdmitted();
+    long getRejectedQueueFull();
+    long getRejectedTimeout();
+    long getRejectedAccount();
+    long getLimitDecreases();
+}
@@ -0,0 +1,45 @@
+package com.mybank.shard;
+
+/**
+ * Outcome of moving one user with {@link ShardMover}.
+ */
+public class MoveResult {
+    private final String username;
+    private final int userId;
+    private final int fromShard;
+    private final int toShard;
+    private final int accounts;
+    private final int transactions;
+    private final int notifications;
+    private final long elapsedNanos;
+
+    public MoveResult(String username, int userId, int fromShard, int toShard, int accounts, int transactions,
+                      int notifications, long elapsedNanos) {
+        this.username = username;
+        this.userId = userId;
+        this.fromShard = fromShard;
+        this.toShard = toShard;
+        this.accounts = accounts;
+        this.transactions = transactions;
+        this.notifications = notifications;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getUsername() { return username; }
+    public int getUserId() { return userId; }
+    public int getFromShard() { return fromShard; }
+    public int getToShard() { return toShard; }
+    /** False if the user was already on the target (only leftovers of an earlier run were removed). */
+    public boolean isMoved() { return fromShard != toShard; }
+    public int getAccounts() { return accounts; }
+    public int getTransactions() { return transactions; }
+    public int getNotifications() { return notifications; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    @Override
+    public String toString() {
+        if (!isMoved()) return username + " (#" + userId + ") is already on shard " + toShard;
+        return String.format("%s (#%d): shard %d -> %d, %d accounts, %,d transactions, %d notifications in %.1f s",
+                username, userId, fromShard, toShard, accounts, transactions, notifications, elapsedNanos / 1e9);
+    }
+}
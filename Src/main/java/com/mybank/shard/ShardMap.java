@@ -0,0 +1,325 @@
+package com.mybank.shard;
+
+import com.mybank.config.AppConfig;
+import com.mybank.db.ConnectionPool;
+import com.mybank.db.PoolConfig;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Which database (shard) holds a user's rows: the user, their accounts, transactions and
+ * notifications always live together on one shard.
+ *
+ * Shard 0 is the primary ({@code mybank.db.*}); {@code mybank.shards.urls} adds more. Shard 0
+ * also keeps the directory ({@code shard_directory}), which hands out user ids and records each
+ * user's shard; it is read through a cache of {@code mybank.shards.directoryTtlMs}. Accounts and
+ * transactions created on shard {@code k} get ids from {@code k * ID_RANGE + 1} up (set by
+ * {@code ShardTool init}), and {@link ShardMover} gives moved rows new ids on the target, so an
+ * account id alone tells which shard it is on.
+ *
+ * Maps are found by primary with {@link #of(DataSource)}, like the lookup caches. With no extra
+ * shards everything is on the primary and the directory is not used at all.
+ */
+public final class ShardMap implements AutoCloseable {
+    public static final int ID_RANGE = 100_000_000;
+
+    private static final Map<DataSource, ShardMap> BY_PRIMARY = new ConcurrentHashMap<>();
+
+    private final List<DataSource> shards;
+    private final int[] openShards;
+    private final long ttlNanos;
+    private final Map<String, Placement> byUsername = new ConcurrentHashMap<>();
+    private final Map<Integer, Placement> byUser = new ConcurrentHashMap<>();
+    private final ExecutorService scatterPool;
+
+    /**
+     * @param openShards shards that take new users (null or empty for all), so a full shard can be
+     *                   closed to growth and drained with {@link ShardMover}
+     */
+    public ShardMap(List<? extends DataSource> shards, int[] openShards, long directoryTtlMs) {
+        if (shards.isEmpty()) throw new IllegalArgumentException("at least one shard is needed");
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+        if (openShards == null || openShards.length == 0) {
+            openShards = new int[shards.size()];
+            for (int i = 0; i < openShards.length; i++) openShards[i] = i;
+        }
+        for (int s : openShards) {
+            if (s < 0 || s >= shards.size()) throw new IllegalArgumentException("no shard " + s);
+        }
+        this.openShards = openShards.clone();
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(directoryTtlMs);
+        if (shards.size() > 1) {
+            AtomicInteger seq = new AtomicInteger();
+            scatterPool = Executors.newFixedThreadPool(shards.size(), r -> {
+                Thread t = new Thread(r, "mybank-shard-scatter-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            scatterPool = null;
+        }
+    }
+
+    /**
+     * Shard 0 is {@code primary}; further shards come from {@code mybank.shards.urls}
+     * (comma-separated JDBC URLs) with the pool settings under {@code mybank.shards.*} and, unless
+     * {@code mybank.shards.user}/{@code password} are set, the primary's credentials.
+     */
+    public static ShardMap fromAppConfig(DataSource primary, PoolConfig primaryConfig) {
+        List<DataSource> list = new ArrayList<>();
+        list.add(primary);
+        for (String url : AppConfig.get("mybank.shards.urls", "").split(",")) {
+            if (url.trim().isEmpty()) continue;
+            PoolConfig c = PoolConfig.fromAppConfig("mybank.shards");
+            c.setUrl(url.trim());
+            c.setUser(AppConfig.get("mybank.shards.user", primaryConfig.getUser()));
+            c.setPassword(AppConfig.get("mybank.shards.password", primaryConfig.getPassword()));
+            list.add(new ConnectionPool(c));
+        }
+        List<Integer> open = new ArrayList<>();
+        for (String s : AppConfig.get("mybank.shards.newUsers", "").split(",")) {
+            if (!s.trim().isEmpty()) open.add(Integer.parseInt(s.trim()));
+        }
+        ShardMap m = new ShardMap(list, open.stream().mapToInt(Integer::intValue).toArray(),
+                AppConfig.getLong("mybank.shards.directoryTtlMs", 5_000));
+        if (m.isSharded()) register(m);
+        return m;
+    }
+
+    public static void register(ShardMap map) {
+        BY_PRIMARY.put(map.catalog(), map);
+    }
+
+    /** The map registered for {@code primary}, or one with {@code primary} as the only shard. */
+    public static ShardMap of(DataSource primary) {
+        ShardMap m = BY_PRIMARY.get(primary);
+        return m != null ? m : new ShardMap(Collections.singletonList(primary), null, 0);
+    }
+
+    public boolean isSharded() { return shards.size() > 1; }
+    public int size() { return shards.size(); }
+    public DataSource shard(int i) { return shards.get(i); }
+    public List<DataSource> all() { return shards; }
+
+    /** Shard 0: the primary, which also holds the directory and the saga log. */
+    public DataSource catalog() { return shards.get(0); }
+
+    /** Shard an account or transaction id belongs to. */
+    public int homeShard(long id) {
+        long k = (id - 1) / ID_RANGE;
+        return id > 0 && k < shards.size() ? (int) k : 0;
+    }
+
+    /** Shard that holds the user's rows (for reading; writes use {@link #forWrite}). */
+    public int shardOf(int userId) throws SQLException {
+        return isSharded() ? placement(userId).shard : 0;
+    }
+
+    public DataSource forUser(int userId) throws SQLException {
+        return shards.get(shardOf(userId));
+    }
+
+    /**
+     * Shard to write the user's rows to. Throws a {@link SQLTransientException} while the user is
+     * being moved, so the write can be tried again once the move is done.
+     */
+    public DataSource forWrite(int userId) throws SQLException {
+        if (!isSharded()) return catalog();
+        Placement p = placement(userId);
+        if (p.moving) throw new SQLTransientException("User " + userId + " is being moved to another shard; try again shortly");
+        return shards.get(p.shard);
+    }
+
+    /** Shard of the user with this username, or -1 if there is none. */
+    public int shardOfUsername(String username) throws SQLException {
+        if (!isSharded()) return 0;
+        Placement p = byUsername.get(username);
+        if (p == null || !p.fresh()) {
+            p = load("SELECT username, user_id, shard, moving FROM shard_directory WHERE username = ?", username);
+            if (p == null) return -1;
+            remember(p);
+        }
+        return p.shard;
+    }
+
+    /** Shard a new user goes to: one of the open shards, spread by username. */
+    public int newUserShard(String username) {
+        return openShards[Math.floorMod(username.toLowerCase(Locale.ROOT).hashCode(), openShards.length)];
+    }
+
+    /**
+     * Reserves {@code username} on {@code shard} and returns the new user's id, or -1 if the name
+     * is taken. The user row is then inserted on that shard with this id; if that fails, call
+     * {@link #release(int)}.
+     */
+    public int claim(String username, int shard) throws SQLException {
+        try (Connection c = catalog().getConnection();
+             PreparedStatement ps = c.prepareStatement("INSERT INTO shard_directory (username, shard) VALUES (?, ?)",
+                     Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, username);
+            ps.setInt(2, shard);
+            ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (!rs.next()) throw new SQLException("No user id generated for " + username);
+                return rs.getInt(1);
+            }
+        } catch (SQLException e) {
+            if (isDuplicate(e)) return -1;
+            throw e;
+        }
+    }
+
+    /** Gives up a {@link #claim} whose user row could not be written. */
+    public void release(int userId) throws SQLException {
+        try (Connection c = catalog().getConnection();
+             PreparedStatement ps = c.prepareStatement("DELETE FROM shard_directory WHERE user_id = ?")) {
+            ps.setInt(1, userId);
+            ps.executeUpdate();
+        }
+        Placement p = byUser.remove(userId);
+        if (p != null) byUsername.remove(p.username);
+    }
+
+    /** Drops what this process remembers about the user (after a move). */
+    public void forget(int userId, String username) {
+        byUser.remove(userId);
+        if (username != null) byUsername.remove(username);
+    }
+
+    /** How long a directory change may go unseen by other instances. */
+    public long getDirectoryTtlMs() {
+        return TimeUnit.NANOSECONDS.toMillis(ttlNanos);
+    }
+
+    /**
+     * Runs {@code query} on every shard at once and returns all results, shard 0 first. Fails if
+     * any shard fails.
+     */
+    public <T> List<T> scatter(ShardQuery<T> query) throws SQLException {
+        if (!isSharded()) return query.run(catalog(), 0);
+        List<CompletableFuture<List<T>>> parts = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            int shard = i;
+            parts.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return query.run(shards.get(shard), shard);
+                } catch (SQLException e) {
+                    throw new CompletionException(new SQLException("Shard " + shard + ": " + e.getMessage(),
+                            e.getSQLState(), e.getErrorCode(), e));
+                }
+            }, scatterPool));
+        }
+        List<T> out = new ArrayList<>();
+        for (CompletableFuture<List<T>> p : parts) {
+            try {
+                out.addAll(p.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+                throw e;
+            }
+        }
+        return out;
+    }
+
+    /** Closes the pools of shards 1 and up; shard 0 belongs to whoever created it. */
+    @Override
+    public void close() {
+        BY_PRIMARY.remove(catalog(), this);
+        if (scatterPool != null) scatterPool.shutdownNow();
+        for (int i = 1; i < shards.size(); i++) {
+            if (shards.get(i) instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) shards.get(i)).close();
+                } catch (Exception e) {
+                    System.err.println("❌ Could not close shard " + i + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return shards.size() + " shard(s), new users on " + Arrays.toString(openShards);
+    }
+
+    static boolean isDuplicate(SQLException e) {
+        // 23xxx: integrity constraint violation (MySQL 1062 / H2 23505 for a duplicate key)
+        return e.getSQLState() != null && e.getSQLState().startsWith("23");
+    }
+
+    Placement placement(int userId) throws SQLException {
+        Placement p = byUser.get(userId);
+        if (p != null && p.fresh()) return p;
+        p = load("SELECT username, user_id, shard, moving FROM shard_directory WHERE user_id = ?", userId);
+        // not in the directory: created before sharding was set up (and ShardTool init)
+        if (p == null) p = new Placement(null, userId, 0, false, System.nanoTime() + ttlNanos);
+        remember(p);
+        return p;
+    }
+
+    private void remember(Placement p) {
+        byUser.put(p.userId, p);
+        if (p.username != null) byUsername.put(p.username, p);
+    }
+
+    private Placement load(String sql, Object key) throws SQLException {
+        try (Connection c = catalog().getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setObject(1, key);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                int shard = rs.getInt("shard");
+                if (shard < 0 || shard >= shards.size()) {
+                    throw new SQLException("Directory puts " + rs.getString("username") + " on shard " + shard
+                            + " but only " + shards.size() + " are configured");
+                }
+                return new Placement(rs.getString("username"), rs.getInt("user_id"), shard,
+                        rs.getBoolean("moving"), System.nanoTime() + ttlNanos);
+            }
+        }
+    }
+
+    /** One query run on each shard by {@link #scatter}. */
+    public interface ShardQuery<T> {
+        List<T> run(DataSource shard, int index) throws SQLException;
+    }
+
+    static final class Placement {
+        final String username;
+        final int userId;
+        final int shard;
+        final boolean moving;
+        final long expiresAt;
+
+        Placement(String username, int userId, int shard, boolean moving, long expiresAt) {
+            this.username = username;
+            this.userId = userId;
+            this.shard = shard;
+            this.moving = moving;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean fresh() {
+            return System.nanoTime() - expiresAt < 0;
+        }
+    }
+}
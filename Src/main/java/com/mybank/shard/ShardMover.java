@@ -0,0 +1,291 @@
+package com.mybank.shard;
+
+import com.mybank.service.IdempotencyStore;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves a user, with their accounts, transactions, notifications and idempotency keys, to another
+ * shard.
+ *
+ * The user is first marked as moving in the directory, which stops writes to their rows
+ * ({@link ShardMap#forWrite} refuses), and the mover waits until every instance has seen that.
+ * The rows are then copied to the target in one transaction and checked against the source
+ * (row counts and balance totals) before the directory is switched. Accounts, transactions and
+ * notifications get new ids from the target's range; the user and their idempotency keys keep
+ * theirs, so a request replayed after the move is still answered with its first result. The
+ * source rows are deleted last, once no instance can still be reading them.
+ *
+ * A user with unfinished cross-shard transfers is not moved, since their saga steps are recorded
+ * on the current shard. Run it again after an interruption: it starts over from the copy, or
+ * only removes what was left on the old shard. Do not move users while {@code ArchiveTransactions}
+ * or the ledger engine is running; both keep per-user state outside the shard.
+ */
+public class ShardMover {
+    private static final String TX_WHERE = "user_id = ? OR account_id IN (SELECT account_id FROM accounts WHERE user_id = ?)";
+
+    private final ShardMap shards;
+    private final long settleMs;
+
+    public ShardMover(ShardMap shards) {
+        this(shards, shards.getDirectoryTtlMs() + 1_000);
+    }
+
+    /** @param settleMs how long a directory change takes to reach every instance */
+    public ShardMover(ShardMap shards, long settleMs) {
+        this.shards = shards;
+        this.settleMs = settleMs;
+    }
+
+    public MoveResult move(String username, int target) throws SQLException, InterruptedException {
+        if (target < 0 || target >= shards.size()) throw new IllegalArgumentException("no shard " + target);
+        long start = System.nanoTime();
+        ShardMap.Placement p = directoryEntry(username);
+        if (p.shard == target) {
+            if (p.moving) setMoving(p.userId, false);
+            int removed = removeLeftovers(p.userId, target);
+            if (removed > 0) System.out.println("✅ Removed copies of " + username + " left on " + removed + " other shard(s)");
+            return new MoveResult(username, p.userId, target, target, 0, 0, 0, System.nanoTime() - start);
+        }
+
+        setMoving(p.userId, true);
+        Thread.sleep(settleMs);
+        int[] copied;
+        try {
+            int open = openSagas(p.userId);
+            if (open > 0) {
+                throw new SQLException(username + " has " + open + " unfinished transfer(s); run recovery and try again");
+            }
+            copied = copy(p.userId, shards.shard(p.shard), shards.shard(target));
+        } catch (SQLException | RuntimeException e) {
+            setMoving(p.userId, false);
+            throw e;
+        }
+
+        try (Connection c = shards.catalog().getConnection();
+             PreparedStatement ps = c.prepareStatement("UPDATE shard_directory SET shard = ?, moving = FALSE WHERE user_id = ?")) {
+            ps.setInt(1, target);
+            ps.setInt(2, p.userId);
+            ps.executeUpdate();
+        }
+        shards.forget(p.userId, username);
+        IdempotencyStore.forgetUser(shards, p.userId);
+        // instances that have not seen the switch yet may still read the old rows
+        Thread.sleep(settleMs);
+        try {
+            delete(shards.shard(p.shard), p.userId);
+        } catch (SQLException e) {
+            System.err.println("⚠️ " + username + " moved, but the old rows on shard " + p.shard
+                    + " could not be removed (run the move again): " + e.getMessage());
+        }
+        return new MoveResult(username, p.userId, p.shard, target, copied[0], copied[1], copied[2], System.nanoTime() - start);
+    }
+
+    private ShardMap.Placement directoryEntry(String username) throws SQLException {
+        try (Connection c = shards.catalog().getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT user_id, shard, moving FROM shard_directory WHERE username = ?")) {
+            ps.setString(1, username);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) throw new SQLException("No user " + username + " in the shard directory (run ShardTool init)");
+                return new ShardMap.Placement(username, rs.getInt(1), rs.getInt(2), rs.getBoolean(3), 0);
+            }
+        }
+    }
+
+    private void setMoving(int userId, boolean moving) throws SQLException {
+        try (Connection c = shards.catalog().getConnection();
+             PreparedStatement ps = c.prepareStatement("UPDATE shard_directory SET moving = ? WHERE user_id = ?")) {
+            ps.setBoolean(1, moving);
+            ps.setInt(2, userId);
+            ps.executeUpdate();
+        }
+        shards.forget(userId, null);
+    }
+
+    private int openSagas(int userId) throws SQLException {
+        try (Connection c = shards.catalog().getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM transfer_saga "
+                     + "WHERE state IN ('" + TransferSaga.STARTED + "', '" + TransferSaga.DEBITED + "') AND (from_user = ? OR to_user = ?)")) {
+            ps.setInt(1, userId);
+            ps.setInt(2, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    /** Copies the user's rows in one transaction on the target; returns accounts, transactions, notifications. */
+    private int[] copy(int userId, DataSource from, DataSource to) throws SQLException {
+        try (Connection src = from.getConnection(); Connection dst = to.getConnection()) {
+            dst.setAutoCommit(false);
+            try {
+                // an earlier run that got this far was never switched to; start over
+                delete(dst, userId);
+                Map<Integer, Integer> accountIds = new HashMap<>();
+                int users = copy(src, dst, "users", "user_id", "user_id = ?", userId, false, null, null);
+                if (users != 1) throw new SQLException("User " + userId + " is not on shard " + shards.all().indexOf(from));
+                int accounts = copy(src, dst, "accounts", "account_id", "user_id = ?", userId, true, null, accountIds);
+                int transactions = copy(src, dst, "transactions", "transaction_id", TX_WHERE, userId, true, accountIds, null);
+                int notifications = copy(src, dst, "notifications", "notification_id", "user_id = ?", userId, true, null, null);
+                copy(src, dst, "idempotency_keys", "idem_key", "user_id = ?", userId, false, null, null);
+                String before = totals(src, userId);
+                String after = totals(dst, userId);
+                if (!before.equals(after)) {
+                    throw new SQLException("Copy of user " + userId + " does not match: source " + before + ", target " + after);
+                }
+                dst.commit();
+                return new int[]{accounts, transactions, notifications};
+            } catch (SQLException | RuntimeException e) {
+                dst.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Copies the rows of {@code table} matching {@code where} (each {@code ?} is the user id),
+     * column by column. With {@code rekey} the target assigns new keys, collected into
+     * {@code newIds} if given; {@code accountIds} rewrites {@code account_id}.
+     */
+    private static int copy(Connection src, Connection dst, String table, String key, String where, int userId,
+                            boolean rekey, Map<Integer, Integer> accountIds, Map<Integer, Integer> newIds) throws SQLException {
+        try (PreparedStatement read = src.prepareStatement("SELECT * FROM " + table + " WHERE " + where + " ORDER BY " + key)) {
+            bindUser(read, where, userId);
+            try (ResultSet rs = read.executeQuery()) {
+                ResultSetMetaData md = rs.getMetaData();
+                List<Integer> columns = new ArrayList<>();
+                StringBuilder names = new StringBuilder();
+                StringBuilder marks = new StringBuilder();
+                int keyColumn = 0;
+                int accountColumn = 0;
+                for (int i = 1; i <= md.getColumnCount(); i++) {
+                    String name = md.getColumnName(i);
+                    if (name.equalsIgnoreCase(key)) keyColumn = i;
+                    if (name.equalsIgnoreCase("account_id")) accountColumn = i;
+                    if (rekey && i == keyColumn) continue;
+                    columns.add(i);
+                    names.append(names.length() == 0 ? "" : ", ").append(name);
+                    marks.append(marks.length() == 0 ? "?" : ", ?");
+                }
+                String sql = "INSERT INTO " + table + " (" + names + ") VALUES (" + marks + ")";
+                int n = 0;
+                try (PreparedStatement ins = newIds != null
+                        ? dst.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS) : dst.prepareStatement(sql)) {
+                    while (rs.next()) {
+                        for (int j = 0; j < columns.size(); j++) {
+                            int col = columns.get(j);
+                            Object v = rs.getObject(col);
+                            if (col == accountColumn && accountIds != null && v != null) {
+                                // null: an old row of the user's on an account that is no longer theirs
+                                v = accountIds.get(((Number) v).intValue());
+                            }
+                            ins.setObject(j + 1, v);
+                        }
+                        if (newIds == null) {
+                            ins.addBatch();
+                        } else {
+                            ins.executeUpdate();
+                            try (ResultSet keys = ins.getGeneratedKeys()) {
+                                if (!keys.next()) throw new SQLException("No " + key + " generated on the target");
+                                newIds.put(rs.getInt(keyColumn), keys.getInt(1));
+                            }
+                        }
+                        n++;
+                    }
+                    if (newIds == null && n > 0) ins.executeBatch();
+                }
+                return n;
+            }
+        }
+    }
+
+    // what must survive the copy unchanged; ids differ, so only counts and sums
+    private static String totals(Connection c, int userId) throws SQLException {
+        String sql = "SELECT (SELECT balance FROM users WHERE user_id = ?), "
+                + "(SELECT COUNT(*) FROM accounts WHERE user_id = ?), (SELECT SUM(balance) FROM accounts WHERE user_id = ?), "
+                + "(SELECT COUNT(*) FROM transactions WHERE " + TX_WHERE + "), "
+                + "(SELECT SUM(amount) FROM transactions WHERE " + TX_WHERE + "), "
+                + "(SELECT COUNT(*) FROM notifications WHERE user_id = ?), "
+                + "(SELECT COUNT(*) FROM idempotency_keys WHERE user_id = ?)";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            bindUser(ps, sql, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                StringBuilder sb = new StringBuilder();
+                for (int i = 1; i <= 7; i++) {
+                    String v = rs.getString(i);
+                    sb.append(i == 1 ? "" : "/").append(v == null ? "-" : new BigDecimal(v).stripTrailingZeros().toPlainString());
+                }
+                return sb.toString();
+            }
+        }
+    }
+
+    private static void delete(DataSource shard, int userId) throws SQLException {
+        try (Connection c = shard.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                delete(c, userId);
+                c.commit();
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+    }
+
+    // children first, so it does not depend on ON DELETE CASCADE
+    private static void delete(Connection c, int userId) throws SQLException {
+        String[] sql = {
+                "DELETE FROM transactions WHERE " + TX_WHERE,
+                "DELETE FROM notifications WHERE user_id = ?",
+                "DELETE FROM idempotency_keys WHERE user_id = ?",
+                "DELETE FROM accounts WHERE user_id = ?",
+                "DELETE FROM users WHERE user_id = ?"
+        };
+        for (String s : sql) {
+            try (PreparedStatement ps = c.prepareStatement(s)) {
+                bindUser(ps, s, userId);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    // every parameter of these statements is the user id
+    private static void bindUser(PreparedStatement ps, String sql, int userId) throws SQLException {
+        int n = sql.length() - sql.replace("?", "").length();
+        for (int i = 1; i <= n; i++) ps.setInt(i, userId);
+    }
+
+    private int removeLeftovers(int userId, int home) throws SQLException {
+        int removed = 0;
+        for (int i = 0; i < shards.size(); i++) {
+            if (i == home) continue;
+            boolean found;
+            try (Connection c = shards.shard(i).getConnection();
+                 PreparedStatement ps = c.prepareStatement("SELECT 1 FROM users WHERE user_id = ?")) {
+                ps.setInt(1, userId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    found = rs.next();
+                }
+            }
+            if (found) {
+                delete(shards.shard(i), userId);
+                removed++;
+            }
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,367 @@
+package com.mybank.shard;
+
+import com.mybank.cache.DataCaches;
+import com.mybank.config.AppConfig;
+import com.mybank.db.ReplicaRouter;
+import com.mybank.event.BalanceChanged;
+import com.mybank.event.EventBus;
+import com.mybank.event.TransactionPosted;
+import com.mybank.model.Money;
+import com.mybank.model.Transaction;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfers between users on different shards, where no single database transaction covers
+ * both balances.
+ *
+ * Each transfer is logged in {@code transfer_saga} on shard 0 before any money moves: STARTED,
+ * then the debit on the sender's shard (DEBITED), then the credit on the recipient's shard
+ * (DONE). A step commits together with its row in that shard's {@code saga_steps}, so it is
+ * applied at most once however often it is retried. If the debit is refused nothing happened
+ * (FAILED); if the recipient is gone by the time of the credit, the debit is refunded (REFUNDED).
+ *
+ * A transfer cut short (crash, shard down, user being moved) is finished by {@link #recover()},
+ * which only looks at sagas idle for {@code mybank.saga.recoverAfterMs} so it does not race live
+ * ones. When it cannot tell whether a debit committed, it settles the step on the sender's shard
+ * as ABORTED unless it is already APPLIED; a debit still in flight then fails on that row.
+ */
+public class TransferSaga {
+    public enum Outcome { DONE, CREDIT_PENDING, INSUFFICIENT_FUNDS, SENDER_NOT_FOUND, RECIPIENT_NOT_FOUND }
+
+    static final String STARTED = "STARTED";
+    static final String DEBITED = "DEBITED";
+    static final String DONE = "DONE";
+    static final String FAILED = "FAILED";
+    static final String REFUNDED = "REFUNDED";
+
+    private static final String DEBIT = "DEBIT";
+    private static final String CREDIT = "CREDIT";
+    private static final String REFUND = "REFUND";
+    private static final String APPLIED = "APPLIED";
+    private static final String ABORTED = "ABORTED";
+
+    private static final String DEBIT_SQL = "UPDATE users SET balance = balance - ?, version = version + 1 WHERE user_id = ? AND balance >= ?";
+    private static final String CREDIT_SQL = "UPDATE users SET balance = balance + ?, version = version + 1 WHERE user_id = ?";
+    private static final String POST_SQL = "INSERT INTO transactions (user_id, type, amount, description) VALUES (?, 'transfer', ?, ?)";
+
+    private enum Step { APPLIED, ALREADY, REFUSED, ABORTED }
+
+    private final ShardMap shards;
+    private final DataCaches caches;
+    private final EventBus events = EventBus.getDefault();
+    private final long recoverAfterMs;
+    private ScheduledExecutorService recovery;
+
+    public TransferSaga(ShardMap shards) {
+        this.shards = shards;
+        this.caches = DataCaches.of(shards.catalog());
+        this.recoverAfterMs = AppConfig.getLong("mybank.saga.recoverAfterMs", 30_000);
+    }
+
+    /**
+     * Moves {@code amount} from one user to another on a different shard. Returns once the money
+     * has left the sender; {@link Outcome#CREDIT_PENDING} means the recipient gets it on recovery.
+     * An exception means nothing was debited, unless its message says the outcome is not known yet.
+     */
+    public Outcome transfer(int fromId, int toId, Money amount, String fromDesc, String toDesc) throws SQLException {
+        // a user being moved fails here, before anything is logged
+        shards.forWrite(fromId);
+        shards.forWrite(toId);
+        long id = start(fromId, toId, amount, fromDesc, toDesc);
+        Step debit;
+        try {
+            debit = apply(id, DEBIT, fromId, amount.negate(), fromDesc);
+        } catch (SQLException e) {
+            if (!debitCommitted(id, fromId, e)) throw e;
+            debit = Step.ALREADY;
+        }
+        if (debit == Step.REFUSED || debit == Step.ABORTED) {
+            finish(id, STARTED, FAILED, debit == Step.ABORTED ? "cancelled by recovery" : null);
+            if (debit == Step.ABORTED) throw new SQLException("Transfer #" + id + " was cancelled");
+            return exists(fromId) ? Outcome.INSUFFICIENT_FUNDS : Outcome.SENDER_NOT_FOUND;
+        }
+        finish(id, STARTED, DEBITED, null);
+        return credit(id, fromId, toId, amount, fromDesc, toDesc);
+    }
+
+    /**
+     * Finishes or cancels every saga left open for longer than {@code mybank.saga.recoverAfterMs}.
+     * Returns how many were settled; the rest stay open for the next run.
+     */
+    public int recover() throws SQLException {
+        List<Saga> open = new ArrayList<>();
+        try (Connection c = shards.catalog().getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "SELECT saga_id, from_user, to_user, amount, from_description, to_description, state FROM transfer_saga "
+                             + "WHERE state IN ('STARTED', 'DEBITED') AND updated_at < TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP) "
+                             + "ORDER BY saga_id LIMIT 1000")) {
+            ps.setLong(1, -Math.max(1, recoverAfterMs / 1000));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    open.add(new Saga(rs.getLong(1), rs.getInt(2), rs.getInt(3), Money.of(rs.getBigDecimal(4)),
+                            rs.getString(5), rs.getString(6), rs.getString(7)));
+                }
+            }
+        }
+        int settled = 0;
+        for (Saga s : open) {
+            try {
+                if (resume(s)) settled++;
+            } catch (SQLException e) {
+                note(s.id, e.getMessage());
+                System.err.println("⚠️ Transfer #" + s.id + " is still open: " + e.getMessage());
+            }
+        }
+        return settled;
+    }
+
+    /** Runs {@link #recover()} every {@code everyMs} on a daemon thread. */
+    public synchronized void startRecovery(long everyMs) {
+        if (recovery != null) return;
+        recovery = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mybank-saga-recovery");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000, everyMs);
+        recovery.scheduleWithFixedDelay(() -> {
+            try {
+                int n = recover();
+                if (n > 0) System.out.println("✅ Recovered " + n + " interrupted transfer(s)");
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("❌ Transfer recovery failed: " + e.getMessage());
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopRecovery() {
+        if (recovery != null) recovery.shutdownNow();
+        recovery = null;
+    }
+
+    private boolean resume(Saga s) throws SQLException {
+        if (STARTED.equals(s.state)) {
+            if (!APPLIED.equals(settle(s.id, DEBIT, s.from))) {
+                finish(s.id, STARTED, FAILED, "cancelled by recovery");
+                return true;
+            }
+            finish(s.id, STARTED, DEBITED, null);
+        }
+        return credit(s.id, s.from, s.to, s.amount, s.fromDesc, s.toDesc) != Outcome.CREDIT_PENDING;
+    }
+
+    private Outcome credit(long id, int fromId, int toId, Money amount, String fromDesc, String toDesc) {
+        try {
+            if (apply(id, CREDIT, toId, amount, toDesc) != Step.REFUSED) {
+                finish(id, DEBITED, DONE, null);
+                return Outcome.DONE;
+            }
+            // the recipient is gone: give the money back
+            if (apply(id, REFUND, fromId, amount, "Refund: " + fromDesc) == Step.REFUSED) {
+                throw new SQLException("neither user " + toId + " nor user " + fromId + " exists any more");
+            }
+            finish(id, DEBITED, REFUNDED, "recipient not found");
+            return Outcome.RECIPIENT_NOT_FOUND;
+        } catch (SQLException e) {
+            note(id, e.getMessage());
+            System.err.println("⚠️ Transfer #" + id + ": credit to user " + toId + " is pending (" + e.getMessage() + ")");
+            return Outcome.CREDIT_PENDING;
+        }
+    }
+
+    /**
+     * Runs one step on the user's shard: the step row, the balance change and the transaction row
+     * in one local transaction. A debit is refused without the funds; any step without the user.
+     */
+    private Step apply(long id, String step, int userId, Money delta, String description) throws SQLException {
+        DataSource db = shards.forWrite(userId);
+        BigDecimal amount = delta.toBigDecimal();
+        int txId = 0;
+        long seq;
+        try (Connection c = db.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                if (!mark(c, id, step, APPLIED)) {
+                    c.rollback();
+                    return APPLIED.equals(outcome(c, id, step)) ? Step.ALREADY : Step.ABORTED;
+                }
+                try (PreparedStatement ps = c.prepareStatement(delta.isNegative() ? DEBIT_SQL : CREDIT_SQL)) {
+                    ps.setBigDecimal(1, amount.abs());
+                    ps.setInt(2, userId);
+                    if (delta.isNegative()) ps.setBigDecimal(3, amount.abs());
+                    if (ps.executeUpdate() != 1) {
+                        c.rollback();
+                        return Step.REFUSED;
+                    }
+                }
+                try (PreparedStatement ps = c.prepareStatement(POST_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                    ps.setInt(1, userId);
+                    ps.setBigDecimal(2, amount);
+                    ps.setString(3, description);
+                    ps.executeUpdate();
+                    try (ResultSet rs = ps.getGeneratedKeys()) {
+                        if (rs.next()) txId = rs.getInt(1);
+                    }
+                }
+                seq = events.nextSequence();
+                c.commit();
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+        caches.userChanged(userId);
+        ReplicaRouter.of(db).wrote(userId);
+        events.publish(new BalanceChanged(userId, null, seq));
+        events.publish(new TransactionPosted(posted(txId, userId, delta, description)));
+        return Step.APPLIED;
+    }
+
+    /** After a debit failed: whether it committed anyway. If it did not, it never will. */
+    private boolean debitCommitted(long id, int fromId, SQLException cause) throws SQLException {
+        String outcome;
+        try {
+            outcome = settle(id, DEBIT, fromId);
+        } catch (SQLException e) {
+            note(id, cause.getMessage());
+            throw new SQLException("Transfer #" + id + " outcome not known yet; it will be completed or cancelled automatically: "
+                    + cause.getMessage(), cause.getSQLState(), cause.getErrorCode(), cause);
+        }
+        if (APPLIED.equals(outcome)) return true;
+        finish(id, STARTED, FAILED, cause.getMessage());
+        return false;
+    }
+
+    /** Returns the step's outcome on the user's shard, first recording it as ABORTED if it has none. */
+    private String settle(long id, String step, int userId) throws SQLException {
+        try (Connection c = shards.forWrite(userId).getConnection()) {
+            return mark(c, id, step, ABORTED) ? ABORTED : outcome(c, id, step);
+        }
+    }
+
+    private static boolean mark(Connection c, long id, String step, String outcome) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("INSERT INTO saga_steps (saga_id, step, outcome) VALUES (?, ?, ?)")) {
+            ps.setLong(1, id);
+            ps.setString(2, step);
+            ps.setString(3, outcome);
+            ps.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            if (ShardMap.isDuplicate(e)) return false;
+            throw e;
+        }
+    }
+
+    private static String outcome(Connection c, long id, String step) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT outcome FROM saga_steps WHERE saga_id = ? AND step = ?")) {
+            ps.setLong(1, id);
+            ps.setString(2, step);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private boolean exists(int userId) throws SQLException {
+        try (Connection c = shards.forUser(userId).getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT 1 FROM users WHERE user_id = ?")) {
+            ps.setInt(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private long start(int fromId, int toId, Money amount, String fromDesc, String toDesc) throws SQLException {
+        try (Connection c = shards.catalog().getConnection();
+             PreparedStatement ps = c.prepareStatement("INSERT INTO transfer_saga (from_user, to_user, amount, "
+                     + "from_description, to_description, state) VALUES (?, ?, ?, ?, ?, '" + STARTED + "')",
+                     Statement.RETURN_GENERATED_KEYS)) {
+            ps.setInt(1, fromId);
+            ps.setInt(2, toId);
+            ps.setBigDecimal(3, amount.toBigDecimal());
+            ps.setString(4, fromDesc);
+            ps.setString(5, toDesc);
+            ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (!rs.next()) throw new SQLException("No saga id generated");
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    // the steps are what count: a state left behind is caught up by recovery, so these never throw
+    private void finish(long id, String from, String to, String error) {
+        try (Connection c = shards.catalog().getConnection();
+             PreparedStatement ps = c.prepareStatement("UPDATE transfer_saga SET state = ?, last_error = ?, "
+                     + "updated_at = CURRENT_TIMESTAMP WHERE saga_id = ? AND state = ?")) {
+            ps.setString(1, to);
+            ps.setString(2, truncate(error));
+            ps.setLong(3, id);
+            ps.setString(4, from);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("⚠️ Transfer #" + id + ": could not record " + to + ": " + e.getMessage());
+        }
+    }
+
+    private void note(long id, String error) {
+        try (Connection c = shards.catalog().getConnection();
+             PreparedStatement ps = c.prepareStatement("UPDATE transfer_saga SET attempts = attempts + 1, last_error = ?, "
+                     + "updated_at = CURRENT_TIMESTAMP WHERE saga_id = ?")) {
+            ps.setString(1, truncate(error));
+            ps.setLong(2, id);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("⚠️ Transfer #" + id + ": could not record the error: " + e.getMessage());
+        }
+    }
+
+    private static String truncate(String s) {
+        return s == null || s.length() <= 255 ? s : s.substring(0, 255);
+    }
+
+    private static Transaction posted(int id, int userId, Money amount, String description) {
+        Transaction t = new Transaction();
+        t.setTransactionId(id);
+        t.setUserId(userId);
+        t.setType("transfer");
+        t.setAmount(amount);
+        t.setDescription(description);
+        t.setCreatedAt(new Timestamp(System.currentTimeMillis()));
+        return t;
+    }
+
+    private static final class Saga {
+        final long id;
+        final int from;
+        final int to;
+        final Money amount;
+        final String fromDesc;
+        final String toDesc;
+        final String state;
+
+        Saga(long id, int from, int to, Money amount, String fromDesc, String toDesc, String state) {
+            this.id = id;
+            this.from = from;
+            this.to = to;
+            this.amount = amount;
+            this.fromDesc = fromDesc;
+            this.toDesc = toDesc;
+            this.state = state;
+        }
+    }
+}
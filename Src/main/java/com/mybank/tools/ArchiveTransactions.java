@@ -0,0 +1,72 @@
+package com.mybank.tools;
+
+import com.mybank.DBConnection;
+import com.mybank.archive.ArchiveResult;
+import com.mybank.archive.Archiver;
+import com.mybank.archive.Segment;
+import com.mybank.archive.TransactionArchive;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Moves closed months of the transactions table into the archive directory
+ * ({@code mybank.archive.dir}), or lists what is archived. History screens and statements keep
+ * showing archived months; they are read from the segment files instead of the table.
+ *
+ * Usage: {@code ArchiveTransactions <from yyyy-MM> [to yyyy-MM]} archives every month in the
+ * range (inclusive), oldest first; {@code ArchiveTransactions list} shows the archive. A run that
+ * was interrupted can simply be repeated.
+ */
+public class ArchiveTransactions {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: ArchiveTransactions <from yyyy-MM> [to yyyy-MM] | list");
+            System.exit(2);
+        }
+        TransactionArchive archive = TransactionArchive.getDefault();
+        if (args[0].equals("list")) {
+            long rows = 0;
+            long bytes = 0;
+            for (Segment s : archive.segments().values()) {
+                System.out.printf("%s  %,12d rows  %,10d KB%n", s.getMonth(), s.getRows(), s.getBytes() / 1024);
+                rows += s.getRows();
+                bytes += s.getBytes();
+            }
+            System.out.printf("%d months, %,d rows, %,d KB in %s%n", archive.segments().size(), rows, bytes / 1024,
+                    archive.getDir().toAbsolutePath());
+            return;
+        }
+
+        YearMonth from;
+        YearMonth to;
+        try {
+            from = YearMonth.parse(args[0]);
+            to = args.length > 1 ? YearMonth.parse(args[1]) : from;
+        } catch (DateTimeParseException e) {
+            System.err.println("❌ Months are written yyyy-MM, e.g. 2024-01");
+            System.exit(2);
+            return;
+        }
+        if (!to.isBefore(YearMonth.now())) {
+            System.err.println("❌ Only closed months can be archived; the last one is " + YearMonth.now().minusMonths(1));
+            System.exit(2);
+        }
+
+        Archiver archiver = new Archiver(DBConnection.getDataSource(), archive);
+        System.out.printf("Archiving %s to %s into %s (waiting %d ms per month for other instances)...%n",
+                from, to, archive.getDir().toAbsolutePath(), archive.getRefreshMs() + 1000);
+        for (YearMonth m = from; !m.isAfter(to); m = m.plusMonths(1)) {
+            try {
+                ArchiveResult r = archiver.archive(m);
+                System.out.println("✅ " + r);
+            } catch (SQLException | IOException e) {
+                System.err.println("❌ " + m + ": " + e.getMessage());
+                System.err.println("   Earlier months are archived; run again from " + m + " to continue.");
+                System.exit(1);
+            }
+        }
+    }
+}
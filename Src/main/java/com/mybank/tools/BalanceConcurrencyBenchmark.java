@@ -0,0 +1,144 @@
+package com.mybank.tools;
+
+import com.mybank.DBConnection;
+import com.mybank.model.Money;
+import com.mybank.model.User;
+import com.mybank.service.ConcurrencyMode;
+import com.mybank.service.TransferException;
+import com.mybank.service.TransferService;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Compares the {@link ConcurrencyMode}s of {@link TransferService} under low contention (many
+ * users) and high contention (two users), using a mix of 40% deposits, 30% withdrawals and 30%
+ * transfers. "shed" counts operations turned away as {@code BUSY} by admission control; the
+ * thread then waits the retry-after it was given.
+ *
+ * Runs against the database configured by {@code mybank.db.*} and creates users
+ * {@code bench_mode_0000..} there, so point it at a scratch schema. {@code benchmarks/}'s
+ * {@code BalanceConcurrency} runs the same on an in-memory H2 database.
+ *
+ * Usage: {@code BalanceConcurrencyBenchmark [threads] [seconds] [lowContentionUsers] [modes]}, where
+ * {@code modes} is a comma-separated subset of the modes (default: all).
+ */
+public class BalanceConcurrencyBenchmark {
+    private static final BigDecimal OPENING = new BigDecimal("1000000.00");
+    private static final Money AMOUNT = Money.ofMajor(1);
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int spread = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        run(DBConnection.getDataSource(), threads, seconds, spread, modes(args.length > 3 ? args[3] : null));
+        System.out.println("Pool: " + DBConnection.getPoolStats());
+    }
+
+    /** Each of {@code modes} at both contention levels against {@code ds}, printing one line each. */
+    public static void run(DataSource ds, int threads, int seconds, int spread, List<ConcurrencyMode> modes)
+            throws SQLException, InterruptedException {
+        List<User> users = setUp(ds, spread);
+
+        System.out.printf("%-6s %-12s %10s %10s %10s %10s %10s%n", "load", "mode", "ops/s", "failed", "shed", "conflicts", "retries");
+        for (int count : new int[]{spread, 2}) {
+            for (ConcurrencyMode mode : modes) {
+                resetBalances(ds);
+                TransferService service = new TransferService(ds, mode);
+                LongAdder ok = new LongAdder();
+                LongAdder failed = new LongAdder();
+                LongAdder shed = new LongAdder();
+                List<User> pool = users.subList(0, count);
+                long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+                List<Thread> workers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    Thread w = new Thread(() -> {
+                        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                        while (System.nanoTime() < deadline) {
+                            User a = pool.get(rnd.nextInt(pool.size()));
+                            int op = rnd.nextInt(10);
+                            try {
+                                if (op < 4) {
+                                    service.deposit(a, AMOUNT, "bench");
+                                } else if (op < 7) {
+                                    service.withdraw(a, AMOUNT, "bench");
+                                } else {
+                                    User b = pool.get(rnd.nextInt(pool.size()));
+                                    if (a == b) continue;
+                                    service.transfer(a, b, AMOUNT, "bench");
+                                }
+                                ok.increment();
+                            } catch (TransferException e) {
+                                if (e.getReason() != TransferException.Reason.BUSY) {
+                                    failed.increment();
+                                    continue;
+                                }
+                                shed.increment();
+                                LockSupport.parkNanos(e.getRetryAfterMs() * 1_000_000L);
+                            } catch (RuntimeException e) {
+                                failed.increment();
+                            }
+                        }
+                    });
+                    workers.add(w);
+                    w.start();
+                }
+                for (Thread w : workers) w.join();
+                System.out.printf("%-6s %-12s %10.0f %10d %10d %10d %10d%n", count == 2 ? "high" : "low", mode,
+                        ok.sum() / (double) seconds, failed.sum(), shed.sum(), service.getConflicts(), service.getRetries());
+            }
+        }
+    }
+
+    /** The modes named in {@code list} (comma-separated), or all of them when it is empty. */
+    public static List<ConcurrencyMode> modes(String list) {
+        if (list == null || list.isBlank()) return Arrays.asList(ConcurrencyMode.values());
+        List<ConcurrencyMode> modes = new ArrayList<>();
+        for (String name : list.split(",")) modes.add(ConcurrencyMode.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+        return modes;
+    }
+
+    private static List<User> setUp(DataSource ds, int count) throws SQLException {
+        List<User> users = new ArrayList<>();
+        try (Connection c = ds.getConnection();
+             PreparedStatement ins = c.prepareStatement("INSERT INTO users (username, password, full_name, balance) VALUES (?, 'x', ?, ?) "
+                     + "ON DUPLICATE KEY UPDATE balance = VALUES(balance)");
+             PreparedStatement sel = c.prepareStatement("SELECT user_id FROM users WHERE username = ?")) {
+            for (int i = 0; i < count; i++) {
+                String name = String.format("bench_mode_%04d", i);
+                ins.setString(1, name);
+                ins.setString(2, "Bench User " + i);
+                ins.setBigDecimal(3, OPENING);
+                ins.executeUpdate();
+                sel.setString(1, name);
+                try (ResultSet rs = sel.executeQuery()) {
+                    rs.next();
+                    User u = new User();
+                    u.setUserId(rs.getInt(1));
+                    u.setUsername(name);
+                    users.add(u);
+                }
+            }
+        }
+        return users;
+    }
+
+    private static void resetBalances(DataSource ds) throws SQLException {
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement("UPDATE users SET balance = ? WHERE username LIKE 'bench\\_mode\\_%'")) {
+            ps.setBigDecimal(1, OPENING);
+            ps.executeUpdate();
+        }
+    }
+}
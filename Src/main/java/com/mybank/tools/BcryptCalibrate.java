@@ -0,0 +1,51 @@
+package com.mybank.tools;
+
+import com.mybank.config.AppConfig;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.Arrays;
+
+/**
+ * Measures bcrypt on this machine and recommends {@code mybank.auth.bcryptCost}: the highest
+ * cost whose median hash time stays within the target. Also shows how many logins per second
+ * the auth pool could then take with every worker busy.
+ *
+ * Usage: {@code BcryptCalibrate [targetMs] [samples]} (defaults: 250 ms, 5 samples per cost)
+ */
+public class BcryptCalibrate {
+    public static void main(String[] args) {
+        long targetMs = args.length > 0 ? Long.parseLong(args[0]) : 250;
+        int samples = Math.max(1, args.length > 1 ? Integer.parseInt(args[1]) : 5);
+        int workers = AppConfig.getInt("mybank.auth.workers", Runtime.getRuntime().availableProcessors());
+        int configured = AppConfig.getInt("mybank.auth.bcryptCost", 12);
+
+        // warm up the JIT so the low costs are not measured in the interpreter
+        for (int i = 0; i < 20; i++) BCrypt.hashpw("warm-up", BCrypt.gensalt(4));
+
+        System.out.printf("Target %d ms, %d samples per cost, %d auth workers%n", targetMs, samples, workers);
+        System.out.println("cost   median ms   logins/s");
+        int recommended = 4;
+        for (int cost = 4; cost <= 31; cost++) {
+            double ms = medianMillis(cost, samples);
+            System.out.printf("%4d %11.1f %10.1f%s%n", cost, ms, workers * 1000 / ms, cost == configured ? "   (configured)" : "");
+            if (ms <= targetMs) recommended = cost;
+            // each step doubles the time; stop once we are clearly past the target
+            if (ms > targetMs * 2) break;
+        }
+        System.out.println("✅ Recommended: mybank.auth.bcryptCost=" + recommended
+                + (recommended == configured ? " (already configured)" : " (configured: " + configured + ")"));
+        System.out.println("   Existing hashes are upgraded to the new cost when their users next log in.");
+    }
+
+    private static double medianMillis(int cost, int samples) {
+        double[] ms = new double[samples];
+        for (int i = 0; i < samples; i++) {
+            String salt = BCrypt.gensalt(cost);
+            long start = System.nanoTime();
+            BCrypt.hashpw("calibration-password", salt);
+            ms[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(ms);
+        return samples % 2 == 1 ? ms[samples / 2] : (ms[samples / 2 - 1] + ms[samples / 2]) / 2;
+    }
+}
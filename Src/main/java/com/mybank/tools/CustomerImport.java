@@ -0,0 +1,116 @@
+package com.mybank.tools;
+
+import com.mybank.DBConnection;
+import com.mybank.config.AppConfig;
+import com.mybank.model.Money;
+import com.mybank.model.User;
+import com.mybank.service.CustomerImporter;
+import com.mybank.util.CsvReader;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Onboards customers in bulk from a CSV file (e.g. when a branch migrates to MyBank).
+ *
+ * The header row names the columns, in any order: {@code username} and {@code password} are
+ * required; {@code full_name}, {@code email}, {@code phone}, {@code address}, {@code account_type}
+ * and {@code opening_balance} are optional. Every user gets one account. Rows that cannot be
+ * imported are written to {@code <file>.rejects.csv} with the reason, and the run continues.
+ *
+ * Passwords are hashed at {@code mybank.import.bcryptCost} (default: {@code mybank.auth.bcryptCost})
+ * on {@code mybank.import.hashThreads} threads (default: one per CPU). A lower import cost is
+ * upgraded to the login cost the first time each customer logs in.
+ *
+ * Usage: {@code CustomerImport <file.csv> [chunkSize]}
+ */
+public class CustomerImport {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: CustomerImport <file.csv> [chunkSize]");
+            System.exit(2);
+        }
+        Path input = Paths.get(args[0]);
+        Path rejects = Paths.get(args[0] + ".rejects.csv");
+        int chunkSize = args.length > 1 ? Integer.parseInt(args[1]) : AppConfig.getInt("mybank.import.chunkSize", 500);
+        int cost = AppConfig.getInt("mybank.import.bcryptCost", AppConfig.getInt("mybank.auth.bcryptCost", 12));
+        int threads = AppConfig.getInt("mybank.import.hashThreads", Runtime.getRuntime().availableProcessors());
+
+        System.out.printf("Importing %s (bcrypt cost %d on %d threads, %d rows per chunk)...%n", input, cost, threads, chunkSize);
+        try (CsvReader csv = new CsvReader(Files.newBufferedReader(input, StandardCharsets.UTF_8));
+             PrintWriter rejectOut = new PrintWriter(Files.newBufferedWriter(rejects, StandardCharsets.UTF_8));
+             CustomerImporter importer = new CustomerImporter(DBConnection.getDataSource(), chunkSize, threads, cost,
+                     (line, username, reason) -> rejectOut.println(line + "," + quote(username) + "," + quote(reason)))) {
+            rejectOut.println("line,username,reason");
+            List<String> header = csv.next();
+            if (header == null) {
+                System.err.println("❌ Empty file");
+                System.exit(1);
+            }
+            Map<String, Integer> cols = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) cols.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+            if (!cols.containsKey("username") || !cols.containsKey("password")) {
+                System.err.println("❌ Header must name at least the username and password columns");
+                System.exit(1);
+            }
+
+            long rows = 0;
+            List<String> row;
+            try {
+                while ((row = csv.next()) != null) {
+                    rows++;
+                    User u = new User();
+                    u.setUsername(field(row, cols, "username"));
+                    u.setPassword(row.size() > cols.get("password") ? row.get(cols.get("password")) : null);
+                    u.setFullName(field(row, cols, "full_name"));
+                    u.setEmail(field(row, cols, "email"));
+                    u.setPhone(field(row, cols, "phone"));
+                    u.setAddress(field(row, cols, "address"));
+                    Money opening;
+                    try {
+                        String s = field(row, cols, "opening_balance");
+                        opening = s == null || s.isEmpty() ? Money.ZERO : Money.parse(s);
+                    } catch (NumberFormatException e) {
+                        rejectOut.println(csv.getLineNumber() + "," + quote(u.getUsername()) + "," + quote("bad opening_balance"));
+                        continue;
+                    }
+                    importer.add(csv.getLineNumber(), u, field(row, cols, "account_type"), opening);
+                    if (rows % 10_000 == 0) {
+                        System.out.printf("... %,d rows read, %,d imported, %,d rejected (%,.0f customers/s)%n",
+                                rows, importer.getImported(), importer.getRejected(), importer.getRowsPerSecond());
+                    }
+                }
+                importer.finish();
+            } catch (SQLException e) {
+                System.err.printf("❌ Import stopped near line %d: %s%n", csv.getLineNumber(), e.getMessage());
+                System.err.printf("   %,d customers were imported before that.%n", importer.getImported());
+                System.exit(1);
+            }
+            long rejected = rows - importer.getImported();
+            System.out.printf("%s Imported %,d of %,d customers in %,d chunks (%,.0f customers/s), %,d rejected%s%n",
+                    rejected == 0 ? "✅" : "❌", importer.getImported(), rows, importer.getChunks(),
+                    importer.getRowsPerSecond(), rejected, rejected == 0 ? "" : ", see " + rejects);
+        }
+    }
+
+    private static String field(List<String> row, Map<String, Integer> cols, String name) {
+        Integer i = cols.get(name);
+        if (i == null || i >= row.size()) return null;
+        String v = row.get(i).trim();
+        return v.isEmpty() ? null : v;
+    }
+
+    private static String quote(String s) {
+        if (s == null) return "";
+        return s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 ? s : '"' + s.replace("\"", "\"\"") + '"';
+    }
+}
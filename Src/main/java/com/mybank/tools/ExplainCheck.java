@@ -0,0 +1,165 @@
+package com.mybank.tools;
+
+import com.mybank.DBConnection;
+import com.mybank.config.AppConfig;
+import com.mybank.db.SchemaMigrator;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs {@code EXPLAIN} on every query the DAOs and services issue and fails (exit status 1) if
+ * one of them scans a whole table, so a missing index or a query that stopped matching one is
+ * caught before it reaches a large database. Queries that read a whole table on purpose are
+ * listed as such and only reported.
+ *
+ * Migrates the schema first (unless {@code mybank.db.migrate=false}), then checks the database
+ * from {@code mybank.db.*}: MySQL, or H2 in MySQL mode, e.g. from the benchmarks jar:
+ * {@code java -Dmybank.db.url="jdbc:h2:mem:x;MODE=MySQL;DATABASE_TO_LOWER=TRUE" -Dmybank.db.user=sa
+ * -cp benchmarks/target/benchmarks.jar com.mybank.tools.ExplainCheck}
+ *
+ * The SQL below is copied from the code that runs it; keep the two in step when either changes.
+ * MySQL may prefer a scan on a table with only a handful of rows, so check a database with
+ * some data in it.
+ */
+public class ExplainCheck {
+
+    private static final Timestamp T = Timestamp.valueOf("2025-06-01 00:00:00");
+    private static final String SEEK = " AND (created_at < ? OR (created_at = ? AND transaction_id < ?))";
+    private static final String NEWEST_FIRST = " ORDER BY created_at DESC, transaction_id DESC";
+
+    private static final List<Query> QUERIES = List.of(
+            indexed("UserDAO.getByUsername", "SELECT * FROM users WHERE username = ?", "admin"),
+            indexed("UserDAO.updatePasswordHash", "UPDATE users SET password = ? WHERE user_id = ? AND password = ?", "x", 1, "y"),
+            indexed("AccountDAO.accountsForUser", "SELECT * FROM accounts WHERE user_id = ?", 1),
+            indexed("AccountDAO.findByAccountNumber", "SELECT * FROM accounts WHERE account_number = ?", "ACC100001"),
+            indexed("AccountDAO.findById", "SELECT * FROM accounts WHERE account_id = ?", 1),
+            indexed("TransactionDAO.findRecentByUser", "SELECT * FROM transactions WHERE user_id = ?" + NEWEST_FIRST + " LIMIT 5", 1),
+            indexed("TransactionDAO.countForUser", "SELECT COUNT(*) FROM transactions WHERE user_id = ?", 1),
+            indexed("TransactionDAO.page (first)", "SELECT * FROM transactions WHERE user_id = ?" + NEWEST_FIRST + " LIMIT ?", 1, 50),
+            indexed("TransactionDAO.page (seek)", "SELECT * FROM transactions WHERE user_id = ?" + SEEK + NEWEST_FIRST + " LIMIT ?",
+                    1, T, T, 1000, 50),
+            indexed("TransactionDAO.cursorAt", "SELECT created_at, transaction_id FROM transactions WHERE user_id = ?"
+                    + SEEK + NEWEST_FIRST + " LIMIT 1 OFFSET ?", 1, T, T, 1000, 500),
+            indexed("TransactionDAO.streamForUser", "SELECT * FROM transactions WHERE user_id = ?" + NEWEST_FIRST, 1),
+            indexed("TransactionDAO.streamForPeriod", "SELECT * FROM transactions WHERE user_id = ? AND created_at >= ? AND created_at < ?"
+                    + " ORDER BY created_at, transaction_id", 1, T, T),
+            indexed("TransactionDAO.BatchWriter", "UPDATE users SET balance = balance + ?, version = version + 1 WHERE user_id = ?", 1, 1),
+            indexed("TransferService.move", "UPDATE users SET balance = CASE WHEN user_id = ? THEN balance - ? ELSE balance + ? END, "
+                    + "version = version + 1 WHERE user_id IN (?, ?) AND (user_id <> ? OR balance >= ?)", 1, 1, 1, 1, 2, 1, 1),
+            indexed("TransferService.read", "SELECT user_id, balance, version FROM users WHERE user_id IN (?, ?) ORDER BY user_id", 1, 2),
+            indexed("TransferService.write", "UPDATE users SET balance = ?, version = version + 1 WHERE user_id = ? AND version = ?", 1, 1, 0),
+            indexed("TransferService.readBalances", "SELECT user_id, balance FROM users WHERE user_id IN (?, ?)", 1, 2),
+            indexed("CustomerImporter.dropExisting", "SELECT username FROM users WHERE username IN (?,?,?)", "a", "b", "c"),
+            indexed("DbFlusher.apply", "UPDATE users SET balance = balance + ?, version = version + 1 WHERE user_id = ?", 1, 1),
+            indexed("LedgerEngine.load", "SELECT balance FROM users WHERE user_id = ?", 1),
+            indexed("DbFlusher (checkpoint)", "SELECT last_seq FROM ledger_checkpoint WHERE id = 1"),
+            indexed("Archiver.export", "SELECT * FROM transactions WHERE created_at >= ? AND created_at < ?"
+                    + " AND user_id IS NOT NULL ORDER BY user_id, created_at, transaction_id", T, T),
+            indexed("Archiver.deleteArchived", "DELETE FROM transactions WHERE transaction_id = ? AND user_id = ?", 1, 1),
+            wholeTable("UserDAO.findAll", "SELECT * FROM users ORDER BY user_id"),
+            wholeTable("LedgerEngine.loadUsers", "SELECT user_id, balance FROM users")
+    );
+
+    // H2 names the access path of each table in a comment, e.g. /* public.transactions.tableScan */
+    private static final Pattern H2_SCAN = Pattern.compile("/\\*\\s*([\\w.]+)\\.tableScan");
+
+    public static void main(String[] args) throws SQLException {
+        DataSource ds = DBConnection.getDataSource();
+        SchemaMigrator migrator = new SchemaMigrator(ds);
+        if (AppConfig.getBoolean("mybank.db.migrate", true)) migrator.migrate();
+        System.out.println("Schema version " + migrator.currentVersion() + " (this build: " + migrator.latestVersion() + ")");
+
+        int failures = 0;
+        try (Connection c = ds.getConnection()) {
+            boolean mysql = c.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("mysql");
+            for (Query q : QUERIES) {
+                List<String> scans = mysql ? mysqlScans(c, q) : h2Scans(c, q);
+                if (scans.isEmpty()) {
+                    System.out.println("✅ " + q.name);
+                } else if (q.wholeTable) {
+                    System.out.println("   " + q.name + ": reads all of " + String.join(", ", scans) + " (by design)");
+                } else {
+                    System.err.println("❌ " + q.name + ": full scan of " + String.join(", ", scans));
+                    System.err.println("   " + q.sql);
+                    failures++;
+                }
+            }
+        }
+        if (failures > 0) {
+            System.err.printf("❌ %d of %d queries scan a whole table%n", failures, QUERIES.size());
+            System.exit(1);
+        }
+        System.out.printf("✅ No unexpected full table scans in %d queries%n", QUERIES.size());
+    }
+
+    // type ALL is a table scan and type index a scan of a whole index; both grow with the table
+    private static List<String> mysqlScans(Connection c, Query q) throws SQLException {
+        List<String> scans = new ArrayList<>();
+        try (PreparedStatement ps = explain(c, q); ResultSet rs = ps.executeQuery()) {
+            int table = column(rs.getMetaData(), "table");
+            int type = column(rs.getMetaData(), "type");
+            while (rs.next()) {
+                String t = rs.getString(type);
+                if ("ALL".equalsIgnoreCase(t) || "index".equalsIgnoreCase(t)) scans.add(rs.getString(table));
+            }
+        }
+        return scans;
+    }
+
+    private static List<String> h2Scans(Connection c, Query q) throws SQLException {
+        List<String> scans = new ArrayList<>();
+        try (PreparedStatement ps = explain(c, q); ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                Matcher m = H2_SCAN.matcher(rs.getString(1));
+                while (m.find()) scans.add(m.group(1));
+            }
+        }
+        return scans;
+    }
+
+    private static PreparedStatement explain(Connection c, Query q) throws SQLException {
+        PreparedStatement ps = c.prepareStatement("EXPLAIN " + q.sql);
+        for (int i = 0; i < q.params.length; i++) ps.setObject(i + 1, q.params[i]);
+        return ps;
+    }
+
+    private static int column(ResultSetMetaData md, String label) throws SQLException {
+        for (int i = 1; i <= md.getColumnCount(); i++) {
+            if (md.getColumnLabel(i).equalsIgnoreCase(label)) return i;
+        }
+        throw new SQLException("EXPLAIN output has no " + label + " column");
+    }
+
+    private static Query indexed(String name, String sql, Object... params) {
+        return new Query(name, sql, params, false);
+    }
+
+    private static Query wholeTable(String name, String sql, Object... params) {
+        return new Query(name, sql, params, true);
+    }
+
+    private static final class Query {
+        final String name;
+        final String sql;
+        final Object[] params;
+        final boolean wholeTable;
+
+        Query(String name, String sql, Object[] params, boolean wholeTable) {
+            this.name = name;
+            this.sql = sql;
+            this.params = params;
+            this.wholeTable = wholeTable;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.mybank.tools;
+
+import com.mybank.DBConnection;
+import com.mybank.db.SchemaMigrator;
+import com.mybank.shard.MoveResult;
+import com.mybank.shard.ShardMap;
+import com.mybank.shard.ShardMover;
+import com.mybank.shard.TransferSaga;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Looks after the shards configured with {@code mybank.shards.urls}.
+ *
+ * Usage:
+ * <ul>
+ *   <li>{@code ShardTool init} migrates every shard, starts the account and transaction ids of
+ *       shard {@code k} at {@code k * ShardMap.ID_RANGE + 1}, and adds existing users to the
+ *       directory. Run it once before the app uses the extra shards, and again after adding one.</li>
+ *   <li>{@code ShardTool status} shows users per shard, directory entries with no user row
+ *       (sign-ups that failed half way), users being moved and unfinished transfers.</li>
+ *   <li>{@code ShardTool move <username> <shard>} moves a user and their history to a shard.</li>
+ *   <li>{@code ShardTool recover} finishes interrupted cross-shard transfers now.</li>
+ * </ul>
+ */
+public class ShardTool {
+    private static final String[][] ID_COLUMNS = {
+            {"accounts", "account_id"}, {"transactions", "transaction_id"}, {"notifications", "notification_id"}
+    };
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) usage();
+        ShardMap shards = DBConnection.getShards();
+        switch (args[0]) {
+            case "init":
+                init(shards);
+                break;
+            case "status":
+                status(shards);
+                break;
+            case "move":
+                if (args.length != 3) usage();
+                System.out.printf("Moving %s to shard %d (writes for the user pause for about %d s)...%n",
+                        args[1], Integer.parseInt(args[2]), 2 * (shards.getDirectoryTtlMs() + 1000) / 1000);
+                try {
+                    MoveResult r = new ShardMover(shards).move(args[1], Integer.parseInt(args[2]));
+                    System.out.println("✅ " + r);
+                } catch (SQLException e) {
+                    System.err.println("❌ " + e.getMessage());
+                    System.exit(1);
+                }
+                break;
+            case "recover":
+                System.out.println("✅ Settled " + new TransferSaga(shards).recover() + " transfer(s)");
+                break;
+            default:
+                usage();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: ShardTool init | status | move <username> <shard> | recover");
+        System.exit(2);
+    }
+
+    /** Prepares every shard for use; safe to run again. Returns the number of users added to the directory. */
+    public static int init(ShardMap shards) throws SQLException {
+        for (int k = 0; k < shards.size(); k++) new SchemaMigrator(shards.shard(k)).migrate();
+
+        long maxUser = 0;
+        for (int k = 1; k < shards.size(); k++) {
+            try (Connection c = shards.shard(k).getConnection()) {
+                for (String[] t : ID_COLUMNS) {
+                    long first = (long) k * ShardMap.ID_RANGE + 1;
+                    if (min(c, t[0], t[1]) < first) {
+                        System.err.println("⚠️ Shard " + k + " already has " + t[0] + " with ids below its range; "
+                                + "they will be looked up on the wrong shard");
+                    }
+                    restart(c, t[0], t[1], Math.max(first, max(c, t[0], t[1]) + 1));
+                }
+            }
+        }
+
+        Set<Integer> known = new HashSet<>();
+        try (Connection c = shards.catalog().getConnection();
+             Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT user_id FROM shard_directory")) {
+            while (rs.next()) known.add(rs.getInt(1));
+        }
+        int added = 0;
+        try (Connection dir = shards.catalog().getConnection();
+             PreparedStatement ins = dir.prepareStatement("INSERT INTO shard_directory (user_id, username, shard) VALUES (?, ?, ?)")) {
+            for (int k = 0; k < shards.size(); k++) {
+                try (Connection c = shards.shard(k).getConnection();
+                     Statement st = c.createStatement();
+                     ResultSet rs = st.executeQuery("SELECT user_id, username FROM users")) {
+                    while (rs.next()) {
+                        int id = rs.getInt(1);
+                        maxUser = Math.max(maxUser, id);
+                        if (!known.add(id)) continue;
+                        ins.setInt(1, id);
+                        ins.setString(2, rs.getString(2));
+                        ins.setInt(3, k);
+                        try {
+                            ins.executeUpdate();
+                            added++;
+                        } catch (SQLException e) {
+                            System.err.println("❌ User " + id + " (" + rs.getString(2) + ") on shard " + k
+                                    + " could not be added to the directory: " + e.getMessage());
+                        }
+                    }
+                }
+            }
+            // new user ids come from the directory from now on
+            restart(dir, "shard_directory", "user_id", Math.max(maxUser, max(dir, "shard_directory", "user_id")) + 1);
+        }
+        System.out.println("✅ " + shards.size() + " shard(s) ready, " + added + " user(s) added to the directory");
+        return added;
+    }
+
+    private static void status(ShardMap shards) throws SQLException {
+        System.out.println(shards);
+        try (Connection dir = shards.catalog().getConnection()) {
+            for (int k = 0; k < shards.size(); k++) {
+                Set<Integer> ids = new HashSet<>();
+                try (Connection c = shards.shard(k).getConnection();
+                     Statement st = c.createStatement();
+                     ResultSet rs = st.executeQuery("SELECT user_id FROM users")) {
+                    while (rs.next()) ids.add(rs.getInt(1));
+                }
+                int users = ids.size();
+                int listed = 0;
+                int orphans = 0;
+                try (PreparedStatement ps = dir.prepareStatement("SELECT user_id FROM shard_directory WHERE shard = ?")) {
+                    ps.setInt(1, k);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            listed++;
+                            if (!ids.remove(rs.getInt(1))) orphans++;
+                        }
+                    }
+                }
+                int unlisted = ids.size();
+                System.out.printf("shard %d: %,d users, %,d in the directory, %,d claims without a user, %,d users not in the directory%n",
+                        k, users, listed, orphans, unlisted);
+            }
+            try (Statement st = dir.createStatement()) {
+                try (ResultSet rs = st.executeQuery("SELECT username, shard FROM shard_directory WHERE moving = TRUE")) {
+                    while (rs.next()) System.out.println("⚠️ " + rs.getString(1) + " is being moved off shard " + rs.getInt(2));
+                }
+                try (ResultSet rs = st.executeQuery("SELECT state, COUNT(*), MIN(updated_at) FROM transfer_saga "
+                        + "WHERE state IN ('STARTED', 'DEBITED') GROUP BY state")) {
+                    while (rs.next()) {
+                        System.out.println("⚠️ " + rs.getInt(2) + " transfer(s) " + rs.getString(1) + ", oldest since " + rs.getTimestamp(3));
+                    }
+                }
+            }
+        }
+    }
+
+    private static long max(Connection c, String table, String column) throws SQLException {
+        return aggregate(c, "MAX", table, column, 0);
+    }
+
+    private static long min(Connection c, String table, String column) throws SQLException {
+        return aggregate(c, "MIN", table, column, Long.MAX_VALUE);
+    }
+
+    private static long aggregate(Connection c, String fn, String table, String column, long empty) throws SQLException {
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT " + fn + "(" + column + ") FROM " + table)) {
+            if (!rs.next()) return empty;
+            long v = rs.getLong(1);
+            return rs.wasNull() ? empty : v;
+        }
+    }
+
+    private static void restart(Connection c, String table, String column, long next) throws SQLException {
+        String product = c.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT);
+        String sql = product.contains("mysql") || product.contains("mariadb")
+                ? "ALTER TABLE " + table + " AUTO_INCREMENT = " + next
+                : "ALTER TABLE " + table + " ALTER COLUMN " + column + " RESTART WITH " + next;
+        try (Statement st = c.createStatement()) {
+            st.execute(sql);
+        }
+    }
+}
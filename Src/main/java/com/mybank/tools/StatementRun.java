@@ -0,0 +1,50 @@
+package com.mybank.tools;
+
+import com.mybank.config.AppConfig;
+import com.mybank.service.StatementResult;
+import com.mybank.service.StatementService;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Month-end statement run: one PDF per user, rendered in parallel.
+ *
+ * Usage: {@code StatementRun <outDir> [yyyy-MM|all] [parallelism]}. The month defaults to the
+ * previous one and the parallelism to {@code mybank.statements.parallelism}.
+ */
+public class StatementRun {
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: StatementRun <outDir> [yyyy-MM|all] [parallelism]");
+            System.exit(2);
+        }
+        Path dir = Paths.get(args[0]);
+        YearMonth month;
+        try {
+            month = args.length < 2 ? YearMonth.now().minusMonths(1)
+                    : args[1].equalsIgnoreCase("all") ? null : YearMonth.parse(args[1]);
+        } catch (DateTimeParseException e) {
+            System.err.println("❌ Bad month '" + args[1] + "', expected yyyy-MM or all");
+            System.exit(2);
+            return;
+        }
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2])
+                : AppConfig.getInt("mybank.statements.parallelism", Runtime.getRuntime().availableProcessors());
+
+        System.out.printf("Writing %s statements to %s with %d workers...%n",
+                month == null ? "full-history" : month.toString(), dir.toAbsolutePath(), parallelism);
+        try {
+            StatementResult r = new StatementService().writeAll(month, dir, parallelism);
+            System.out.println((r.getFailed() == 0 ? "✅ " : "❌ ") + r);
+            if (r.getFailed() > 0) System.exit(1);
+        } catch (SQLException | IOException e) {
+            System.err.println("❌ Statement run failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.mybank.tools;
+
+import com.mybank.dao.TransactionDAO;
+import com.mybank.model.Money;
+import com.mybank.model.Transaction;
+import com.mybank.util.CsvReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Bulk-posts transactions from a CSV file (e.g. the nightly payroll credits).
+ *
+ * Expected columns, with a header row: {@code user_id,type,amount,description}. {@code amount}
+ * is the signed change to the user's balance (credits positive, debits negative).
+ *
+ * Usage: {@code TransactionImport <file.csv> [chunkSize]}
+ */
+public class TransactionImport {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: TransactionImport <file.csv> [chunkSize]");
+            System.exit(2);
+        }
+        int chunkSize = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        long skipped = 0;
+        TransactionDAO dao = new TransactionDAO();
+        try (CsvReader csv = new CsvReader(Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8));
+             TransactionDAO.BatchWriter writer = dao.batchWriter(chunkSize)) {
+            csv.next(); // header
+            long lastReport = 0;
+            List<String> row;
+            try {
+                while ((row = csv.next()) != null) {
+                    Transaction t;
+                    try {
+                        t = parse(row);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("❌ Line " + csv.getLineNumber() + " skipped: " + e.getMessage());
+                        skipped++;
+                        continue;
+                    }
+                    writer.add(t);
+                    if (writer.getRowsWritten() - lastReport >= 100_000) {
+                        lastReport = writer.getRowsWritten();
+                        System.out.printf("... %,d rows (%,.0f rows/s)%n", lastReport, writer.getRowsPerSecond());
+                    }
+                }
+                writer.flush();
+            } catch (SQLException e) {
+                System.err.printf("❌ Import stopped near line %d: %s%n", csv.getLineNumber(), e.getMessage());
+                System.err.printf("   %,d rows were committed before the failing chunk.%n", writer.getRowsWritten());
+                System.exit(1);
+            }
+            System.out.printf("✅ Imported %,d rows in %,d chunks (%,.0f rows/s), %d skipped%n",
+                    writer.getRowsWritten(), writer.getChunksWritten(), writer.getRowsPerSecond(), skipped);
+        }
+    }
+
+    private static Transaction parse(List<String> row) {
+        if (row.size() < 3) throw new IllegalArgumentException("expected user_id,type,amount[,description]");
+        Transaction t = new Transaction();
+        try {
+            t.setUserId(Integer.parseInt(row.get(0).trim()));
+            t.setAmount(Money.parse(row.get(2)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad number: " + e.getMessage());
+        }
+        t.setType(row.get(1).trim().toLowerCase());
+        t.setDescription(row.size() > 3 ? row.get(3) : null);
+        return t;
+    }
+}
@@ -0,0 +1,187 @@
+package com.mybank.tools;
+
+import com.mybank.DBConnection;
+import com.mybank.model.Money;
+import com.mybank.model.User;
+import com.mybank.service.TransferException;
+import com.mybank.service.TransferService;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Transfers/sec under contention for the old frame logic ("legacy": lock sender row, then
+ * recipient row, no retry) and {@link TransferService}, on a hot-pair workload (every thread
+ * moves money between the same two users, in both directions) and a random-pair workload.
+ * "shed" counts transfers turned away as {@code BUSY} by admission control; the thread then waits
+ * the retry-after it was given.
+ *
+ * Runs against the database configured by {@code mybank.db.*} and creates users
+ * {@code bench_000..} there, so point it at a scratch schema. {@code benchmarks/}'s
+ * {@code TransferContention} runs the same on an in-memory H2 database.
+ *
+ * Usage: {@code TransferContentionBenchmark [threads] [seconds] [users]}
+ */
+public class TransferContentionBenchmark {
+    private static final BigDecimal OPENING = new BigDecimal("1000000.00");
+    private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+    private static final Money SERVICE_AMOUNT = Money.of(AMOUNT);
+
+    private interface Transfer {
+        void run(User from, User to) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int userCount = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        run(DBConnection.getDataSource(), threads, seconds, userCount);
+        System.out.println("Pool: " + DBConnection.getPoolStats());
+    }
+
+    /** Both paths on both workloads against {@code ds}, printing one line each. */
+    public static void run(DataSource ds, int threads, int seconds, int userCount) throws SQLException, InterruptedException {
+        List<User> users = setUp(ds, userCount);
+
+        System.out.printf("%-12s %-8s %12s %10s %10s %10s%n", "workload", "path", "transfers/s", "failed", "shed", "retries");
+        for (boolean hot : new boolean[]{true, false}) {
+            resetBalances(ds);
+            run(hot, "legacy", threads, seconds, users, (a, b) -> legacyTransfer(ds, a, b), null);
+            resetBalances(ds);
+            TransferService service = new TransferService(ds);
+            run(hot, "service", threads, seconds, users, (a, b) -> service.transfer(a, b, SERVICE_AMOUNT, "bench"), service);
+        }
+    }
+
+    private static void run(boolean hot, String path, int threads, int seconds, List<User> users,
+                            Transfer transfer, TransferService service) throws InterruptedException {
+        LongAdder ok = new LongAdder();
+        LongAdder failed = new LongAdder();
+        LongAdder shed = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread w = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    User a;
+                    User b;
+                    if (hot) {
+                        boolean flip = rnd.nextBoolean();
+                        a = users.get(flip ? 0 : 1);
+                        b = users.get(flip ? 1 : 0);
+                    } else {
+                        a = users.get(rnd.nextInt(users.size()));
+                        b = users.get(rnd.nextInt(users.size()));
+                        if (a == b) continue;
+                    }
+                    try {
+                        transfer.run(a, b);
+                        ok.increment();
+                    } catch (TransferException e) {
+                        if (e.getReason() != TransferException.Reason.BUSY) {
+                            failed.increment();
+                            continue;
+                        }
+                        // turned away by admission control: wait as told, like a client would
+                        shed.increment();
+                        LockSupport.parkNanos(e.getRetryAfterMs() * 1_000_000L);
+                    } catch (Exception e) {
+                        failed.increment();
+                    }
+                }
+            });
+            workers.add(w);
+            w.start();
+        }
+        for (Thread w : workers) w.join();
+        System.out.printf("%-12s %-8s %12.0f %10d %10d %10s%n", hot ? "hot-pair" : "random-pair", path,
+                ok.sum() / (double) seconds, failed.sum(), shed.sum(), service == null ? "-" : String.valueOf(service.getRetries()));
+    }
+
+    /** The transfer logic TransferFrame used before TransferService. */
+    private static void legacyTransfer(DataSource ds, User from, User to) throws Exception {
+        try (Connection c = ds.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = c.prepareStatement("SELECT balance FROM users WHERE user_id = ? FOR UPDATE")) {
+                    ps.setInt(1, from.getUserId());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next() || rs.getBigDecimal(1).compareTo(AMOUNT) < 0) throw new TransferException(
+                                TransferException.Reason.INSUFFICIENT_FUNDS, "Insufficient funds.");
+                    }
+                }
+                try (PreparedStatement ps = c.prepareStatement("SELECT balance FROM users WHERE user_id = ? FOR UPDATE")) {
+                    ps.setInt(1, to.getUserId());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next()) throw new TransferException(TransferException.Reason.RECIPIENT_NOT_FOUND, "Recipient not found.");
+                    }
+                }
+                try (PreparedStatement up = c.prepareStatement("UPDATE users SET balance = balance + ? WHERE user_id = ?")) {
+                    up.setBigDecimal(1, AMOUNT.negate());
+                    up.setInt(2, from.getUserId());
+                    up.executeUpdate();
+                    up.setBigDecimal(1, AMOUNT);
+                    up.setInt(2, to.getUserId());
+                    up.executeUpdate();
+                }
+                try (PreparedStatement it = c.prepareStatement("INSERT INTO transactions (user_id, type, amount, description) VALUES (?,?,?,?)")) {
+                    it.setInt(1, from.getUserId());
+                    it.setString(2, "transfer");
+                    it.setBigDecimal(3, AMOUNT.negate());
+                    it.setString(4, "bench");
+                    it.executeUpdate();
+                    it.setInt(1, to.getUserId());
+                    it.setBigDecimal(3, AMOUNT);
+                    it.executeUpdate();
+                }
+                c.commit();
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private static List<User> setUp(DataSource ds, int count) throws SQLException {
+        List<User> users = new ArrayList<>();
+        try (Connection c = ds.getConnection();
+             PreparedStatement ins = c.prepareStatement("INSERT INTO users (username, password, full_name, balance) VALUES (?, 'x', ?, ?) "
+                     + "ON DUPLICATE KEY UPDATE balance = VALUES(balance)");
+             PreparedStatement sel = c.prepareStatement("SELECT user_id FROM users WHERE username = ?")) {
+            for (int i = 0; i < count; i++) {
+                String name = String.format("bench_%03d", i);
+                ins.setString(1, name);
+                ins.setString(2, "Bench User " + i);
+                ins.setBigDecimal(3, OPENING);
+                ins.executeUpdate();
+                sel.setString(1, name);
+                try (ResultSet rs = sel.executeQuery()) {
+                    rs.next();
+                    User u = new User();
+                    u.setUserId(rs.getInt(1));
+                    u.setUsername(name);
+                    users.add(u);
+                }
+            }
+        }
+        return users;
+    }
+
+    private static void resetBalances(DataSource ds) throws SQLException {
+        try (Connection c = ds.getConnection();
+             PreparedStatement ps = c.prepareStatement("UPDATE users SET balance = ? WHERE username LIKE 'bench\\_%'")) {
+            ps.setBigDecimal(1, OPENING);
+            ps.executeUpdate();
+        }
+    }
+}
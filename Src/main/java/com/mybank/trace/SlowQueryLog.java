@@ -0,0 +1,237 @@
+package com.mybank.trace;
+
+import com.mybank.config.AppConfig;
+import com.mybank.metrics.Metrics;
+import com.mybank.metrics.Operation;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.StreamHandler;
+
+/**
+ * Statements slower than {@code mybank.slowlog.thresholdMs}, and slow {@link Trace}s, written to a
+ * rotating log ({@code mybank.slowlog.file}, {@code mybank.slowlog.maxBytes} per file,
+ * {@code mybank.slowlog.files} files).
+ *
+ * An entry has the SQL with its {@code ?} placeholders, the type (and length, for text) of each
+ * bound value but never the value, the trace and action it ran for, and the {@code EXPLAIN}
+ * output. The plan is taken on a separate connection with the same values bound, at most once per
+ * statement every {@code mybank.slowlog.explainEveryMs}.
+ *
+ * Callers only queue the entry; formatting, EXPLAIN and file I/O happen on one background
+ * thread. When the queue is full entries are dropped and the next one written says how many.
+ */
+public final class SlowQueryLog {
+    private static final long THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("mybank.slowlog.thresholdMs", 250));
+    private static final Operation SLOW = Metrics.op("db.slowStatement");
+
+    private SlowQueryLog() {
+    }
+
+    /** Whether statements are checked at all; when not, the pool skips keeping bound values. */
+    public static boolean isEnabled() {
+        return THRESHOLD_NANOS > 0;
+    }
+
+    /** Whether a statement that took {@code nanos} belongs in the log. */
+    public static boolean isSlow(long nanos) {
+        return THRESHOLD_NANOS > 0 && nanos >= THRESHOLD_NANOS;
+    }
+
+    /**
+     * Queues a slow statement. {@code db} is where it ran (used for EXPLAIN) and {@code params}
+     * the values bound to it, by position from 0.
+     */
+    public static void statement(DataSource db, String sql, List<Object> params, long nanos) {
+        if (Thread.currentThread() == Writer.THREAD) return; // our own EXPLAINs
+        SLOW.record(nanos);
+        Trace t = Trace.current();
+        Object[] values = params.toArray();
+        Writer.offer(new Entry(Instant.now(), t, nanos, sql, types(values), db, values));
+    }
+
+    static void action(Trace t, long nanos) {
+        Writer.offer(new Entry(Instant.now(), t, nanos, null, t.describe(), null, null));
+    }
+
+    static String oneLine(String sql) {
+        return sql.replaceAll("\\s+", " ").trim();
+    }
+
+    private static String types(Object[] values) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) sb.append(", ");
+            Object v = values[i];
+            if (v == null) sb.append("null");
+            else if (v instanceof CharSequence) sb.append("String(").append(((CharSequence) v).length()).append(')');
+            else if (v instanceof byte[]) sb.append("byte[").append(((byte[]) v).length).append(']');
+            else sb.append(v.getClass().getSimpleName());
+        }
+        return sb.append(']').toString();
+    }
+
+    private static final class Entry {
+        final Instant at;
+        final String traceId;
+        final String action;
+        final long nanos;
+        final String sql;    // null for a slow action
+        final String detail; // parameter types, or the trace breakdown
+        final DataSource db;
+        final Object[] values;
+
+        Entry(Instant at, Trace t, long nanos, String sql, String detail, DataSource db, Object[] values) {
+            this.at = at;
+            this.traceId = t == null ? "-" : t.getId();
+            this.action = t == null ? "-" : t.getAction();
+            this.nanos = nanos;
+            this.sql = sql;
+            this.detail = detail;
+            this.db = db;
+            this.values = values;
+        }
+    }
+
+    /** The background writer, started with the first entry. */
+    private static final class Writer {
+        static final boolean EXPLAIN = AppConfig.getBoolean("mybank.slowlog.explain", true);
+        static final long EXPLAIN_EVERY_MS = AppConfig.getLong("mybank.slowlog.explainEveryMs", 60_000);
+        static final BlockingQueue<Entry> QUEUE = new ArrayBlockingQueue<>(1_024);
+        static final LongAdder DROPPED = new LongAdder();
+        static final Map<String, Long> LAST_EXPLAINED = new HashMap<>();
+        static final Handler OUT = open();
+        static final Thread THREAD = start();
+
+        static void offer(Entry e) {
+            if (!QUEUE.offer(e)) DROPPED.increment();
+        }
+
+        private static Handler open() {
+            String file = AppConfig.get("mybank.slowlog.file", "slow-query.log");
+            int limit = (int) Math.min(Integer.MAX_VALUE, AppConfig.getLong("mybank.slowlog.maxBytes", 10L * 1024 * 1024));
+            int files = Math.max(1, AppConfig.getInt("mybank.slowlog.files", 5));
+            Formatter plain = new Formatter() {
+                @Override
+                public String format(LogRecord r) {
+                    return r.getMessage();
+                }
+            };
+            Handler h;
+            try {
+                Path parent = Paths.get(file).toAbsolutePath().getParent();
+                if (parent != null) Files.createDirectories(parent);
+                h = new FileHandler(file.replace("%", "%%"), limit, files, true);
+                h.setEncoding(StandardCharsets.UTF_8.name());
+                h.setFormatter(plain);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("❌ Could not open slow query log " + file + ", using stderr: " + e.getMessage());
+                h = new StreamHandler(System.err, plain);
+            }
+            return h;
+        }
+
+        private static Thread start() {
+            Thread t = new Thread(Writer::run, "mybank-slowlog");
+            t.setDaemon(true);
+            t.start();
+            return t;
+        }
+
+        private static void run() {
+            while (true) {
+                Entry e;
+                try {
+                    e = QUEUE.take();
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                try {
+                    OUT.publish(new LogRecord(Level.INFO, format(e)));
+                    OUT.flush();
+                } catch (RuntimeException ex) {
+                    System.err.println("❌ Could not write slow query log: " + ex.getMessage());
+                }
+            }
+        }
+
+        private static String format(Entry e) {
+            String nl = System.lineSeparator();
+            StringBuilder sb = new StringBuilder(512);
+            sb.append(e.at).append(e.sql == null ? " slow action " : " slow statement ")
+                    .append(Trace.ms(e.nanos)).append(" trace=").append(e.traceId)
+                    .append(" action=").append(e.action);
+            long dropped = DROPPED.sumThenReset();
+            if (dropped > 0) sb.append(" (").append(dropped).append(" earlier entries dropped)");
+            sb.append(nl);
+            if (e.sql == null) {
+                sb.append("  ").append(e.detail).append(nl);
+                return sb.toString();
+            }
+            sb.append("  ").append(oneLine(e.sql)).append(nl);
+            sb.append("  params: ").append(e.detail).append(nl);
+            if (EXPLAIN && explainable(e.sql) && due(e.sql)) sb.append(explain(e)).append(nl);
+            return sb.toString();
+        }
+
+        private static boolean due(String sql) {
+            long now = System.currentTimeMillis();
+            Long last = LAST_EXPLAINED.get(sql);
+            if (last != null && now - last < EXPLAIN_EVERY_MS) return false;
+            if (LAST_EXPLAINED.size() > 10_000) LAST_EXPLAINED.clear();
+            LAST_EXPLAINED.put(sql, now);
+            return true;
+        }
+
+        private static boolean explainable(String sql) {
+            String head = sql.trim().toLowerCase(Locale.ROOT);
+            return head.startsWith("select") || head.startsWith("update") || head.startsWith("delete")
+                    || head.startsWith("insert") || head.startsWith("with");
+        }
+
+        private static String explain(Entry e) {
+            StringBuilder sb = new StringBuilder("  plan:");
+            try (Connection c = e.db.getConnection();
+                 PreparedStatement ps = c.prepareStatement("EXPLAIN " + e.sql)) {
+                ps.setQueryTimeout(5);
+                for (int i = 0; i < e.values.length; i++) ps.setObject(i + 1, e.values[i]);
+                try (ResultSet rs = ps.executeQuery()) {
+                    ResultSetMetaData md = rs.getMetaData();
+                    int n = md.getColumnCount();
+                    sb.append(System.lineSeparator()).append("    ");
+                    for (int i = 1; i <= n; i++) sb.append(i > 1 ? " | " : "").append(md.getColumnLabel(i));
+                    while (rs.next()) {
+                        sb.append(System.lineSeparator()).append("    ");
+                        for (int i = 1; i <= n; i++) sb.append(i > 1 ? " | " : "").append(oneLine(String.valueOf(rs.getString(i))));
+                    }
+                }
+            } catch (SQLException | RuntimeException ex) {
+                sb.append(" unavailable (").append(ex.getMessage()).append(')');
+            }
+            return sb.toString();
+        }
+    }
+}
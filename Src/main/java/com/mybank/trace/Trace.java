@@ -0,0 +1,145 @@
+package com.mybank.trace;
+
+import com.mybank.config.AppConfig;
+import com.mybank.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One user-visible action (login, dashboard refresh, transfer, history page, ...) and the
+ * database work done for it on the thread that runs it:
+ *
+ * <pre>
+ * tasks.run(Trace.wrap("transfer", () -> ...));
+ * </pre>
+ *
+ * The connection pool reports every borrow wait and statement to the current trace. Each trace
+ * counts them (a few adds per statement); one in {@code mybank.trace.sampleEvery} also keeps the
+ * individual spans. Actions slower than {@code mybank.trace.slowActionMs} go to the
+ * {@link SlowQueryLog} with that breakdown, and every action's latency is in {@link Metrics}
+ * as {@code action.<name>}.
+ */
+public final class Trace implements AutoCloseable {
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+    private static final int SAMPLE_EVERY = AppConfig.getInt("mybank.trace.sampleEvery", 20);
+    private static final long SLOW_ACTION_NANOS = TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("mybank.trace.slowActionMs", 1_000));
+    private static final int MAX_SPANS = 200;
+
+    private final String id;
+    private final String action;
+    private final long start = System.nanoTime();
+    private final Trace previous;
+    private final List<Span> spans;
+    private int statements;
+    private long statementNanos;
+    private int waits;
+    private long waitNanos;
+    private int droppedSpans;
+
+    private Trace(String action, Trace previous) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        this.id = String.format("%016x", rnd.nextLong());
+        this.action = action;
+        this.previous = previous;
+        this.spans = SAMPLE_EVERY > 0 && rnd.nextInt(SAMPLE_EVERY) == 0 ? new ArrayList<>() : null;
+    }
+
+    /** Starts a trace on this thread; close it (try-with-resources) when the action is done. */
+    public static Trace begin(String action) {
+        Trace t = new Trace(action, CURRENT.get());
+        CURRENT.set(t);
+        return t;
+    }
+
+    /** {@code work} run inside a trace called {@code action}, for handing to an executor. */
+    public static <T> Callable<T> wrap(String action, Callable<T> work) {
+        return () -> {
+            Trace t = begin(action);
+            try {
+                return work.call();
+            } finally {
+                t.close();
+            }
+        };
+    }
+
+    /** The trace of this thread, or {@code null}. */
+    public static Trace current() {
+        return CURRENT.get();
+    }
+
+    public String getId() { return id; }
+    public String getAction() { return action; }
+    public boolean isSampled() { return spans != null; }
+
+    /** Called by the pool after waiting {@code nanos} for a connection. */
+    public static void poolWait(long nanos) {
+        Trace t = CURRENT.get();
+        if (t == null) return;
+        t.waits++;
+        t.waitNanos += nanos;
+        t.span(null, nanos);
+    }
+
+    /** Called by the pool after running {@code sql}. */
+    public static void statement(String sql, long nanos) {
+        Trace t = CURRENT.get();
+        if (t == null) return;
+        t.statements++;
+        t.statementNanos += nanos;
+        t.span(sql, nanos);
+    }
+
+    private void span(String sql, long nanos) {
+        if (spans == null) return;
+        if (spans.size() >= MAX_SPANS) {
+            droppedSpans++;
+            return;
+        }
+        spans.add(new Span(System.nanoTime() - nanos - start, nanos, sql));
+    }
+
+    @Override
+    public void close() {
+        if (previous != null) CURRENT.set(previous); else CURRENT.remove();
+        long nanos = System.nanoTime() - start;
+        Metrics.op("action." + action).record(nanos);
+        if (SLOW_ACTION_NANOS > 0 && nanos >= SLOW_ACTION_NANOS) SlowQueryLog.action(this, nanos);
+    }
+
+    /** "{@code <n> statements <ms>, <n> pool waits <ms>}" plus one line per span if sampled. */
+    String describe() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(statements).append(" statements ").append(ms(statementNanos)).append(", ")
+                .append(waits).append(" pool waits ").append(ms(waitNanos));
+        if (spans == null) return sb.toString();
+        for (Span s : spans) {
+            sb.append(System.lineSeparator()).append(String.format(Locale.ROOT, "  +%-11s", ms(s.offsetNanos)));
+            if (s.sql == null) sb.append("pool wait ").append(ms(s.nanos));
+            else sb.append("sql ").append(ms(s.nanos)).append("  ").append(SlowQueryLog.oneLine(s.sql));
+        }
+        if (droppedSpans > 0) sb.append(System.lineSeparator()).append("  ... ").append(droppedSpans).append(" more");
+        return sb.toString();
+    }
+
+    static String ms(long nanos) {
+        return String.format(Locale.ROOT, "%.1f ms", nanos / 1e6);
+    }
+
+    private static final class Span {
+        final long offsetNanos;
+        final long nanos;
+        final String sql; // null for a pool wait
+
+        Span(long offsetNanos, long nanos, String sql) {
+            this.offsetNanos = offsetNanos;
+            this.nanos = nanos;
+            this.sql = sql;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.mybank.ui;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The idempotency key for a form's submissions (see {@code BankApi}): the same key each time the
+ * user sends the same thing again, e.g. after a timeout, so the bank does it once, and a new one
+ * as soon as they change what they are asking for. Used on the EDT only, like {@link UiTasks}.
+ */
+public final class SubmitKey {
+    private List<Object> request;
+    private String key;
+
+    /** The key for submitting {@code values}, the form's contents. */
+    public String forRequest(Object... values) {
+        List<Object> r = Arrays.asList(values);
+        if (!r.equals(request)) {
+            request = r;
+            key = UUID.randomUUID().toString();
+        }
+        return key;
+    }
+}
@@ -0,0 +1,76 @@
+package com.mybank.ui;
+
+import com.mybank.config.AppConfig;
+
+import javax.swing.SwingUtilities;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared executor for blocking work started from the UI (JDBC, bcrypt, file I/O).
+ *
+ * On JDK 21+ every task gets its own virtual thread; on older runtimes, or with
+ * {@code mybank.ui.virtualThreads=false}, a pool of {@code mybank.ui.workers} daemon threads is
+ * used instead. Futures returned by {@link #submit} are completed on the Event Dispatch Thread, so
+ * {@code thenAccept}/{@code whenComplete} callbacks can touch Swing components directly.
+ */
+public final class UiExecutor {
+    private static final ExecutorService EXECUTOR = create();
+
+    private UiExecutor() {}
+
+    /**
+     * Runs {@code work} off the EDT. Cancelling the returned future before the work starts keeps
+     * it from running; work already running is left to finish and its result is dropped.
+     */
+    public static <T> CompletableFuture<T> submit(Callable<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = EXECUTOR.submit(() -> {
+            if (result.isDone()) return;
+            try {
+                T value = work.call();
+                SwingUtilities.invokeLater(() -> result.complete(value));
+            } catch (Throwable e) {
+                SwingUtilities.invokeLater(() -> result.completeExceptionally(e));
+            }
+        });
+        result.whenComplete((v, e) -> {
+            if (result.isCancelled()) task.cancel(false);
+        });
+        return result;
+    }
+
+    public static boolean usesVirtualThreads() {
+        return !(EXECUTOR instanceof ThreadPoolExecutor);
+    }
+
+    private static ExecutorService create() {
+        if (AppConfig.getBoolean("mybank.ui.virtualThreads", true)) {
+            try {
+                // looked up reflectively so the code still builds and runs on JDK 17
+                Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) m.invoke(null);
+            } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+                // pre-21 runtime; fall through to the platform pool
+            }
+        }
+        int workers = Math.max(1, AppConfig.getInt("mybank.ui.workers", 8));
+        AtomicInteger seq = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "mybank-ui-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
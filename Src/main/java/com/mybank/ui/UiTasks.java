@@ -0,0 +1,164 @@
+package com.mybank.ui;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import java.awt.Component;
+import java.awt.Cursor;
+import java.awt.Window;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Background tasks owned by one window. Everything here is called and completes on the EDT.
+ *
+ * Tasks still pending when the window is disposed are cancelled, so their callbacks never run
+ * against a closed frame. {@link #run(Callable, Component...)} shows a loading state (wait
+ * cursor, given controls disabled) while the work runs, and {@link #coalesce} folds repeated
+ * requests for the same thing (e.g. a dashboard refresh) into at most one running and one queued.
+ */
+public class UiTasks {
+    private final Window window;
+    private final Set<CompletableFuture<?>> inFlight = new HashSet<>();
+    private final Map<String, Slot> slots = new HashMap<>();
+    private int busy;
+    private boolean disposed;
+
+    private UiTasks(Window window) {
+        this.window = window;
+    }
+
+    /** Creates the task scope for {@code window}; it is cancelled when the window closes. */
+    public static UiTasks bindTo(Window window) {
+        UiTasks tasks = new UiTasks(window);
+        window.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                tasks.cancelAll();
+            }
+        });
+        return tasks;
+    }
+
+    public <T> CompletableFuture<T> run(Callable<T> work) {
+        checkEdt();
+        if (disposed) {
+            CompletableFuture<T> f = new CompletableFuture<>();
+            f.cancel(false);
+            return f;
+        }
+        CompletableFuture<T> f = UiExecutor.submit(work);
+        inFlight.add(f);
+        f.whenComplete((v, e) -> inFlight.remove(f));
+        return f;
+    }
+
+    /** Like {@link #run(Callable)}, with a wait cursor and {@code controls} disabled until it finishes. */
+    public <T> CompletableFuture<T> run(Callable<T> work, Component... controls) {
+        CompletableFuture<T> f = run(work);
+        if (f.isDone()) return f;
+        List<Component> disabled = new ArrayList<>();
+        for (Component c : controls) {
+            if (c.isEnabled()) {
+                c.setEnabled(false);
+                disabled.add(c);
+            }
+        }
+        if (busy++ == 0) window.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        f.whenComplete((v, e) -> {
+            for (Component c : disabled) c.setEnabled(true);
+            if (--busy == 0) window.setCursor(Cursor.getDefaultCursor());
+        });
+        return f;
+    }
+
+    /**
+     * Runs {@code work} unless a task with the same key is already running. In that case the
+     * request is queued to run once the current one finishes (so it sees any writes made in the
+     * meantime) and further requests share that queued run.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> coalesce(String key, Callable<T> work) {
+        checkEdt();
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            slot = new Slot();
+            slots.put(key, slot);
+            return (CompletableFuture<T>) start(key, slot, work);
+        }
+        if (slot.queued == null) {
+            slot.queued = new CompletableFuture<>();
+            slot.queuedWork = work;
+        }
+        return (CompletableFuture<T>) slot.queued;
+    }
+
+    /** Cancels everything still pending; later calls to {@code run} return cancelled futures. */
+    public void cancelAll() {
+        checkEdt();
+        disposed = true;
+        for (Slot slot : slots.values()) {
+            if (slot.queued != null) slot.queued.cancel(false);
+        }
+        slots.clear();
+        for (CompletableFuture<?> f : new ArrayList<>(inFlight)) f.cancel(false);
+        inFlight.clear();
+    }
+
+    /**
+     * Handler for {@code exceptionally}: shows "{@code prefix}: message" unless the task was
+     * cancelled because its window went away.
+     */
+    public static <T> Function<Throwable, T> showError(Component parent, String prefix) {
+        return e -> {
+            Throwable cause = unwrap(e);
+            if (!(cause instanceof CancellationException)) {
+                JOptionPane.showMessageDialog(parent, prefix + ": " + cause.getMessage());
+            }
+            return null;
+        };
+    }
+
+    public static Throwable unwrap(Throwable e) {
+        while (e instanceof CompletionException && e.getCause() != null) e = e.getCause();
+        return e;
+    }
+
+    private CompletableFuture<?> start(String key, Slot slot, Callable<?> work) {
+        CompletableFuture<?> f = run(work);
+        f.whenComplete((v, e) -> {
+            if (slots.get(key) != slot) return; // cancelled
+            CompletableFuture<Object> next = slot.queued;
+            if (next == null) {
+                slots.remove(key);
+                return;
+            }
+            Callable<?> nextWork = slot.queuedWork;
+            slot.queued = null;
+            slot.queuedWork = null;
+            start(key, slot, nextWork).whenComplete((v2, e2) -> {
+                if (e2 != null) next.completeExceptionally(e2); else next.complete(v2);
+            });
+        });
+        return f;
+    }
+
+    private static void checkEdt() {
+        if (!SwingUtilities.isEventDispatchThread()) throw new IllegalStateException("UiTasks must be used on the EDT");
+    }
+
+    private static final class Slot {
+        CompletableFuture<Object> queued;
+        Callable<?> queuedWork;
+    }
+}
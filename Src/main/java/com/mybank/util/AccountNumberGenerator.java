@@ -0,0 +1,133 @@
+package com.mybank.util;
+
+import com.mybank.config.AppConfig;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Unique, time-ordered account numbers: {@code ACC} + 19 digits + 2 check digits.
+ *
+ * The 19 digits are a 63-bit id made of milliseconds since 2024-01-01 (41 bits), the node id
+ * {@code mybank.node.id} (10 bits, 0..1023) and a per-millisecond sequence (12 bits). Ids from
+ * one generator strictly increase: the timestamp and sequence live in one {@link AtomicLong}
+ * advanced by compare-and-set, so there is no lock, and when 4096 numbers are taken within a
+ * millisecond, or the clock steps back, the generator simply runs ahead of the clock until it
+ * catches up. Two instances only collide if they share a node id, so give every app instance
+ * its own. The fixed width keeps string order equal to numeric (and so creation) order, which
+ * keeps inserts at the right-hand end of the unique index.
+ *
+ * The check digits are ISO 7064 MOD 97-10 (as in IBAN), so {@link #isValid} catches any single
+ * wrong digit and almost every transposition without a database lookup.
+ */
+public final class AccountNumberGenerator {
+    public static final String PREFIX = "ACC";
+    public static final int LENGTH = PREFIX.length() + 21;
+    public static final long EPOCH_MS = 1704067200000L; // 2024-01-01T00:00:00Z
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQ_BITS = 12;
+    private static final long SEQ_MASK = (1L << SEQ_BITS) - 1;
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+    // numbers handed out before this generator existed (register screen, bulk import, fixtures)
+    private static final Pattern LEGACY = Pattern.compile("ACC\\d{1,10}");
+
+    private final int node;
+    // (ms since EPOCH_MS) << SEQ_BITS | sequence of the last id handed out
+    private final AtomicLong state = new AtomicLong();
+
+    private static class Holder {
+        static final AccountNumberGenerator DEFAULT = new AccountNumberGenerator(configuredNode());
+    }
+
+    public static AccountNumberGenerator getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    public AccountNumberGenerator(int node) {
+        if (node < 0 || node > MAX_NODE) throw new IllegalArgumentException("node id must be 0.." + MAX_NODE + ": " + node);
+        this.node = node;
+    }
+
+    public int getNode() { return node; }
+
+    /** Next account number, e.g. {@code ACC0000123456789012345642}. */
+    public String next() {
+        return format(nextId());
+    }
+
+    /** Next raw 63-bit id; {@link #format} turns it into an account number. */
+    public long nextId() {
+        long now = System.currentTimeMillis() - EPOCH_MS;
+        while (true) {
+            long prev = state.get();
+            long candidate = now << SEQ_BITS;
+            // same millisecond, or the clock is behind us: take the next sequence (which may
+            // carry into the next millisecond)
+            long next = candidate > prev ? candidate : prev + 1;
+            if (state.compareAndSet(prev, next)) {
+                return ((next >>> SEQ_BITS) << (NODE_BITS + SEQ_BITS)) | ((long) node << SEQ_BITS) | (next & SEQ_MASK);
+            }
+        }
+    }
+
+    public static String format(long id) {
+        if (id < 0) throw new IllegalArgumentException("negative id: " + id);
+        StringBuilder sb = new StringBuilder(LENGTH).append(PREFIX);
+        String digits = Long.toString(id);
+        for (int i = digits.length(); i < 19; i++) sb.append('0');
+        sb.append(digits);
+        int check = 98 - mod97(sb, PREFIX.length(), sb.length(), 0) * 100 % 97;
+        if (check < 10) sb.append('0');
+        return sb.append(check).toString();
+    }
+
+    /** True if {@code s} has the generator's shape and its check digits match. */
+    public static boolean isValid(String s) {
+        if (s == null || s.length() != LENGTH || !s.startsWith(PREFIX)) return false;
+        for (int i = PREFIX.length(); i < LENGTH; i++) {
+            char ch = s.charAt(i);
+            if (ch < '0' || ch > '9') return false;
+        }
+        return mod97(s, PREFIX.length(), LENGTH, 0) == 1;
+    }
+
+    /**
+     * True for numbers worth looking up: valid generated numbers, plus the short
+     * {@code ACC<digits>} numbers issued before (which carry no check digits).
+     */
+    public static boolean isPlausible(String s) {
+        return isValid(s) || (s != null && LEGACY.matcher(s).matches());
+    }
+
+    /** Creation time of a generated number (ms since 1970), or -1 if it is not one. */
+    public static long timestampOf(String s) {
+        if (!isValid(s)) return -1;
+        long id = Long.parseLong(s.substring(PREFIX.length(), PREFIX.length() + 19));
+        return (id >>> (NODE_BITS + SEQ_BITS)) + EPOCH_MS;
+    }
+
+    private static int mod97(CharSequence s, int from, int to, int acc) {
+        for (int i = from; i < to; i++) acc = (acc * 10 + (s.charAt(i) - '0')) % 97;
+        return acc;
+    }
+
+    private static int configuredNode() {
+        int node = AppConfig.getInt("mybank.node.id", -1);
+        if (node >= 0) return node;
+        // unset: derive one from host and process so that two instances are unlikely (not
+        // certain) to clash; production setups should set mybank.node.id explicitly
+        String who;
+        try {
+            who = InetAddress.getLocalHost().getHostName() + "/" + ManagementFactory.getRuntimeMXBean().getName();
+        } catch (Exception e) {
+            who = ManagementFactory.getRuntimeMXBean().getName();
+        }
+        node = (who.hashCode() & 0x7fffffff) % (MAX_NODE + 1);
+        System.err.println("⚠️ mybank.node.id is not set; using " + node + " for account numbers");
+        return node;
+    }
+}
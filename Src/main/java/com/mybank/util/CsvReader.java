@@ -0,0 +1,78 @@
+package com.mybank.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal streaming CSV reader (RFC 4180 quoting, comma separator). Reads one record at a time,
+ * so memory use does not depend on file size.
+ */
+public class CsvReader implements Closeable {
+    private final BufferedReader in;
+    private long lineNumber;
+
+    public CsvReader(Reader in) {
+        this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+    }
+
+    /** Line number (1-based) where the last record returned by {@link #next()} started. */
+    public long getLineNumber() { return lineNumber; }
+
+    /** Returns the next record, or null at end of input. Blank lines are skipped. */
+    public List<String> next() throws IOException {
+        String line;
+        do {
+            line = in.readLine();
+            if (line == null) return null;
+            lineNumber++;
+        } while (line.isEmpty());
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == line.length()) {
+                if (!quoted) break;
+                // quoted field spans a line break
+                String more = in.readLine();
+                if (more == null) throw new IOException("Unterminated quoted field starting on line " + lineNumber);
+                cur.append('\n');
+                line = more;
+                i = 0;
+                continue;
+            }
+            char ch = line.charAt(i++);
+            if (quoted) {
+                if (ch == '"') {
+                    if (i < line.length() && line.charAt(i) == '"') {
+                        cur.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    cur.append(ch);
+                }
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == ',') {
+                fields.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(ch);
+            }
+        }
+        fields.add(cur.toString());
+        return fields;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -1,24 +1,44 @@
 package com.mybank.view;
 
-import com.mybank.dao.TransactionDAO;
-import com.mybank.dao.UserDAO;
+import com.mybank.api.BankApi;
+import com.mybank.config.AppConfig;
+import com.mybank.event.BalanceChanged;
+import com.mybank.event.EventBus;
+import com.mybank.event.TransactionPosted;
 import com.mybank.model.Transaction;
 import com.mybank.model.User;
+import com.mybank.trace.Trace;
+import com.mybank.ui.UiTasks;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.geom.Ellipse2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 public class DashboardFrame extends JFrame {
+    private static final int RECENT = 5; // matches TransactionDAO.findRecentByUser
+
     private final User user;
     private JLabel balanceLabel;
     private JPanel recentTransactionsPanel;
+    private final UiTasks tasks = UiTasks.bindTo(this);
+    private final RecentTransactions recent = new RecentTransactions(RECENT);
+    private final List<JLabel> recentRows = new ArrayList<>();
+    private final JLabel noRecent = new JLabel("No recent transactions.");
+    private final List<EventBus.Subscription> subscriptions = new ArrayList<>();
+    private Timer reconcileTimer;
+    private long lastBalanceSeq;
+    // bumped on the EDT for every event about this user; a refresh that saw it change while
+    // loading merges its rows instead of replacing them, and keeps the newer balance
+    private volatile int eventsSeen;
 
     public DashboardFrame(User user) {
         this.user = user;
@@ -27,10 +47,60 @@ public class DashboardFrame extends JFrame {
         setLocationRelativeTo(null);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         initUI();
+        listen();
         // initial refresh
         refreshBalances();
     }
 
+    /**
+     * Keeps the balance and recent list current from {@link BalanceChanged} and
+     * {@link TransactionPosted} events instead of re-querying after every write. Events can be
+     * missed (other processes, bulk imports), so a full refresh still runs every
+     * {@code mybank.dashboard.reconcileMs}.
+     */
+    private void listen() {
+        int userId = user.getUserId();
+        EventBus bus = EventBus.getDefault();
+        subscriptions.add(bus.subscribe(BalanceChanged.class, e -> {
+            if (e.getUserId() == userId) SwingUtilities.invokeLater(() -> onBalanceChanged(e));
+        }));
+        subscriptions.add(bus.subscribe(TransactionPosted.class, e -> {
+            if (e.getUserId() == userId) SwingUtilities.invokeLater(() -> onTransactionPosted(e));
+        }));
+        int reconcileMs = AppConfig.getInt("mybank.dashboard.reconcileMs", 30000);
+        if (reconcileMs > 0) {
+            reconcileTimer = new Timer(reconcileMs, e -> refreshBalances());
+            reconcileTimer.start();
+        }
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                for (EventBus.Subscription s : subscriptions) s.close();
+                subscriptions.clear();
+                if (reconcileTimer != null) reconcileTimer.stop();
+            }
+        });
+    }
+
+    private void onBalanceChanged(BalanceChanged e) {
+        if (!isDisplayable()) return;
+        eventsSeen++;
+        if (e.getBalance() == null) {
+            refreshBalances();
+            return;
+        }
+        if (e.getSequence() <= lastBalanceSeq) return; // an older commit's event arriving late
+        lastBalanceSeq = e.getSequence();
+        user.setBalance(e.getBalance());
+        balanceLabel.setText("USh " + user.getBalance().format());
+    }
+
+    private void onTransactionPosted(TransactionPosted e) {
+        if (!isDisplayable()) return;
+        eventsSeen++;
+        if (recent.add(e.getTransaction())) renderRecent();
+    }
+
     private void initUI() {
         JPanel mainPanel = new JPanel(new BorderLayout());
         add(mainPanel);
@@ -116,6 +186,7 @@ public class DashboardFrame extends JFrame {
         statementsBtn.addActionListener(e -> new TransactionHistoryFrame(user).setVisible(true));
         profileBtn.addActionListener(e -> new ProfileFrame(user, this).setVisible(true));
         logoutBtn.addActionListener(e -> {
+            BankApi.getDefault().logout(user);
             dispose();
             new LoginFrame().setVisible(true);
         });
@@ -143,31 +214,71 @@ public class DashboardFrame extends JFrame {
     }
 
     /**
-     * Public method called by TransferFrame (and others) to refresh amounts & recent tx
+     * Public method called by TransferFrame (and others) to refresh amounts & recent tx.
+     * Loads in the background; calls made while a refresh is running are folded into one more.
      */
     public void refreshBalances() {
-        // refresh user object from database
-        UserDAO udao = new UserDAO();
-        User fresh = udao.findByUsername(user.getUsername());
-        if (fresh != null) {
-            user.setBalance(fresh.getBalance());
-            balanceLabel.setText(String.format("USh %.2f", user.getBalance()));
+        User self = new User(user); // the task must not read the EDT's copy
+        tasks.coalesce("refresh", Trace.wrap("dashboard.refresh", () -> {
+            int seen = eventsSeen;
+            BankApi api = BankApi.getDefault();
+            User fresh = api.refresh(self);
+            List<Transaction> txs = api.recent(self);
+            return new Snapshot(fresh, txs, seen);
+        })).thenAccept(this::applySnapshot).exceptionally(UiTasks.showError(this, "Refresh failed"));
+    }
+
+    private static final class Snapshot {
+        final User fresh;
+        final List<Transaction> txs;
+        final int eventsSeen;
+
+        Snapshot(User fresh, List<Transaction> txs, int eventsSeen) {
+            this.fresh = fresh;
+            this.txs = txs;
+            this.eventsSeen = eventsSeen;
+        }
+    }
+
+    private void applySnapshot(Snapshot s) {
+        boolean raced = s.eventsSeen != eventsSeen;
+        // refresh user object from database, unless an event has already shown something newer
+        if (s.fresh != null && !raced) {
+            user.setBalance(s.fresh.getBalance());
+            balanceLabel.setText("USh " + user.getBalance().format());
         }
 
         // refresh recent transactions
-        TransactionDAO tdao = new TransactionDAO();
-        List<Transaction> txs = tdao.findRecentByUser(user.getUserId());
-        recentTransactionsPanel.removeAll();
-        if (txs.isEmpty()) {
-            recentTransactionsPanel.add(new JLabel("No recent transactions."));
+        if (raced) {
+            for (Transaction t : s.txs) recent.add(t);
         } else {
-            for (Transaction t : txs) {
-                JLabel lbl = new JLabel(String.format("%s | %s | %s", t.getCreatedAt(), t.getType(), t.getAmount()));
-                lbl.setBorder(new EmptyBorder(6, 6, 6, 6));
-                recentTransactionsPanel.add(lbl);
+            recent.reset(s.txs);
+        }
+        renderRecent();
+    }
+
+    private void renderRecent() {
+        int n = recent.size();
+        boolean relayout = recentTransactionsPanel.getComponentCount() != Math.max(n, 1)
+                || (n == 0) != (noRecent.getParent() == recentTransactionsPanel);
+        while (recentRows.size() < n) {
+            JLabel lbl = new JLabel();
+            lbl.setBorder(new EmptyBorder(6, 6, 6, 6));
+            recentRows.add(lbl);
+        }
+        for (int i = 0; i < n; i++) {
+            Transaction t = recent.get(i);
+            recentRows.get(i).setText(String.format("%s | %s | %s", t.getCreatedAt(), t.getType(), t.getAmount()));
+        }
+        if (relayout) {
+            recentTransactionsPanel.removeAll();
+            if (n == 0) {
+                recentTransactionsPanel.add(noRecent);
+            } else {
+                for (int i = 0; i < n; i++) recentTransactionsPanel.add(recentRows.get(i));
             }
+            recentTransactionsPanel.revalidate();
         }
-        recentTransactionsPanel.revalidate();
         recentTransactionsPanel.repaint();
     }
 }
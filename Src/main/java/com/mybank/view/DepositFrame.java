@@ -1,11 +1,19 @@
 package com.mybank.view;
 
+import com.mybank.api.BankApi;
+import com.mybank.model.Money;
 import com.mybank.model.User;
+import com.mybank.trace.Trace;
+import com.mybank.ui.SubmitKey;
+import com.mybank.ui.UiTasks;
+
 import javax.swing.*;
 import java.awt.*;
 
 public class DepositFrame extends JFrame {
     private User user;
+    private final UiTasks tasks = UiTasks.bindTo(this);
+    private final SubmitKey submitKey = new SubmitKey();
 
     public DepositFrame(User user) {
         this.user = user;
@@ -35,8 +43,21 @@ public class DepositFrame extends JFrame {
 
         cancel.addActionListener(e -> dispose());
         submit.addActionListener(e -> {
-            JOptionPane.showMessageDialog(this, "Deposit processed for $" + amountField.getText());
-            dispose();
+            Money amount;
+            try {
+                amount = Money.parse(amountField.getText().trim());
+                if (amount.signum() <= 0) throw new NumberFormatException();
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(this, "Enter a valid amount.");
+                return;
+            }
+            // the dashboard picks the new balance up from the BalanceChanged event; submitting the
+            // same amount again after a failure reuses the key, so it is not deposited twice
+            String key = submitKey.forRequest(amount);
+            tasks.run(Trace.wrap("deposit", () -> BankApi.getDefault().deposit(user, amount, null, key)), submit, amountField).thenAccept(balance -> {
+                JOptionPane.showMessageDialog(this, "Deposit processed. New balance: USh " + balance.format());
+                dispose();
+            }).exceptionally(UiTasks.showError(this, "Deposit failed"));
         });
     }
 }
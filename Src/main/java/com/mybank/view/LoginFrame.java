@@ -1,7 +1,8 @@
 package com.mybank.view;
 
-import com.mybank.dao.UserDAO;
-import com.mybank.model.User;
+import com.mybank.api.BankApi;
+import com.mybank.trace.Trace;
+import com.mybank.ui.UiTasks;
 
 import javax.swing.*;
 import java.awt.*;
@@ -9,6 +10,8 @@ import java.awt.*;
 public class LoginFrame extends JFrame {
     private JTextField userField;
     private JPasswordField passField;
+    private JButton loginBtn;
+    private final UiTasks tasks = UiTasks.bindTo(this);
 
     public LoginFrame() {
         setTitle("MyBank Pro - Login");
@@ -29,28 +32,34 @@ public class LoginFrame extends JFrame {
         passField = new JPasswordField();
         form.add(passField);
 
-        JButton login = new JButton("Login");
+        loginBtn = new JButton("Login");
         JButton register = new JButton("Register");
         JPanel btns = new JPanel();
-        btns.add(login); btns.add(register);
+        btns.add(loginBtn); btns.add(register);
         p.add(form, BorderLayout.CENTER);
         p.add(btns, BorderLayout.SOUTH);
         add(p);
 
-        login.addActionListener(e -> doLogin());
+        loginBtn.addActionListener(e -> doLogin());
+        passField.addActionListener(e -> doLogin());
         register.addActionListener(e -> new RegisterFrame().setVisible(true));
+        if (BankApi.isRemote()) {
+            // registration writes photos and accounts directly; it stays with the server's operators
+            register.setEnabled(false);
+            register.setToolTipText("New customers are registered at the branch.");
+        }
     }
 
     private void doLogin() {
         String u = userField.getText().trim();
         String p = new String(passField.getPassword());
         if (u.isEmpty() || p.isEmpty()) { JOptionPane.showMessageDialog(this, "Enter username and password."); return; }
-        UserDAO ud = new UserDAO();
-        User user = ud.findByUsername(u);
-        if (user == null || !ud.verifyPassword(user, p)) { JOptionPane.showMessageDialog(this, "Invalid credentials."); return; }
-        // open dashboard
-        DashboardFrame df = new DashboardFrame(user);
-        df.setVisible(true);
-        this.dispose();
+        // lookup + bcrypt check on the auth pool; wrong passwords come back as AuthException
+        tasks.run(Trace.wrap("login", () -> BankApi.getDefault().login(u, p)), loginBtn, userField, passField).thenAccept(user -> {
+            // open dashboard
+            DashboardFrame df = new DashboardFrame(user);
+            df.setVisible(true);
+            this.dispose();
+        }).exceptionally(UiTasks.showError(this, "Login failed"));
     }
 }
@@ -0,0 +1,86 @@
+package com.mybank.view;
+
+import com.mybank.model.Transaction;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The last few transactions shown on the dashboard, newest first, in a fixed-size ring.
+ *
+ * A newly posted transaction is normally the newest one, so adding it just moves the head back
+ * one slot and overwrites the oldest entry; nothing is copied or reallocated. Rows arriving out of
+ * order are placed by (created_at, id), and a row already held (same id) is replaced. Not
+ * thread-safe; the dashboard only touches it on the EDT.
+ */
+class RecentTransactions {
+    private final Transaction[] slots;
+    private int head; // index of the newest entry
+    private int size;
+
+    RecentTransactions(int capacity) {
+        this.slots = new Transaction[Math.max(1, capacity)];
+    }
+
+    /** Returns true if what would be shown changed. */
+    boolean add(Transaction t) {
+        int cap = slots.length;
+        for (int i = 0; i < size; i++) {
+            int idx = (head + i) % cap;
+            if (slots[idx].getTransactionId() == t.getTransactionId()) {
+                slots[idx] = t;
+                return true;
+            }
+        }
+        if (size == cap && !newer(t, slots[(head + size - 1) % cap])) return false;
+        if (size == 0 || newer(t, slots[head])) {
+            head = (head + cap - 1) % cap;
+            slots[head] = t;
+            if (size < cap) size++;
+            return true;
+        }
+        // out of order: shift the older entries down one slot, dropping the oldest if full
+        int pos = 1;
+        while (pos < size && !newer(t, slots[(head + pos) % cap])) pos++;
+        int last = size < cap ? size : cap - 1;
+        for (int i = last; i > pos; i--) slots[(head + i) % cap] = slots[(head + i - 1) % cap];
+        slots[(head + pos) % cap] = t;
+        if (size < cap) size++;
+        return true;
+    }
+
+    /** Replaces the contents with {@code txs} (a fresh read of the newest rows). */
+    void reset(List<Transaction> txs) {
+        clear();
+        for (Transaction t : txs) add(t);
+    }
+
+    void clear() {
+        for (int i = 0; i < slots.length; i++) slots[i] = null;
+        head = 0;
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Transaction get(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException(i + " of " + size);
+        return slots[(head + i) % slots.length];
+    }
+
+    List<Transaction> toList() {
+        List<Transaction> out = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) out.add(get(i));
+        return out;
+    }
+
+    private static boolean newer(Transaction a, Transaction b) {
+        Timestamp ta = a.getCreatedAt();
+        Timestamp tb = b.getCreatedAt();
+        int c = ta == null || tb == null ? 0 : ta.compareTo(tb);
+        return c != 0 ? c > 0 : a.getTransactionId() > b.getTransactionId();
+    }
+}
@@ -4,6 +4,12 @@ import com.mybank.dao.UserDAO;
 import com.mybank.dao.AccountDAO;
 import com.mybank.model.User;
 import com.mybank.model.Account;
+import com.mybank.model.Money;
+import com.mybank.service.AuthException;
+import com.mybank.service.AuthService;
+import com.mybank.trace.Trace;
+import com.mybank.ui.UiTasks;
+import com.mybank.util.AccountNumberGenerator;
 
 import javax.swing.*;
 import java.awt.*;
@@ -11,13 +17,14 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
-import java.math.BigDecimal;
 
 public class RegisterFrame extends JFrame {
     private JTextField userF, nameF, emailF, phoneF, addrF;
     private JPasswordField passF;
     private JLabel photoLabel;
     private File selectedPhoto;
+    private JButton createBtn;
+    private final UiTasks tasks = UiTasks.bindTo(this);
 
     public RegisterFrame() {
         setTitle("Register - MyBank Pro");
@@ -40,11 +47,11 @@ public class RegisterFrame extends JFrame {
         choose.addActionListener(e -> choosePhoto());
         p.add(choose); p.add(photoLabel);
 
-        JButton create = new JButton("Create Account"); JButton cancel = new JButton("Cancel");
-        p.add(create); p.add(cancel);
+        createBtn = new JButton("Create Account"); JButton cancel = new JButton("Cancel");
+        p.add(createBtn); p.add(cancel);
         add(p);
 
-        create.addActionListener(e -> doCreate());
+        createBtn.addActionListener(e -> doCreate());
         cancel.addActionListener(e -> this.dispose());
     }
 
@@ -61,29 +68,43 @@ public class RegisterFrame extends JFrame {
         String username = userF.getText().trim();
         String pass = new String(passF.getPassword());
         if (username.isEmpty() || pass.isEmpty()) { JOptionPane.showMessageDialog(this, "Username and password required"); return; }
-        UserDAO ud = new UserDAO();
-        if (ud.findByUsername(username) != null) { JOptionPane.showMessageDialog(this, "User exists"); return; }
         User u = new User();
         u.setUsername(username); u.setPassword(pass); u.setFullName(nameF.getText()); u.setEmail(emailF.getText()); u.setPhone(phoneF.getText()); u.setAddress(addrF.getText());
-        String photoPath = null;
-        if (selectedPhoto != null) {
+        File photo = selectedPhoto;
+        tasks.run(Trace.wrap("register", () -> register(u, photo)), createBtn).thenAccept(error -> {
+            if (error != null) { JOptionPane.showMessageDialog(this, error); return; }
+            JOptionPane.showMessageDialog(this, "Account created. You can login now."); this.dispose();
+        }).exceptionally(UiTasks.showError(this, "Registration failed"));
+    }
+
+    // runs off the EDT (bcrypt + several queries); returns a message for the user, or null on success
+    private static String register(User u, File photo) {
+        String username = u.getUsername();
+        UserDAO ud = new UserDAO();
+        if (ud.findByUsername(username) != null) return "User exists";
+        if (photo != null) {
             try {
-                String ext = selectedPhoto.getName().substring(selectedPhoto.getName().lastIndexOf('.'));
+                String ext = photo.getName().substring(photo.getName().lastIndexOf('.'));
                 File dest = new File("data/profile_photos/" + username + ext);
                 dest.getParentFile().mkdirs();
-                Files.copy(selectedPhoto.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                photoPath = dest.getPath();
-                u.setPhoto(photoPath);
+                Files.copy(photo.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                u.setPhoto(dest.getPath());
             } catch (IOException ex) {
                 ex.printStackTrace();
             }
         }
-        boolean ok = ud.create(u);
-        if (!ok) { JOptionPane.showMessageDialog(this, "Failed to create user."); return; }
+        String hash;
+        try {
+            hash = AuthService.getDefault().hash(u.getPassword());
+        } catch (AuthException e) {
+            return e.getMessage();
+        }
+        boolean ok = ud.createHashed(u, hash);
+        if (!ok) return "Failed to create user.";
         // create default account
         AccountDAO ad = new AccountDAO();
-        String accNum = "ACC" + (System.currentTimeMillis() % 1000000);
-        ad.createAccount(ud.findByUsername(username).getUserId(), accNum, "Savings", new BigDecimal("0.00"));
-        JOptionPane.showMessageDialog(this, "Account created. You can login now."); this.dispose();
+        String accNum = AccountNumberGenerator.getDefault().next();
+        ad.createAccount(ud.findByUsername(username).getUserId(), accNum, "Savings", Money.ZERO);
+        return null;
     }
 }
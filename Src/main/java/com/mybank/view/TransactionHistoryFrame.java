@@ -1,17 +1,15 @@
 package com.mybank.view;
 
-import com.mybank.dao.TransactionDAO;
-import com.mybank.model.Transaction;
+import com.mybank.api.BankApi;
 import com.mybank.model.User;
+import com.mybank.ui.UiTasks;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.util.List;
 
 public class TransactionHistoryFrame extends JFrame {
     private final User user;
-    private final TransactionDAO dao = new TransactionDAO();
+    private final UiTasks tasks = UiTasks.bindTo(this);
 
     public TransactionHistoryFrame(User user) {
         this.user = user;
@@ -23,21 +21,11 @@ public class TransactionHistoryFrame extends JFrame {
     }
 
     private void init() {
-        String[] cols = {"ID", "Type", "Amount", "Description", "Date"};
-        DefaultTableModel model = new DefaultTableModel(cols, 0);
+        // rows are paged in from the database as the user scrolls
+        TransactionTableModel model = new TransactionTableModel(BankApi.getDefault(), user, tasks);
         JTable table = new JTable(model);
         JScrollPane sp = new JScrollPane(table);
-
-        List<Transaction> txs = dao.forAccount(user.getUserId());
-        for (Transaction t : txs) {
-            model.addRow(new Object[]{
-                    t.getTransactionId(),
-                    t.getType(),
-                    t.getAmount(),
-                    t.getDescription(),
-                    t.getCreatedAt()
-            });
-        }
+        model.load();
 
         add(sp, BorderLayout.CENTER);
     }
@@ -0,0 +1,140 @@
+package com.mybank.view;
+
+import com.mybank.api.BankApi;
+import com.mybank.dao.TransactionDAO;
+import com.mybank.model.Transaction;
+import com.mybank.model.User;
+import com.mybank.trace.Trace;
+import com.mybank.ui.UiTasks;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Table model over a user's transaction history that only holds a few pages in memory.
+ *
+ * Rows are fetched a page at a time, in the background, when the table first asks for them;
+ * until then the row shows as loading. Pages are found by keyset seek, and the start key of
+ * every page seen so far is remembered so scrolling back and forth never re-counts from the top.
+ * Loads run as tasks of the owning window, so closing it drops any that are still queued.
+ */
+public class TransactionTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS = {"ID", "Type", "Amount", "Description", "Date"};
+
+    private final BankApi api;
+    private final User user;
+    private final UiTasks tasks;
+    private final int pageSize;
+    private final int maxCachedPages;
+    private int rowCount;
+
+    // all fields below are only touched on the EDT
+    private final Map<Integer, List<Transaction>> pages;
+    private final TreeMap<Integer, TransactionDAO.Cursor> pageStarts = new TreeMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+
+    public TransactionTableModel(BankApi api, User user, UiTasks tasks) {
+        this(api, user, tasks, 100, 8);
+    }
+
+    public TransactionTableModel(BankApi api, User user, UiTasks tasks, int pageSize, int maxCachedPages) {
+        this.api = api;
+        this.user = new User(user); // read by the loading tasks
+        this.tasks = tasks;
+        this.pageSize = pageSize;
+        this.maxCachedPages = maxCachedPages;
+        this.pages = new LinkedHashMap<Integer, List<Transaction>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Transaction>> eldest) {
+                return size() > TransactionTableModel.this.maxCachedPages;
+            }
+        };
+        pageStarts.put(0, null);
+    }
+
+    /** Counts the rows in the background and then lets the table start asking for them. */
+    public void load() {
+        tasks.run(Trace.wrap("history.open", () -> api.countHistory(user))).whenComplete((count, e) -> {
+            if (e != null) {
+                if (!(UiTasks.unwrap(e) instanceof CancellationException)) e.printStackTrace();
+                return;
+            }
+            rowCount = count;
+            fireTableDataChanged();
+        });
+    }
+
+    @Override
+    public int getRowCount() { return rowCount; }
+
+    @Override
+    public int getColumnCount() { return COLUMNS.length; }
+
+    @Override
+    public String getColumnName(int column) { return COLUMNS[column]; }
+
+    @Override
+    public Object getValueAt(int row, int col) {
+        int page = row / pageSize;
+        List<Transaction> rows = pages.get(page);
+        if (rows == null) {
+            requestPage(page);
+            return col == 0 ? "…" : null;
+        }
+        int i = row % pageSize;
+        if (i >= rows.size()) return null; // history shrank since it was counted
+        Transaction t = rows.get(i);
+        switch (col) {
+            case 0: return t.getTransactionId();
+            case 1: return t.getType();
+            case 2: return t.getAmount();
+            case 3: return t.getDescription();
+            default: return t.getCreatedAt();
+        }
+    }
+
+    private void requestPage(int page) {
+        if (!loading.add(page)) return;
+        Map.Entry<Integer, TransactionDAO.Cursor> known = pageStarts.floorEntry(page);
+        int fromPage = known.getKey();
+        TransactionDAO.Cursor fromCursor = known.getValue();
+        tasks.run(Trace.wrap("history.page", () -> {
+            TransactionDAO.Cursor start = fromCursor;
+            if (fromPage < page) {
+                start = api.historyCursor(user, fromCursor, (page - fromPage) * pageSize);
+                if (start == null) return new Page(null, Collections.<Transaction>emptyList());
+            }
+            return new Page(start, api.historyPage(user, start, pageSize));
+        })).whenComplete((loaded, e) -> {
+            loading.remove(page);
+            if (e != null) {
+                if (!(UiTasks.unwrap(e) instanceof CancellationException)) e.printStackTrace();
+                return;
+            }
+            List<Transaction> rows = loaded.rows;
+            if (loaded.start != null || page == 0) pageStarts.put(page, loaded.start);
+            if (rows.size() == pageSize) pageStarts.put(page + 1, TransactionDAO.Cursor.after(rows.get(rows.size() - 1)));
+            pages.put(page, rows);
+            int first = page * pageSize;
+            int last = Math.min(rowCount, first + pageSize) - 1;
+            if (last >= first) fireTableRowsUpdated(first, last);
+        });
+    }
+
+    private static final class Page {
+        final TransactionDAO.Cursor start;
+        final List<Transaction> rows;
+
+        Page(TransactionDAO.Cursor start, List<Transaction> rows) {
+            this.start = start;
+            this.rows = rows;
+        }
+    }
+}
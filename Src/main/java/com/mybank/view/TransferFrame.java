@@ -1,17 +1,14 @@
 package com.mybank.view;
 
-import com.mybank.DBConnection;
-import com.mybank.dao.TransactionDAO;
-import com.mybank.dao.UserDAO;
-import com.mybank.model.Transaction;
+import com.mybank.api.BankApi;
+import com.mybank.model.Money;
 import com.mybank.model.User;
+import com.mybank.trace.Trace;
+import com.mybank.ui.SubmitKey;
+import com.mybank.ui.UiTasks;
 
 import javax.swing.*;
 import java.awt.*;
-import java.math.BigDecimal;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 
 public class TransferFrame extends JFrame {
     private final User user;
@@ -19,6 +16,9 @@ public class TransferFrame extends JFrame {
     private JTextField targetUserField;
     private JTextField amountField;
     private JTextArea noteArea;
+    private JButton sendBtn;
+    private final UiTasks tasks = UiTasks.bindTo(this);
+    private final SubmitKey submitKey = new SubmitKey();
 
     public TransferFrame(User user, DashboardFrame parent) {
         this.user = user;
@@ -46,15 +46,15 @@ public class TransferFrame extends JFrame {
         noteArea = new JTextArea(3, 20);
         p.add(new JScrollPane(noteArea));
 
-        JButton send = new JButton("Send");
+        sendBtn = new JButton("Send");
         JButton cancel = new JButton("Cancel");
         JPanel btns = new JPanel();
-        btns.add(send); btns.add(cancel);
+        btns.add(sendBtn); btns.add(cancel);
         p.add(btns);
 
         add(p);
 
-        send.addActionListener(e -> doTransfer());
+        sendBtn.addActionListener(e -> doTransfer());
         cancel.addActionListener(e -> dispose());
     }
 
@@ -68,92 +68,23 @@ public class TransferFrame extends JFrame {
             return;
         }
 
-        BigDecimal amount;
+        Money amount;
         try {
-            amount = new BigDecimal(amtText);
-            if (amount.compareTo(BigDecimal.ZERO) <= 0) throw new NumberFormatException();
+            amount = Money.parse(amtText);
+            if (amount.signum() <= 0) throw new NumberFormatException();
         } catch (NumberFormatException ex) {
             JOptionPane.showMessageDialog(this, "Enter a valid amount.");
             return;
         }
 
-        // find recipient
-        UserDAO udao = new UserDAO();
-        User recipient = udao.findByUsername(targetUsername);
-        if (recipient == null) {
-            JOptionPane.showMessageDialog(this, "Recipient not found.");
-            return;
-        }
-
-        // perform DB transaction: check sender balance, update both balances, insert tx rows
-        try (Connection c = DBConnection.getConnection()) {
-            try {
-                c.setAutoCommit(false);
-
-                // Lock and read sender balance
-                try (PreparedStatement ps = c.prepareStatement("SELECT balance FROM users WHERE user_id = ? FOR UPDATE")) {
-                    ps.setInt(1, user.getUserId());
-                    try (ResultSet rs = ps.executeQuery()) {
-                        if (!rs.next()) throw new Exception("Sender account not found.");
-                        BigDecimal senderBal = rs.getBigDecimal("balance");
-                        if (senderBal.compareTo(amount) < 0) throw new Exception("Insufficient funds.");
-                    }
-                }
-
-                // Lock and read recipient balance
-                BigDecimal recipientBal;
-                try (PreparedStatement ps = c.prepareStatement("SELECT balance FROM users WHERE user_id = ? FOR UPDATE")) {
-                    ps.setInt(1, recipient.getUserId());
-                    try (ResultSet rs = ps.executeQuery()) {
-                        if (!rs.next()) throw new Exception("Recipient account not found.");
-                        recipientBal = rs.getBigDecimal("balance");
-                    }
-                }
-
-                // Update balances
-                try (PreparedStatement up1 = c.prepareStatement("UPDATE users SET balance = balance - ? WHERE user_id = ?")) {
-                    up1.setBigDecimal(1, amount);
-                    up1.setInt(2, user.getUserId());
-                    up1.executeUpdate();
-                }
-                try (PreparedStatement up2 = c.prepareStatement("UPDATE users SET balance = balance + ? WHERE user_id = ?")) {
-                    up2.setBigDecimal(1, amount);
-                    up2.setInt(2, recipient.getUserId());
-                    up2.executeUpdate();
-                }
-
-                // Insert transaction rows
-                try (PreparedStatement it = c.prepareStatement("INSERT INTO transactions (user_id, type, amount, description) VALUES (?,?,?,?)")) {
-                    // sender tx (negative amount)
-                    it.setInt(1, user.getUserId());
-                    it.setString(2, "transfer");
-                    it.setBigDecimal(3, amount.negate());
-                    it.setString(4, "To: " + recipient.getUsername() + (note.isEmpty() ? "" : " - " + note));
-                    it.executeUpdate();
-
-                    // recipient tx (positive amount)
-                    it.setInt(1, recipient.getUserId());
-                    it.setString(2, "transfer");
-                    it.setBigDecimal(3, amount);
-                    it.setString(4, "From: " + user.getUsername() + (note.isEmpty() ? "" : " - " + note));
-                    it.executeUpdate();
-                }
-
-                c.commit();
-                JOptionPane.showMessageDialog(this, "Transfer successful.");
-                parent.refreshBalances();
-                dispose();
-
-            } catch (Exception ex) {
-                c.rollback();
-                ex.printStackTrace();
-                JOptionPane.showMessageDialog(this, "Transfer failed: " + ex.getMessage());
-            } finally {
-                c.setAutoCommit(true);
-            }
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Transfer failed: " + ex.getMessage());
-        }
+        // Send stays disabled while this runs; sending again after a failure reuses the key, so a
+        // transfer that did go through before a timeout is not made twice
+        String key = submitKey.forRequest(targetUsername, amount, note);
+        tasks.run(Trace.wrap("transfer", () -> BankApi.getDefault().transfer(user, targetUsername, amount, note, key)),
+                sendBtn, targetUserField, amountField, noteArea).thenAccept(result -> {
+            // the dashboard picks the new balance up from the BalanceChanged event
+            JOptionPane.showMessageDialog(this, result.isReplayed() ? "This transfer was already made." : "Transfer successful.");
+            dispose();
+        }).exceptionally(UiTasks.showError(this, "Transfer failed"));
     }
 }
@@ -0,0 +1,23 @@
+-- Columns the DAOs use that the original script never created. Adding a column or key that
+-- is already there (databases patched by hand) is skipped by the runner.
+
+-- per-user balance: TransferService, TransactionDAO.BatchWriter, the dashboard
+ALTER TABLE users ADD COLUMN balance DECIMAL(15,2) NOT NULL DEFAULT 0.00;
+
+-- databases created before optimistic locking
+ALTER TABLE accounts ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+-- TransactionDAO posts against a user rather than an account, with its own text and time
+ALTER TABLE transactions ADD COLUMN user_id INT NULL;
+ALTER TABLE transactions ADD COLUMN description VARCHAR(255);
+ALTER TABLE transactions ADD COLUMN created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP;
+ALTER TABLE transactions MODIFY COLUMN account_id INT NULL;
+
+-- older account rows show up in the user's history too
+UPDATE transactions SET user_id = (SELECT a.user_id FROM accounts a WHERE a.account_id = transactions.account_id)
+  WHERE user_id IS NULL AND account_id IS NOT NULL;
+UPDATE transactions SET description = note WHERE description IS NULL AND note IS NOT NULL;
+UPDATE transactions SET created_at = date WHERE date IS NOT NULL AND created_at <> date;
+
+ALTER TABLE transactions ADD CONSTRAINT fk_transactions_user
+  FOREIGN KEY (user_id) REFERENCES users(user_id) ON DELETE CASCADE;
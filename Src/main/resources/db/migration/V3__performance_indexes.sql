@@ -0,0 +1,11 @@
+-- Recent transactions, history pages, counts and statements all filter on user_id and walk
+-- (created_at, transaction_id), newest or oldest first. With this index they read only the
+-- user's rows, already in order: no filesort, and the keyset seek starts at the cursor.
+-- cursorAt and countForUser are answered from the index alone.
+CREATE INDEX idx_transactions_user_created ON transactions (user_id, created_at, transaction_id);
+
+-- ledger rows by account over time (DbFlusher writes account_id and date)
+CREATE INDEX idx_transactions_account_date ON transactions (account_id, date);
+
+-- accounts.account_number and users.username are looked up through their UNIQUE keys (V1),
+-- accounts by user through the foreign key's index.
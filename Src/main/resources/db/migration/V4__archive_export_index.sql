@@ -0,0 +1,2 @@
+-- Archiver selects a whole month by created_at; without this it would scan the table.
+CREATE INDEX idx_transactions_created ON transactions (created_at);
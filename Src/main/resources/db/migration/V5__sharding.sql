@@ -0,0 +1,37 @@
+-- Sharding (com.mybank.shard). Every shard runs every migration, so all shards have these
+-- tables; the directory and the saga log are only used on shard 0.
+
+-- where each user lives; with more than one shard, new user ids are handed out here
+CREATE TABLE IF NOT EXISTS shard_directory (
+  user_id INT AUTO_INCREMENT PRIMARY KEY,
+  username VARCHAR(50) NOT NULL UNIQUE,
+  shard INT NOT NULL,
+  moving BOOLEAN NOT NULL DEFAULT FALSE,
+  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- recovery log of transfers between users on different shards
+CREATE TABLE IF NOT EXISTS transfer_saga (
+  saga_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+  from_user INT NOT NULL,
+  to_user INT NOT NULL,
+  amount DECIMAL(15,2) NOT NULL,
+  from_description VARCHAR(255),
+  to_description VARCHAR(255),
+  state VARCHAR(10) NOT NULL,
+  attempts INT NOT NULL DEFAULT 0,
+  last_error VARCHAR(255),
+  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+  updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+CREATE INDEX idx_transfer_saga_open ON transfer_saga (state, updated_at);
+
+-- saga steps settled on this shard, written in the same transaction as the step itself:
+-- APPLIED, or ABORTED when recovery made sure a step that never finished cannot happen later
+CREATE TABLE IF NOT EXISTS saga_steps (
+  saga_id BIGINT NOT NULL,
+  step VARCHAR(10) NOT NULL,
+  outcome VARCHAR(10) NOT NULL,
+  applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (saga_id, step)
+);
@@ -0,0 +1,13 @@
+-- Idempotency keys of deposits, withdrawals and transfers (com.mybank.service.IdempotencyStore).
+-- A key is claimed on the shard of the user making the request, in the same transaction as the
+-- write it guards; result stays NULL until that write commits. Rows past expires_at are purged.
+CREATE TABLE IF NOT EXISTS idempotency_keys (
+  user_id INT NOT NULL,
+  idem_key VARCHAR(64) NOT NULL,
+  request VARCHAR(100) NOT NULL,
+  result VARCHAR(100),
+  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+  expires_at TIMESTAMP NOT NULL,
+  PRIMARY KEY (user_id, idem_key)
+);
+CREATE INDEX idx_idempotency_keys_expiry ON idempotency_keys (expires_at);
@@ -0,0 +1,3 @@
+-- Version of users.balance for TransferService's optimistic mode: every writer of the balance
+-- bumps it, and an optimistic write only lands if the version is still the one it read.
+ALTER TABLE users ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
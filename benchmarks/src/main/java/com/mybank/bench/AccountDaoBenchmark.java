@@ -0,0 +1,62 @@
+package com.mybank.bench;
+
+import com.mybank.dao.AccountDAO;
+import com.mybank.model.Account;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recipient lookup by account number, {@link AccountDAO#findByAccountNumber}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AccountDaoBenchmark {
+    @Param("10000")
+    public int users;
+
+    private BenchDatabase db;
+    private AccountDAO dao;
+    private String[] accountNumbers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        db = BenchDatabase.create(users, 0, 4, 4);
+        dao = new AccountDAO(db.dataSource());
+        accountNumbers = new String[users];
+        for (int n = 1; n <= users; n++) accountNumbers[n - 1] = BenchDatabase.accountNumber(n);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    public Account findByAccountNumber() {
+        return dao.findByAccountNumber(accountNumbers[ThreadLocalRandom.current().nextInt(users)]);
+    }
+
+    @Benchmark
+    public Account findByAccountNumberMissing() {
+        return dao.findByAccountNumber("ACC0");
+    }
+}
@@ -0,0 +1,105 @@
+package com.mybank.bench;
+
+import com.mybank.util.AccountNumberGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Stress check for {@link AccountNumberGenerator}: many threads spread over several node ids
+ * draw ids at full speed, then every id is checked to be unique, each thread's ids to be
+ * increasing, and a sample to round-trip through the check digits.
+ *
+ * Usage: {@code AccountNumberCheck [threads] [idsPerThread] [nodes]} (defaults: 8, 4,000,000,
+ * 2; the ids are kept in memory, 8 bytes each, so the defaults want about -Xmx512m)
+ */
+public class AccountNumberCheck {
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 4_000_000;
+        int nodes = Math.max(1, args.length > 2 ? Integer.parseInt(args[2]) : 2);
+
+        AccountNumberGenerator[] gens = new AccountNumberGenerator[nodes];
+        for (int n = 0; n < nodes; n++) gens[n] = new AccountNumberGenerator(n);
+        long[][] ids = new long[threads][];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int idx = t;
+            Thread w = new Thread(() -> {
+                AccountNumberGenerator g = gens[idx % nodes];
+                long[] mine = new long[perThread];
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) mine[i] = g.nextId();
+                ids[idx] = mine;
+            }, "idgen-" + t);
+            w.start();
+            workers.add(w);
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        for (Thread w : workers) w.join();
+        double secs = (System.nanoTime() - t0) / 1e9;
+        long total = (long) threads * perThread;
+        System.out.printf("Generated %,d ids on %d threads / %d nodes in %.2f s (%,.0f ids/s)%n",
+                total, threads, nodes, secs, total / secs);
+
+        boolean ok = true;
+        // per thread: strictly increasing, which also means sorted for the merge below
+        for (int t = 0; t < threads; t++) {
+            long[] a = ids[t];
+            for (int i = 1; i < a.length; i++) {
+                if (a[i] <= a[i - 1]) {
+                    System.err.printf("❌ Thread %d: id %d not above the previous one (%d)%n", t, a[i], a[i - 1]);
+                    ok = false;
+                    break;
+                }
+            }
+        }
+
+        // k-way merge of the sorted per-thread arrays; equal neighbours are duplicates
+        long duplicates = 0;
+        PriorityQueue<int[]> heads = new PriorityQueue<>((x, y) -> Long.compare(ids[x[0]][x[1]], ids[y[0]][y[1]]));
+        for (int t = 0; t < threads; t++) if (ids[t].length > 0) heads.add(new int[]{t, 0});
+        long prev = -1;
+        while (!heads.isEmpty()) {
+            int[] h = heads.poll();
+            long v = ids[h[0]][h[1]];
+            if (v == prev) duplicates++;
+            prev = v;
+            if (++h[1] < ids[h[0]].length) heads.add(h);
+        }
+        if (duplicates > 0) {
+            System.err.printf("❌ %,d duplicate ids%n", duplicates);
+            ok = false;
+        }
+
+        // a sample through the string form: valid, and any single changed digit is caught
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < ids[t].length; i += 100_003) {
+                String s = AccountNumberGenerator.format(ids[t][i]);
+                if (!AccountNumberGenerator.isValid(s) || s.length() != AccountNumberGenerator.LENGTH) {
+                    System.err.println("❌ Generated number fails validation: " + s);
+                    ok = false;
+                }
+                for (int pos = AccountNumberGenerator.PREFIX.length(); pos < s.length(); pos++) {
+                    char bad = s.charAt(pos) == '9' ? '0' : (char) (s.charAt(pos) + 1);
+                    String typo = s.substring(0, pos) + bad + s.substring(pos + 1);
+                    if (AccountNumberGenerator.isValid(typo)) {
+                        System.err.println("❌ Typo not caught: " + typo);
+                        ok = false;
+                    }
+                }
+            }
+        }
+
+        if (ok) System.out.printf("✅ %,d ids unique and increasing per thread; check digits OK%n", total);
+        else System.exit(1);
+    }
+}
@@ -0,0 +1,100 @@
+package com.mybank.bench;
+
+import com.mybank.archive.Archiver;
+import com.mybank.archive.TransactionArchive;
+import com.mybank.dao.TransactionDAO;
+import com.mybank.model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * History reads of a month still in the transactions table ({@code tier=hot}, last month)
+ * against one moved to the archive ({@code tier=archived}, six months back), through the same
+ * {@link TransactionDAO} calls: a month's statement rows and the first page of the month.
+ * The year of seeded history is archived except for the last three months.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ArchiveBenchmark {
+    @Param("2000")
+    public int users;
+
+    @Param("240")
+    public int txPerUser;
+
+    @Param({"hot", "archived"})
+    public String tier;
+
+    private BenchDatabase db;
+    private Path dir;
+    private TransactionArchive archive;
+    private TransactionDAO dao;
+    private Timestamp from;
+    private Timestamp to;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        db = BenchDatabase.create(users, txPerUser, 4, 4);
+        dir = Files.createTempDirectory("mybank-archive");
+        // readers in this process are told about new segments directly, so no rescans or waits
+        archive = new TransactionArchive(dir, 86_400_000L);
+        Archiver archiver = new Archiver(db.dataSource(), archive, 0, 1000);
+        YearMonth now = YearMonth.now();
+        for (YearMonth m = now.minusMonths(13); m.isBefore(now.minusMonths(3)); m = m.plusMonths(1)) archiver.archive(m);
+        dao = new TransactionDAO(db.dataSource(), archive);
+        YearMonth month = tier.equals("hot") ? now.minusMonths(1) : now.minusMonths(6);
+        from = TransactionArchive.start(month);
+        to = TransactionArchive.start(month.plusMonths(1));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        archive.close();
+        db.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long monthStatement(Blackhole bh) throws SQLException {
+        return dao.streamForPeriod(randomUser(), from, to, bh::consume);
+    }
+
+    @Benchmark
+    public List<Transaction> firstPageOfMonth() throws SQLException {
+        return dao.page(randomUser(), new TransactionDAO.Cursor(to, 0), 20);
+    }
+
+    private int randomUser() {
+        return 1 + ThreadLocalRandom.current().nextInt(users);
+    }
+}
@@ -0,0 +1,33 @@
+package com.mybank.bench;
+
+import com.mybank.service.ConcurrencyMode;
+import com.mybank.tools.BalanceConcurrencyBenchmark;
+
+import java.util.List;
+
+/**
+ * {@link BalanceConcurrencyBenchmark} (each {@code ConcurrencyMode} of {@code TransferService}
+ * under low and high contention) on a {@link BenchDatabase}, so it runs without MySQL. Run with
+ * {@code -Dmybank.admission.enabled=false} to see the modes themselves rather than admission
+ * control queueing writes per account. The modes run once for {@code warmUpSeconds} first so the
+ * JIT has settled before the measured pass. Transactions pile up in memory as it goes, which slows
+ * later rows, so compare modes from separate runs (one mode each).
+ *
+ * Usage: {@code java -cp target/benchmarks.jar com.mybank.bench.BalanceConcurrency [threads] [seconds] [lowContentionUsers] [warmUpSeconds] [modes]}
+ */
+public class BalanceConcurrency {
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int spread = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int warmUp = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        List<ConcurrencyMode> modes = BalanceConcurrencyBenchmark.modes(args.length > 4 ? args[4] : null);
+        try (BenchDatabase db = BenchDatabase.create(0, 0, 4, threads)) {
+            System.out.println("warm-up:");
+            BalanceConcurrencyBenchmark.run(db.dataSource(), threads, warmUp, spread, modes);
+            System.out.println("measured:");
+            BalanceConcurrencyBenchmark.run(db.dataSource(), threads, seconds, spread, modes);
+            System.out.println("Pool: " + db.pool().stats());
+        }
+    }
+}
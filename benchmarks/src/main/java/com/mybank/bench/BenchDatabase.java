@@ -0,0 +1,136 @@
+package com.mybank.bench;
+
+import com.mybank.db.ConnectionPool;
+import com.mybank.db.PoolConfig;
+import com.mybank.db.SchemaMigrator;
+import org.mindrot.jbcrypt.BCrypt;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process H2 database (MySQL mode) behind the app's own {@link ConnectionPool}, seeded with
+ * a fixed, reproducible data set so runs can be compared offline.
+ *
+ * User {@code n} (1-based) is {@link #username(int)} with password {@link #PASSWORD}, owns account
+ * {@link #accountNumber(int)} and has {@code txPerUser} transactions spread over the last year.
+ */
+public final class BenchDatabase implements AutoCloseable {
+    public static final String PASSWORD = "bench-password";
+    public static final BigDecimal OPENING_BALANCE = new BigDecimal("1000000.00");
+
+    private static final AtomicInteger SEQ = new AtomicInteger();
+
+    private final ConnectionPool pool;
+    private final int users;
+
+    private BenchDatabase(ConnectionPool pool, int users) {
+        this.pool = pool;
+        this.users = users;
+    }
+
+    /**
+     * Creates and seeds a fresh database. Every user shares one password hash of the given
+     * bcrypt cost, so seeding does not pay the hash cost per row.
+     */
+    public static BenchDatabase create(int users, int txPerUser, int bcryptCost, int poolSize) throws SQLException {
+        PoolConfig cfg = new PoolConfig();
+        cfg.setUrl("jdbc:h2:mem:bench" + SEQ.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        cfg.setUser("sa");
+        cfg.setPassword("");
+        cfg.setMaxSize(poolSize);
+        cfg.setMinIdle(Math.min(poolSize, 2));
+        ConnectionPool pool = new ConnectionPool(cfg);
+        try {
+            seed(pool, users, txPerUser, BCrypt.hashpw(PASSWORD, BCrypt.gensalt(bcryptCost)));
+        } catch (SQLException | RuntimeException e) {
+            pool.close();
+            throw e;
+        }
+        return new BenchDatabase(pool, users);
+    }
+
+    public DataSource dataSource() { return pool; }
+    public ConnectionPool pool() { return pool; }
+    public int users() { return users; }
+
+    public static String username(int n) {
+        return String.format("user%06d", n);
+    }
+
+    public static String accountNumber(int n) {
+        return "ACC" + (100000 + n);
+    }
+
+    @Override
+    public void close() {
+        try (Connection c = pool.getConnection(); Statement st = c.createStatement()) {
+            st.execute("SHUTDOWN");
+        } catch (SQLException ignore) {
+            // the in-memory database goes away with the pool either way
+        }
+        pool.close();
+    }
+
+    private static void seed(DataSource ds, int users, int txPerUser, String hash) throws SQLException {
+        // the app's own migrations, so the benchmarks run on the schema and indexes production gets
+        new SchemaMigrator(ds).migrate();
+        try (Connection c = ds.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(
+                    "INSERT INTO users (username, password, full_name, email, role, balance) VALUES (?,?,?,?,?,?)")) {
+                for (int n = 1; n <= users; n++) {
+                    ps.setString(1, username(n));
+                    ps.setString(2, hash);
+                    ps.setString(3, "Bench User " + n);
+                    ps.setString(4, username(n) + "@bench.local");
+                    ps.setString(5, "user");
+                    ps.setBigDecimal(6, OPENING_BALANCE);
+                    ps.addBatch();
+                    if (n % 1000 == 0) ps.executeBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = c.prepareStatement(
+                    "INSERT INTO accounts (user_id, account_number, account_type, balance) VALUES (?,?,?,?)")) {
+                for (int n = 1; n <= users; n++) {
+                    ps.setInt(1, n);
+                    ps.setString(2, accountNumber(n));
+                    ps.setString(3, "Savings");
+                    ps.setBigDecimal(4, OPENING_BALANCE);
+                    ps.addBatch();
+                    if (n % 1000 == 0) ps.executeBatch();
+                }
+                ps.executeBatch();
+            }
+            // interleave users, as real history would be, rather than storing each user's rows together
+            SplittableRandom rnd = new SplittableRandom(42);
+            long now = System.currentTimeMillis();
+            long year = 365L * 24 * 3600 * 1000;
+            try (PreparedStatement ps = c.prepareStatement(
+                    "INSERT INTO transactions (user_id, type, amount, description, created_at) VALUES (?,?,?,?,?)")) {
+                long rows = (long) users * txPerUser;
+                for (long i = 1; i <= rows; i++) {
+                    int user = 1 + rnd.nextInt(users);
+                    boolean credit = rnd.nextBoolean();
+                    ps.setInt(1, user);
+                    ps.setString(2, credit ? "deposit" : "withdraw");
+                    ps.setBigDecimal(3, BigDecimal.valueOf(credit ? 1 + rnd.nextInt(500_000) : -1 - rnd.nextInt(500_000), 2));
+                    ps.setString(4, credit ? "Seed credit" : "Seed debit");
+                    ps.setTimestamp(5, new Timestamp(now - (long) (rnd.nextDouble() * year)));
+                    ps.addBatch();
+                    if (i % 1000 == 0) ps.executeBatch();
+                }
+                ps.executeBatch();
+            }
+            c.commit();
+        }
+    }
+}
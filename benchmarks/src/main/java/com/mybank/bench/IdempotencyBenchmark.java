@@ -0,0 +1,134 @@
+package com.mybank.bench;
+
+import com.mybank.dao.UserDAO;
+import com.mybank.model.Money;
+import com.mybank.model.User;
+import com.mybank.service.IdempotencyStore;
+import com.mybank.service.TransferException;
+import com.mybank.service.TransferResult;
+import com.mybank.service.TransferService;
+import com.mybank.shard.ShardMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What idempotency keys cost on the transfer path. {@link #noKey} is a plain
+ * {@link TransferService#transfer}; {@link #newKey} is the same with a key never seen before (its
+ * row is claimed and completed in the transfer's transaction); {@link #replayCached} repeats a
+ * done transfer, answered from memory; {@link #replayFromTable} is the claim a repeat makes when
+ * the key is no longer in memory (duplicate insert, then the stored row read back), rolled back;
+ * and {@link #cachedLookup} is the in-memory lookup alone, from four threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class IdempotencyBenchmark {
+    private static final Money AMOUNT = Money.ofMinor(1);
+
+    @Param("1000")
+    public int users;
+
+    @Param("10000")
+    public int doneKeys;
+
+    private BenchDatabase db;
+    private TransferService service;
+    private IdempotencyStore store;
+    private IdempotencyStore tableOnly;
+    private User[] accounts;
+    private int[][] donePairs;
+    private IdempotencyStore.Claim[] doneClaims;
+    private final AtomicLong seq = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, TransferException {
+        db = BenchDatabase.create(users, 0, 4, 8);
+        service = new TransferService(db.dataSource());
+        store = IdempotencyStore.of(db.dataSource());
+        tableOnly = new IdempotencyStore(ShardMap.of(db.dataSource()), 0, 24 * 60 * 60_000L, 1_000);
+        UserDAO userDao = new UserDAO(db.dataSource());
+        accounts = new User[users];
+        for (int n = 1; n <= users; n++) accounts[n - 1] = userDao.findByUsername(BenchDatabase.username(n));
+        donePairs = new int[doneKeys][];
+        doneClaims = new IdempotencyStore.Claim[doneKeys];
+        for (int i = 0; i < doneKeys; i++) {
+            int[] pair = pair();
+            donePairs[i] = pair;
+            service.transfer(accounts[pair[0]], accounts[pair[1]], AMOUNT, "bench", "done-" + i);
+            doneClaims[i] = store.request(accounts[pair[0]].getUserId(), "done-" + i,
+                    "transfer:" + accounts[pair[1]].getUserId() + ":" + AMOUNT.getMinorUnits());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.stopCleanup();
+        db.close();
+    }
+
+    @Benchmark
+    public TransferResult noKey() throws TransferException {
+        int[] pair = pair();
+        return service.transfer(accounts[pair[0]], accounts[pair[1]], AMOUNT, "bench");
+    }
+
+    @Benchmark
+    public TransferResult newKey() throws TransferException {
+        int[] pair = pair();
+        return service.transfer(accounts[pair[0]], accounts[pair[1]], AMOUNT, "bench", "new-" + seq.incrementAndGet());
+    }
+
+    @Benchmark
+    public TransferResult replayCached() throws TransferException {
+        int i = ThreadLocalRandom.current().nextInt(doneKeys);
+        int[] pair = donePairs[i];
+        return service.transfer(accounts[pair[0]], accounts[pair[1]], AMOUNT, "bench", "done-" + i);
+    }
+
+    @Benchmark
+    public String replayFromTable() throws SQLException, TransferException {
+        IdempotencyStore.Claim claim = doneClaims[ThreadLocalRandom.current().nextInt(doneKeys)];
+        try (Connection c = db.dataSource().getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                return tableOnly.claim(c, claim);
+            } finally {
+                c.rollback();
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String cachedLookup() throws TransferException {
+        return store.cached(doneClaims[ThreadLocalRandom.current().nextInt(doneKeys)]);
+    }
+
+    private int[] pair() {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        int a = rnd.nextInt(users);
+        int b = rnd.nextInt(users - 1);
+        return new int[] {a, b >= a ? b + 1 : b};
+    }
+}
@@ -0,0 +1,104 @@
+package com.mybank.bench;
+
+import com.mybank.ledger.InsufficientFundsException;
+import com.mybank.ledger.LedgerEngine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Hammers a journal-only {@link LedgerEngine} with random concurrent transfers and checks that
+ * no money is created or lost, both live and after recovering from the journal. The journal
+ * goes to a temporary directory (1 MB segments, so it rolls) that is removed afterwards.
+ *
+ * Usage: {@code LedgerStressCheck [threads] [transfersPerThread] [users]}; exits 1 on failure.
+ */
+public class LedgerStressCheck {
+    private static final int SEGMENT_BYTES = 1 << 20;
+
+    public static void main(String[] args) throws IOException, SQLException, InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        int users = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        Path dir = Files.createTempDirectory("ledger-check");
+        String failure;
+        try {
+            failure = run(dir, threads, perThread, users);
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        if (failure != null) {
+            System.err.println("❌ " + failure);
+            System.exit(1);
+        }
+        System.out.println("✅ Money conserved live and after journal recovery");
+    }
+
+    /** Runs the check with its journal in {@code dir}; returns what went wrong, or {@code null}. */
+    private static String run(Path dir, int threads, int perThread, int users)
+            throws IOException, SQLException, InterruptedException {
+        long opening = 1_000_00; // 1,000.00 each
+        long expected = opening * users;
+        long[] balances = new long[users + 1];
+        AtomicLong ok = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+
+        try (LedgerEngine ledger = LedgerEngine.open(dir, null, SEGMENT_BYTES, 1_000)) {
+            Map<Integer, Long> open = new HashMap<>();
+            for (int id = 1; id <= users; id++) open.put(id, opening);
+            ledger.addUsers(open);
+
+            CountDownLatch done = new CountDownLatch(threads);
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                new Thread(() -> {
+                    ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                    for (int i = 0; i < perThread; i++) {
+                        int from = 1 + rnd.nextInt(users);
+                        int to = 1 + rnd.nextInt(users);
+                        if (from == to) continue;
+                        try {
+                            ledger.transfer(from, to, 1 + rnd.nextInt(50_000), "To: " + to, "From: " + from);
+                            ok.incrementAndGet();
+                        } catch (InsufficientFundsException e) {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                    done.countDown();
+                }).start();
+            }
+            done.await();
+            double secs = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d transfers (%d rejected) in %.2fs = %.0f/s%n", ok.get(), rejected.get(), secs, ok.get() / secs);
+
+            long total = ledger.totalBalance();
+            if (total != expected) return "live total " + total + " != " + expected;
+            for (int id = 1; id <= users; id++) {
+                balances[id] = ledger.balance(id);
+                if (balances[id] < 0) return "user " + id + " went negative: " + balances[id];
+            }
+        }
+
+        try (LedgerEngine recovered = LedgerEngine.open(dir, null, SEGMENT_BYTES, 1_000)) {
+            if (recovered.totalBalance() != expected) return "recovered total " + recovered.totalBalance() + " != " + expected;
+            for (int id = 1; id <= users; id++) {
+                if (recovered.balance(id) != balances[id]) {
+                    return "user " + id + " recovered as " + recovered.balance(id) + ", expected " + balances[id];
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,384 @@
+package com.mybank.bench;
+
+import com.mybank.DBConnection;
+import com.mybank.api.LocalBankApi;
+import com.mybank.config.AppConfig;
+import com.mybank.dao.TransactionDAO;
+import com.mybank.dao.UserDAO;
+import com.mybank.metrics.LatencyHistogram;
+import com.mybank.model.Money;
+import com.mybank.model.Transaction;
+import com.mybank.model.User;
+import com.mybank.service.AuthService;
+import com.mybank.service.LoginThrottle;
+import com.mybank.service.TransferException;
+import org.mindrot.jbcrypt.BCrypt;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator and soak test for the real flows: login ({@code findByUsername} plus
+ * {@code verifyPassword}), a dashboard refresh (balance plus recent transactions, as
+ * {@code refreshBalances} does), history browsing (count, first page and up to three more) and
+ * transfers between users picked uniformly or, with a skew above 0, from a Zipf distribution so
+ * a few accounts get most of the traffic.
+ *
+ * Requests arrive as a Poisson process at a fixed rate whether or not earlier ones have finished,
+ * and each is timed from when it was due rather than from when a worker got to it, so a stall
+ * shows up in the percentiles as the queue it causes (no coordinated omission). "Service" is the
+ * time from a worker picking a request up to its completion. Histograms are
+ * {@link LatencyHistogram}s, within 3% of the true value. Writes the app turns away as
+ * {@code BUSY} count as shed, not as errors.
+ *
+ * Only transfers move money, and only between the load users, so the sum of their balances must
+ * be the same at the end; it is checked along with no balance having gone negative, and the run
+ * exits 1 otherwise. With {@code embedded} (the default) it runs against a fresh in-memory H2
+ * database; with {@code local}, against the database configured by {@code mybank.db.*}, creating
+ * users {@code load000001..} there if missing, so point it at a scratch schema.
+ *
+ * The mix is {@code mybank.load.mix} (default {@code login=10,refresh=40,history=25,transfer=25})
+ * and at most {@code mybank.load.workers} (default 200) requests run at once.
+ *
+ * Usage: {@code java -cp target/benchmarks.jar com.mybank.bench.LoadGenerator [ratePerSecond] [seconds] [users] [skew] [embedded|local]}
+ */
+public class LoadGenerator {
+    private static final String[] OPS = {"login", "refresh", "history", "transfer"};
+    private static final long REPORT_EVERY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int MAX_QUEUED = 100_000;
+
+    private final LocalBankApi api;
+    private final UserDAO users;
+    private final List<User> population;
+    private final Zipf pick;
+    private final Map<String, Stats> stats = new LinkedHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicReference<Exception> firstError = new AtomicReference<>();
+
+    LoadGenerator(DataSource ds, List<User> population, double skew) {
+        this.api = new LocalBankApi(ds, new AuthService(new UserDAO(ds), new LoginThrottle(), 4,
+                Runtime.getRuntime().availableProcessors(), 64, 5000));
+        this.users = new UserDAO(ds);
+        this.population = population;
+        this.pick = new Zipf(population.size(), skew);
+        for (String op : OPS) stats.put(op, new Stats());
+    }
+
+    public static void main(String[] args) throws Exception {
+        double rate = args.length > 0 ? Double.parseDouble(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        int userCount = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        double skew = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+        boolean local = args.length > 4 && "local".equals(args[4]);
+        int[] mix = mix(AppConfig.get("mybank.load.mix", "login=10,refresh=40,history=25,transfer=25"));
+        int workers = AppConfig.getInt("mybank.load.workers", 200);
+
+        BenchDatabase embedded = null;
+        DataSource ds;
+        List<User> population;
+        if (local) {
+            ds = DBConnection.getDataSource();
+            population = localUsers(ds, userCount);
+        } else {
+            System.out.printf("Seeding %,d users...%n", userCount);
+            embedded = BenchDatabase.create(userCount, 20, 4, Math.min(workers, 32));
+            ds = embedded.dataSource();
+            population = new ArrayList<>();
+            UserDAO dao = new UserDAO(ds);
+            for (int n = 1; n <= userCount; n++) population.add(dao.findByUsername(BenchDatabase.username(n)));
+        }
+        try {
+            LoadGenerator load = new LoadGenerator(ds, population, skew);
+            long before = load.totalBalance();
+            System.out.printf("%,.0f requests/s for %d s over %,d users (%s, skew %.2f, mix %s, %d workers)%n", rate, seconds,
+                    userCount, local ? "local database" : "embedded H2", skew, Arrays.toString(mix), workers);
+            double elapsed = load.run(rate, seconds, mix, workers);
+            load.report(elapsed);
+
+            long after = load.totalBalance();
+            int negative = load.negativeBalances();
+            System.out.printf("money: %s before, %s after, %d negative balances%n", Money.ofMinor(before), Money.ofMinor(after), negative);
+            if (before != after || negative > 0) {
+                System.err.println("❌ Money not conserved: drift " + Money.ofMinor(after - before) + ", " + negative + " negative balances");
+                System.exit(1);
+            }
+            System.out.println("✅ Money conserved");
+        } finally {
+            if (embedded != null) embedded.close();
+        }
+    }
+
+    /** Issues requests for {@code seconds} and waits for them all; returns the elapsed seconds. */
+    double run(double rate, int seconds, int[] mix, int workers) throws InterruptedException {
+        int weights = 0;
+        for (int w : mix) weights += w;
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "load-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double meanGap = 1e9 / rate;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long nextReport = start + REPORT_EVERY_NANOS;
+        long[] lastCounts = new long[2];
+        double due = start;
+        while (true) {
+            due += -Math.log(1 - random.nextDouble()) * meanGap;
+            long at = (long) due;
+            if (at >= end) break;
+            long wait;
+            while ((wait = at - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+            int roll = random.nextInt(weights);
+            int op = 0;
+            while (roll >= mix[op]) roll -= mix[op++];
+            if (queued.get() >= MAX_QUEUED) {
+                // the system is hopelessly behind; count it rather than run out of memory
+                dropped.increment();
+            } else {
+                queued.incrementAndGet();
+                String name = OPS[op];
+                pool.execute(() -> execute(name, at));
+            }
+            if (at >= nextReport) {
+                progress((at - start) / 1e9, lastCounts);
+                nextReport += REPORT_EVERY_NANOS;
+            }
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.HOURS);
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private void execute(String op, long due) {
+        queued.decrementAndGet();
+        Stats s = stats.get(op);
+        long picked = System.nanoTime();
+        try {
+            switch (op) {
+                case "login":
+                    login();
+                    break;
+                case "refresh":
+                    refresh();
+                    break;
+                case "history":
+                    history();
+                    break;
+                default:
+                    if (!transfer()) s.refused.increment();
+                    break;
+            }
+            long done = System.nanoTime();
+            s.response.record(done - due);
+            s.service.record(done - picked);
+        } catch (TransferException e) {
+            if (e.getReason() == TransferException.Reason.BUSY) {
+                s.shed.increment();
+            } else {
+                s.errors.increment();
+                firstError.compareAndSet(null, e);
+            }
+        } catch (Exception e) {
+            s.errors.increment();
+            firstError.compareAndSet(null, e);
+        }
+    }
+
+    private void login() {
+        User u = population.get(pick.next());
+        User found = users.findByUsername(u.getUsername());
+        if (!users.verifyPassword(found, BenchDatabase.PASSWORD)) throw new IllegalStateException("Login failed for " + u.getUsername());
+    }
+
+    private void refresh() throws Exception {
+        User u = population.get(pick.next());
+        api.refresh(u);
+        api.recent(u);
+    }
+
+    private void history() throws Exception {
+        User u = population.get(pick.next());
+        api.countHistory(u);
+        List<Transaction> page = api.historyPage(u, null, 50);
+        int more = ThreadLocalRandom.current().nextInt(4);
+        for (int i = 0; i < more && page.size() == 50; i++) {
+            page = api.historyPage(u, TransactionDAO.Cursor.after(page.get(page.size() - 1)), 50);
+        }
+    }
+
+    /** {@code false} if refused for lack of funds, which is an answer rather than an error. */
+    private boolean transfer() throws Exception {
+        int from = pick.next();
+        int to;
+        do {
+            to = pick.next();
+        } while (to == from);
+        Money amount = Money.ofMinor(1 + ThreadLocalRandom.current().nextInt(10_000));
+        try {
+            // a fresh idempotency key each time, as the Swing client sends
+            api.transfer(population.get(from), population.get(to).getUsername(), amount, "load", UUID.randomUUID().toString());
+            return true;
+        } catch (TransferException e) {
+            if (e.getReason() == TransferException.Reason.INSUFFICIENT_FUNDS) return false;
+            throw e;
+        }
+    }
+
+    private void progress(double at, long[] last) {
+        long count = 0;
+        long errors = 0;
+        long p99 = 0;
+        for (Stats s : stats.values()) {
+            LatencyHistogram.Snapshot snap = s.response.snapshot();
+            count += snap.getCount();
+            errors += s.errors.sum();
+            p99 = Math.max(p99, snap.percentile(0.99));
+        }
+        System.out.printf("%6.0f s: %,8.0f done/s, %,d errors, %,d queued, worst p99 so far %.1f ms%n", at,
+                (count - last[0]) / (REPORT_EVERY_NANOS / 1e9), errors - last[1], queued.get(), p99 / 1e6);
+        last[0] = count;
+        last[1] = errors;
+    }
+
+    void report(double elapsed) {
+        long total = 0;
+        long errors = 0;
+        long shed = 0;
+        System.out.printf("%-9s %9s %7s %7s %7s %9s %9s %9s %9s %11s%n", "op", "done", "errors", "refused", "shed",
+                "p50 ms", "p99 ms", "p99.9 ms", "max ms", "svc p99 ms");
+        for (Map.Entry<String, Stats> e : stats.entrySet()) {
+            Stats s = e.getValue();
+            LatencyHistogram.Snapshot r = s.response.snapshot();
+            LatencyHistogram.Snapshot svc = s.service.snapshot();
+            total += r.getCount() + s.errors.sum() + s.shed.sum();
+            errors += s.errors.sum();
+            shed += s.shed.sum();
+            System.out.printf("%-9s %,9d %,7d %,7d %,7d %9.2f %9.2f %9.2f %9.2f %11.2f%n", e.getKey(), r.getCount(),
+                    s.errors.sum(), s.refused.sum(), s.shed.sum(), ms(r.percentile(0.50)), ms(r.percentile(0.99)),
+                    ms(r.percentile(0.999)), ms(r.getMax()), ms(svc.percentile(0.99)));
+        }
+        System.out.printf("total: %,d requests in %.1f s = %,.0f/s, error rate %.3f%%, %,d shed as busy, %,d dropped%n",
+                total, elapsed, total / elapsed, total == 0 ? 0.0 : 100.0 * errors / total, shed, dropped.sum());
+        if (firstError.get() != null) System.out.println("first error: " + firstError.get());
+    }
+
+    long totalBalance() throws SQLException {
+        long sum = 0;
+        for (User u : balances()) sum += u.getBalance().getMinorUnits();
+        return sum;
+    }
+
+    int negativeBalances() throws SQLException {
+        int n = 0;
+        for (User u : balances()) {
+            if (u.getBalance().isNegative()) n++;
+        }
+        return n;
+    }
+
+    /** The load users as stored now, bypassing the lookup cache. */
+    private List<User> balances() throws SQLException {
+        Set<String> names = new HashSet<>();
+        for (User u : population) names.add(u.getUsername());
+        List<User> out = new ArrayList<>();
+        for (User u : users.findAll()) {
+            if (names.contains(u.getUsername())) out.add(u);
+        }
+        if (out.size() != names.size()) throw new IllegalStateException(names.size() - out.size() + " load users have disappeared");
+        return out;
+    }
+
+    /** Weights for {@link #OPS} from {@code name=weight,...}; missing ones are 0. */
+    static int[] mix(String spec) {
+        int[] weights = new int[OPS.length];
+        for (String part : spec.split(",")) {
+            String[] kv = part.trim().split("=");
+            int i = Arrays.asList(OPS).indexOf(kv[0].trim());
+            if (kv.length != 2 || i < 0) throw new IllegalArgumentException("Bad mybank.load.mix entry: " + part);
+            weights[i] = Integer.parseInt(kv[1].trim());
+        }
+        if (Arrays.stream(weights).sum() <= 0) throw new IllegalArgumentException("mybank.load.mix has no weight");
+        return weights;
+    }
+
+    /** Users {@code load000001..} in the configured database, created with the bench password if missing. */
+    private static List<User> localUsers(DataSource ds, int count) throws SQLException {
+        UserDAO dao = new UserDAO(ds);
+        String hash = BCrypt.hashpw(BenchDatabase.PASSWORD, BCrypt.gensalt(4));
+        List<User> out = new ArrayList<>();
+        try (Connection c = ds.getConnection();
+             PreparedStatement ins = c.prepareStatement(
+                     "INSERT INTO users (username, password, full_name, email, role, balance) VALUES (?,?,?,?,?,?)")) {
+            for (int n = 1; n <= count; n++) {
+                String name = String.format("load%06d", n);
+                User u = dao.getByUsername(name);
+                if (u == null) {
+                    ins.setString(1, name);
+                    ins.setString(2, hash);
+                    ins.setString(3, "Load User " + n);
+                    ins.setString(4, name + "@load.local");
+                    ins.setString(5, "user");
+                    ins.setBigDecimal(6, new BigDecimal("1000000.00"));
+                    ins.executeUpdate();
+                    u = dao.getByUsername(name);
+                }
+                out.add(u);
+            }
+        }
+        return out;
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static final class Stats {
+        final LatencyHistogram response = new LatencyHistogram();
+        final LatencyHistogram service = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder refused = new LongAdder();
+        final LongAdder shed = new LongAdder();
+    }
+
+    /** Indexes 0..n-1 with P(k) proportional to 1/(k+1)^s; s = 0 is uniform. */
+    static final class Zipf {
+        private final double[] cdf;
+
+        Zipf(int n, double s) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += 1 / Math.pow(k + 1, s);
+                cdf[k] = sum;
+            }
+            for (int k = 0; k < n; k++) cdf[k] /= sum;
+        }
+
+        int next() {
+            int i = Arrays.binarySearch(cdf, ThreadLocalRandom.current().nextDouble());
+            return Math.min(i < 0 ? -i - 1 : i, cdf.length - 1);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.mybank.bench;
+
+import com.mybank.metrics.LatencyHistogram;
+import com.mybank.metrics.Metrics;
+import com.mybank.metrics.Operation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What timing a call costs on top of the call: {@link Operation#start()} plus
+ * {@link Operation#done(long, long)}, and a bare {@link LatencyHistogram#record(long)}. The
+ * {@code contended} variants record from 4 threads into the same operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MetricsBenchmark {
+    private final Operation op = Metrics.op("MetricsBenchmark.op");
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Benchmark
+    public long startDone() {
+        long start = op.start();
+        op.done(start, 1);
+        return start;
+    }
+
+    @Benchmark
+    public void record() {
+        histogram.record(ThreadLocalRandom.current().nextLong(1_000, 10_000_000));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long startDoneContended() {
+        return startDone();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended() {
+        record();
+    }
+}
@@ -0,0 +1,97 @@
+package com.mybank.bench;
+
+import com.mybank.model.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Money} against {@link BigDecimal} for what the app does with balances: sum them,
+ * compare them, render them for a label and read them back from text. Each operation walks
+ * the same 1024 pseudo-random amounts so neither side sees a constant.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MoneyBenchmark {
+    private static final int SIZE = 1024;
+
+    private final Money[] money = new Money[SIZE];
+    private final BigDecimal[] decimals = new BigDecimal[SIZE];
+    private final String[] text = new String[SIZE];
+    private int i;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom rnd = new SplittableRandom(7);
+        for (int k = 0; k < SIZE; k++) {
+            long minor = rnd.nextLong(-100_000_000L, 10_000_000_000L);
+            money[k] = Money.ofMinor(minor);
+            decimals[k] = BigDecimal.valueOf(minor, 2);
+            text[k] = decimals[k].toPlainString();
+        }
+    }
+
+    private int next() {
+        return i = (i + 1) & (SIZE - 1);
+    }
+
+    @Benchmark
+    public Money addMoney() {
+        int k = next();
+        return money[k].plus(money[(k + 1) & (SIZE - 1)]);
+    }
+
+    @Benchmark
+    public BigDecimal addBigDecimal() {
+        int k = next();
+        return decimals[k].add(decimals[(k + 1) & (SIZE - 1)]);
+    }
+
+    @Benchmark
+    public int compareMoney() {
+        int k = next();
+        return money[k].compareTo(money[(k + 1) & (SIZE - 1)]);
+    }
+
+    @Benchmark
+    public int compareBigDecimal() {
+        int k = next();
+        return decimals[k].compareTo(decimals[(k + 1) & (SIZE - 1)]);
+    }
+
+    @Benchmark
+    public String formatMoney() {
+        return money[next()].format();
+    }
+
+    /** What DashboardFrame used to do with the balance. */
+    @Benchmark
+    public String formatBigDecimal() {
+        return String.format("%,.2f", decimals[next()]);
+    }
+
+    @Benchmark
+    public Money parseMoney() {
+        return Money.parse(text[next()]);
+    }
+
+    @Benchmark
+    public BigDecimal parseBigDecimal() {
+        return new BigDecimal(text[next()]);
+    }
+}
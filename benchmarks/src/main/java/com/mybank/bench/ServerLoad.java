@@ -0,0 +1,213 @@
+package com.mybank.bench;
+
+import com.mybank.api.ApiException;
+import com.mybank.api.BankServer;
+import com.mybank.api.LocalBankApi;
+import com.mybank.api.RemoteBankApi;
+import com.mybank.dao.UserDAO;
+import com.mybank.metrics.LatencyHistogram;
+import com.mybank.model.Money;
+import com.mybank.model.User;
+import com.mybank.service.AuthException;
+import com.mybank.service.AuthService;
+import com.mybank.service.LoginThrottle;
+import com.mybank.service.TransferException;
+
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Throughput and latency of a {@link BankServer} under many concurrent clients, each a
+ * {@link RemoteBankApi} going over real HTTP on the loopback interface.
+ *
+ * Every client first logs in as its own user. Once all have, the timed run starts and each loops
+ * over a mix of 40% dashboard refreshes ({@code /api/me} plus {@code /api/recent}), 30% history
+ * pages, 20% transfers to a random user and 10% deposits or withdrawals. Clients are closed-loop (the next
+ * call starts when the last one returns), so the numbers are what the server sustains with that
+ * many users, not a latency budget at a fixed arrival rate. At the end the sum of all balances is
+ * checked against the opening balances plus net deposits.
+ *
+ * Usage: {@code java -cp target/benchmarks.jar com.mybank.bench.ServerLoad [clients] [seconds] [serverThreads]}
+ */
+public class ServerLoad {
+    private static final AtomicReference<Exception> FIRST_ERROR = new AtomicReference<>();
+    private static final String[] OPS = {"login", "refresh", "history", "transfer", "deposit", "withdraw"};
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        System.out.printf("Seeding %,d users...%n", clients);
+        try (BenchDatabase db = BenchDatabase.create(clients, 50, 4, 16);
+             BankServer server = new BankServer(new LocalBankApi(db.dataSource(), auth(db)),
+                     new InetSocketAddress("127.0.0.1", 0), 4096, threads, 60_000)) {
+            server.start();
+            String url = "http://127.0.0.1:" + server.getPort();
+            HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+            Map<String, LatencyHistogram> latency = new LinkedHashMap<>();
+            for (String op : OPS) latency.put(op, new LatencyHistogram());
+            AtomicLong errors = new AtomicLong();
+            AtomicLong refused = new AtomicLong();
+            AtomicLong netDeposits = new AtomicLong();
+
+            CountDownLatch ready = new CountDownLatch(clients);
+            CountDownLatch go = new CountDownLatch(1);
+            long[] window = new long[2];
+            List<Thread> workers = new ArrayList<>();
+            for (int i = 1; i <= clients; i++) {
+                int n = i;
+                Thread t = new Thread(() -> {
+                    RemoteBankApi api = new RemoteBankApi(url, http, Duration.ofSeconds(60));
+                    User self = login(api, n, latency.get("login"));
+                    ready.countDown();
+                    if (self == null) {
+                        errors.incrementAndGet();
+                        return;
+                    }
+                    try {
+                        go.await();
+                        run(api, self, n, clients, window[1], latency, errors, refused, netDeposits);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }, "client-" + n);
+                t.setDaemon(true);
+                workers.add(t);
+                t.start();
+            }
+            long loginStart = System.nanoTime();
+            ready.await();
+            System.out.printf("Logged in %,d clients in %.1f s%n", latency.get("login").getCount(), (System.nanoTime() - loginStart) / 1e9);
+            System.out.printf("Running %,d clients for %d s against %d server threads...%n", clients, seconds, threads);
+            window[0] = System.nanoTime();
+            window[1] = window[0] + seconds * 1_000_000_000L;
+            go.countDown();
+            for (Thread t : workers) t.join();
+            double elapsed = (System.nanoTime() - window[0]) / 1e9;
+
+            long total = -latency.get("login").getCount();
+            System.out.printf("%-9s %10s %9s %9s %9s %9s%n", "op", "calls", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+            for (Map.Entry<String, LatencyHistogram> e : latency.entrySet()) {
+                LatencyHistogram.Snapshot s = e.getValue().snapshot();
+                total += s.getCount();
+                System.out.printf("%-9s %,10d %9.1f %9.1f %9.1f %9.1f%n", e.getKey(), s.getCount(),
+                        ms(s.percentile(0.50)), ms(s.percentile(0.99)), ms(s.percentile(0.999)), ms(s.getMax()));
+            }
+            System.out.printf("total: %,d calls (excluding logins) in %.1f s = %,.0f calls/s, %,d errors, %,d refusals (insufficient funds)%n",
+                    total, elapsed, total / elapsed, errors.get(), refused.get());
+            if (FIRST_ERROR.get() != null) System.out.println("first error: " + FIRST_ERROR.get());
+
+            long expected = BenchDatabase.OPENING_BALANCE.movePointRight(Money.SCALE).longValueExact() * clients + netDeposits.get();
+            long actual = totalBalance(db);
+            System.out.printf("money: %s (expected %s)%n", Money.ofMinor(actual), Money.ofMinor(expected));
+            if (actual != expected) {
+                System.err.println("❌ Total balance drifted by " + Money.ofMinor(actual - expected));
+                System.exit(1);
+            }
+        }
+    }
+
+    /** Logs in as user {@code n}, retrying while the server sheds the stampede; {@code null} on failure. */
+    private static User login(RemoteBankApi api, int n, LatencyHistogram latency) {
+        long start = System.nanoTime();
+        for (int attempt = 0; attempt < 200; attempt++) {
+            try {
+                User self = api.login(BenchDatabase.username(n), BenchDatabase.PASSWORD);
+                latency.record(System.nanoTime() - start);
+                return self;
+            } catch (AuthException e) {
+                if (e.getReason() != AuthException.Reason.BUSY && e.getReason() != AuthException.Reason.TIMEOUT) {
+                    FIRST_ERROR.compareAndSet(null, e);
+                    return null;
+                }
+                LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(50_000_000, 250_000_000));
+            } catch (ApiException | RuntimeException e) {
+                FIRST_ERROR.compareAndSet(null, e);
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static void run(RemoteBankApi api, User self, int n, int clients, long deadline, Map<String, LatencyHistogram> latency,
+                            AtomicLong errors, AtomicLong refused, AtomicLong netDeposits) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long start;
+        while (System.nanoTime() < deadline) {
+            int roll = random.nextInt(100);
+            String op = roll < 40 ? "refresh" : roll < 70 ? "history" : roll < 90 ? "transfer" : roll < 95 ? "deposit" : "withdraw";
+            Money amount = Money.ofMinor(1 + random.nextInt(10_000));
+            start = System.nanoTime();
+            try {
+                switch (op) {
+                    case "refresh":
+                        api.refresh(self);
+                        api.recent(self);
+                        break;
+                    case "history":
+                        api.historyPage(self, null, 50);
+                        break;
+                    case "transfer":
+                        int to = 1 + random.nextInt(clients - 1);
+                        if (to >= n) to++;
+                        api.transfer(self, BenchDatabase.username(to), amount, "load", null);
+                        break;
+                    case "deposit":
+                        api.deposit(self, amount, "load", null);
+                        netDeposits.addAndGet(amount.getMinorUnits());
+                        break;
+                    default:
+                        api.withdraw(self, amount, "load", null);
+                        netDeposits.addAndGet(-amount.getMinorUnits());
+                        break;
+                }
+                latency.get(op).record(System.nanoTime() - start);
+            } catch (TransferException e) {
+                if (e.getReason() == TransferException.Reason.INSUFFICIENT_FUNDS) {
+                    refused.incrementAndGet();
+                    latency.get(op).record(System.nanoTime() - start);
+                } else {
+                    errors.incrementAndGet();
+                    FIRST_ERROR.compareAndSet(null, e);
+                }
+            } catch (ApiException | RuntimeException e) {
+                errors.incrementAndGet();
+                FIRST_ERROR.compareAndSet(null, e);
+            }
+        }
+    }
+
+    /** Same bcrypt cost as the seeded hashes, so logins do not also rehash them. */
+    private static AuthService auth(BenchDatabase db) {
+        return new AuthService(new UserDAO(db.dataSource()), new LoginThrottle(), 4,
+                Runtime.getRuntime().availableProcessors(), 64, 5000);
+    }
+
+    private static long totalBalance(BenchDatabase db) throws Exception {
+        try (Connection c = db.dataSource().getConnection();
+             Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT SUM(balance) FROM users")) {
+            rs.next();
+            return rs.getBigDecimal(1).movePointRight(Money.SCALE).longValueExact();
+        }
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,105 @@
+package com.mybank.bench;
+
+import com.mybank.dao.UserDAO;
+import com.mybank.model.User;
+import com.mybank.service.StatementResult;
+import com.mybank.service.StatementService;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Throughput and memory of {@link StatementService}, outside JMH since one iteration is a
+ * whole statement.
+ *
+ * First renders the full history of a single user with {@code rows} transactions to a discarding
+ * stream and reports pages/s and peak heap; then renders {@code users} smaller statements in
+ * parallel into a temp directory. "Peak live" is the largest heap in use right after any GC
+ * during the run, so garbage waiting to be collected does not count; compare it to the baseline
+ * taken after seeding, since the in-memory H2 database itself lives in the heap.
+ *
+ * Usage: {@code java -cp target/benchmarks.jar com.mybank.bench.StatementLoad [rows] [users] [parallelism]}
+ */
+public class StatementLoad {
+    private static final AtomicLong PEAK_LIVE = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        watchGc();
+
+        System.out.printf("Seeding one user with %,d transactions...%n", rows);
+        try (BenchDatabase db = BenchDatabase.create(1, rows, 4, 2)) {
+            User user = new UserDAO(db.dataSource()).findByUsername(BenchDatabase.username(1));
+            StatementService service = new StatementService(db.dataSource());
+            long baseline = baseline();
+            StatementResult r = service.write(user, null, OutputStream.nullOutputStream());
+            long peak = PEAK_LIVE.get();
+            System.out.println("single: " + r);
+            System.out.printf("single: heap baseline %,d MB, peak live %,d MB (+%,d MB while rendering)%n",
+                    baseline >> 20, peak >> 20, (peak - baseline) >> 20);
+        }
+
+        int perUser = Math.max(1, rows / 1000);
+        System.out.printf("Seeding %,d users with %,d transactions each...%n", users, perUser);
+        Path dir = Files.createTempDirectory("mybank-statements");
+        try (BenchDatabase db = BenchDatabase.create(users, perUser, 4, parallelism)) {
+            StatementService service = new StatementService(db.dataSource());
+            long baseline = baseline();
+            StatementResult r = service.writeAll(null, dir, parallelism);
+            long peak = PEAK_LIVE.get();
+            System.out.printf("batch x%d: %s%n", parallelism, r);
+            System.out.printf("batch x%d: heap baseline %,d MB, peak live %,d MB (+%,d MB)%n",
+                    parallelism, baseline >> 20, peak >> 20, (peak - baseline) >> 20);
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /** Collects garbage, restarts peak tracking and returns the live heap. */
+    private static long baseline() {
+        System.gc();
+        Runtime rt = Runtime.getRuntime();
+        long used = rt.totalMemory() - rt.freeMemory();
+        PEAK_LIVE.set(used);
+        return used;
+    }
+
+    private static void watchGc() {
+        Set<String> heapPools = new HashSet<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) heapPools.add(pool.getName());
+        }
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!(gc instanceof NotificationEmitter)) continue;
+            ((NotificationEmitter) gc).addNotificationListener((n, handback) -> {
+                if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType())) return;
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+                long live = 0;
+                for (Map.Entry<String, MemoryUsage> e : info.getGcInfo().getMemoryUsageAfterGc().entrySet()) {
+                    if (heapPools.contains(e.getKey())) live += e.getValue().getUsed();
+                }
+                PEAK_LIVE.accumulateAndGet(live, Math::max);
+            }, null, null);
+        }
+    }
+}
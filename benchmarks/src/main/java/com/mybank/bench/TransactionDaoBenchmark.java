@@ -0,0 +1,59 @@
+package com.mybank.bench;
+
+import com.mybank.dao.TransactionDAO;
+import com.mybank.model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dashboard "recent transactions" query, {@link TransactionDAO#findRecentByUser}, against a
+ * history of {@code users * txPerUser} rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TransactionDaoBenchmark {
+    @Param("10000")
+    public int users;
+
+    @Param("20")
+    public int txPerUser;
+
+    private BenchDatabase db;
+    private TransactionDAO dao;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        db = BenchDatabase.create(users, txPerUser, 4, 4);
+        dao = new TransactionDAO(db.dataSource());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    public List<Transaction> findRecentByUser() {
+        return dao.findRecentByUser(1 + ThreadLocalRandom.current().nextInt(users));
+    }
+}
@@ -0,0 +1,21 @@
+package com.mybank.bench;
+
+import com.mybank.tools.TransferContentionBenchmark;
+
+/**
+ * {@link TransferContentionBenchmark} (the old frame logic against {@code TransferService}, on
+ * hot-pair and random-pair workloads) on a {@link BenchDatabase}, so it runs without MySQL.
+ *
+ * Usage: {@code java -cp target/benchmarks.jar com.mybank.bench.TransferContention [threads] [seconds] [users]}
+ */
+public class TransferContention {
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int users = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        try (BenchDatabase db = BenchDatabase.create(0, 0, 4, threads)) {
+            TransferContentionBenchmark.run(db.dataSource(), threads, seconds, users);
+            System.out.println("Pool: " + db.pool().stats());
+        }
+    }
+}
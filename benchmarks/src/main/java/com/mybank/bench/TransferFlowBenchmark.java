@@ -0,0 +1,101 @@
+package com.mybank.bench;
+
+import com.mybank.dao.TransactionDAO;
+import com.mybank.dao.UserDAO;
+import com.mybank.model.Money;
+import com.mybank.model.Transaction;
+import com.mybank.model.User;
+import com.mybank.service.TransferException;
+import com.mybank.service.TransferResult;
+import com.mybank.service.TransferService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The "Send" button in {@code TransferFrame}: look up the recipient, move the money, then
+ * refresh the dashboard (sender's balance and recent transactions). {@link #transferOnly} is
+ * the {@link TransferService} call on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TransferFlowBenchmark {
+    private static final Money AMOUNT = Money.ofMinor(1);
+
+    @Param("1000")
+    public int users;
+
+    @Param("20")
+    public int txPerUser;
+
+    private BenchDatabase db;
+    private UserDAO userDao;
+    private TransactionDAO transactionDao;
+    private TransferService service;
+    private User[] senders;
+    private String[] usernames;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        db = BenchDatabase.create(users, txPerUser, 4, 8);
+        userDao = new UserDAO(db.dataSource());
+        transactionDao = new TransactionDAO(db.dataSource());
+        service = new TransferService(db.dataSource());
+        senders = new User[users];
+        usernames = new String[users];
+        for (int n = 1; n <= users; n++) {
+            usernames[n - 1] = BenchDatabase.username(n);
+            senders[n - 1] = userDao.findByUsername(usernames[n - 1]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    public void transferFlow(Blackhole bh) throws TransferException {
+        int[] pair = pair();
+        User sender = senders[pair[0]];
+        User recipient = userDao.findByUsername(usernames[pair[1]]);
+        bh.consume(service.transfer(sender, recipient, AMOUNT, "bench"));
+        User fresh = userDao.findByUsername(sender.getUsername());
+        List<Transaction> recent = transactionDao.findRecentByUser(sender.getUserId());
+        bh.consume(fresh);
+        bh.consume(recent);
+    }
+
+    @Benchmark
+    public TransferResult transferOnly() throws TransferException {
+        int[] pair = pair();
+        return service.transfer(senders[pair[0]], senders[pair[1]], AMOUNT, "bench");
+    }
+
+    private int[] pair() {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        int a = rnd.nextInt(users);
+        int b = rnd.nextInt(users - 1);
+        return new int[] {a, b >= a ? b + 1 : b};
+    }
+}
@@ -0,0 +1,73 @@
+package com.mybank.bench;
+
+import com.mybank.dao.UserDAO;
+import com.mybank.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Login path: {@link UserDAO#findByUsername} and {@link UserDAO#verifyPassword}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UserDaoBenchmark {
+    @Param("10000")
+    public int users;
+
+    @Param("12")
+    public int bcryptCost;
+
+    private BenchDatabase db;
+    private UserDAO dao;
+    private String[] usernames;
+    private User user;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        db = BenchDatabase.create(users, 0, bcryptCost, 4);
+        dao = new UserDAO(db.dataSource());
+        usernames = new String[users];
+        for (int n = 1; n <= users; n++) usernames[n - 1] = BenchDatabase.username(n);
+        user = dao.findByUsername(usernames[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    public User findByUsername() {
+        return dao.findByUsername(usernames[ThreadLocalRandom.current().nextInt(users)]);
+    }
+
+    @Benchmark
+    public User findByUsernameMissing() {
+        return dao.findByUsername("nobody");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public boolean verifyPassword() {
+        return dao.verifyPassword(user, BenchDatabase.PASSWORD);
+    }
+}
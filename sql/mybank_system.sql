@@ -1,4 +1,7 @@
 -- MyBank Pro SQL schema
+-- Original setup script, kept for reference. The app now creates and upgrades the tables itself
+-- at startup (Src/main/resources/db/migration); an existing database made with this script is
+-- brought up to date the first time the app runs against it.
 CREATE DATABASE IF NOT EXISTS mybank_system;
 USE mybank_system;
 
@@ -21,9 +24,11 @@ CREATE TABLE IF NOT EXISTS accounts (
   account_number VARCHAR(32) UNIQUE NOT NULL,
   account_type VARCHAR(20),
   balance DECIMAL(15,2) DEFAULT 0.00,
+  version BIGINT NOT NULL DEFAULT 0, -- bumped on every balance write (optimistic locking)
   created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
   FOREIGN KEY (user_id) REFERENCES users(user_id) ON DELETE CASCADE
 );
+-- existing databases: ALTER TABLE accounts ADD COLUMN version BIGINT NOT NULL DEFAULT 0 AFTER balance;
 
 CREATE TABLE IF NOT EXISTS transactions (
   transaction_id INT AUTO_INCREMENT PRIMARY KEY,
@@ -44,6 +49,12 @@ CREATE TABLE IF NOT EXISTS notifications (
   FOREIGN KEY (user_id) REFERENCES users(user_id) ON DELETE CASCADE
 );
 
+-- last journal record copied to the tables by the ledger engine
+CREATE TABLE IF NOT EXISTS ledger_checkpoint (
+  id INT PRIMARY KEY,
+  last_seq BIGINT NOT NULL DEFAULT 0
+);
+
 -- create default admin (password 'admin' hashed client-side on registration)
 INSERT IGNORE INTO users (username, password, full_name, email, role)
 VALUES ('admin','admin','Admin User','admin@local','admin');